@@ -0,0 +1,41 @@
+package cn.edu.nwpu.homesphere;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * 设备动作执行的JFR事件，记录一次{@link DeviceAction#execute()}的目标设备、命令、结果和耗时。
+ * <p>
+ * 动作执行是高频操作，因此不采集调用栈；未开启飞行记录时几乎没有开销。
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+@Name("cn.edu.nwpu.homesphere.ActionExecute")
+@Label("Action Execute")
+@Category({"HomeSphere", "Device"})
+@Description("执行设备动作")
+@StackTrace(false)
+class ActionExecuteEvent extends Event {
+    /**
+     * 目标设备编号
+     */
+    @Label("Device Id")
+    int deviceId;
+
+    /**
+     * 动作指令名称
+     */
+    @Label("Command")
+    String command;
+
+    /**
+     * 是否执行成功
+     */
+    @Label("Success")
+    boolean success;
+}
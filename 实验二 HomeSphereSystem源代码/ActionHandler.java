@@ -0,0 +1,63 @@
+package cn.edu.nwpu.homesphere;
+
+/**
+ * 设备动作处理器接口，定义一条动作指令（如"setTemperature"）在设备上的具体执行方式。
+ * <p>
+ * 处理器由{@link ActionHandlers}按指令名称统一注册和查找，取代原先每次执行都通过反射查找设备方法的方式。
+ * 动作（{@link DeviceAction}）创建或修改时即解析出对应的处理器和强类型参数（{@link ActionPayload}），执行时直接调用。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see ActionHandlers
+ */
+public interface ActionHandler {
+
+    /**
+     * 获取处理器适用的设备类型（设备类或能力接口）
+     *
+     * @return 设备类型（如{@code AirConditioner.class}、{@code BatteryPowered.class}）
+     */
+    Class<?> getDeviceType();
+
+    /**
+     * 获取该指令写入的设备属性名称（如"targetTemp"“power”）
+     * <p>
+     * 同一场景中对同一设备同一属性的多次写入，只有最后一次会保留。
+     *
+     * @return 属性名称
+     */
+    String getAttribute();
+
+    /**
+     * 获取该指令的参数类型
+     *
+     * @return 参数类型，无参数的指令返回{@link ActionPayload.Kind#NONE}
+     */
+    ActionPayload.Kind getPayloadKind();
+
+    /**
+     * 解析并校验字符串参数（只在动作创建或修改参数时调用一次）
+     *
+     * @param parameters 字符串参数
+     * @return 解析后的参数，无参数的指令返回{@link ActionPayload#NONE}
+     * @throws IllegalArgumentException 若参数缺失、格式错误或超出范围
+     */
+    ActionPayload parse(String parameters);
+
+    /**
+     * 判断在设备当前状态下执行该指令是否不会产生任何变化（如目标温度已经是26℃）
+     *
+     * @param device  目标设备（类型已校验）
+     * @param payload 解析后的参数
+     * @return {@code true}表示执行无效果，可以跳过
+     */
+    boolean isNoop(Device device, ActionPayload payload);
+
+    /**
+     * 在设备上执行该指令
+     *
+     * @param device  目标设备（类型已校验）
+     * @param payload 解析后的参数
+     */
+    void apply(Device device, ActionPayload payload);
+}
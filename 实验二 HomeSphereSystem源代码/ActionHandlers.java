@@ -0,0 +1,154 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * 设备动作处理器注册表，保存动作指令名称到{@link ActionHandler}的映射。
+ * <p>
+ * 目前支持的指令：
+ * <ul>
+ *     <li>{@code setTemperature}：设置空调目标温度（参数为温度，单位：摄氏度）</li>
+ *     <li>{@code powerOn}：设备开机（无参数）</li>
+ *     <li>{@code powerOff}：设备关机（无参数）</li>
+ *     <li>{@code setBrightness}：设置灯泡亮度（整数，0-100）</li>
+ *     <li>{@code setColorTemp}：设置灯泡色温（整数，1000-10000K）</li>
+ *     <li>{@code setLight}：同时设置灯泡亮度和色温（两个以逗号分隔的整数，如"80,3000"）</li>
+ *     <li>{@code setLocked}：智能锁上锁/解锁（布尔值，true/false、on/off或1/0）</li>
+ *     <li>{@code setBatteryLevel}：更新电池供电设备的电量（整数，0-100）</li>
+ * </ul>
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+public final class ActionHandlers {
+    /**
+     * 指令名称 -> 处理器
+     */
+    private static final Map<String, ActionHandler> HANDLERS = new ConcurrentHashMap<String, ActionHandler>();
+
+    static {
+        register("setTemperature", new Handler(AirConditioner.class, "targetTemp", ActionPayload.Kind.DOUBLE,
+                ActionPayload::parseDouble,
+                (device, p) -> ((AirConditioner) device).getTargetTemp() == p.getDouble(),
+                (device, p) -> ((AirConditioner) device).setTargetTemp(p.getDouble())));
+        register("powerOn", new Handler(Device.class, "power", ActionPayload.Kind.NONE,
+                text -> ActionPayload.NONE,
+                (device, p) -> device.isPowerStatus(),
+                (device, p) -> device.powerOn()));
+        register("powerOff", new Handler(Device.class, "power", ActionPayload.Kind.NONE,
+                text -> ActionPayload.NONE,
+                (device, p) -> !device.isPowerStatus() && !device.isOnline(),
+                (device, p) -> device.powerOff()));
+        register("setBrightness", new Handler(LightBulb.class, "brightness", ActionPayload.Kind.INT,
+                text -> ActionPayload.parseInt(text, 0, 100),
+                (device, p) -> ((LightBulb) device).getBrightness() == p.getInt(),
+                (device, p) -> ((LightBulb) device).setBrightness(p.getInt())));
+        register("setColorTemp", new Handler(LightBulb.class, "colorTemp", ActionPayload.Kind.INT,
+                text -> ActionPayload.parseInt(text, 1000, 10000),
+                (device, p) -> ((LightBulb) device).getColorTemp() == p.getInt(),
+                (device, p) -> ((LightBulb) device).setColorTemp(p.getInt())));
+        register("setLight", new Handler(LightBulb.class, "light", ActionPayload.Kind.MULTI,
+                text -> ActionPayload.parseFields(text, new int[]{0, 1000}, new int[]{100, 10000}),
+                (device, p) -> ((LightBulb) device).getBrightness() == p.getField(0)
+                        && ((LightBulb) device).getColorTemp() == p.getField(1),
+                (device, p) -> {
+                    ((LightBulb) device).setBrightness(p.getField(0));
+                    ((LightBulb) device).setColorTemp(p.getField(1));
+                }));
+        register("setLocked", new Handler(SmartLock.class, "locked", ActionPayload.Kind.BOOLEAN,
+                ActionPayload::parseBoolean,
+                (device, p) -> ((SmartLock) device).isLocked() == p.getBoolean(),
+                (device, p) -> ((SmartLock) device).setLocked(p.getBoolean())));
+        register("setBatteryLevel", new Handler(BatteryPowered.class, "batteryLevel", ActionPayload.Kind.INT,
+                text -> ActionPayload.parseInt(text, 0, 100),
+                (device, p) -> ((BatteryPowered) device).getBatteryLevel() == p.getInt(),
+                (device, p) -> ((BatteryPowered) device).setBatteryLevel(p.getInt())));
+    }
+
+    private ActionHandlers() {
+
+    }
+
+    /**
+     * 注册（或替换）一条指令的处理器
+     *
+     * @param command 指令名称
+     * @param handler 处理器
+     */
+    public static void register(String command, ActionHandler handler) {
+        HANDLERS.put(command, handler);
+    }
+
+    /**
+     * 查找指令对应的处理器
+     *
+     * @param command 指令名称
+     * @return 处理器，不支持的指令返回null
+     */
+    public static ActionHandler resolve(String command) {
+        return command == null ? null : HANDLERS.get(command);
+    }
+
+    /**
+     * 判断设备当前状态是否已满足指令要求
+     */
+    @FunctionalInterface
+    private interface NoopCheck {
+        boolean test(Device device, ActionPayload payload);
+    }
+
+    /**
+     * 由Lambda表达式组装的通用处理器
+     */
+    private static final class Handler implements ActionHandler {
+        private final Class<?> deviceType;
+        private final String attribute;
+        private final ActionPayload.Kind payloadKind;
+        private final Function<String, ActionPayload> parser;
+        private final NoopCheck noop;
+        private final BiConsumer<Device, ActionPayload> action;
+
+        Handler(Class<?> deviceType, String attribute, ActionPayload.Kind payloadKind,
+                Function<String, ActionPayload> parser, NoopCheck noop, BiConsumer<Device, ActionPayload> action) {
+            this.deviceType = deviceType;
+            this.attribute = attribute;
+            this.payloadKind = payloadKind;
+            this.parser = parser;
+            this.noop = noop;
+            this.action = action;
+        }
+
+        @Override
+        public Class<?> getDeviceType() {
+            return deviceType;
+        }
+
+        @Override
+        public String getAttribute() {
+            return attribute;
+        }
+
+        @Override
+        public ActionPayload.Kind getPayloadKind() {
+            return payloadKind;
+        }
+
+        @Override
+        public ActionPayload parse(String parameters) {
+            return parser.apply(parameters);
+        }
+
+        @Override
+        public boolean isNoop(Device device, ActionPayload payload) {
+            return noop.test(device, payload);
+        }
+
+        @Override
+        public void apply(Device device, ActionPayload payload) {
+            action.accept(device, payload);
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * 动作参数类，保存设备动作（{@link DeviceAction}）预先解析好的强类型参数，创建后不可修改。
+ * <p>
+ * 动作在创建或修改参数时只解析一次字符串参数，之后每次执行都直接读取其中的基本类型值，
+ * 不再重复解析字符串，也不会产生装箱对象。支持以下几种类型：
+ * <ul>
+ *     <li>{@link Kind#NONE}：无参数（如"powerOn"）；</li>
+ *     <li>{@link Kind#DOUBLE}：浮点数（如目标温度"26.5"）；</li>
+ *     <li>{@link Kind#INT}：整数（如亮度"80"）；</li>
+ *     <li>{@link Kind#BOOLEAN}：布尔值（如上锁"true"）；</li>
+ *     <li>{@link Kind#MULTI}：以逗号分隔的多个整数（如亮度和色温"80,3000"）。</li>
+ * </ul>
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see ActionHandler#parse(String)
+ */
+public final class ActionPayload {
+    /**
+     * 参数类型
+     */
+    public enum Kind {
+        NONE, DOUBLE, INT, BOOLEAN, MULTI
+    }
+
+    /**
+     * 无参数的动作共用的参数对象
+     */
+    public static final ActionPayload NONE = new ActionPayload(Kind.NONE, 0, 0, false, null);
+
+    /**
+     * 参数类型
+     */
+    private final Kind kind;
+
+    /**
+     * 浮点数参数（仅{@link Kind#DOUBLE}有效）
+     */
+    private final double doubleValue;
+
+    /**
+     * 整数参数（仅{@link Kind#INT}有效）
+     */
+    private final int intValue;
+
+    /**
+     * 布尔参数（仅{@link Kind#BOOLEAN}有效）
+     */
+    private final boolean booleanValue;
+
+    /**
+     * 多字段整数参数（仅{@link Kind#MULTI}有效）
+     */
+    private final int[] fields;
+
+    private ActionPayload(Kind kind, double doubleValue, int intValue, boolean booleanValue, int[] fields) {
+        this.kind = kind;
+        this.doubleValue = doubleValue;
+        this.intValue = intValue;
+        this.booleanValue = booleanValue;
+        this.fields = fields;
+    }
+
+    /**
+     * 创建浮点数参数
+     *
+     * @param value 参数值
+     * @return 参数对象
+     */
+    public static ActionPayload ofDouble(double value) {
+        return new ActionPayload(Kind.DOUBLE, value, 0, false, null);
+    }
+
+    /**
+     * 创建整数参数
+     *
+     * @param value 参数值
+     * @return 参数对象
+     */
+    public static ActionPayload ofInt(int value) {
+        return new ActionPayload(Kind.INT, 0, value, false, null);
+    }
+
+    /**
+     * 创建布尔参数
+     *
+     * @param value 参数值
+     * @return 参数对象
+     */
+    public static ActionPayload ofBoolean(boolean value) {
+        return new ActionPayload(Kind.BOOLEAN, 0, 0, value, null);
+    }
+
+    /**
+     * 创建多字段整数参数
+     *
+     * @param values 各字段的值
+     * @return 参数对象
+     */
+    public static ActionPayload ofFields(int... values) {
+        return new ActionPayload(Kind.MULTI, 0, 0, false, values.clone());
+    }
+
+    /**
+     * 将字符串解析为浮点数参数
+     *
+     * @param text 字符串参数
+     * @return 参数对象
+     * @throws IllegalArgumentException 若参数为空或不是有效的数字
+     */
+    public static ActionPayload parseDouble(String text) {
+        double value;
+        try {
+            value = Double.parseDouble(require(text));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("参数转换失败：" + text + " 不是有效的数字");
+        }
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("参数转换失败：" + text + " 不是有效的数字");
+        }
+        return ofDouble(value);
+    }
+
+    /**
+     * 将字符串解析为整数参数，并校验取值范围
+     *
+     * @param text 字符串参数
+     * @param min  允许的最小值
+     * @param max  允许的最大值
+     * @return 参数对象
+     * @throws IllegalArgumentException 若参数为空、不是有效的整数或超出范围
+     */
+    public static ActionPayload parseInt(String text, int min, int max) {
+        return ofInt(parseField(require(text).trim(), text, min, max));
+    }
+
+    /**
+     * 将字符串解析为布尔参数，接受"true"/"false"、"on"/"off"、"1"/"0"（不区分大小写）
+     *
+     * @param text 字符串参数
+     * @return 参数对象
+     * @throws IllegalArgumentException 若参数为空或不是有效的布尔值
+     */
+    public static ActionPayload parseBoolean(String text) {
+        switch (require(text).trim().toLowerCase(Locale.ROOT)) {
+            case "true":
+            case "on":
+            case "1":
+                return ofBoolean(true);
+            case "false":
+            case "off":
+            case "0":
+                return ofBoolean(false);
+            default:
+                throw new IllegalArgumentException("参数转换失败：" + text + " 不是有效的布尔值");
+        }
+    }
+
+    /**
+     * 将以逗号分隔的字符串解析为多字段整数参数，并逐个校验取值范围
+     *
+     * @param text 字符串参数（如"80,3000"）
+     * @param mins 各字段允许的最小值（数组长度即字段数量）
+     * @param maxs 各字段允许的最大值
+     * @return 参数对象
+     * @throws IllegalArgumentException 若字段数量不符、某个字段不是有效的整数或超出范围
+     */
+    public static ActionPayload parseFields(String text, int[] mins, int[] maxs) {
+        String[] parts = require(text).split("[,，]");
+        if (parts.length != mins.length) {
+            throw new IllegalArgumentException("参数转换失败：" + text + " 应包含" + mins.length + "个以逗号分隔的整数");
+        }
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = parseField(parts[i].trim(), text, mins[i], maxs[i]);
+        }
+        return new ActionPayload(Kind.MULTI, 0, 0, false, values);
+    }
+
+    /**
+     * 解析单个整数字段并校验取值范围
+     */
+    private static int parseField(String part, String text, int min, int max) {
+        int value;
+        try {
+            value = Integer.parseInt(part);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("参数转换失败：" + text + " 不是有效的整数");
+        }
+        if (value < min || value > max) {
+            throw new IllegalArgumentException("参数超出范围：" + value + " 应在" + min + "-" + max + "之间");
+        }
+        return value;
+    }
+
+    /**
+     * 校验参数不为空
+     */
+    private static String require(String text) {
+        if (text == null || text.trim().isEmpty()) {
+            throw new IllegalArgumentException("缺少动作参数");
+        }
+        return text;
+    }
+
+    /**
+     * 获取参数类型
+     *
+     * @return 参数类型
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * 获取浮点数参数
+     *
+     * @return 参数值
+     */
+    public double getDouble() {
+        return doubleValue;
+    }
+
+    /**
+     * 获取整数参数
+     *
+     * @return 参数值
+     */
+    public int getInt() {
+        return intValue;
+    }
+
+    /**
+     * 获取布尔参数
+     *
+     * @return 参数值
+     */
+    public boolean getBoolean() {
+        return booleanValue;
+    }
+
+    /**
+     * 获取多字段参数中指定位置的字段
+     *
+     * @param index 字段下标（从0开始）
+     * @return 字段值
+     */
+    public int getField(int index) {
+        return fields[index];
+    }
+
+    /**
+     * 获取多字段参数的字段数量
+     *
+     * @return 字段数量，非多字段参数返回0
+     */
+    public int getFieldCount() {
+        return fields == null ? 0 : fields.length;
+    }
+
+    /**
+     * 重写toString方法，返回参数的字符串形式
+     *
+     * @return 参数的字符串形式（可被对应的解析方法重新解析）
+     */
+    @Override
+    public String toString() {
+        switch (kind) {
+            case DOUBLE:
+                return Double.toString(doubleValue);
+            case INT:
+                return Integer.toString(intValue);
+            case BOOLEAN:
+                return Boolean.toString(booleanValue);
+            case MULTI:
+                String joined = Arrays.toString(fields);
+                return joined.substring(1, joined.length() - 1).replace(" ", "");
+            default:
+                return "";
+        }
+    }
+}
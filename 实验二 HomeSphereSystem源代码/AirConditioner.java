@@ -1,6 +1,7 @@
 package cn.edu.nwpu.homesphere;
 
 import java.util.Date;
+import java.util.Map;
 
 /**
  * 空调设备类，继承自设备基类{@link Device}，并实现了能耗报告接口{@link EnergyReporting}。
@@ -11,20 +12,10 @@ import java.util.Date;
  * @version 1.0
  */
 public class AirConditioner extends Device implements EnergyReporting {
-    /**
-     * 空调的当前温度（单位：摄氏度）
-     */
-    private double currTemp;
-
-    /**
-     * 空调设置的目标温度（单位：摄氏度）
-     */
-    private double targetTemp;
-
     /**
      * 空调的额定功率（单位：瓦特），默认值为700W
      */
-    private final double power = 700;
+    private static final double POWER = 700;
 
     /**
      * 构造方法：创建空调设备实例
@@ -34,7 +25,7 @@ public class AirConditioner extends Device implements EnergyReporting {
      * @param manufacturer 设备制造商信息（{@link Manufacturer}对象）
      */
     public AirConditioner(int deviceId, String name, Manufacturer manufacturer) {
-        super(deviceId, name, manufacturer);
+        super(deviceId, name, manufacturer, new HeapState());
     }
 
     /**
@@ -43,7 +34,7 @@ public class AirConditioner extends Device implements EnergyReporting {
      * @return 当前温度（单位：摄氏度）
      */
     public double getCurrTemp() {
-        return currTemp;
+        return readDouble(DeviceStateTable.CURR_TEMP);
     }
 
     /**
@@ -52,7 +43,10 @@ public class AirConditioner extends Device implements EnergyReporting {
      * @param currTemp 待设置的当前温度（单位：摄氏度）
      */
     public void setCurrTemp(double currTemp) {
-        this.currTemp = currTemp;
+        synchronized (this) {
+            writeDouble(DeviceStateTable.CURR_TEMP, currTemp);
+            stateChanged("currTemp", currTemp);
+        }
     }
 
     /**
@@ -61,7 +55,7 @@ public class AirConditioner extends Device implements EnergyReporting {
      * @return 目标温度（单位：摄氏度）
      */
     public double getTargetTemp() {
-        return targetTemp;
+        return readDouble(DeviceStateTable.TARGET_TEMP);
     }
 
     /**
@@ -70,7 +64,20 @@ public class AirConditioner extends Device implements EnergyReporting {
      * @param targetTemp 待设置的目标温度（单位：摄氏度）
      */
     public void setTargetTemp(double targetTemp) {
-        this.targetTemp = targetTemp;
+        synchronized (this) {
+            writeDouble(DeviceStateTable.TARGET_TEMP, targetTemp);
+            stateChanged("targetTemp", targetTemp);
+        }
+    }
+
+    /**
+     * 获取额定功率（700W），供房间统计当前用电功率使用
+     *
+     * @return 额定功率（单位：瓦特/W）
+     */
+    @Override
+    double getRatedPower() {
+        return POWER;
     }
 
     /**
@@ -84,7 +91,7 @@ public class AirConditioner extends Device implements EnergyReporting {
     @Override
     public double getPower() {
         if (this.isPowerStatus()) {
-            return power;
+            return POWER;
         } else {
             return 0;
         }
@@ -108,6 +115,87 @@ public class AirConditioner extends Device implements EnergyReporting {
 
         double diff = (double) (endMs - startMs) / (60 * 60 * 1000);
 
-        return (power / 1000) * diff;
+        return (POWER / 1000) * diff;
+    }
+
+    @Override
+    void describeState(Map<String, String> attributes) {
+        super.describeState(attributes);
+        attributes.put("currTemp", String.valueOf(getCurrTemp()));
+        attributes.put("targetTemp", String.valueOf(getTargetTemp()));
+    }
+
+    @Override
+    boolean applyState(String attribute, String value) {
+        switch (attribute) {
+            case "currTemp":
+                setCurrTemp(Double.parseDouble(value));
+                return true;
+            case "targetTemp":
+                setTargetTemp(Double.parseDouble(value));
+                return true;
+            default:
+                return super.applyState(attribute, value);
+        }
+    }
+
+    @Override
+    HeapState newHeapState() {
+        return new HeapState();
+    }
+
+    /**
+     * 不在状态表中时保存当前温度和目标温度的堆上对象
+     */
+    static class HeapState extends Device.HeapState {
+        /**
+         * 当前温度
+         */
+        private double currTemp;
+
+        /**
+         * 目标温度
+         */
+        private double targetTemp;
+
+        @Override
+        double getDouble(int column, int slot) {
+            switch (column) {
+                case DeviceStateTable.CURR_TEMP:
+                    return currTemp;
+                case DeviceStateTable.TARGET_TEMP:
+                    return targetTemp;
+                default:
+                    return super.getDouble(column, slot);
+            }
+        }
+
+        @Override
+        void setDouble(int column, int slot, double value) {
+            switch (column) {
+                case DeviceStateTable.CURR_TEMP:
+                    currTemp = value;
+                    break;
+                case DeviceStateTable.TARGET_TEMP:
+                    targetTemp = value;
+                    break;
+                default:
+                    super.setDouble(column, slot, value);
+            }
+        }
+
+        @Override
+        void copyTo(DeviceStateTable table, int slot) {
+            super.copyTo(table, slot);
+            table.setDouble(DeviceStateTable.CURR_TEMP, slot, currTemp);
+            table.setDouble(DeviceStateTable.TARGET_TEMP, slot, targetTemp);
+        }
+
+        @Override
+        void copyFrom(DeviceStateTable table, int slot) {
+            super.copyFrom(table, slot);
+            currTemp = table.getDouble(DeviceStateTable.CURR_TEMP, slot);
+            targetTemp = table.getDouble(DeviceStateTable.TARGET_TEMP, slot);
+        }
     }
-}
\ No newline at end of file
+}
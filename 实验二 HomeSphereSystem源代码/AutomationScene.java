@@ -8,6 +8,8 @@ import java.util.ArrayList;
  * <p>
  * 一个场景可包含多个设备动作（{@link DeviceAction}），支持手动触发场景以执行所有关联动作，
  * 例如“早安场景”“离家模式”等典型智能家居场景。
+ * 场景首次触发时会将动作列表编译为不可修改的执行计划（{@link ScenePlan}），之后的触发直接复用，
+ * 直到场景的动作被增删或修改。场景所属家庭配置了变更流时，名称、描述和动作的修改都会记录为场景更新事件。
  *
  * @author  余燚
  * @version 1.0
@@ -33,6 +35,16 @@ public class AutomationScene {
      */
     private List<DeviceAction> actions = new ArrayList<DeviceAction>();
 
+    /**
+     * 当前动作列表编译得到的执行计划，动作变化后置为null，下次触发时重新编译
+     */
+    private volatile ScenePlan plan;
+
+    /**
+     * 场景所属的家庭，由{@link Household#addAutoScene(AutomationScene)}设置，未加入家庭时为null
+     */
+    private volatile Household household;
+
     /**
      * 无参构造方法，创建一个默认的自动化场景实例
      */
@@ -76,8 +88,9 @@ public class AutomationScene {
      *
      * @param name 新的场景名称（如“睡眠模式”）
      */
-    public void setName(String name) {
+    public synchronized void setName(String name) {
         this.name = name;
+        changed();
     }
 
     /**
@@ -94,36 +107,37 @@ public class AutomationScene {
      *
      * @param description 新的场景描述（说明场景用途或效果）
      */
-    public void setDescription(String description) {
+    public synchronized void setDescription(String description) {
         this.description = description;
+        changed();
     }
 
     /**
-     * 向当前场景添加一个设备动作
+     * 向当前场景添加一个设备动作（与{@link #compile()}持有同一把锁，编译期间不会被修改）
      *
      * @param action 要添加的设备动作（{@link DeviceAction}实例）
      */
-    public void addAction(DeviceAction action) {
+    public synchronized void addAction(DeviceAction action) {
         this.actions.add(action);
+        action.addOwner(this);
+        invalidatePlan();
+        changed();
     }
 
     /**
      * 从当前场景中移除指定的设备动作
      * <p>
-     * 遍历动作集合，若找到与参数匹配的动作则移除，并输出操作结果；
+     * 移除动作集合中所有与参数匹配的动作，并输出操作结果；
      * 若未找到则提示“场景中没有这个动作”。
      *
      * @param action 要移除的设备动作（{@link DeviceAction}实例）
      */
-    public void removeAction(DeviceAction action) {
-        boolean isFound = false;
-        for (DeviceAction deviceAction : this.actions) {
-            if (deviceAction.equals(action)) {
-                this.actions.remove(deviceAction);
-                isFound = true;
-            }
-        }
+    public synchronized void removeAction(DeviceAction action) {
+        boolean isFound = this.actions.removeIf(deviceAction -> deviceAction.equals(action));
         if (isFound) {
+            action.removeOwner(this);
+            invalidatePlan();
+            changed();
             System.out.println("移除成功！");
         } else {
             System.out.println("场景中没有这个动作");
@@ -146,19 +160,117 @@ public class AutomationScene {
         }
     }
 
+    /**
+     * 获取当前动作列表的副本，供系统内部使用（无动作时返回空列表，不打印提示信息）
+     *
+     * @return 不可变动作列表
+     */
+    synchronized List<DeviceAction> listActions() {
+        return List.copyOf(actions);
+    }
+
+    /**
+     * 获取当前动作列表对应的执行计划，没有可用的计划时重新编译
+     *
+     * @return 执行计划（{@link ScenePlan}）
+     */
+    public ScenePlan compile() {
+        ScenePlan current = plan;
+        if (current == null) {
+            synchronized (this) {
+                current = plan;
+                if (current == null) {
+                    current = ScenePlan.compile(this.actions);
+                    plan = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 使当前执行计划失效（动作增删或被修改时调用），下次触发时重新编译
+     */
+    void invalidatePlan() {
+        synchronized (this) {
+            plan = null;
+        }
+    }
+
+    /**
+     * 场景中的某个动作被修改后的回调（由{@link DeviceAction}调用）：使执行计划失效，并记录场景更新事件
+     */
+    synchronized void actionChanged() {
+        invalidatePlan();
+        changed();
+    }
+
+    /**
+     * 场景修改后的回调（调用方需持有当前对象的锁，保证事件顺序与修改顺序一致），
+     * 所属家庭配置了变更流时记录一个场景更新事件（{@link ChangeEvent.Type#SCENE_UPDATED}）
+     */
+    private void changed() {
+        Household current = household;
+        if (current != null) {
+            current.sceneUpdated(this);
+        }
+    }
+
+    /**
+     * 设置场景所属的家庭（仅由{@link Household}在增删场景时调用）
+     *
+     * @param household 所属家庭，移出家庭时传入null
+     */
+    void setHousehold(Household household) {
+        this.household = household;
+    }
+
     /**
      * 手动触发场景，执行场景中包含的所有设备动作
      * <p>
-     * 触发时会打印场景名称和描述，并依次执行每个动作的{@link DeviceAction#execute()}方法。
+     * 触发时会打印场景名称和描述，并按编译好的执行计划（{@link #compile()}）依次执行每个动作，
+     * 重复写入已在编译时合并，不会产生变化的动作直接跳过；
+     * 整个场景的执行耗时会记录到运行指标（{@link HomeSphereMetrics}）和JFR事件（{@link SceneTriggerEvent}）。
+     * 当前线程的操作者（{@link PermissionTable#getActingUser()}）无权操作场景中的任一设备时，整个场景不执行，只打印提示信息。
      *
      * @throws NoSuchMethodException 若动作执行过程中出现方法调用异常（具体取决于{@link DeviceAction#execute()}的实现）
      */
     public void manualTrig() throws NoSuchMethodException {
-        System.out.println("成功触发场景" + name + ",场景为：" + description + " ");
-        System.out.println("执行场景的动作有：\n");
-        for (DeviceAction deviceAction : actions) {
-            deviceAction.execute();
+        Device denied = trigger();
+        if (denied != null) {
+            System.out.println(PermissionTable.denied(PermissionTable.getActingUser(), denied) + "，场景" + name + "未触发");
+        }
+    }
+
+    /**
+     * 以当前线程的操作者身份触发场景（{@link #manualTrig()}的实现），权限只检查一次，供需要区分无权与成功的调用方使用
+     *
+     * @return 操作者无权操作的设备（此时场景未执行），场景已执行时返回null
+     * @throws NoSuchMethodException 若动作执行过程中出现方法调用异常
+     */
+    Device trigger() throws NoSuchMethodException {
+        ScenePlan plan = compile();
+        Device denied = plan.findDenied(PermissionTable.getActingUser());
+        if (denied != null) {
+            return denied;
+        }
+        SceneTriggerEvent event = new SceneTriggerEvent();
+        event.begin();
+        long start = System.nanoTime();
+        ConsoleOutput.println("成功触发场景" + name + ",场景为：" + description + " ");
+        ConsoleOutput.println("执行场景的动作有：\n");
+        try {
+            plan.execute();
+        } finally {
+            HomeSphereMetrics.getInstance().recordSceneTrigger(start);
+            if (event.shouldCommit()) {
+                event.sceneId = sceneId;
+                event.sceneName = name;
+                event.actionCount = actions.size();
+                event.commit();
+            }
         }
+        return null;
     }
 
     /**
@@ -1,24 +1,16 @@
 package cn.edu.nwpu.homesphere;
 
+import java.util.Map;
+
 /**
- * 浴室体重秤设备类，继承自设备基类{@link Device}。
+ * 浴室体重秤设备类，继承自设备基类{@link Device}，并实现电池供电接口{@link BatteryPowered}。
  * <p>
  * 该类用于模拟体重秤设备的基本功能，包括体重数据记录和电池电量管理。
  *
  * @author 余燚
  * @version 1.0
  */
-public class BathroomScale extends Device {
-    /**
-     * 记录的体重数据（单位：千克，kg）
-     */
-    private double bodyMass;
-
-    /**
-     * 电池电量百分比（范围：0-100，其中0表示电量耗尽，100表示满电）
-     */
-    private int batteryLevel;
-
+public class BathroomScale extends Device implements BatteryPowered {
     /**
      * 构造方法：创建体重秤设备实例
      *
@@ -27,7 +19,7 @@ public class BathroomScale extends Device {
      * @param manufacturer 设备制造商信息（{@link Manufacturer}对象）
      */
     public BathroomScale(int deviceId, String name, Manufacturer manufacturer) {
-        super(deviceId, name, manufacturer);
+        super(deviceId, name, manufacturer, new HeapState());
     }
 
     /**
@@ -36,7 +28,7 @@ public class BathroomScale extends Device {
      * @return 体重值（单位：千克，kg）
      */
     public double getBodyMass() {
-        return bodyMass;
+        return readDouble(DeviceStateTable.BODY_MASS);
     }
 
     /**
@@ -45,7 +37,10 @@ public class BathroomScale extends Device {
      * @param bodyMass 待记录的体重值（单位：千克，kg）
      */
     public void setBodyMass(double bodyMass) {
-        this.bodyMass = bodyMass;
+        synchronized (this) {
+            writeDouble(DeviceStateTable.BODY_MASS, bodyMass);
+            stateChanged("bodyMass", bodyMass);
+        }
     }
 
     /**
@@ -53,8 +48,9 @@ public class BathroomScale extends Device {
      *
      * @return 电量百分比（0-100）
      */
+    @Override
     public int getBatteryLevel() {
-        return batteryLevel;
+        return readInt(DeviceStateTable.BATTERY_LEVEL);
     }
 
     /**
@@ -62,7 +58,94 @@ public class BathroomScale extends Device {
      *
      * @param batteryLevel 电池电量百分比（需在0-100范围内）
      */
+    @Override
     public void setBatteryLevel(int batteryLevel) {
-        this.batteryLevel = batteryLevel;
+        synchronized (this) {
+            writeInt(DeviceStateTable.BATTERY_LEVEL, batteryLevel);
+            stateChanged("batteryLevel", batteryLevel);
+        }
+    }
+
+    @Override
+    void describeState(Map<String, String> attributes) {
+        super.describeState(attributes);
+        attributes.put("bodyMass", String.valueOf(getBodyMass()));
+        attributes.put("batteryLevel", String.valueOf(getBatteryLevel()));
+    }
+
+    @Override
+    boolean applyState(String attribute, String value) {
+        switch (attribute) {
+            case "bodyMass":
+                setBodyMass(Double.parseDouble(value));
+                return true;
+            case "batteryLevel":
+                setBatteryLevel(Integer.parseInt(value));
+                return true;
+            default:
+                return super.applyState(attribute, value);
+        }
+    }
+
+    @Override
+    HeapState newHeapState() {
+        return new HeapState();
+    }
+
+    /**
+     * 不在状态表中时保存体重和电池电量的堆上对象
+     */
+    static class HeapState extends Device.HeapState {
+        /**
+         * 体重
+         */
+        private double bodyMass;
+
+        /**
+         * 电池电量
+         */
+        private int batteryLevel;
+
+        @Override
+        double getDouble(int column, int slot) {
+            return column == DeviceStateTable.BODY_MASS ? bodyMass : super.getDouble(column, slot);
+        }
+
+        @Override
+        void setDouble(int column, int slot, double value) {
+            if (column == DeviceStateTable.BODY_MASS) {
+                bodyMass = value;
+            } else {
+                super.setDouble(column, slot, value);
+            }
+        }
+
+        @Override
+        int getInt(int column, int slot) {
+            return column == DeviceStateTable.BATTERY_LEVEL ? batteryLevel : super.getInt(column, slot);
+        }
+
+        @Override
+        void setInt(int column, int slot, int value) {
+            if (column == DeviceStateTable.BATTERY_LEVEL) {
+                batteryLevel = value;
+            } else {
+                super.setInt(column, slot, value);
+            }
+        }
+
+        @Override
+        void copyTo(DeviceStateTable table, int slot) {
+            super.copyTo(table, slot);
+            table.setDouble(DeviceStateTable.BODY_MASS, slot, bodyMass);
+            table.setInt(DeviceStateTable.BATTERY_LEVEL, slot, batteryLevel);
+        }
+
+        @Override
+        void copyFrom(DeviceStateTable table, int slot) {
+            super.copyFrom(table, slot);
+            bodyMass = table.getDouble(DeviceStateTable.BODY_MASS, slot);
+            batteryLevel = table.getInt(DeviceStateTable.BATTERY_LEVEL, slot);
+        }
     }
-}
\ No newline at end of file
+}
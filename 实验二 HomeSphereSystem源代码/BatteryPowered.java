@@ -0,0 +1,29 @@
+package cn.edu.nwpu.homesphere;
+
+/**
+ * 电池供电接口，定义使用电池供电的智能设备的电量查询与更新规范。
+ * <p>
+ * 实现此接口的设备（如智能锁、体重秤等）会被{@link CapabilityRegistry}归入“电池供电”能力分组，
+ * 便于统一进行低电量巡检等批量操作。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see SmartLock
+ * @see BathroomScale
+ */
+public interface BatteryPowered {
+
+    /**
+     * 获取设备当前的电池电量百分比
+     *
+     * @return 电池电量百分比（0-100）
+     */
+    int getBatteryLevel();
+
+    /**
+     * 设置设备的电池电量百分比
+     *
+     * @param batteryLevel 电池电量百分比（0-100）
+     */
+    void setBatteryLevel(int batteryLevel);
+}
@@ -0,0 +1,92 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 设备能力注册表，在设备加入家庭时按其实现的能力接口进行分组。
+ * <p>
+ * 目前支持的能力包括能耗报告（{@link EnergyReporting}）、电池供电（{@link BatteryPowered}）和可上锁（{@link Lockable}）。
+ * 类型判断只在登记时进行一次，之后按能力查询时直接得到已分组的设备，
+ * 调用者无需再遍历全部设备或使用{@code instanceof}判断和强制类型转换；新增实现这些接口的设备类型也无需修改调用方代码。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see Household#getCapabilities()
+ */
+public class CapabilityRegistry {
+    /**
+     * 注册表支持的能力接口
+     */
+    private static final List<Class<?>> CAPABILITIES =
+            List.of(EnergyReporting.class, BatteryPowered.class, Lockable.class);
+
+    /**
+     * 能力接口 -> （设备编号 -> 具备该能力的设备），各分组保持设备加入顺序
+     */
+    private final Map<Class<?>, Map<Integer, Object>> groups = new LinkedHashMap<Class<?>, Map<Integer, Object>>();
+
+    /**
+     * 无参构造方法，为每种支持的能力创建一个空分组
+     */
+    public CapabilityRegistry() {
+        for (Class<?> capability : CAPABILITIES) {
+            groups.put(capability, new LinkedHashMap<Integer, Object>());
+        }
+    }
+
+    /**
+     * 登记设备：按设备实现的能力接口放入对应分组（同一编号的旧设备会被替换）
+     *
+     * @param device 待登记的设备
+     */
+    public synchronized void register(Device device) {
+        for (Map.Entry<Class<?>, Map<Integer, Object>> group : groups.entrySet()) {
+            if (group.getKey().isInstance(device)) {
+                group.getValue().put(device.getDeviceId(), device);
+            }
+        }
+    }
+
+    /**
+     * 注销设备：从所有分组中移除
+     *
+     * @param device 待注销的设备
+     */
+    public synchronized void unregister(Device device) {
+        for (Map<Integer, Object> group : groups.values()) {
+            group.remove(device.getDeviceId(), device);
+        }
+    }
+
+    /**
+     * 获取具备指定能力的所有设备
+     *
+     * @param capability 能力接口（如{@code EnergyReporting.class}）
+     * @param <T>        能力接口类型
+     * @return 具备该能力的设备的只读快照（按加入顺序），之后的登记和注销不会影响已返回的集合，遍历时无需加锁
+     * @throws IllegalArgumentException 若该能力不在注册表支持的范围内
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> Collection<T> devicesWith(Class<T> capability) {
+        Map<Integer, Object> group = groups.get(capability);
+        if (group == null) {
+            throw new IllegalArgumentException("不支持的设备能力：" + capability.getSimpleName());
+        }
+        // 登记时已按能力接口校验过类型，这里的转换是安全的
+        return (Collection<T>) List.copyOf(group.values());
+    }
+
+    /**
+     * 获取具备指定能力的设备数量
+     *
+     * @param capability 能力接口
+     * @return 设备数量，不支持的能力返回0
+     */
+    public synchronized int count(Class<?> capability) {
+        Map<Integer, Object> group = groups.get(capability);
+        return group == null ? 0 : group.size();
+    }
+}
@@ -0,0 +1,186 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 变更事件类，是变更数据捕获（CDC）流中的一条记录，描述家庭内用户、房间、设备、场景或设备状态的一次变化。
+ * <p>
+ * 事件在所属家庭的{@link ChangeFeed}中按发生顺序分配严格递增的序号（从1开始），下游系统（计费、分析、移动端同步等）
+ * 按序号批量拉取并记录消费进度。事件的具体内容以“属性名 -> 属性值”的形式保存，各类型事件的属性如下：
+ * <ul>
+ *     <li>{@link Type#HOUSEHOLD_UPDATED}：address, region, admin（管理员用户编号）；</li>
+ *     <li>{@link Type#ROOM_ADDED}、{@link Type#ROOM_UPDATED}：name, area；</li>
+ *     <li>{@link Type#DEVICE_ADDED}：room, kind, name, manufacturer，以及设备当前的全部状态属性；</li>
+ *     <li>{@link Type#DEVICE_STATE}：发生变化的状态属性（如powerStatus、targetTemp、batteryLevel），以及修改后的设备名称name；</li>
+ *     <li>{@link Type#USER_ADDED}、{@link Type#USER_UPDATED}：loginName, userName, email, admin, credential（密码的加盐摘要，不含明文密码）；</li>
+ *     <li>{@link Type#SCENE_ADDED}、{@link Type#SCENE_UPDATED}：name, description, actions（动作数），以及每个动作的action.i.device、action.i.command、action.i.parameters；</li>
+ *     <li>{@link Type#PERMISSION_UPDATED}：devices, rooms（用户修改后的全部授权，逗号分隔的设备编号和房间编号），实体编号为用户编号；</li>
+ *     <li>各类删除事件：无属性。</li>
+ * </ul>
+ * 实体编号（{@link #getEntityId()}）为对应的房间、设备、用户或场景编号，家庭级事件为家庭编号。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see ChangeFeed
+ */
+public final class ChangeEvent {
+    /**
+     * 变更事件类型
+     */
+    public enum Type {
+        /** 家庭地址、地区或管理员变化 */
+        HOUSEHOLD_UPDATED,
+        /** 添加房间 */
+        ROOM_ADDED,
+        /** 房间名称或面积变化 */
+        ROOM_UPDATED,
+        /** 移除房间 */
+        ROOM_REMOVED,
+        /** 设备加入家庭 */
+        DEVICE_ADDED,
+        /** 设备移出家庭 */
+        DEVICE_REMOVED,
+        /** 设备状态变化 */
+        DEVICE_STATE,
+        /** 添加用户 */
+        USER_ADDED,
+        /** 移除用户 */
+        USER_REMOVED,
+        /** 添加自动化场景 */
+        SCENE_ADDED,
+        /** 移除自动化场景 */
+        SCENE_REMOVED,
+        /** 用户登录名、昵称、邮箱或管理员权限变化（新增类型追加在末尾，保持已写入段文件中的类型编码不变） */
+        USER_UPDATED,
+        /** 场景名称、描述或动作变化 */
+        SCENE_UPDATED,
+        /** 用户的设备授权变化 */
+        PERMISSION_UPDATED
+    }
+
+    /**
+     * 事件序号（在所属家庭内严格递增）
+     */
+    private final long sequence;
+
+    /**
+     * 所属家庭编号
+     */
+    private final int householdId;
+
+    /**
+     * 发生时间（毫秒时间戳）
+     */
+    private final long timestamp;
+
+    /**
+     * 事件类型
+     */
+    private final Type type;
+
+    /**
+     * 实体编号
+     */
+    private final int entityId;
+
+    /**
+     * 事件属性（不可变，保持写入顺序）
+     */
+    private final Map<String, String> attributes;
+
+    /**
+     * 有参构造方法，由{@link ChangeFeed}在追加或读取事件时调用
+     *
+     * @param sequence    事件序号
+     * @param householdId 所属家庭编号
+     * @param timestamp   发生时间（毫秒时间戳）
+     * @param type        事件类型
+     * @param entityId    实体编号
+     * @param attributes  事件属性
+     */
+    ChangeEvent(long sequence, int householdId, long timestamp, Type type, int entityId, Map<String, String> attributes) {
+        this.sequence = sequence;
+        this.householdId = householdId;
+        this.timestamp = timestamp;
+        this.type = type;
+        this.entityId = entityId;
+        this.attributes = Collections.unmodifiableMap(new LinkedHashMap<String, String>(attributes));
+    }
+
+    /**
+     * 获取事件序号
+     *
+     * @return 序号（从1开始）
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * 获取所属家庭编号
+     *
+     * @return 家庭编号
+     */
+    public int getHouseholdId() {
+        return householdId;
+    }
+
+    /**
+     * 获取发生时间
+     *
+     * @return 毫秒时间戳
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * 获取事件类型
+     *
+     * @return 事件类型
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * 获取实体编号
+     *
+     * @return 房间、设备、用户或场景编号，家庭级事件为家庭编号
+     */
+    public int getEntityId() {
+        return entityId;
+    }
+
+    /**
+     * 获取全部事件属性
+     *
+     * @return 不可变属性表
+     */
+    public Map<String, String> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * 获取一个事件属性
+     *
+     * @param name 属性名
+     * @return 属性值，不存在时返回null
+     */
+    public String get(String name) {
+        return attributes.get(name);
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeEvent{" +
+                "sequence=" + sequence +
+                ", householdId=" + householdId +
+                ", type=" + type +
+                ", entityId=" + entityId +
+                ", attributes=" + attributes +
+                '}';
+    }
+}
@@ -0,0 +1,635 @@
+package cn.edu.nwpu.homesphere;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * 变更数据捕获（CDC）流类，按发生顺序持久保存一个家庭的全部变更事件（{@link ChangeEvent}），供下游系统批量拉取。
+ * <p>
+ * 事件序号从1开始严格递增，追加到目录下的分段文件中，每个段文件最多保存{@link #getEventsPerSegment()}个事件，
+ * 文件名为段内第一个事件的序号（20位十进制数字）加“.seg”后缀。段文件格式（大端序）：
+ * <pre>
+ * 文件头：int 魔数
+ * 事件：int 记录字节数 | long 序号 | long 时间 | byte 类型 | int 实体编号 | short 属性个数 | (UTF 属性名 | UTF 属性值)*
+ * </pre>
+ * 重新打开时从最后一个段文件恢复最新序号，并截掉进程崩溃时写了一半的记录。最新一个段的事件同时缓存在内存中，
+ * 追赶到末尾的消费者拉取时不需要读文件；较早的段不再修改，拉取时直接顺序读取。
+ * <p>
+ * 消费者通过{@link #poll(long, int)}从任意序号起批量拉取，处理完毕后用{@link #commitOffset(String, long)}
+ * 持久记录进度（写临时文件后原子替换），重启后用{@link #getCommittedOffset(String)}恢复并从下一个序号继续拉取。
+ * 所有消费者都已越过的旧段可以通过{@link #deleteBefore(long)}删除。
+ * <p>
+ * 追加的事件写入操作系统缓冲区后立即对拉取可见，{@link #sync()}将其强制刷到磁盘。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see Household#setChangeFeed(ChangeFeed)
+ */
+public final class ChangeFeed implements AutoCloseable {
+    /**
+     * 段文件魔数（"HSCF"）
+     */
+    private static final int MAGIC = 0x48534346;
+
+    /**
+     * 段文件名后缀
+     */
+    private static final String SUFFIX = ".seg";
+
+    /**
+     * 事件类型（按编码顺序）
+     */
+    private static final ChangeEvent.Type[] TYPES = ChangeEvent.Type.values();
+
+    /**
+     * 段文件和消费进度所在目录
+     */
+    private final Path directory;
+
+    /**
+     * 消费进度所在目录
+     */
+    private final Path offsetDirectory;
+
+    /**
+     * 所属家庭编号
+     */
+    private final int householdId;
+
+    /**
+     * 每个段文件最多保存的事件数
+     */
+    private final int eventsPerSegment;
+
+    /**
+     * 已写满的段文件（第一个事件的序号 -> 文件）
+     */
+    private final NavigableMap<Long, Path> closedSegments = new TreeMap<Long, Path>();
+
+    /**
+     * 正在写入的段文件
+     */
+    private FileChannel active;
+
+    /**
+     * 正在写入的段文件中的事件（缓存）
+     */
+    private final List<ChangeEvent> activeEvents = new ArrayList<ChangeEvent>();
+
+    /**
+     * 变更流的唯一标识，创建目录时随机生成并保存在feed.id文件中；复制时用于判断副本的进度是否属于同一个流
+     */
+    private final String feedId;
+
+    /**
+     * 最新事件的序号，尚无事件时为0
+     */
+    private long lastSequence;
+
+    /**
+     * 是否已关闭
+     */
+    private boolean closed;
+
+    /**
+     * 有参构造方法，在指定目录打开（或创建）一个家庭的变更流
+     *
+     * @param directory        段文件所在目录（每个家庭一个目录，不存在时自动创建）
+     * @param householdId      所属家庭编号
+     * @param eventsPerSegment 每个段文件最多保存的事件数（至少为1）
+     * @throws IOException 目录创建或段文件恢复失败
+     */
+    public ChangeFeed(Path directory, int householdId, int eventsPerSegment) throws IOException {
+        if (eventsPerSegment < 1) {
+            throw new IllegalArgumentException("每段事件数至少为1");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.offsetDirectory = Files.createDirectories(directory.resolve("offsets"));
+        this.householdId = householdId;
+        this.eventsPerSegment = eventsPerSegment;
+        Path idFile = directory.resolve("feed.id");
+        if (Files.exists(idFile)) {
+            this.feedId = new String(Files.readAllBytes(idFile), StandardCharsets.UTF_8).trim();
+        } else {
+            this.feedId = UUID.randomUUID().toString();
+            Path temp = directory.resolve("feed.id.tmp");
+            Files.write(temp, feedId.getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, idFile, StandardCopyOption.ATOMIC_MOVE);
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                closedSegments.put(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())), file);
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("无法识别的段文件：" + e.getMessage());
+        }
+        if (!closedSegments.isEmpty()) {
+            Map.Entry<Long, Path> last = closedSegments.pollLastEntry();
+            recover(last.getKey(), last.getValue());
+        }
+    }
+
+    /**
+     * 恢复最后一个段文件：读入其中完整的事件，从第一条不完整或损坏的记录处截断，之后继续追加到该文件
+     */
+    private void recover(long first, Path file) throws IOException {
+        long valid;
+        try (SegmentReader in = new SegmentReader(file, householdId)) {
+            if (in.readHeader() != MAGIC) {
+                throw new IOException("段文件格式错误：" + file);
+            }
+            ChangeEvent event;
+            while ((event = in.next()) != null) {
+                activeEvents.add(event);
+            }
+            valid = in.position();
+        } catch (EOFException e) {
+            // 文件头不完整，视为空段重新写入
+            valid = 0;
+        }
+        active = FileChannel.open(file, StandardOpenOption.WRITE);
+        active.truncate(valid);
+        active.position(valid);
+        if (valid == 0) {
+            writeHeader();
+        }
+        lastSequence = activeEvents.isEmpty() ? first - 1 : activeEvents.get(activeEvents.size() - 1).getSequence();
+        if (activeEvents.size() >= eventsPerSegment) {
+            roll();
+        } else if (activeEvents.isEmpty()) {
+            // 空段的文件名可能与下一个事件的序号不一致，重新建立
+            active.close();
+            Files.delete(file);
+            active = null;
+        }
+    }
+
+    /**
+     * 获取所属家庭编号
+     *
+     * @return 家庭编号
+     */
+    public int getHouseholdId() {
+        return householdId;
+    }
+
+    /**
+     * 获取变更流的唯一标识（同一目录重新打开时不变）
+     *
+     * @return 标识字符串
+     */
+    public String getFeedId() {
+        return feedId;
+    }
+
+    /**
+     * 获取最早仍可拉取的事件序号
+     *
+     * @return 序号，尚无事件时为最新序号加1
+     */
+    public synchronized long getFirstSequence() {
+        if (!closedSegments.isEmpty()) {
+            return closedSegments.firstKey();
+        }
+        return activeEvents.isEmpty() ? lastSequence + 1 : activeEvents.get(0).getSequence();
+    }
+
+    /**
+     * 获取每个段文件最多保存的事件数
+     *
+     * @return 事件数
+     */
+    public int getEventsPerSegment() {
+        return eventsPerSegment;
+    }
+
+    /**
+     * 获取最新事件的序号
+     *
+     * @return 序号，尚无事件时为0
+     */
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * 追加一个事件，分配下一个序号
+     *
+     * @param type       事件类型
+     * @param entityId   实体编号
+     * @param attributes 事件属性（属性名和属性值都不能为null）
+     * @return 追加的事件
+     * @throws UncheckedIOException 段文件写入失败
+     */
+    public synchronized ChangeEvent append(ChangeEvent.Type type, int entityId, Map<String, String> attributes) {
+        if (closed) {
+            throw new IllegalStateException("变更流已关闭");
+        }
+        ChangeEvent event = new ChangeEvent(lastSequence + 1, householdId, System.currentTimeMillis(), type, entityId, attributes);
+        try {
+            if (active == null) {
+                openSegment(event.getSequence());
+            }
+            byte[] record = encode(event);
+            ByteBuffer buffer = ByteBuffer.allocate(4 + record.length);
+            buffer.putInt(record.length).put(record).flip();
+            while (buffer.hasRemaining()) {
+                active.write(buffer);
+            }
+            activeEvents.add(event);
+            lastSequence = event.getSequence();
+            if (activeEvents.size() >= eventsPerSegment) {
+                roll();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("变更事件写入失败", e);
+        }
+        notifyAll();
+        return event;
+    }
+
+    /**
+     * 以指定序号开始一个新的段文件
+     */
+    private void openSegment(long first) throws IOException {
+        Path file = directory.resolve(String.format("%020d", first) + SUFFIX);
+        active = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        writeHeader();
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4).putInt(MAGIC);
+        header.flip();
+        while (header.hasRemaining()) {
+            active.write(header);
+        }
+    }
+
+    /**
+     * 关闭写满的段，之后的事件写入新段
+     */
+    private void roll() throws IOException {
+        long first = activeEvents.get(0).getSequence();
+        active.force(false);
+        active.close();
+        active = null;
+        closedSegments.put(first, directory.resolve(String.format("%020d", first) + SUFFIX));
+        activeEvents.clear();
+    }
+
+    /**
+     * 从指定序号起批量拉取事件
+     * <p>
+     * 序号早于已删除的段时从最早的可用事件开始；没有新事件时立即返回空列表。
+     *
+     * @param fromSequence 起始序号（包含）
+     * @param maxEvents    最多拉取的事件数
+     * @return 按序号排列的事件
+     * @throws UncheckedIOException 段文件读取失败
+     */
+    public List<ChangeEvent> poll(long fromSequence, int maxEvents) {
+        List<ChangeEvent> result = new ArrayList<ChangeEvent>(Math.min(maxEvents, eventsPerSegment));
+        List<Path> files = new ArrayList<Path>();
+        synchronized (this) {
+            if (fromSequence > lastSequence || maxEvents <= 0) {
+                return result;
+            }
+            Long start = closedSegments.floorKey(fromSequence);
+            for (Path file : (start == null ? closedSegments : closedSegments.tailMap(start, true)).values()) {
+                files.add(file);
+            }
+            if (files.isEmpty()) {
+                addFrom(activeEvents, fromSequence, maxEvents, result);
+                return result;
+            }
+        }
+        // 已写满的段不再修改，在锁外读取，不阻塞追加
+        for (Path file : files) {
+            try (SegmentReader in = new SegmentReader(file, householdId)) {
+                in.readHeader();
+                ChangeEvent event;
+                while (result.size() < maxEvents && (event = in.next()) != null) {
+                    if (event.getSequence() >= fromSequence) {
+                        result.add(event);
+                    }
+                }
+                if (result.size() < maxEvents && !in.atEnd()) {
+                    throw new IOException("段文件" + file + "在位置" + in.position() + "处的记录损坏");
+                }
+            } catch (NoSuchFileException e) {
+                // 拉取期间该段已被删除，跳过
+            } catch (IOException e) {
+                throw new UncheckedIOException("变更事件读取失败", e);
+            }
+            if (result.size() >= maxEvents) {
+                return result;
+            }
+        }
+        synchronized (this) {
+            long next = result.isEmpty() ? fromSequence : result.get(result.size() - 1).getSequence() + 1;
+            Long tail = closedSegments.ceilingKey(next);
+            if (tail != null) {
+                // 读取期间又有段写满，剩余部分留给下一次拉取
+                return result;
+            }
+            addFrom(activeEvents, next, maxEvents, result);
+        }
+        return result;
+    }
+
+    /**
+     * 拉取事件，没有新事件时最多等待指定时间（长轮询）
+     *
+     * @param fromSequence  起始序号（包含）
+     * @param maxEvents     最多拉取的事件数
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return 按序号排列的事件，超时仍无新事件时返回空列表
+     * @throws InterruptedException 等待过程中线程被中断
+     */
+    public List<ChangeEvent> poll(long fromSequence, int maxEvents, long timeoutMillis) throws InterruptedException {
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            long remaining = timeoutMillis;
+            while (fromSequence > lastSequence && remaining > 0 && !closed) {
+                wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+        }
+        return poll(fromSequence, maxEvents);
+    }
+
+    private static void addFrom(List<ChangeEvent> events, long fromSequence, int maxEvents, List<ChangeEvent> result) {
+        for (ChangeEvent event : events) {
+            if (result.size() >= maxEvents) {
+                return;
+            }
+            if (event.getSequence() >= fromSequence) {
+                result.add(event);
+            }
+        }
+    }
+
+    /**
+     * 持久记录消费者已处理到的序号（写临时文件后原子替换，进程崩溃时不会留下损坏的进度）
+     *
+     * @param consumer 消费者名称（只能包含字母、数字、下划线和连字符）
+     * @param sequence 已处理的最后一个事件的序号
+     * @throws UncheckedIOException 进度文件写入失败
+     */
+    public void commitOffset(String consumer, long sequence) {
+        Path file = offsetFile(consumer);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.write(temp, Long.toString(sequence).getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("消费进度写入失败", e);
+        }
+    }
+
+    /**
+     * 获取消费者已提交的进度
+     *
+     * @param consumer 消费者名称
+     * @return 已处理的最后一个事件的序号，从未提交时返回0
+     * @throws UncheckedIOException 进度文件读取失败
+     */
+    public long getCommittedOffset(String consumer) {
+        Path file = offsetFile(consumer);
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim());
+        } catch (NoSuchFileException e) {
+            return 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException("消费进度读取失败", e);
+        }
+    }
+
+    private Path offsetFile(String consumer) {
+        if (consumer == null || !consumer.matches("[A-Za-z0-9_-]+")) {
+            throw new IllegalArgumentException("消费者名称只能包含字母、数字、下划线和连字符：" + consumer);
+        }
+        return offsetDirectory.resolve(consumer + ".offset");
+    }
+
+    /**
+     * 删除全部事件序号都小于指定序号的已写满段（通常传入所有消费者进度中的最小值加1）
+     *
+     * @param sequence 需要保留的最早序号
+     * @return 删除的段文件数
+     * @throws UncheckedIOException 段文件删除失败
+     */
+    public synchronized int deleteBefore(long sequence) {
+        int deleted = 0;
+        // 当前段为空时保留最新的已写满段，重新打开时据此恢复序号
+        while (closedSegments.size() > (activeEvents.isEmpty() ? 1 : 0)) {
+            Map.Entry<Long, Path> first = closedSegments.firstEntry();
+            Long next = closedSegments.higherKey(first.getKey());
+            long end = next != null ? next : activeEvents.get(0).getSequence();
+            if (end > sequence) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(first.getValue());
+            } catch (IOException e) {
+                throw new UncheckedIOException("段文件删除失败", e);
+            }
+            closedSegments.remove(first.getKey());
+            deleted++;
+        }
+        return deleted;
+    }
+
+    /**
+     * 将已追加的事件强制刷到磁盘
+     *
+     * @throws UncheckedIOException 刷盘失败
+     */
+    public synchronized void sync() {
+        if (active != null) {
+            try {
+                active.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("变更事件刷盘失败", e);
+            }
+        }
+    }
+
+    /**
+     * 刷盘并关闭变更流（段文件保留在磁盘上，之后可以重新打开）
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        sync();
+        closed = true;
+        notifyAll();
+        if (active != null) {
+            try {
+                active.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("段文件关闭失败", e);
+            }
+        }
+    }
+
+    /**
+     * 编码一个事件（不含记录字节数）
+     */
+    private static byte[] encode(ChangeEvent event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        writeEvent(new DataOutputStream(bytes), event);
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 写出一个事件的内容（段文件和复制协议共用此格式）
+     *
+     * @param out   输出流
+     * @param event 事件
+     * @throws IOException 写出失败
+     */
+    static void writeEvent(DataOutput out, ChangeEvent event) throws IOException {
+        out.writeLong(event.getSequence());
+        out.writeLong(event.getTimestamp());
+        out.writeByte(event.getType().ordinal());
+        out.writeInt(event.getEntityId());
+        out.writeShort(event.getAttributes().size());
+        for (Map.Entry<String, String> attribute : event.getAttributes().entrySet()) {
+            out.writeUTF(attribute.getKey());
+            out.writeUTF(attribute.getValue());
+        }
+    }
+
+    /**
+     * 读入一个由{@link #writeEvent(DataOutput, ChangeEvent)}写出的事件
+     *
+     * @param in          输入流
+     * @param householdId 所属家庭编号
+     * @return 事件
+     * @throws IOException 读取失败或数据不完整
+     */
+    static ChangeEvent readEvent(DataInput in, int householdId) throws IOException {
+        long sequence = in.readLong();
+        long timestamp = in.readLong();
+        int type = in.readByte();
+        if (type < 0 || type >= TYPES.length) {
+            throw new IOException("未知的事件类型：" + type);
+        }
+        int entityId = in.readInt();
+        int count = in.readShort();
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        for (int i = 0; i < count; i++) {
+            attributes.put(in.readUTF(), in.readUTF());
+        }
+        return new ChangeEvent(sequence, householdId, timestamp, TYPES[type], entityId, attributes);
+    }
+
+    /**
+     * 段文件读取器，逐条读取“字节数 + 事件内容”格式的记录
+     * <p>
+     * 记录的字节数先与文件剩余大小比较再分配缓冲区，损坏的字节数（负数或超出文件末尾）不会导致分配巨大的数组，
+     * 而是与写到一半的记录一样视为读取结束，{@link #position()}停在该记录之前。
+     */
+    private static final class SegmentReader implements Closeable {
+        private final DataInputStream in;
+        private final long size;
+        private final int householdId;
+        private long position;
+
+        SegmentReader(Path file, int householdId) throws IOException {
+            this.size = Files.size(file);
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            this.householdId = householdId;
+        }
+
+        /**
+         * 读取文件头
+         *
+         * @return 文件头中的魔数
+         * @throws EOFException 文件头不完整
+         */
+        int readHeader() throws IOException {
+            int magic = in.readInt();
+            position = 4;
+            return magic;
+        }
+
+        /**
+         * 读取下一个事件
+         *
+         * @return 事件，到达文件末尾或记录不完整、损坏时返回null
+         */
+        ChangeEvent next() throws IOException {
+            long remaining = size - position;
+            if (remaining < 4) {
+                return null;
+            }
+            int length = in.readInt();
+            if (length < 0 || length > remaining - 4) {
+                return null;
+            }
+            byte[] record = new byte[length];
+            ChangeEvent event;
+            try {
+                in.readFully(record);
+                event = readEvent(new DataInputStream(new ByteArrayInputStream(record)), householdId);
+            } catch (IOException e) {
+                return null;
+            }
+            position += 4 + length;
+            return event;
+        }
+
+        /**
+         * 获取最后一条完整记录之后的位置
+         *
+         * @return 字节偏移
+         */
+        long position() {
+            return position;
+        }
+
+        /**
+         * 判断是否已读完整个文件
+         *
+         * @return {@code true}表示所有记录都已完整读出
+         */
+        boolean atEnd() {
+            return position == size;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * 紧凑编号集合类，用于以很小的内存保存大量int编号（如设备编号），并支持快速求交集。
+ * <p>
+ * 编号按高16位分桶：每个桶中编号较少时以有序char数组保存（每个编号2字节），
+ * 超过4096个后转为固定8KB的位图，因此无论编号稀疏还是密集，单个编号的平均开销都不超过2字节。
+ * 桶按高16位（无符号）排序，遍历顺序稳定。该类不是线程安全的，并发访问需由调用者加锁。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see DeviceIndex
+ */
+public final class CompactIdSet {
+    /**
+     * 数组容器转换为位图容器的阈值
+     */
+    private static final int ARRAY_LIMIT = 4096;
+
+    /**
+     * 各桶的高16位，按无符号大小升序排列，仅前{@link #bucketCount}个元素有效
+     */
+    private char[] highs = new char[4];
+
+    /**
+     * 与{@link #highs}一一对应的桶容器
+     */
+    private Container[] buckets = new Container[4];
+
+    /**
+     * 当前桶数量
+     */
+    private int bucketCount;
+
+    /**
+     * 集合中编号的总数
+     */
+    private int cardinality;
+
+    /**
+     * 无参构造方法，创建一个空集合
+     */
+    public CompactIdSet() {
+
+    }
+
+    /**
+     * 向集合添加一个编号
+     *
+     * @param id 待添加的编号
+     * @return {@code true}表示新添加，{@code false}表示编号已存在
+     */
+    public boolean add(int id) {
+        char high = (char) (id >>> 16);
+        int index = findBucket(high);
+        if (index < 0) {
+            index = -index - 1;
+            insertBucket(index, high, new ArrayContainer());
+        }
+        Container bucket = buckets[index];
+        if (!bucket.add((char) id)) {
+            return false;
+        }
+        if (bucket instanceof ArrayContainer && bucket.size() > ARRAY_LIMIT) {
+            buckets[index] = ((ArrayContainer) bucket).toBitmap();
+        }
+        cardinality++;
+        return true;
+    }
+
+    /**
+     * 从集合中移除一个编号，桶为空时一并回收
+     *
+     * @param id 待移除的编号
+     * @return {@code true}表示移除成功，{@code false}表示编号不存在
+     */
+    public boolean remove(int id) {
+        int index = findBucket((char) (id >>> 16));
+        if (index < 0 || !buckets[index].remove((char) id)) {
+            return false;
+        }
+        Container bucket = buckets[index];
+        if (bucket.size() == 0) {
+            removeBucket(index);
+        } else if (bucket instanceof BitmapContainer && bucket.size() <= ARRAY_LIMIT / 2) {
+            buckets[index] = ((BitmapContainer) bucket).toArray();
+        }
+        cardinality--;
+        return true;
+    }
+
+    /**
+     * 判断集合中是否包含指定编号
+     *
+     * @param id 待判断的编号
+     * @return {@code true}表示包含，否则返回{@code false}
+     */
+    public boolean contains(int id) {
+        int index = findBucket((char) (id >>> 16));
+        return index >= 0 && buckets[index].contains((char) id);
+    }
+
+    /**
+     * 获取集合中编号的总数
+     *
+     * @return 编号数量
+     */
+    public int size() {
+        return cardinality;
+    }
+
+    /**
+     * 判断集合是否为空
+     *
+     * @return {@code true}表示为空
+     */
+    public boolean isEmpty() {
+        return cardinality == 0;
+    }
+
+    /**
+     * 按稳定顺序遍历集合中的每个编号
+     *
+     * @param action 对每个编号执行的操作
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i].forEach(highs[i] << 16, action);
+        }
+    }
+
+    /**
+     * 计算当前集合与另一个集合的交集，两个集合本身均不会被修改
+     *
+     * @param other 另一个集合
+     * @return 新的交集集合
+     */
+    public CompactIdSet and(CompactIdSet other) {
+        CompactIdSet result = new CompactIdSet();
+        int i = 0;
+        int j = 0;
+        while (i < bucketCount && j < other.bucketCount) {
+            if (highs[i] < other.highs[j]) {
+                i++;
+            } else if (highs[i] > other.highs[j]) {
+                j++;
+            } else {
+                Container common = buckets[i].and(other.buckets[j]);
+                if (common.size() > 0) {
+                    result.insertBucket(result.bucketCount, highs[i], common);
+                    result.cardinality += common.size();
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 复制当前集合
+     *
+     * @return 内容相同的新集合
+     */
+    public CompactIdSet copy() {
+        CompactIdSet result = new CompactIdSet();
+        for (int i = 0; i < bucketCount; i++) {
+            result.insertBucket(i, highs[i], buckets[i].copy());
+        }
+        result.cardinality = cardinality;
+        return result;
+    }
+
+    /**
+     * 将集合转换为int数组
+     *
+     * @return 按稳定顺序排列的编号数组
+     */
+    public int[] toArray() {
+        int[] result = new int[cardinality];
+        int[] position = new int[1];
+        forEach(id -> result[position[0]++] = id);
+        return result;
+    }
+
+    /**
+     * 二分查找高16位对应的桶
+     *
+     * @param high 高16位
+     * @return 桶下标；未找到时返回{@code -(插入位置) - 1}
+     */
+    private int findBucket(char high) {
+        return Arrays.binarySearch(highs, 0, bucketCount, high);
+    }
+
+    /**
+     * 在指定位置插入一个桶
+     */
+    private void insertBucket(int index, char high, Container bucket) {
+        if (bucketCount == highs.length) {
+            highs = Arrays.copyOf(highs, bucketCount * 2);
+            buckets = Arrays.copyOf(buckets, bucketCount * 2);
+        }
+        System.arraycopy(highs, index, highs, index + 1, bucketCount - index);
+        System.arraycopy(buckets, index, buckets, index + 1, bucketCount - index);
+        highs[index] = high;
+        buckets[index] = bucket;
+        bucketCount++;
+    }
+
+    /**
+     * 移除指定位置的桶
+     */
+    private void removeBucket(int index) {
+        System.arraycopy(highs, index + 1, highs, index, bucketCount - index - 1);
+        System.arraycopy(buckets, index + 1, buckets, index, bucketCount - index - 1);
+        bucketCount--;
+        buckets[bucketCount] = null;
+    }
+
+    /**
+     * 重写toString方法，返回集合的简要信息
+     *
+     * @return 包含编号数量和桶数量的字符串
+     */
+    @Override
+    public String toString() {
+        return "CompactIdSet{" +
+                "size=" + cardinality +
+                ", buckets=" + bucketCount +
+                '}';
+    }
+
+    /**
+     * 桶容器，保存同一高16位下的低16位编号
+     */
+    private abstract static class Container {
+        abstract boolean add(char low);
+
+        abstract boolean remove(char low);
+
+        abstract boolean contains(char low);
+
+        abstract int size();
+
+        abstract void forEach(int base, IntConsumer action);
+
+        abstract Container and(Container other);
+
+        abstract Container copy();
+    }
+
+    /**
+     * 有序数组容器，适合编号较少的桶
+     */
+    private static final class ArrayContainer extends Container {
+        private char[] values;
+        private int size;
+
+        ArrayContainer() {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] values, int size) {
+            this.values = values;
+            this.size = size;
+        }
+
+        @Override
+        boolean add(char low) {
+            int index = Arrays.binarySearch(values, 0, size, low);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = low;
+            size++;
+            return true;
+        }
+
+        @Override
+        boolean remove(char low) {
+            int index = Arrays.binarySearch(values, 0, size, low);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(values, index + 1, values, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return Arrays.binarySearch(values, 0, size, low) >= 0;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int i = 0; i < size; i++) {
+                action.accept(base | values[i]);
+            }
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] common = new char[Math.max(4, Math.min(size, other.size()))];
+            int count = 0;
+            if (other instanceof ArrayContainer) {
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < size && j < array.size) {
+                    if (values[i] < array.values[j]) {
+                        i++;
+                    } else if (values[i] > array.values[j]) {
+                        j++;
+                    } else {
+                        common[count++] = values[i];
+                        i++;
+                        j++;
+                    }
+                }
+            } else {
+                for (int i = 0; i < size; i++) {
+                    if (other.contains(values[i])) {
+                        common[count++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(common, count);
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(size, 4)), size);
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < size; i++) {
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * 位图容器，固定使用1024个long（8KB）表示65536个低16位编号
+     */
+    private static final class BitmapContainer extends Container {
+        private final long[] words;
+        private int size;
+
+        BitmapContainer() {
+            this(new long[1024], 0);
+        }
+
+        BitmapContainer(long[] words, int size) {
+            this.words = words;
+            this.size = size;
+        }
+
+        @Override
+        boolean add(char low) {
+            long mask = 1L << low;
+            if ((words[low >>> 6] & mask) != 0) {
+                return false;
+            }
+            words[low >>> 6] |= mask;
+            size++;
+            return true;
+        }
+
+        @Override
+        boolean remove(char low) {
+            long mask = 1L << low;
+            if ((words[low >>> 6] & mask) == 0) {
+                return false;
+            }
+            words[low >>> 6] &= ~mask;
+            size--;
+            return true;
+        }
+
+        @Override
+        boolean contains(char low) {
+            return (words[low >>> 6] & (1L << low)) != 0;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer action) {
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    action.accept(base | (w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] common = new long[words.length];
+            int count = 0;
+            for (int w = 0; w < words.length; w++) {
+                common[w] = words[w] & otherWords[w];
+                count += Long.bitCount(common[w]);
+            }
+            BitmapContainer result = new BitmapContainer(common, count);
+            return count > ARRAY_LIMIT ? result : result.toArray();
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), size);
+        }
+
+        ArrayContainer toArray() {
+            char[] values = new char[Math.max(size, 4)];
+            int[] position = new int[1];
+            forEach(0, id -> values[position[0]++] = (char) id);
+            return new ArrayContainer(values, size);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 驱动连接池类，为协议驱动复用{@link DriverConnection}，避免每条命令都重新建立连接。
+ * <p>
+ * 连接按需懒创建，数量不超过最大连接数；归还时若连接已失效则直接关闭并释放名额。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see PipelinedProtocolDriver
+ */
+public class ConnectionPool {
+    /**
+     * 空闲连接队列
+     */
+    private final BlockingQueue<DriverConnection> idle;
+
+    /**
+     * 连接工厂，用于创建新连接
+     */
+    private final Supplier<DriverConnection> factory;
+
+    /**
+     * 最大连接数
+     */
+    private final int maxSize;
+
+    /**
+     * 当前已创建（含借出）的连接数
+     */
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * 有参构造方法，创建指定最大连接数的连接池
+     *
+     * @param maxSize 最大连接数（至少为1）
+     * @param factory 连接工厂
+     */
+    public ConnectionPool(int maxSize, Supplier<DriverConnection> factory) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("连接池大小至少为1：" + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.factory = factory;
+        this.idle = new ArrayBlockingQueue<DriverConnection>(maxSize);
+    }
+
+    /**
+     * 借出一条连接：优先复用空闲连接，没有空闲连接且未达上限时新建，否则等待其他线程归还
+     *
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return 可用的连接
+     * @throws InterruptedException 等待过程中线程被中断
+     * @throws IllegalStateException 等待超时仍没有可用连接
+     */
+    public DriverConnection acquire(long timeoutMillis) throws InterruptedException {
+        DriverConnection connection = idle.poll();
+        if (connection != null) {
+            return connection;
+        }
+        int current = created.get();
+        while (current < maxSize) {
+            if (created.compareAndSet(current, current + 1)) {
+                try {
+                    return factory.get();
+                } catch (RuntimeException e) {
+                    created.decrementAndGet();
+                    throw e;
+                }
+            }
+            current = created.get();
+        }
+        connection = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        if (connection == null) {
+            throw new IllegalStateException("等待驱动连接超时（" + timeoutMillis + "ms）");
+        }
+        return connection;
+    }
+
+    /**
+     * 归还一条连接；已失效的连接会被关闭并释放名额
+     *
+     * @param connection 待归还的连接
+     */
+    public void release(DriverConnection connection) {
+        if (connection.isOpen() && idle.offer(connection)) {
+            return;
+        }
+        connection.close();
+        created.decrementAndGet();
+    }
+
+    /**
+     * 获取当前已创建的连接数
+     *
+     * @return 连接数
+     */
+    public int getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * 关闭所有空闲连接（借出中的连接在归还时关闭）
+     */
+    public void close() {
+        DriverConnection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+            created.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package cn.edu.nwpu.homesphere;
+
+/**
+ * 控制台输出开关，控制设备动作、场景触发等执行过程中的提示信息是否打印到控制台。
+ * <p>
+ * 默认打印，与命令行交互时的行为一致。{@link System#out}的每次打印都要获取同一把锁，
+ * 高并发的调用方（如{@link HomeSphereHttpApi}）可以通过{@link #muted(PermissionTable.Action)}
+ * 在当前线程内关闭这些提示信息，执行结果通过返回值、运行指标和日志获得。
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+public final class ConsoleOutput {
+    /**
+     * 当前线程是否关闭了提示信息
+     */
+    private static final ThreadLocal<Boolean> MUTED = new ThreadLocal<Boolean>();
+
+    private ConsoleOutput() {
+
+    }
+
+    /**
+     * 在当前线程内关闭提示信息并执行操作，执行结束后恢复原来的设置
+     *
+     * @param action 待执行的操作
+     * @param <T>    操作结果类型
+     * @param <E>    操作可能抛出的异常类型
+     * @return 操作结果
+     * @throws E 操作抛出的异常
+     */
+    public static <T, E extends Exception> T muted(PermissionTable.Action<T, E> action) throws E {
+        Boolean previous = MUTED.get();
+        MUTED.set(Boolean.TRUE);
+        try {
+            return action.run();
+        } finally {
+            if (previous == null) {
+                MUTED.remove();
+            } else {
+                MUTED.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 判断当前线程是否关闭了提示信息
+     *
+     * @return {@code true}表示已关闭
+     */
+    public static boolean isMuted() {
+        return MUTED.get() != null;
+    }
+
+    /**
+     * 打印一行提示信息，当前线程关闭了提示信息时不打印
+     *
+     * @param message 提示信息
+     */
+    static void println(String message) {
+        if (MUTED.get() == null) {
+            System.out.println(message);
+        }
+    }
+}
@@ -1,7 +1,8 @@
 package cn.edu.nwpu.homesphere;
 
-import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -9,6 +10,11 @@ import java.util.List;
  * <p>
  * 该类为智能家居系统中的各类设备（如空调、体重秤等）提供基础功能，包括设备标识、状态管理、
  * 电源控制及运行日志记录等。子类可继承此类扩展特定设备的功能。
+ * <p>
+ * 电源、在线等热点状态不作为本类（及子类）的字段保存，而是保存在{@link DeviceState}中：设备不在家庭中或未启用堆外存储时
+ * 为设备自己的{@link HeapState}对象，加入家庭且启用了{@link DeviceStateTable}时为共享状态表中的一个槽位。
+ * 子类通过{@link #readDouble(int)}、{@link #writeDouble(int, double)}等方法读写自己的状态列，
+ * 并提供只包含本类型状态字段的{@link HeapState}子类。
  *
  * @author 余燚
  * @version 1.0
@@ -34,19 +40,45 @@ public class Device {
     private Manufacturer manufacturer;
 
     /**
-     * 设备在线状态：{@code true}表示在线，{@code false}表示离线
+     * 设备运行日志，记录设备的操作历史（如开机、关机、状态变更等）；内存中只保留最近的日志，较早的日志溢出到磁盘
+     */
+    private final RunningLogHistory runningLogs = new RunningLogHistory();
+
+    /**
+     * 设备的开关机时间线，电源状态每次真正变化时记录一次，供分时电费计算提取开机区间
+     */
+    private final PowerTimeline powerTimeline = new PowerTimeline();
+
+    /**
+     * 设备所在的房间，由{@link Room#addDevice(Device)}设置
+     */
+    private volatile Room room;
+
+    /**
+     * 当前统计了本设备开机、在线状态的房间，只在持有本对象锁时读写，
+     * 保证状态切换与设备加入、移出房间时的统计更新不会重复或遗漏
      */
-    private boolean isOnline;
+    private Room countedRoom;
 
     /**
-     * 设备电源状态：{@code true}表示开机，{@code false}表示关机
+     * 保存设备热点状态的位置：设备自己的{@link HeapState}，或加入家庭后共享的{@link DeviceStateTable}
      */
-    private boolean powerStatus;
+    private volatile DeviceState state;
 
     /**
-     * 设备运行日志集合，记录设备的操作历史（如开机、关机、状态变更等）
+     * 在状态表中的槽位编号（从未使用过状态表时为-1），只在{@link #state}为状态表时有效；先于{@link #state}写入
      */
-    private List<RunningLog> runningLogs = new ArrayList<RunningLog>();
+    int stateSlot = -1;
+
+    /**
+     * 设备所属家庭的权限表，未加入家庭时为null（由{@link PermissionTable}维护）
+     */
+    volatile PermissionTable permissionTable;
+
+    /**
+     * 在权限表中的槽位编号，未加入家庭时为-1（由{@link PermissionTable}维护）
+     */
+    volatile int permissionSlot = -1;
 
     /**
      * 无参构造方法，创建一个默认的设备实例。
@@ -54,7 +86,7 @@ public class Device {
      * 注意：使用此构造方法时需手动设置设备编号、名称等必要属性。
      */
     public Device() {
-
+        this.state = new HeapState();
     }
 
     /**
@@ -67,11 +99,22 @@ public class Device {
      * @param manufacturer 设备制造商信息（{@link Manufacturer}对象）
      */
     public Device(int deviceId, String name, Manufacturer manufacturer) {
+        this(deviceId, name, manufacturer, new HeapState());
+    }
+
+    /**
+     * 供子类使用的构造方法，传入只包含子类状态字段的堆上状态对象
+     *
+     * @param deviceId     设备唯一编号
+     * @param name         设备名称
+     * @param manufacturer 设备制造商信息（{@link Manufacturer}对象）
+     * @param state        初始的堆上状态对象（各状态均为默认值）
+     */
+    Device(int deviceId, String name, Manufacturer manufacturer, HeapState state) {
         this.deviceId = deviceId;
         this.name = name;
         this.manufacturer = manufacturer;
-        this.isOnline = false;
-        this.powerStatus = false;
+        this.state = state;
     }
 
     /**
@@ -93,12 +136,16 @@ public class Device {
     }
 
     /**
-     * 设置设备名称
+     * 设置设备名称，所在家庭配置了变更流时记录为设备状态事件的name属性
      *
      * @param name 新的设备名称（如“主卧空调”）
      */
-    public void setName(String name) {
+    public synchronized void setName(String name) {
         this.name = name;
+        Household household = feedHousehold();
+        if (household != null && name != null) {
+            household.deviceStateChanged(this, "name", name);
+        }
     }
 
     /**
@@ -107,7 +154,7 @@ public class Device {
      * @return {@code true}表示在线，{@code false}表示离线
      */
     public boolean isOnline() {
-        return isOnline;
+        return readBoolean(DeviceStateTable.ONLINE);
     }
 
     /**
@@ -115,8 +162,10 @@ public class Device {
      *
      * @param online 新的在线状态：{@code true}为在线，{@code false}为离线
      */
-    public void setOnline(boolean online) {
-        isOnline = online;
+    public synchronized void setOnline(boolean online) {
+        if (switchOnline(online) && countedRoom != null) {
+            countedRoom.onlineChanged(online);
+        }
     }
 
     /**
@@ -125,7 +174,7 @@ public class Device {
      * @return {@code true}表示开机，{@code false}表示关机
      */
     public boolean isPowerStatus() {
-        return powerStatus;
+        return readBoolean(DeviceStateTable.POWER);
     }
 
     /**
@@ -140,35 +189,398 @@ public class Device {
     /**
      * 设备开机操作
      * <p>
-     * 调用此方法会将设备电源状态设置为开机（{@code powerStatus = true}）。
+     * 调用此方法会将设备电源状态设置为开机（{@code powerStatus = true}），
+     * 并通过制造商协议对应的驱动（{@link ProtocolDrivers}）异步下发开机命令。
      * 注意：开机后需手动调用{@link #setOnline(boolean)}设置在线状态。
      */
     public void powerOn() {
-        this.powerStatus = true;
+        ProtocolDrivers.dispatch(this, "powerOn", null);
+        applyPower(true);
     }
 
     /**
      * 设备关机操作
      * <p>
      * 调用此方法会将设备电源状态设置为关机（{@code powerStatus = false}），
-     * 同时自动将在线状态设置为离线（{@code isOnline = false}）。
+     * 同时自动将在线状态设置为离线（{@code isOnline = false}），并通过驱动异步下发关机命令。
      */
     public void powerOff() {
-        this.powerStatus = false;
-        this.isOnline = false;
+        ProtocolDrivers.dispatch(this, "powerOff", null);
+        applyPower(false);
+        setOnline(false);
+    }
+
+    /**
+     * 更新电源状态及房间统计，不向驱动下发命令（开关机操作及副本应用复制来的状态时使用）
+     *
+     * @param on 目标电源状态
+     */
+    synchronized void applyPower(boolean on) {
+        if (switchPower(on) && countedRoom != null) {
+            countedRoom.powerChanged(this, on);
+        }
+    }
+
+    /**
+     * 切换电源状态并记录状态事件和开关机时间线，判断状态是否真的发生了变化（加锁保证并发开关机时只有一次调用观察到变化，
+     * 且变更流中事件、时间线中切换的顺序与最终状态一致）
+     *
+     * @param on 目标电源状态
+     * @return {@code true}表示状态发生了变化，{@code false}表示原本就是目标状态
+     */
+    private synchronized boolean switchPower(boolean on) {
+        if (isPowerStatus() == on) {
+            return false;
+        }
+        writeBoolean(DeviceStateTable.POWER, on);
+        powerTimeline.record(System.currentTimeMillis(), on);
+        stateChanged("powerStatus", on);
+        return true;
+    }
+
+    /**
+     * 切换在线状态并记录状态事件，判断状态是否真的发生了变化
+     *
+     * @param online 目标在线状态
+     * @return {@code true}表示状态发生了变化，{@code false}表示原本就是目标状态
+     */
+    private synchronized boolean switchOnline(boolean online) {
+        if (isOnline() == online) {
+            return false;
+        }
+        writeBoolean(DeviceStateTable.ONLINE, online);
+        stateChanged("online", online);
+        return true;
+    }
+
+    /**
+     * 获取设备开机时的额定功率，供房间统计当前用电功率使用
+     * <p>
+     * 基类默认返回0（不耗电或不统计能耗的设备），实现了{@link EnergyReporting}的子类应返回其额定功率。
+     *
+     * @return 额定功率（单位：瓦特/W）
+     */
+    double getRatedPower() {
+        return 0;
+    }
+
+    /**
+     * 获取设备所在的房间
+     *
+     * @return 所在房间（{@link Room}），未放入房间时为null
+     */
+    public Room getRoom() {
+        return room;
+    }
+
+    /**
+     * 设置设备所在的房间（仅由{@link Room}在增删设备时调用）
+     *
+     * @param room 所在房间，移出房间时传入null
+     */
+    void setRoom(Room room) {
+        this.room = room;
+    }
+
+    /**
+     * 将设备当前的开机、在线状态计入房间统计（由{@link Room}在设备加入房间后调用）。
+     * 与开关机、上下线持有同一把锁，因此并发的状态切换要么在计入之前完成（按新状态计入），要么在之后完成（增量更新），
+     * 不会重复计数；若设备仍计入在其他房间，先从原房间扣除
+     *
+     * @param room 设备加入的房间
+     */
+    synchronized void countIn(Room room) {
+        if (countedRoom == room) {
+            return;
+        }
+        countOut();
+        countedRoom = room;
+        if (isPowerStatus()) {
+            room.powerChanged(this, true);
+        }
+        if (isOnline()) {
+            room.onlineChanged(true);
+        }
+    }
+
+    /**
+     * 将设备的开机、在线状态从当前统计它的房间中扣除（由{@link Room}在设备移出房间时调用）
+     */
+    synchronized void countOut() {
+        Room counted = countedRoom;
+        if (counted == null) {
+            return;
+        }
+        countedRoom = null;
+        if (isPowerStatus()) {
+            counted.powerChanged(this, false);
+        }
+        if (isOnline()) {
+            counted.onlineChanged(false);
+        }
+    }
+
+    /**
+     * 创建一个只包含本类型状态字段的空白堆上状态对象（设备移出家庭、状态搬出状态表时使用），子类须重写
+     *
+     * @return 堆上状态对象
+     */
+    HeapState newHeapState() {
+        return new HeapState();
+    }
+
+    /**
+     * 将状态搬入状态表（由{@link Household}在设备加入家庭时调用）：分配槽位、复制当前状态，之后的读写都作用于槽位，
+     * 堆上状态对象随即被丢弃；已在状态表中时不做处理
+     *
+     * @param table 状态表
+     */
+    synchronized void attachState(DeviceStateTable table) {
+        DeviceState current = state;
+        if (!(current instanceof HeapState)) {
+            return;
+        }
+        int slot = table.allocate(this);
+        ((HeapState) current).copyTo(table, slot);
+        stateSlot = slot;
+        state = table;
+    }
+
+    /**
+     * 将状态搬回新的堆上状态对象并归还槽位（由{@link Household}在设备移出家庭时调用）；未使用状态表时不做处理
+     */
+    synchronized void detachState() {
+        DeviceState current = state;
+        if (!(current instanceof DeviceStateTable)) {
+            return;
+        }
+        DeviceStateTable table = (DeviceStateTable) current;
+        HeapState heap = newHeapState();
+        heap.copyFrom(table, stateSlot);
+        state = heap;
+        table.release(stateSlot);
+    }
+
+    /**
+     * 获取设备当前使用的状态表
+     *
+     * @return 状态表，状态保存在堆上时返回null
+     */
+    DeviceStateTable getStateTable() {
+        DeviceState current = state;
+        return current instanceof DeviceStateTable ? (DeviceStateTable) current : null;
+    }
+
+    /**
+     * 读取一列double状态。不加锁；若读取期间设备恰好移出家庭（槽位可能已被其他设备复用），则改从新的堆上状态对象读取
+     *
+     * @param column 列（见{@link DeviceStateTable}）
+     * @return 状态值
+     */
+    final double readDouble(int column) {
+        DeviceState current = state;
+        double value = current.getDouble(column, stateSlot);
+        DeviceState latest = state;
+        return latest == current ? value : latest.getDouble(column, stateSlot);
+    }
+
+    /**
+     * 读取一列int状态，见{@link #readDouble(int)}
+     *
+     * @param column 列
+     * @return 状态值
+     */
+    final int readInt(int column) {
+        DeviceState current = state;
+        int value = current.getInt(column, stateSlot);
+        DeviceState latest = state;
+        return latest == current ? value : latest.getInt(column, stateSlot);
+    }
+
+    /**
+     * 读取一列boolean状态，见{@link #readDouble(int)}
+     *
+     * @param column 列
+     * @return 状态值
+     */
+    final boolean readBoolean(int column) {
+        DeviceState current = state;
+        boolean value = current.getBoolean(column, stateSlot);
+        DeviceState latest = state;
+        return latest == current ? value : latest.getBoolean(column, stateSlot);
+    }
+
+    /**
+     * 写入一列double状态，调用方须持有本对象的锁（与状态搬入、搬出状态表互斥）
+     *
+     * @param column 列
+     * @param value  状态值
+     */
+    final void writeDouble(int column, double value) {
+        state.setDouble(column, stateSlot, value);
+    }
+
+    /**
+     * 写入一列int状态，调用方须持有本对象的锁
+     *
+     * @param column 列
+     * @param value  状态值
+     */
+    final void writeInt(int column, int value) {
+        state.setInt(column, stateSlot, value);
+    }
+
+    /**
+     * 写入一列boolean状态，调用方须持有本对象的锁
+     *
+     * @param column 列
+     * @param value  状态值
+     */
+    final void writeBoolean(int column, boolean value) {
+        state.setBoolean(column, stateSlot, value);
+    }
+
+    /**
+     * 将设备当前的全部状态属性写入属性表，供变更流的设备加入事件（{@link ChangeEvent.Type#DEVICE_ADDED}）使用
+     * <p>
+     * 子类重写时应先调用父类方法，再写入子类特有的状态。
+     *
+     * @param attributes 属性表（属性名 -> 属性值）
+     */
+    void describeState(Map<String, String> attributes) {
+        attributes.put("powerStatus", Boolean.toString(isPowerStatus()));
+        attributes.put("online", Boolean.toString(isOnline()));
+    }
+
+    /**
+     * 按属性名设置一项状态（{@link #describeState(Map)}的逆操作），供副本应用复制来的状态事件
+     * <p>
+     * 子类重写时先处理子类特有的状态，不认识的属性交给父类方法。
+     *
+     * @param attribute 状态属性名
+     * @param value     状态值
+     * @return {@code true}表示识别并设置了该属性
+     */
+    boolean applyState(String attribute, String value) {
+        switch (attribute) {
+            case "powerStatus":
+                applyPower(Boolean.parseBoolean(value));
+                return true;
+            case "online":
+                setOnline(Boolean.parseBoolean(value));
+                return true;
+            case "name":
+                if (!value.equals(name)) {
+                    setName(value);
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 设备状态变化时的回调（由各状态的setter在写入状态的同一把锁内调用，保证变更流中事件的顺序与最终状态一致），
+     * 设备所在家庭配置了变更流时记录一个设备状态事件；未配置时不做任何转换
+     *
+     * @param attribute 状态属性名
+     * @param value     新的状态值
+     */
+    void stateChanged(String attribute, double value) {
+        Household household = feedHousehold();
+        if (household != null) {
+            household.deviceStateChanged(this, attribute, Double.toString(value));
+        }
+    }
+
+    /**
+     * 设备状态变化时的回调，见{@link #stateChanged(String, double)}
+     *
+     * @param attribute 状态属性名
+     * @param value     新的状态值
+     */
+    void stateChanged(String attribute, int value) {
+        Household household = feedHousehold();
+        if (household != null) {
+            household.deviceStateChanged(this, attribute, Integer.toString(value));
+        }
+    }
+
+    /**
+     * 设备状态变化时的回调，见{@link #stateChanged(String, double)}
+     *
+     * @param attribute 状态属性名
+     * @param value     新的状态值
+     */
+    void stateChanged(String attribute, boolean value) {
+        Household household = feedHousehold();
+        if (household != null) {
+            household.deviceStateChanged(this, attribute, Boolean.toString(value));
+        }
+    }
+
+    /**
+     * 获取设备所在的、配置了变更流的家庭
+     *
+     * @return 家庭，设备不在家庭中或家庭未配置变更流时返回null
+     */
+    private Household feedHousehold() {
+        Room current = room;
+        Household household = current == null ? null : current.getHousehold();
+        return household != null && household.hasChangeFeed() ? household : null;
+    }
+
+    /**
+     * 获取设备的开关机时间线（供{@link TariffCostEngine}出账，以及模拟、导入历史数据时写入过去的切换）
+     *
+     * @return 开关机时间线
+     */
+    PowerTimeline getPowerTimeline() {
+        return powerTimeline;
+    }
+
+    /**
+     * 丢弃指定时间之前的开关机记录（如已出账的月份），之后的出账仍能正确判断该时间之后的开机区间
+     *
+     * @param before 丢弃此时间之前的记录
+     */
+    public void discardPowerHistory(Date before) {
+        powerTimeline.discardBefore(before.getTime());
     }
 
     /**
      * 获取设备的运行日志列表
+     * <p>
+     * 返回的是只读视图：已溢出到磁盘的日志（见{@link RunningLogStore}）在访问时才按段读入，顺序遍历时每次读入一整段。
      *
-     * @return 运行日志集合（{@link List}<{@link RunningLog}>）
+     * @return 运行日志集合（{@link List}<{@link RunningLog}>，按写入顺序，只读）
      */
     public List<RunningLog> getRunningLogs() {
-        return runningLogs;
+        return runningLogs.view();
     }
 
     /**
-     * 向设备添加一条运行日志
+     * 查询指定时间段内的运行日志，已溢出到磁盘的日志段若时间范围不相交则不会被读入
+     *
+     * @param startTime 起始时间（包含）
+     * @param endTime   结束时间（不包含）
+     * @return 时间段内的运行日志（按写入顺序）
+     */
+    public List<RunningLog> getRunningLogs(Date startTime, Date endTime) {
+        return runningLogs.range(startTime, endTime);
+    }
+
+    /**
+     * 获取内存中保留的运行日志条数（其余日志已溢出到磁盘）
+     *
+     * @return 日志条数
+     */
+    public int getResidentLogCount() {
+        return runningLogs.residentSize();
+    }
+
+    /**
+     * 向设备添加一条运行日志（线程安全，驱动回调线程也会写入失败日志）
      *
      * @param log 待添加的运行日志（{@link RunningLog}对象）
      */
@@ -199,8 +611,96 @@ public class Device {
         return "Device{" +
                 "deviceId=" + deviceId +
                 ", name='" + name + '\'' +
-                ", isOnline=" + isOnline +
-                ", powerStatus=" + powerStatus +
+                ", isOnline=" + isOnline() +
+                ", powerStatus=" + isPowerStatus() +
                 '}';
     }
+
+    /**
+     * 设备不在状态表中时保存热点状态的堆上对象，只包含电源和在线状态；子类的同名类在此基础上增加各自的状态字段，
+     * 并处理各自的列，不认识的列交给父类处理。忽略槽位参数
+     */
+    static class HeapState extends DeviceState {
+        /**
+         * 电源状态
+         */
+        private boolean powerStatus;
+
+        /**
+         * 在线状态
+         */
+        private boolean online;
+
+        @Override
+        double getDouble(int column, int slot) {
+            throw unsupported(column);
+        }
+
+        @Override
+        void setDouble(int column, int slot, double value) {
+            throw unsupported(column);
+        }
+
+        @Override
+        int getInt(int column, int slot) {
+            throw unsupported(column);
+        }
+
+        @Override
+        void setInt(int column, int slot, int value) {
+            throw unsupported(column);
+        }
+
+        @Override
+        boolean getBoolean(int column, int slot) {
+            switch (column) {
+                case DeviceStateTable.POWER:
+                    return powerStatus;
+                case DeviceStateTable.ONLINE:
+                    return online;
+                default:
+                    throw unsupported(column);
+            }
+        }
+
+        @Override
+        void setBoolean(int column, int slot, boolean value) {
+            switch (column) {
+                case DeviceStateTable.POWER:
+                    powerStatus = value;
+                    break;
+                case DeviceStateTable.ONLINE:
+                    online = value;
+                    break;
+                default:
+                    throw unsupported(column);
+            }
+        }
+
+        /**
+         * 将本对象的状态复制到状态表的槽位
+         *
+         * @param table 状态表
+         * @param slot  槽位编号
+         */
+        void copyTo(DeviceStateTable table, int slot) {
+            table.setBoolean(DeviceStateTable.POWER, slot, powerStatus);
+            table.setBoolean(DeviceStateTable.ONLINE, slot, online);
+        }
+
+        /**
+         * 从状态表的槽位复制状态到本对象
+         *
+         * @param table 状态表
+         * @param slot  槽位编号
+         */
+        void copyFrom(DeviceStateTable table, int slot) {
+            powerStatus = table.getBoolean(DeviceStateTable.POWER, slot);
+            online = table.getBoolean(DeviceStateTable.ONLINE, slot);
+        }
+
+        static IllegalArgumentException unsupported(int column) {
+            return new IllegalArgumentException("设备没有状态列：" + column);
+        }
+    }
 }
\ No newline at end of file
@@ -1,13 +1,13 @@
 package cn.edu.nwpu.homesphere;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * 设备动作类，用于封装对智能设备的操作指令、参数及目标设备，支持通过反射执行设备动作。
+ * 设备动作类，用于封装对智能设备的操作指令、参数及目标设备，并执行设备动作。
  * <p>
- * 该类通过命令映射机制将抽象指令转换为设备实际支持的方法调用，实现对不同设备的统一动作管理。
+ * 该类通过动作处理器注册表（{@link ActionHandlers}）将抽象指令转换为设备实际支持的操作，实现对不同设备的统一动作管理。
+ * 字符串参数在创建动作或修改指令/参数时即解析为强类型参数（{@link ActionPayload}），执行时不再重复解析。
  *
  * @author 余燚
  * @version 1.0
@@ -28,6 +28,26 @@ public class DeviceAction {
      */
     private Device device;
 
+    /**
+     * 指令对应的处理器，不支持的指令为null
+     */
+    private ActionHandler handler;
+
+    /**
+     * 预先解析好的参数，解析失败时为null
+     */
+    private ActionPayload payload;
+
+    /**
+     * 参数解析失败的原因，解析成功时为null
+     */
+    private String payloadError;
+
+    /**
+     * 包含当前动作的场景（通常只有一个），动作被修改时需通知其重新编译执行计划
+     */
+    private final List<AutomationScene> owners = new ArrayList<AutomationScene>(1);
+
     /**
      * 无参构造方法，创建一个空的设备动作实例
      */
@@ -41,11 +61,16 @@ public class DeviceAction {
      * @param command    动作指令（如"setTemperature"）
      * @param parameters 动作参数（字符串形式，如"26.5"）
      * @param device     目标设备（{@link Device}对象）
+     * @throws IllegalArgumentException 若指令受支持，但参数缺失、格式错误或超出范围
      */
     public DeviceAction(String command, String parameters, Device device) {
         this.command = command;
         this.parameters = parameters;
         this.device = device;
+        prepare();
+        if (payloadError != null) {
+            throw new IllegalArgumentException(payloadError);
+        }
     }
 
     /**
@@ -59,11 +84,15 @@ public class DeviceAction {
 
     /**
      * 设置动作指令名称
+     * <p>
+     * 指令与参数可能需要先后修改，因此参数不匹配时不会立即抛出异常，而是在执行时报告失败。
      *
      * @param command 新的指令名称（如"setPower"）
      */
     public void setCommand(String command) {
         this.command = command;
+        prepare();
+        invalidateOwners();
     }
 
     /**
@@ -77,11 +106,24 @@ public class DeviceAction {
 
     /**
      * 设置动作参数
+     * <p>
+     * 与{@link #setCommand(String)}相同，参数不匹配时在执行时报告失败。
      *
      * @param parameters 新的参数值（字符串形式，需与设备方法参数兼容）
      */
     public void setParameters(String parameters) {
         this.parameters = parameters;
+        prepare();
+        invalidateOwners();
+    }
+
+    /**
+     * 获取预先解析好的强类型参数
+     *
+     * @return 参数对象，指令不受支持或参数无效时返回null
+     */
+    public ActionPayload getPayload() {
+        return payload;
     }
 
     /**
@@ -100,43 +142,165 @@ public class DeviceAction {
      */
     public void setDevice(Device device) {
         this.device = device;
+        invalidateOwners();
     }
 
     /**
-     * 执行当前动作，通过反射调用目标设备的对应方法
+     * 执行当前动作，通过动作处理器注册表（{@link ActionHandlers}）调用目标设备的对应操作
      * <p>
      * 执行逻辑：
-     * 1. 打印动作执行信息（指令、参数、设备）；
-     * 2. 通过命令映射表将抽象指令转换为设备实际方法名（如"setTemperature"映射为"setTargetTem"）；
-     * 3. 将字符串参数转换为double类型；
-     * 4. 反射调用设备的目标方法并传入参数。
+     * 1. 使用创建动作时已查找好的处理器（如"setTemperature"对应设置空调目标温度），并校验设备类型；
+     * 2. 使用创建动作时已解析好的强类型参数（{@link ActionPayload}），不再解析字符串；
+     * 3. 打印动作执行信息（指令、参数、设备），在设备上执行该指令；
+     * 4. 本地执行成功后，通过制造商协议对应的驱动（{@link ProtocolDrivers}）异步下发该命令。
+     * <p>
+     * 指令不受支持、参数无效或执行出错时打印失败原因，不会向外抛出异常。
+     * 执行结果（成功/失败）和耗时会记录到运行指标（{@link HomeSphereMetrics}）和JFR事件（{@link ActionExecuteEvent}）。
+     * 场景中的动作通常不会逐个调用此方法，而是预先编译为{@link ScenePlan}后执行。
      *
-     * @throws NoSuchMethodException 若映射的方法在设备类中不存在
+     * @throws NoSuchMethodException 保留以兼容旧的调用方，当前实现不会抛出
      */
     public void execute() throws NoSuchMethodException {
-        System.out.println("执行动作：" + this.command + ",参数为：" + this.parameters + "，执行的设备为：" + device.getName() + "\n");
+        run();
+    }
+
+    /**
+     * 执行当前动作并返回执行结果（与{@link #execute()}相同，供{@link HomeSphereHttpApi}等需要结果的调用方使用）
+     *
+     * @return {@code true}表示执行成功
+     */
+    boolean run() {
+        return perform(handler, payload, checkPrepared());
+    }
+
+    /**
+     * 按指令名称查找处理器并解析参数，在创建动作及修改指令/参数时调用
+     */
+    private void prepare() {
+        handler = ActionHandlers.resolve(command);
+        payload = null;
+        payloadError = null;
+        if (handler != null) {
+            try {
+                payload = handler.parse(parameters);
+            } catch (IllegalArgumentException e) {
+                payloadError = e.getMessage();
+            }
+        }
+    }
+
+    /**
+     * 获取指令对应的处理器（由{@link ScenePlan}编译时使用）
+     *
+     * @return 处理器，不支持的指令返回null
+     */
+    ActionHandler getHandler() {
+        return handler;
+    }
 
-        // 建立方法名映射表（抽象指令 -> 设备实际方法名）
-        Map<String, String> methodMap = new HashMap<String, String>();
-        methodMap.put("setTemperature", "setTargetTemp"); // 示例：温度设置指令映射
+    /**
+     * 校验当前动作能否执行：处理器可用于目标设备，且参数已成功解析
+     *
+     * @return 失败原因，可以执行时返回null
+     */
+    String checkPrepared() {
+        String error = checkHandler(handler);
+        return error != null ? error : payloadError;
+    }
 
-        // 从映射表中获取实际方法名
-        String actualMethodName = methodMap.get(this.command);
+    /**
+     * 校验处理器是否可用于当前目标设备
+     *
+     * @param handler 指令对应的处理器（可为null）
+     * @return 失败原因，可用时返回null
+     */
+    String checkHandler(ActionHandler handler) {
+        if (handler == null) {
+            return "不支持的动作指令：" + command;
+        }
+        if (!handler.getDeviceType().isInstance(device)) {
+            return "设备" + device.getName() + "不支持动作指令：" + command;
+        }
+        return null;
+    }
 
+    /**
+     * 使用预先解析好的处理器和参数执行当前动作（由{@link #execute()}及{@link ScenePlan}调用）
+     * <p>
+     * 负责打印执行信息（可通过{@link ConsoleOutput}关闭）、检查当前线程的操作者是否有权操作目标设备（{@link PermissionTable}）、执行指令、
+     * 通过驱动下发命令，并记录运行指标和JFR事件。
+     *
+     * @param handler 指令对应的处理器（error不为null时忽略）
+     * @param payload 解析后的参数
+     * @param error   预先确定的失败原因，没有时为null
+     * @return {@code true}表示执行成功
+     */
+    boolean perform(ActionHandler handler, ActionPayload payload, String error) {
+        ActionExecuteEvent event = new ActionExecuteEvent();
+        event.begin();
+        long start = System.nanoTime();
+        boolean success = false;
+        ConsoleOutput.println("执行动作：" + this.command + ",参数为：" + this.parameters + "，执行的设备为：" + device.getName() + "\n");
+        User actor = PermissionTable.getActingUser();
+        if (error == null && !PermissionTable.isPermitted(actor, device)) {
+            error = PermissionTable.denied(actor, device);
+        }
         try {
-            // 将字符串参数转换为double
-            double param = Double.parseDouble(parameters);
+            if (error != null) {
+                ConsoleOutput.println(error);
+            } else {
+                handler.apply(device, payload);
+                ProtocolDrivers.dispatch(device, this.command, this.parameters);
+                success = true;
+            }
+        } catch (RuntimeException e) {
+            ConsoleOutput.println("动作执行失败：" + e);
+        } finally {
+            HomeSphereMetrics.getInstance().recordAction(success, start);
+            if (event.shouldCommit()) {
+                event.deviceId = device.getDeviceId();
+                event.command = command;
+                event.success = success;
+                event.commit();
+            }
+        }
+        return success;
+    }
 
-            // 反射获取设备类中对应的方法（参数类型为double）
-            Method method = device.getClass().getMethod(actualMethodName, double.class);
+    /**
+     * 登记包含当前动作的场景，动作被修改时通知这些场景重新编译
+     *
+     * @param scene 包含当前动作的场景
+     */
+    void addOwner(AutomationScene scene) {
+        synchronized (owners) {
+            owners.add(scene);
+        }
+    }
 
-            // 调用方法，传入参数
-            method.invoke(device, param);
+    /**
+     * 注销包含当前动作的场景
+     *
+     * @param scene 不再包含当前动作的场景
+     */
+    void removeOwner(AutomationScene scene) {
+        synchronized (owners) {
+            owners.remove(scene);
+        }
+    }
 
-        } catch (NumberFormatException e) {
-            System.out.println("参数转换失败：" + parameters + " 不是有效的数字");
-        } catch (Exception e) {
-            e.printStackTrace(); // 处理反射调用中的其他异常（如方法不可访问、参数不匹配等）
+    /**
+     * 动作被修改后，使所有包含该动作的场景的执行计划失效，并由场景记录场景更新事件
+     * <p>
+     * 先在锁内复制场景列表再逐个通知：场景增删动作时先持有场景的锁再登记，此处若持有列表的锁去获取场景的锁会形成死锁。
+     */
+    private void invalidateOwners() {
+        List<AutomationScene> scenes;
+        synchronized (owners) {
+            scenes = new ArrayList<AutomationScene>(owners);
+        }
+        for (AutomationScene scene : scenes) {
+            scene.actionChanged();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,237 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 设备倒排索引类，跨所有家庭按制造商、设备类型、通信协议和地区索引设备，用于召回和固件推送等批量运营场景。
+ * <p>
+ * 每个索引项（如“制造商1”“LightBulb”“ZigBee”“西安”）对应一个{@link CompactIdSet}设备编号集合，
+ * 组合查询时对各条件的集合求交集，例如“西安地区AC Corp生产的所有空调”。
+ * 设备加入或移出家庭（房间增删设备、家庭增删房间）时由{@link Room}和{@link Household}自动维护索引，
+ * 索引与家庭数据保持一致。设备编号在整个设备群内唯一，登记编号已被其他设备占用的设备时抛出异常。所有方法均线程安全。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see Fleet#getDeviceIndex()
+ */
+public class DeviceIndex {
+    /**
+     * 设备编号到索引记录的映射
+     */
+    private final Map<Integer, Entry> entries = new HashMap<Integer, Entry>();
+
+    /**
+     * 制造商编号 -> 设备编号集合
+     */
+    private final Map<Integer, CompactIdSet> byManufacturer = new HashMap<Integer, CompactIdSet>();
+
+    /**
+     * 设备类型（类名） -> 设备编号集合
+     */
+    private final Map<String, CompactIdSet> byType = new HashMap<String, CompactIdSet>();
+
+    /**
+     * 通信协议（小写） -> 设备编号集合
+     */
+    private final Map<String, CompactIdSet> byProtocol = new HashMap<String, CompactIdSet>();
+
+    /**
+     * 地区（小写） -> 设备编号集合
+     */
+    private final Map<String, CompactIdSet> byRegion = new HashMap<String, CompactIdSet>();
+
+    /**
+     * 索引记录，保存设备及其登记时所属的地区，保证移除时能找到全部索引项
+     */
+    private static final class Entry {
+        final Device device;
+        final String region;
+
+        Entry(Device device, String region) {
+            this.device = device;
+            this.region = region;
+        }
+    }
+
+    /**
+     * 将设备登记到索引中；同一设备再次登记时替换旧记录（如家庭地区变化后重新登记）
+     *
+     * @param device 待登记的设备
+     * @param region 设备所在家庭的地区（可为null）
+     * @throws IllegalArgumentException 设备编号已被其他设备占用
+     */
+    public synchronized void register(Device device, String region) {
+        Entry old = entries.get(device.getDeviceId());
+        if (old != null) {
+            if (old.device != device) {
+                throw new IllegalArgumentException("设备编号" + device.getDeviceId() + "已被设备" + old.device.getName() + "使用");
+            }
+            removeEntry(old);
+        }
+        Entry entry = new Entry(device, region);
+        entries.put(device.getDeviceId(), entry);
+        int id = device.getDeviceId();
+        Manufacturer manufacturer = device.getManufacturer();
+        if (manufacturer != null) {
+            postings(byManufacturer, manufacturer.getManufacturerId()).add(id);
+            for (String protocol : manufacturer.getProtocolList()) {
+                postings(byProtocol, key(protocol)).add(id);
+            }
+        }
+        postings(byType, device.getClass().getSimpleName()).add(id);
+        if (region != null) {
+            postings(byRegion, key(region)).add(id);
+        }
+    }
+
+    /**
+     * 将设备从索引中移除；若该编号当前登记的是另一个设备对象，则不做处理
+     *
+     * @param device 待移除的设备
+     */
+    public synchronized void unregister(Device device) {
+        Entry entry = entries.get(device.getDeviceId());
+        if (entry != null && entry.device == device) {
+            removeEntry(entry);
+        }
+    }
+
+    /**
+     * 按制造商、设备类型、协议和地区组合查询设备编号，参数为null表示该条件不限
+     *
+     * @param manufacturerId 制造商编号（可为null）
+     * @param type           设备类型（可为null，如{@code LightBulb.class}）
+     * @param protocol       通信协议（可为null，不区分大小写）
+     * @param region         地区（可为null，不区分大小写）
+     * @return 满足全部条件的设备编号集合（新集合，可自由修改）
+     */
+    public synchronized CompactIdSet queryIds(Integer manufacturerId, Class<? extends Device> type,
+                                              String protocol, String region) {
+        CompactIdSet result = null;
+        if (manufacturerId != null) {
+            result = intersect(result, byManufacturer.get(manufacturerId));
+        }
+        if (type != null) {
+            result = intersect(result, byType.get(type.getSimpleName()));
+        }
+        if (protocol != null) {
+            result = intersect(result, byProtocol.get(key(protocol)));
+        }
+        if (region != null) {
+            result = intersect(result, byRegion.get(key(region)));
+        }
+        if (result == null) {
+            result = new CompactIdSet();
+            for (Integer id : entries.keySet()) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按制造商、设备类型、协议和地区组合查询设备，参数为null表示该条件不限
+     *
+     * @param manufacturerId 制造商编号（可为null）
+     * @param type           设备类型（可为null）
+     * @param protocol       通信协议（可为null）
+     * @param region         地区（可为null）
+     * @return 满足全部条件的设备列表，无结果时返回空列表
+     */
+    public synchronized List<Device> query(Integer manufacturerId, Class<? extends Device> type,
+                                           String protocol, String region) {
+        CompactIdSet ids = queryIds(manufacturerId, type, protocol, region);
+        List<Device> devices = new ArrayList<Device>(ids.size());
+        ids.forEach(id -> devices.add(entries.get(id).device));
+        return devices;
+    }
+
+    /**
+     * 按设备编号查找已登记的设备
+     *
+     * @param deviceId 设备编号
+     * @return 设备，未登记时返回null
+     */
+    public synchronized Device getDevice(int deviceId) {
+        Entry entry = entries.get(deviceId);
+        return entry == null ? null : entry.device;
+    }
+
+    /**
+     * 清空索引（由{@link Fleet#reset()}调用）
+     */
+    synchronized void clear() {
+        entries.clear();
+        byManufacturer.clear();
+        byType.clear();
+        byProtocol.clear();
+        byRegion.clear();
+    }
+
+    /**
+     * 获取索引中登记的设备总数
+     *
+     * @return 设备数量
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 从所有索引项中移除一条记录
+     */
+    private void removeEntry(Entry entry) {
+        Device device = entry.device;
+        int id = device.getDeviceId();
+        entries.remove(id);
+        Manufacturer manufacturer = device.getManufacturer();
+        if (manufacturer != null) {
+            removePosting(byManufacturer, manufacturer.getManufacturerId(), id);
+            for (String protocol : manufacturer.getProtocolList()) {
+                removePosting(byProtocol, key(protocol), id);
+            }
+        }
+        removePosting(byType, device.getClass().getSimpleName(), id);
+        if (entry.region != null) {
+            removePosting(byRegion, key(entry.region), id);
+        }
+    }
+
+    /**
+     * 获取（必要时创建）索引项对应的编号集合
+     */
+    private static <K> CompactIdSet postings(Map<K, CompactIdSet> index, K key) {
+        return index.computeIfAbsent(key, k -> new CompactIdSet());
+    }
+
+    /**
+     * 从索引项中移除一个编号，集合为空时一并移除索引项
+     */
+    private static <K> void removePosting(Map<K, CompactIdSet> index, K key, int id) {
+        CompactIdSet ids = index.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    /**
+     * 将当前结果与某个索引项求交集；索引项不存在时结果为空集
+     */
+    private static CompactIdSet intersect(CompactIdSet current, CompactIdSet postings) {
+        if (postings == null) {
+            return new CompactIdSet();
+        }
+        return current == null ? postings.copy() : current.and(postings);
+    }
+
+    /**
+     * 将字符串统一为去除首尾空白的小写形式，便于不区分大小写匹配
+     */
+    private static String key(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
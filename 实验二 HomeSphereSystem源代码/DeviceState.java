@@ -0,0 +1,69 @@
+package cn.edu.nwpu.homesphere;
+
+/**
+ * 设备热点状态的存储位置，按“列+槽位”读写电源、在线、温度、亮度等状态（列编号见{@link DeviceStateTable}）。
+ * <p>
+ * 有两种实现：加入家庭且启用了堆外存储的设备使用共享的{@link DeviceStateTable}，槽位为设备在表中的编号；
+ * 其余设备各自持有一个只包含本类型状态字段的小对象（{@link Device.HeapState}及各子类中的同名类），此时忽略槽位参数。
+ * 设备类本身不再声明任何状态字段，使用状态表的设备对象只保留对表的引用和槽位编号。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see Device
+ */
+abstract class DeviceState {
+
+    /**
+     * 读取double列
+     *
+     * @param column 列
+     * @param slot   槽位编号
+     * @return 状态值
+     */
+    abstract double getDouble(int column, int slot);
+
+    /**
+     * 写入double列
+     *
+     * @param column 列
+     * @param slot   槽位编号
+     * @param value  状态值
+     */
+    abstract void setDouble(int column, int slot, double value);
+
+    /**
+     * 读取int列
+     *
+     * @param column 列
+     * @param slot   槽位编号
+     * @return 状态值
+     */
+    abstract int getInt(int column, int slot);
+
+    /**
+     * 写入int列
+     *
+     * @param column 列
+     * @param slot   槽位编号
+     * @param value  状态值
+     */
+    abstract void setInt(int column, int slot, int value);
+
+    /**
+     * 读取boolean列
+     *
+     * @param column 列
+     * @param slot   槽位编号
+     * @return 状态值
+     */
+    abstract boolean getBoolean(int column, int slot);
+
+    /**
+     * 写入boolean列
+     *
+     * @param column 列
+     * @param slot   槽位编号
+     * @param value  状态值
+     */
+    abstract void setBoolean(int column, int slot, boolean value);
+}
@@ -0,0 +1,285 @@
+package cn.edu.nwpu.homesphere;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * 设备状态表类，以堆外列式存储的方式保存大量设备的热点状态，供可选的堆外存储模式使用。
+ * <p>
+ * 每台设备在表中占用一个槽位，状态按列存放：同一列（如所有设备的目标温度）在堆外内存中连续排列，
+ * 每{@value #SEGMENT_SLOTS}个槽位组成一个段（一块直接内存）。启用后，设备加入家庭时（{@link Household#deviceAdded(Device)}）
+ * 分配一个槽位，并把电源、在线、当前/目标温度、亮度、色温、锁定、电量、体重等状态从设备的堆上状态对象搬入槽位，
+ * 之后原有的getter/setter都读写槽位，设备对象只保留对本表的引用和槽位编号（设备类本身不声明状态字段，见{@link DeviceState}）；
+ * 设备移出家庭时状态搬回新的堆上状态对象，槽位随即归还，供新设备复用。全表扫描（如统计开机设备数、查找低电量设备）
+ * 只需顺序读取一两列连续内存，而不必遍历设备对象。
+ * <p>
+ * 默认不启用：系统属性{@code homesphere.offHeapState=true}时创建默认状态表，也可以通过{@link #setDefault(DeviceStateTable)}指定。
+ * 只有启用之后加入家庭的设备才使用状态表。没有使用JDK 22起正式提供的FFM API（{@code MemorySegment}），
+ * 段使用直接内存的{@link ByteBuffer}，以便在当前的Java 17环境下编译运行。
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+public final class DeviceStateTable extends DeviceState {
+    /**
+     * 每个段的槽位数
+     */
+    static final int SEGMENT_SLOTS = 1 << 14;
+
+    /**
+     * 列：当前温度（double）
+     */
+    static final int CURR_TEMP = 0;
+
+    /**
+     * 列：目标温度（double）
+     */
+    static final int TARGET_TEMP = 8 * SEGMENT_SLOTS;
+
+    /**
+     * 列：体重（double）
+     */
+    static final int BODY_MASS = 16 * SEGMENT_SLOTS;
+
+    /**
+     * 列：设备编号（int）
+     */
+    static final int DEVICE_ID = 24 * SEGMENT_SLOTS;
+
+    /**
+     * 列：亮度（int）
+     */
+    static final int BRIGHTNESS = 28 * SEGMENT_SLOTS;
+
+    /**
+     * 列：色温（int）
+     */
+    static final int COLOR_TEMP = 32 * SEGMENT_SLOTS;
+
+    /**
+     * 列：电池电量（int）
+     */
+    static final int BATTERY_LEVEL = 36 * SEGMENT_SLOTS;
+
+    /**
+     * 列：电源状态（byte）
+     */
+    static final int POWER = 40 * SEGMENT_SLOTS;
+
+    /**
+     * 列：在线状态（byte）
+     */
+    static final int ONLINE = 41 * SEGMENT_SLOTS;
+
+    /**
+     * 列：锁定状态（byte）
+     */
+    static final int LOCKED = 42 * SEGMENT_SLOTS;
+
+    /**
+     * 列：是否为电池供电设备（byte），分配槽位时按设备类型写入
+     */
+    private static final int BATTERY_POWERED = 43 * SEGMENT_SLOTS;
+
+    /**
+     * 列：槽位是否已分配（byte）
+     */
+    private static final int ALLOCATED = 44 * SEGMENT_SLOTS;
+
+    /**
+     * 每个段占用的字节数
+     */
+    private static final int SEGMENT_BYTES = 45 * SEGMENT_SLOTS;
+
+    /**
+     * 当前默认的状态表，为null时设备状态保存在对象字段中
+     */
+    private static volatile DeviceStateTable defaultTable =
+            Boolean.getBoolean("homesphere.offHeapState") ? new DeviceStateTable() : null;
+
+    /**
+     * 各段的堆外内存，扩容时整体替换
+     */
+    private volatile ByteBuffer[] segments = new ByteBuffer[0];
+
+    /**
+     * 已归还、可复用的槽位（栈）
+     */
+    private int[] freeSlots = new int[16];
+
+    /**
+     * 可复用槽位的数量
+     */
+    private int freeCount;
+
+    /**
+     * 从未使用过的下一个槽位
+     */
+    private int nextSlot;
+
+    /**
+     * 已分配的槽位数
+     */
+    private int allocated;
+
+    /**
+     * 无参构造方法，创建一个空的状态表（段在分配槽位时按需创建）
+     */
+    public DeviceStateTable() {
+
+    }
+
+    /**
+     * 获取默认的状态表
+     *
+     * @return 默认状态表，未启用堆外存储时返回null
+     */
+    public static DeviceStateTable getDefault() {
+        return defaultTable;
+    }
+
+    /**
+     * 设置默认的状态表（只影响之后加入家庭的设备）
+     *
+     * @param table 状态表，传入null表示之后加入家庭的设备仍把状态保存在堆上
+     */
+    public static void setDefault(DeviceStateTable table) {
+        defaultTable = table;
+    }
+
+    /**
+     * 为设备分配一个槽位（由{@link Device}在加入家庭时调用），设备移出家庭时通过{@link #release(int)}归还
+     *
+     * @param device 设备
+     * @return 槽位编号
+     */
+    int allocate(Device device) {
+        int slot;
+        synchronized (this) {
+            if (freeCount > 0) {
+                slot = freeSlots[--freeCount];
+            } else {
+                slot = nextSlot++;
+                if (slot >> 14 == segments.length) {
+                    ByteBuffer[] grown = Arrays.copyOf(segments, segments.length + 1);
+                    grown[segments.length] = ByteBuffer.allocateDirect(SEGMENT_BYTES).order(ByteOrder.nativeOrder());
+                    segments = grown;
+                }
+            }
+            allocated++;
+            segment(slot).put(ALLOCATED + (slot & (SEGMENT_SLOTS - 1)), (byte) 1);
+        }
+        setInt(DEVICE_ID, slot, device.getDeviceId());
+        setBoolean(BATTERY_POWERED, slot, device instanceof BatteryPowered);
+        return slot;
+    }
+
+    /**
+     * 归还槽位，清零其全部状态（由{@link Device}在状态搬回堆上之后调用）
+     *
+     * @param slot 槽位编号
+     */
+    synchronized void release(int slot) {
+        for (int column = CURR_TEMP; column < DEVICE_ID; column += 8 * SEGMENT_SLOTS) {
+            setDouble(column, slot, 0);
+        }
+        for (int column = DEVICE_ID; column < POWER; column += 4 * SEGMENT_SLOTS) {
+            setInt(column, slot, 0);
+        }
+        for (int column = POWER; column < SEGMENT_BYTES; column += SEGMENT_SLOTS) {
+            segment(slot).put(column + (slot & (SEGMENT_SLOTS - 1)), (byte) 0);
+        }
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        allocated--;
+    }
+
+    private ByteBuffer segment(int slot) {
+        return segments[slot >>> 14];
+    }
+
+    @Override
+    double getDouble(int column, int slot) {
+        return segment(slot).getDouble(column + 8 * (slot & (SEGMENT_SLOTS - 1)));
+    }
+
+    @Override
+    void setDouble(int column, int slot, double value) {
+        segment(slot).putDouble(column + 8 * (slot & (SEGMENT_SLOTS - 1)), value);
+    }
+
+    @Override
+    int getInt(int column, int slot) {
+        return segment(slot).getInt(column + 4 * (slot & (SEGMENT_SLOTS - 1)));
+    }
+
+    @Override
+    void setInt(int column, int slot, int value) {
+        segment(slot).putInt(column + 4 * (slot & (SEGMENT_SLOTS - 1)), value);
+    }
+
+    @Override
+    boolean getBoolean(int column, int slot) {
+        return segment(slot).get(column + (slot & (SEGMENT_SLOTS - 1))) != 0;
+    }
+
+    @Override
+    void setBoolean(int column, int slot, boolean value) {
+        segment(slot).put(column + (slot & (SEGMENT_SLOTS - 1)), (byte) (value ? 1 : 0));
+    }
+
+    /**
+     * 获取已分配的槽位数（即当前使用状态表的设备数）
+     *
+     * @return 槽位数
+     */
+    public synchronized int size() {
+        return allocated;
+    }
+
+    /**
+     * 获取状态表占用的堆外内存
+     *
+     * @return 字节数
+     */
+    public long getOffHeapBytes() {
+        return (long) segments.length * SEGMENT_BYTES;
+    }
+
+    /**
+     * 统计处于开机状态的设备数量（只顺序扫描电源状态列）
+     *
+     * @return 开机设备数
+     */
+    public int countPoweredOn() {
+        ByteBuffer[] current = segments;
+        int count = 0;
+        for (ByteBuffer segment : current) {
+            for (int i = 0; i < SEGMENT_SLOTS; i++) {
+                count += segment.get(POWER + i);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 查找电量低于阈值的电池供电设备（只扫描电池供电标记列和电量列，电量为0的电池设备同样会被找出）
+     *
+     * @param threshold 电量阈值（百分比）
+     * @param action    对每个符合条件的设备编号执行的操作
+     */
+    public void forEachLowBattery(int threshold, IntConsumer action) {
+        ByteBuffer[] current = segments;
+        for (ByteBuffer segment : current) {
+            for (int i = 0; i < SEGMENT_SLOTS; i++) {
+                if (segment.get(BATTERY_POWERED + i) != 0 && segment.getInt(BATTERY_LEVEL + 4 * i) < threshold) {
+                    action.accept(segment.getInt(DEVICE_ID + 4 * i));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.List;
+
+/**
+ * 驱动连接接口，表示与设备网关之间的一条通信连接。
+ * <p>
+ * 连接由{@link ConnectionPool}统一创建和复用。一次{@link #transmit(List)}调用会把一批请求连续写出（流水线），
+ * 再按顺序读取每条请求的应答，因此一批请求只需要一次往返时间。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see ConnectionPool
+ */
+public interface DriverConnection extends AutoCloseable {
+
+    /**
+     * 以流水线方式发送一批请求，并按顺序返回每条请求的执行结果。
+     *
+     * @param batch 待发送的请求（至少一条）
+     * @return 与请求一一对应的执行结果：{@code true}表示设备已确认，{@code false}表示设备拒绝或执行失败
+     * @throws Exception 连接中断等通信异常，此时整批请求均视为失败，且该连接不再复用
+     */
+    boolean[] transmit(List<DriverRequest> batch) throws Exception;
+
+    /**
+     * 判断连接当前是否可用
+     *
+     * @return {@code true}表示可继续复用，{@code false}表示已失效
+     */
+    boolean isOpen();
+
+    /**
+     * 关闭连接，释放底层资源
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,81 @@
+package cn.edu.nwpu.homesphere;
+
+/**
+ * 驱动请求类，表示一条需要通过厂商通信协议下发到物理设备的命令。
+ * <p>
+ * 请求对象创建后不可修改，由{@link ProtocolDriver}负责排队、批量打包并通过连接发送。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see ProtocolDriver
+ */
+public final class DriverRequest {
+    /**
+     * 目标设备编号
+     */
+    private final int deviceId;
+
+    /**
+     * 下发的命令名称（如"powerOn"“setTemperature”）
+     */
+    private final String command;
+
+    /**
+     * 命令参数（字符串形式，无参数时为空字符串）
+     */
+    private final String parameters;
+
+    /**
+     * 有参构造方法，创建一条驱动请求
+     *
+     * @param deviceId   目标设备编号
+     * @param command    命令名称
+     * @param parameters 命令参数（可为null，按空字符串处理）
+     */
+    public DriverRequest(int deviceId, String command, String parameters) {
+        this.deviceId = deviceId;
+        this.command = command;
+        this.parameters = parameters == null ? "" : parameters;
+    }
+
+    /**
+     * 获取目标设备编号
+     *
+     * @return 设备编号
+     */
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    /**
+     * 获取命令名称
+     *
+     * @return 命令名称（字符串）
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * 获取命令参数
+     *
+     * @return 命令参数（字符串），无参数时为空字符串
+     */
+    public String getParameters() {
+        return parameters;
+    }
+
+    /**
+     * 重写toString方法，返回请求的简要信息
+     *
+     * @return 包含设备编号、命令和参数的字符串
+     */
+    @Override
+    public String toString() {
+        return "DriverRequest{" +
+                "deviceId=" + deviceId +
+                ", command='" + command + '\'' +
+                ", parameters='" + parameters + '\'' +
+                '}';
+    }
+}
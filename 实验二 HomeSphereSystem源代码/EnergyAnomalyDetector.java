@@ -0,0 +1,649 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 能耗异常检测器，对{@link EnergyReporting}设备的功率采样做在线检测，及时发现空调忘关、灯泡关机后仍在耗电等异常用电。
+ * <p>
+ * 每台设备维护固定大小的状态：全天的指数加权均值和方差（EWMA），以及按一天中24个小时分别统计的基线均值和方差，
+ * 采样落在已有足够样本的小时时与该小时的基线比较，否则与全天基线比较。采样高出基线{@link #getWarnSigma()}倍标准差时记为
+ * WARNING，高出{@link #getErrorSigma()}倍、或连续{@value #SUSTAIN_SAMPLES}次异常时记为ERROR；设备处于关机状态却仍有
+ * 超过待机功率的用电时直接记为ERROR。低于基线的用电（关机、节能）不视为异常。被判定为异常的采样只以
+ * {@value #ANOMALY_WEIGHT}倍的平滑系数计入基线，短暂的异常不会拉高基线，用电水平长期改变时基线仍会缓慢适应。
+ * <p>
+ * 检测到异常时向设备写入一条WARNING/ERROR运行日志，提交一个JFR事件（{@link EnergyAnomalyEvent}），并通知所有监听器；
+ * 同一设备在冷却时间内只报告一次，级别升高时除外。
+ * <p>
+ * 所有状态保存在按设备槽位编号的基本类型数组中，设备编号到槽位的映射为无锁的开放寻址表，采样时只做查表和几次浮点运算，
+ * 不分配任何对象（只有报告异常时才创建日志和事件），可承受整个设备群的采样速率；不同设备的采样按槽位分段加锁，互不争用。
+ * 数组按实际跟踪的设备数从{@value #INITIAL_SLOTS}个槽位起翻倍扩容，直到构造时指定的容量；
+ * 达到容量后新设备的采样被丢弃并计数（{@link #getUntrackedSampleCount()}），不影响已跟踪设备的检测。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see EnergyReporting
+ */
+public class EnergyAnomalyDetector {
+    /**
+     * 能耗异常监听器
+     */
+    public interface Listener {
+        /**
+         * 检测到能耗异常时调用（在提交采样的线程中调用，不应长时间阻塞）
+         *
+         * @param device        异常设备
+         * @param log           写入设备的运行日志（类型为WARNING或ERROR，备注中包含采样功率和基线功率）
+         * @param watts         采样功率（单位：瓦特/W）
+         * @param expectedWatts 基线功率（单位：瓦特/W）
+         */
+        void onAnomaly(EnergyReporting device, RunningLog log, double watts, double expectedWatts);
+    }
+
+    /**
+     * 默认最多可跟踪的设备数
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    /**
+     * 初始分配的槽位数（不超过容量），之后按需翻倍
+     */
+    static final int INITIAL_SLOTS = 1024;
+
+    /**
+     * 异常采样计入基线时平滑系数的折扣
+     */
+    static final double ANOMALY_WEIGHT = 0.1;
+
+    /**
+     * 连续异常达到该次数时升级为ERROR（如空调持续高功率运行）
+     */
+    public static final int SUSTAIN_SAMPLES = 10;
+
+    /**
+     * 每天的小时数
+     */
+    private static final int HOURS = 24;
+
+    /**
+     * 分段锁数量（2的幂）
+     */
+    private static final int STRIPES = 64;
+
+    /**
+     * 标准差下限（单位：瓦特/W），避免恒定功率的设备因微小波动被误报
+     */
+    private static final double MIN_STD_WATTS = 5;
+
+    /**
+     * 标准差相对基线均值的下限
+     */
+    private static final double RELATIVE_STD_FLOOR = 0.05;
+
+    /**
+     * 最多可跟踪的设备数
+     */
+    private final int capacity;
+
+    /**
+     * 映射表及各槽位的状态，扩容时整体替换（替换时持有本对象的锁和全部分段锁）
+     */
+    private volatile State state;
+
+    /**
+     * 已分配的槽位数（仅在登记设备时修改，持有本对象的锁）
+     */
+    private int allocated;
+
+    /**
+     * 分段锁，扩容时全部获取
+     */
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+
+    /**
+     * 计算小时所用的时区（构造时确定，避免每次采样复制默认时区）
+     */
+    private final TimeZone timeZone = TimeZone.getDefault();
+
+    /**
+     * 监听器
+     */
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+    /**
+     * 累计采样次数
+     */
+    private final LongAdder samples = new LongAdder();
+
+    /**
+     * 累计报告的异常次数
+     */
+    private final LongAdder anomalies = new LongAdder();
+
+    /**
+     * 因达到容量而丢弃的采样次数
+     */
+    private final LongAdder untracked = new LongAdder();
+
+    /**
+     * EWMA平滑系数
+     */
+    private volatile double alpha = 0.05;
+
+    /**
+     * 开始检测前每个基线至少需要的采样次数
+     */
+    private volatile int warmupSamples = 12;
+
+    /**
+     * WARNING阈值（标准差倍数）
+     */
+    private volatile double warnSigma = 3;
+
+    /**
+     * ERROR阈值（标准差倍数）
+     */
+    private volatile double errorSigma = 6;
+
+    /**
+     * 关机状态下允许的待机功率（单位：瓦特/W）
+     */
+    private volatile double standbyWatts = 2;
+
+    /**
+     * 同一设备两次报告之间的冷却时间（单位：毫秒，按采样时间计算）
+     */
+    private volatile long cooldownMillis = 15 * 60 * 1000L;
+
+    /**
+     * 映射表及各槽位的状态
+     */
+    private static final class State {
+        /**
+         * 映射表（开放寻址）：高32位为槽位编号+1（0表示空位），低32位为设备编号
+         */
+        final AtomicLongArray entries;
+
+        /**
+         * 各槽位的采样次数
+         */
+        final long[] counts;
+
+        /**
+         * 各槽位的全天基线均值
+         */
+        final double[] means;
+
+        /**
+         * 各槽位的全天基线方差
+         */
+        final double[] variances;
+
+        /**
+         * 各槽位各小时的采样次数（下标为槽位×24+小时）
+         */
+        final int[] hourCounts;
+
+        /**
+         * 各槽位各小时的基线均值
+         */
+        final double[] hourMeans;
+
+        /**
+         * 各槽位各小时的基线方差
+         */
+        final double[] hourVariances;
+
+        /**
+         * 各槽位连续异常的次数
+         */
+        final int[] streaks;
+
+        /**
+         * 各槽位最近一次报告异常的采样时间（毫秒时间戳）
+         */
+        final long[] lastAlerts;
+
+        /**
+         * 各槽位最近一次报告的异常级别编码（0表示冷却时间内未报告过）
+         */
+        final int[] lastLevels;
+
+        /**
+         * 创建指定槽位数的状态，并复制已有状态中的全部槽位和映射
+         *
+         * @param slots    槽位数
+         * @param previous 已有状态，没有时为null
+         */
+        State(int slots, State previous) {
+            entries = new AtomicLongArray(Integer.highestOneBit(Math.max(2, slots * 2 - 1)) << 1);
+            if (previous == null) {
+                counts = new long[slots];
+                means = new double[slots];
+                variances = new double[slots];
+                hourCounts = new int[slots * HOURS];
+                hourMeans = new double[slots * HOURS];
+                hourVariances = new double[slots * HOURS];
+                streaks = new int[slots];
+                lastAlerts = new long[slots];
+                lastLevels = new int[slots];
+                return;
+            }
+            counts = Arrays.copyOf(previous.counts, slots);
+            means = Arrays.copyOf(previous.means, slots);
+            variances = Arrays.copyOf(previous.variances, slots);
+            hourCounts = Arrays.copyOf(previous.hourCounts, slots * HOURS);
+            hourMeans = Arrays.copyOf(previous.hourMeans, slots * HOURS);
+            hourVariances = Arrays.copyOf(previous.hourVariances, slots * HOURS);
+            streaks = Arrays.copyOf(previous.streaks, slots);
+            lastAlerts = Arrays.copyOf(previous.lastAlerts, slots);
+            lastLevels = Arrays.copyOf(previous.lastLevels, slots);
+            for (int i = 0; i < previous.entries.length(); i++) {
+                long entry = previous.entries.get(i);
+                if (entry != 0) {
+                    insert((int) entry, (int) (entry >>> 32) - 1);
+                }
+            }
+        }
+
+        /**
+         * 查找设备的槽位（不加锁）
+         *
+         * @param id 设备编号
+         * @return 槽位编号，未登记时返回-1
+         */
+        int find(int id) {
+            int mask = entries.length() - 1;
+            for (int i = mix(id) & mask; ; i = (i + 1) & mask) {
+                long entry = entries.get(i);
+                if (entry == 0) {
+                    return -1;
+                }
+                if ((int) entry == id) {
+                    return (int) (entry >>> 32) - 1;
+                }
+            }
+        }
+
+        /**
+         * 登记设备的槽位：槽位和编号在同一个long中一次发布，无锁的查找方看到编号时一定能看到对应的槽位
+         */
+        void insert(int id, int slot) {
+            int mask = entries.length() - 1;
+            int i = mix(id) & mask;
+            while (entries.get(i) != 0) {
+                i = (i + 1) & mask;
+            }
+            entries.set(i, (long) (slot + 1) << 32 | (id & 0xFFFFFFFFL));
+        }
+    }
+
+    /**
+     * 无参构造方法，创建最多跟踪{@value #DEFAULT_CAPACITY}台设备的检测器
+     */
+    public EnergyAnomalyDetector() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 有参构造方法，创建最多跟踪指定数量设备的检测器（状态数组按实际跟踪的设备数扩容）
+     *
+     * @param capacity 最多可跟踪的设备数
+     * @throws IllegalArgumentException 容量不是正数
+     */
+    public EnergyAnomalyDetector(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("异常检测器容量必须为正数：" + capacity);
+        }
+        this.capacity = capacity;
+        this.state = new State(Math.min(capacity, INITIAL_SLOTS), null);
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 添加能耗异常监听器
+     *
+     * @param listener 监听器
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 移除能耗异常监听器
+     *
+     * @param listener 监听器
+     */
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * 获取WARNING阈值
+     *
+     * @return 高出基线的标准差倍数
+     */
+    public double getWarnSigma() {
+        return warnSigma;
+    }
+
+    /**
+     * 获取ERROR阈值
+     *
+     * @return 高出基线的标准差倍数
+     */
+    public double getErrorSigma() {
+        return errorSigma;
+    }
+
+    /**
+     * 设置报告阈值
+     *
+     * @param warnSigma  WARNING阈值（标准差倍数）
+     * @param errorSigma ERROR阈值（标准差倍数，不小于WARNING阈值）
+     * @throws IllegalArgumentException 阈值不是正数或ERROR阈值小于WARNING阈值
+     */
+    public void setThresholds(double warnSigma, double errorSigma) {
+        if (!(warnSigma > 0) || errorSigma < warnSigma) {
+            throw new IllegalArgumentException("异常阈值无效：WARNING=" + warnSigma + "，ERROR=" + errorSigma);
+        }
+        this.warnSigma = warnSigma;
+        this.errorSigma = errorSigma;
+    }
+
+    /**
+     * 设置基线的平滑系数和预热采样次数
+     *
+     * @param alpha         EWMA平滑系数（0到1之间，越大越快适应新的用电水平）
+     * @param warmupSamples 开始检测前每个基线至少需要的采样次数
+     * @throws IllegalArgumentException 参数超出范围
+     */
+    public void setBaseline(double alpha, int warmupSamples) {
+        if (!(alpha > 0 && alpha < 1) || warmupSamples < 1) {
+            throw new IllegalArgumentException("基线参数无效：alpha=" + alpha + "，预热次数=" + warmupSamples);
+        }
+        this.alpha = alpha;
+        this.warmupSamples = warmupSamples;
+    }
+
+    /**
+     * 设置关机状态下允许的待机功率
+     *
+     * @param standbyWatts 待机功率（单位：瓦特/W）
+     */
+    public void setStandbyWatts(double standbyWatts) {
+        this.standbyWatts = standbyWatts;
+    }
+
+    /**
+     * 设置同一设备两次报告之间的冷却时间
+     *
+     * @param cooldownMillis 冷却时间（单位：毫秒，按采样时间计算）
+     */
+    public void setCooldownMillis(long cooldownMillis) {
+        this.cooldownMillis = cooldownMillis;
+    }
+
+    /**
+     * 获取累计采样次数
+     *
+     * @return 采样次数
+     */
+    public long getSampleCount() {
+        return samples.sum();
+    }
+
+    /**
+     * 获取累计报告的异常次数
+     *
+     * @return 异常次数
+     */
+    public long getAnomalyCount() {
+        return anomalies.sum();
+    }
+
+    /**
+     * 获取因达到容量、设备未被跟踪而丢弃的采样次数
+     *
+     * @return 采样次数
+     */
+    public long getUntrackedSampleCount() {
+        return untracked.sum();
+    }
+
+    /**
+     * 获取已跟踪的设备数
+     *
+     * @return 设备数
+     */
+    public synchronized int getDeviceCount() {
+        return allocated;
+    }
+
+    /**
+     * 以设备当前的功率（{@link EnergyReporting#getPower()}）作为一次采样
+     *
+     * @param device          设备
+     * @param timestampMillis 采样时间（毫秒时间戳）
+     * @return {@code true}表示本次采样报告了异常
+     */
+    public boolean sample(EnergyReporting device, long timestampMillis) {
+        return sample(device, timestampMillis, device.getPower());
+    }
+
+    /**
+     * 以一段时间内的用电量作为一次采样，按平均功率检测
+     *
+     * @param device        设备
+     * @param startMillis   统计开始时间（毫秒时间戳）
+     * @param endMillis     统计结束时间（毫秒时间戳，作为采样时间）
+     * @param kilowattHours 该时间段内的用电量（单位：度/kW·h）
+     * @return {@code true}表示本次采样报告了异常
+     * @throws IllegalArgumentException 结束时间不晚于开始时间
+     */
+    public boolean sampleEnergy(EnergyReporting device, long startMillis, long endMillis, double kilowattHours) {
+        if (endMillis <= startMillis) {
+            throw new IllegalArgumentException("能耗统计区间无效：" + startMillis + " - " + endMillis);
+        }
+        return sample(device, endMillis, kilowattHours * 3_600_000_000.0 / (endMillis - startMillis));
+    }
+
+    /**
+     * 提交一次功率采样：先与基线比较判断是否异常，再把采样计入基线（异常采样降低权重）
+     * <p>
+     * 需要跟踪新设备但已达到容量上限时丢弃本次采样，只计入{@link #getUntrackedSampleCount()}。
+     *
+     * @param device          设备
+     * @param timestampMillis 采样时间（毫秒时间戳）
+     * @param watts           采样功率（单位：瓦特/W）
+     * @return {@code true}表示本次采样报告了异常
+     */
+    public boolean sample(EnergyReporting device, long timestampMillis, double watts) {
+        int slot = slotOf(device);
+        if (slot < 0) {
+            untracked.increment();
+            return false;
+        }
+        int hour = (int) Math.floorMod(Math.floorDiv(timestampMillis + timeZone.getOffset(timestampMillis), 3_600_000L), (long) HOURS);
+        int hourIndex = slot * HOURS + hour;
+        boolean off = device instanceof Device && !((Device) device).isPowerStatus();
+        double a = alpha;
+        int warmup = warmupSamples;
+        int level = 0;
+        double expected;
+        double score;
+        samples.increment();
+        ReentrantLock lock = locks[slot & (STRIPES - 1)];
+        lock.lock();
+        try {
+            State s = state;
+            long[] counts = s.counts;
+            int[] hourCounts = s.hourCounts;
+            int[] streaks = s.streaks;
+            long[] lastAlerts = s.lastAlerts;
+            int[] lastLevels = s.lastLevels;
+            boolean hourly = hourCounts[hourIndex] >= warmup;
+            expected = hourly ? s.hourMeans[hourIndex] : s.means[slot];
+            double variance = hourly ? s.hourVariances[hourIndex] : s.variances[slot];
+            if (off && watts > standbyWatts) {
+                score = Double.POSITIVE_INFINITY;
+            } else if (hourly || counts[slot] >= warmup) {
+                double std = Math.max(Math.sqrt(variance), Math.max(MIN_STD_WATTS, RELATIVE_STD_FLOOR * Math.abs(expected)));
+                score = (watts - expected) / std;
+            } else {
+                score = 0;
+            }
+
+            boolean flagged = score >= warnSigma;
+            if (flagged) {
+                streaks[slot]++;
+                level = score >= errorSigma || streaks[slot] >= SUSTAIN_SAMPLES
+                        ? RunningLog.Type.ERROR.getCode() : RunningLog.Type.WARNING.getCode();
+                if (lastLevels[slot] >= level && timestampMillis - lastAlerts[slot] < cooldownMillis) {
+                    level = 0;
+                } else {
+                    lastAlerts[slot] = timestampMillis;
+                    lastLevels[slot] = level;
+                }
+            } else {
+                streaks[slot] = 0;
+                if (timestampMillis - lastAlerts[slot] >= cooldownMillis) {
+                    lastLevels[slot] = 0;
+                }
+            }
+
+            counts[slot]++;
+            update(s.means, s.variances, slot, watts, flagged ? a * ANOMALY_WEIGHT : Math.max(a, 1.0 / counts[slot]));
+            hourCounts[hourIndex]++;
+            update(s.hourMeans, s.hourVariances, hourIndex, watts,
+                    flagged ? a * ANOMALY_WEIGHT : Math.max(a, 1.0 / hourCounts[hourIndex]));
+        } finally {
+            lock.unlock();
+        }
+        if (level == 0) {
+            return false;
+        }
+        report(device, timestampMillis, watts, expected, score, level, off);
+        return true;
+    }
+
+    /**
+     * 按EWMA更新一个基线的均值和方差（预热阶段平滑系数取1/n，等价于普通的均值和方差）
+     */
+    private static void update(double[] means, double[] variances, int index, double x, double weight) {
+        double diff = x - means[index];
+        means[index] += weight * diff;
+        variances[index] = (1 - weight) * (variances[index] + weight * diff * diff);
+    }
+
+    /**
+     * 报告一次异常：写入运行日志、提交JFR事件并通知监听器
+     */
+    private void report(EnergyReporting device, long timestampMillis, double watts, double expected, double score,
+                        int level, boolean off) {
+        anomalies.increment();
+        RunningLog.Type type = level == RunningLog.Type.ERROR.getCode() ? RunningLog.Type.ERROR : RunningLog.Type.WARNING;
+        String note = off
+                ? String.format("设备处于关机状态，但采样功率为%.1fW", watts)
+                : String.format("采样功率%.1fW，基线功率%.1fW，高出%.1f倍标准差", watts, expected, score);
+        RunningLog log = new RunningLog(new Date(timestampMillis), "能耗异常", type, note);
+        if (device instanceof Device) {
+            ((Device) device).addRunningLogs(log);
+        }
+
+        EnergyAnomalyEvent event = new EnergyAnomalyEvent();
+        if (event.shouldCommit()) {
+            event.deviceId = device.getDeviceId();
+            event.level = type.name();
+            event.watts = watts;
+            event.expectedWatts = expected;
+            event.score = score;
+            event.commit();
+        }
+
+        for (Listener listener : listeners) {
+            listener.onAnomaly(device, log, watts, expected);
+        }
+    }
+
+    /**
+     * 查找设备的槽位，首次采样的设备在此登记
+     *
+     * @return 槽位编号，达到容量无法跟踪时返回-1
+     */
+    private int slotOf(EnergyReporting device) {
+        int slot = state.find(device.getDeviceId());
+        return slot >= 0 ? slot : register(device);
+    }
+
+    /**
+     * 登记新设备，槽位用尽时先扩容（查找方可能还在读取旧的映射表，未找到时会进入本方法在新表中重新查找）
+     *
+     * @return 槽位编号，达到容量无法跟踪时返回-1
+     */
+    private synchronized int register(EnergyReporting device) {
+        int id = device.getDeviceId();
+        int slot = state.find(id);
+        if (slot >= 0) {
+            return slot;
+        }
+        if (allocated == capacity) {
+            return -1;
+        }
+        if (allocated == state.counts.length) {
+            grow((int) Math.min(capacity, 2L * allocated));
+        }
+        slot = allocated++;
+        state.insert(id, slot);
+        return slot;
+    }
+
+    /**
+     * 扩容到指定槽位数：持有全部分段锁复制状态，期间没有采样在修改旧数组（调用时已持有本对象的锁）
+     */
+    private void grow(int slots) {
+        for (ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            state = new State(slots, state);
+        } finally {
+            for (int i = locks.length - 1; i >= 0; i--) {
+                locks[i].unlock();
+            }
+        }
+    }
+
+    private static int mix(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 获取设备的全天基线功率
+     *
+     * @param deviceId 设备编号
+     * @return 基线功率（单位：瓦特/W），设备未被跟踪时返回NaN
+     */
+    public double getBaselineWatts(int deviceId) {
+        int slot = state.find(deviceId);
+        if (slot < 0) {
+            return Double.NaN;
+        }
+        ReentrantLock lock = locks[slot & (STRIPES - 1)];
+        lock.lock();
+        try {
+            return state.means[slot];
+        } finally {
+            lock.unlock();
+        }
+    }
+}
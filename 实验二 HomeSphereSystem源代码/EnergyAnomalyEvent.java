@@ -0,0 +1,49 @@
+package cn.edu.nwpu.homesphere;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 能耗异常的JFR事件，记录一次{@link EnergyAnomalyDetector}检测到的用电异常（设备、实际功率、基线功率和偏离程度）。
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+@Name("cn.edu.nwpu.homesphere.EnergyAnomaly")
+@Label("Energy Anomaly")
+@Category({"HomeSphere", "Energy"})
+@Description("设备用电偏离基线")
+class EnergyAnomalyEvent extends Event {
+    /**
+     * 设备编号
+     */
+    @Label("Device Id")
+    int deviceId;
+
+    /**
+     * 异常级别（WARNING或ERROR）
+     */
+    @Label("Level")
+    String level;
+
+    /**
+     * 采样功率（单位：瓦特/W）
+     */
+    @Label("Watts")
+    double watts;
+
+    /**
+     * 基线功率（单位：瓦特/W）
+     */
+    @Label("Expected Watts")
+    double expectedWatts;
+
+    /**
+     * 偏离程度（高出基线的标准差倍数，关机待机耗电时为无穷大）
+     */
+    @Label("Score")
+    double score;
+}
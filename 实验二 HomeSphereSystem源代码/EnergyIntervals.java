@@ -0,0 +1,150 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.Arrays;
+
+/**
+ * 一组设备在统计区间内的开机区间，以压缩行格式的基本类型数组保存，作为{@link EnergyKernel}和{@link TariffCostEngine}的输入。
+ * <p>
+ * 每加入一台设备，就从其开关机时间线（{@link PowerTimeline}）提取统计区间内的开机区间，按设备的额定功率追加到数组末尾：
+ * 第i台设备的区间为{@link #getOffsets()}{@code [i]}到{@code [i+1]}之间的各个{@code [starts[k], ends[k])}，功率为{@code watts[k]}。
+ * 家庭能耗报表（{@link HomeSphereSystem#reportEnergies}）和分时电价出账（{@link TariffCostEngine#bill}）都由此构造输入，
+ * 因此两者给出的用电量一致。该类不是线程安全的。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see EnergyKernel
+ */
+final class EnergyIntervals {
+    /**
+     * 每千瓦时对应的“瓦特×毫秒”
+     */
+    static final double WATT_MILLIS_PER_KWH = 3_600_000_000.0;
+
+    /**
+     * 各设备区间的起始下标，仅前{@code devices + 1}个元素有效
+     */
+    private int[] offsets = new int[16];
+
+    /**
+     * 各区间的开始时间，仅前{@link #size}个元素有效
+     */
+    private long[] starts = new long[64];
+
+    /**
+     * 各区间的结束时间，仅前{@link #size}个元素有效
+     */
+    private long[] ends = new long[64];
+
+    /**
+     * 各区间的功率，仅前{@link #size}个元素有效
+     */
+    private double[] watts = new double[64];
+
+    /**
+     * 已加入的设备数
+     */
+    private int devices;
+
+    /**
+     * 区间数
+     */
+    private int size;
+
+    /**
+     * 正在加入的设备的额定功率
+     */
+    private double ratedPower;
+
+    /**
+     * 接收正在加入的设备的开机区间
+     */
+    private final PowerTimeline.IntervalSink sink = this::append;
+
+    /**
+     * 加入一台设备在统计区间内的开机区间（见{@link PowerTimeline#forEachOnInterval}），按额定功率计算
+     *
+     * @param device 设备
+     * @param start  统计开始时间（毫秒时间戳，包含）
+     * @param end    统计结束时间（毫秒时间戳，不包含）
+     */
+    void addDevice(Device device, long start, long end) {
+        ratedPower = device.getRatedPower();
+        device.getPowerTimeline().forEachOnInterval(start, end, device.isPowerStatus(), sink);
+        if (devices + 1 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[++devices] = size;
+    }
+
+    /**
+     * 获取已加入的设备数
+     *
+     * @return 设备数
+     */
+    int getDeviceCount() {
+        return devices;
+    }
+
+    /**
+     * 获取各设备区间的起始下标
+     *
+     * @return 长度为设备数+1的新数组
+     */
+    int[] getOffsets() {
+        return Arrays.copyOf(offsets, devices + 1);
+    }
+
+    /**
+     * 获取各区间的开始时间（内部数组，长度可能大于区间数）
+     *
+     * @return 开始时间数组
+     */
+    long[] getStarts() {
+        return starts;
+    }
+
+    /**
+     * 获取各区间的结束时间（内部数组，长度可能大于区间数）
+     *
+     * @return 结束时间数组
+     */
+    long[] getEnds() {
+        return ends;
+    }
+
+    /**
+     * 获取各区间的功率（内部数组，长度可能大于区间数）
+     *
+     * @return 功率数组
+     */
+    double[] getWatts() {
+        return watts;
+    }
+
+    /**
+     * 用指定的能耗聚合内核计算各设备的用电量
+     *
+     * @param kernel 能耗聚合内核
+     * @return 各设备的用电量（单位：度/kW·h），按加入顺序排列
+     */
+    double[] kilowattHours(EnergyKernel kernel) {
+        double[] energies = new double[devices];
+        kernel.aggregate(getOffsets(), starts, ends, watts, Long.MIN_VALUE, Long.MAX_VALUE, energies);
+        for (int i = 0; i < devices; i++) {
+            energies[i] /= WATT_MILLIS_PER_KWH;
+        }
+        return energies;
+    }
+
+    private void append(long start, long end) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            watts = Arrays.copyOf(watts, size * 2);
+        }
+        starts[size] = start;
+        ends[size] = end;
+        watts[size] = ratedPower;
+        size++;
+    }
+}
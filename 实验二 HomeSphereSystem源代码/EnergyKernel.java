@@ -0,0 +1,59 @@
+package cn.edu.nwpu.homesphere;
+
+/**
+ * 批量能耗聚合内核接口，在基本类型数组上计算“时长×功率”之和，是家庭能耗报表（{@link HomeSphereSystem#reportEnergies}，
+ * 包括HTTP接口的{@code /api/energy}）和电费计算引擎（{@link TariffCostEngine}）为设备、房间、家庭及整个设备群出账时的计算后端，
+ * 输入由{@link EnergyIntervals}从设备的开关机时间线构造。单台设备的{@link EnergyReporting#getReport(java.util.Date, java.util.Date)}
+ * 仍由设备自身计算，不经过本内核。
+ * <p>
+ * 输入为一组运行区间：第k个区间为{@code [starts[k], ends[k])}（毫秒时间戳），期间功率为{@code watts[k]}（瓦特）。
+ * 计算时每个区间先裁剪到统计窗口{@code [windowStart, windowEnd)}内，不相交的区间贡献为0。
+ * 结果单位为“瓦特×毫秒”，除以3600000000即为度（kW·h）。
+ * <p>
+ * 实现见{@link EnergyKernels}：默认使用标量实现，向量实现需显式启用且要求JVM启用{@code jdk.incubator.vector}模块。
+ * 不同实现的累加顺序不同，结果可能在浮点舍入误差范围内略有差异。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see EnergyKernels
+ */
+public interface EnergyKernel {
+    /**
+     * 获取内核名称（用于日志和基准测试输出）
+     *
+     * @return 内核名称
+     */
+    String getName();
+
+    /**
+     * 计算下标在[from, to)内的区间裁剪到统计窗口后的“时长×功率”之和
+     *
+     * @param starts      各区间的开始时间（毫秒时间戳）
+     * @param ends        各区间的结束时间（毫秒时间戳）
+     * @param watts       各区间的功率（单位：瓦特/W）
+     * @param from        起始下标（包含）
+     * @param to          结束下标（不包含）
+     * @param windowStart 统计窗口开始时间（毫秒时间戳，包含）
+     * @param windowEnd   统计窗口结束时间（毫秒时间戳，不包含）
+     * @return “瓦特×毫秒”之和
+     */
+    double wattMillis(long[] starts, long[] ends, double[] watts, int from, int to, long windowStart, long windowEnd);
+
+    /**
+     * 按分组聚合：第b组的区间为下标{@code offsets[b]}到{@code offsets[b+1]}之间的区间（如每台设备一组）
+     *
+     * @param offsets     各组区间的起始下标（长度为组数+1，非递减）
+     * @param starts      各区间的开始时间（毫秒时间戳）
+     * @param ends        各区间的结束时间（毫秒时间戳）
+     * @param watts       各区间的功率（单位：瓦特/W）
+     * @param windowStart 统计窗口开始时间（毫秒时间戳，包含）
+     * @param windowEnd   统计窗口结束时间（毫秒时间戳，不包含）
+     * @param out         输出：各组的“瓦特×毫秒”之和，长度至少为组数
+     */
+    default void aggregate(int[] offsets, long[] starts, long[] ends, double[] watts,
+                           long windowStart, long windowEnd, double[] out) {
+        for (int b = 0; b + 1 < offsets.length; b++) {
+            out[b] = wattMillis(starts, ends, watts, offsets[b], offsets[b + 1], windowStart, windowEnd);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * 能耗聚合内核的选择器，按运行环境提供{@link EnergyKernel}实现。
+ * <p>
+ * 默认使用标量内核。向量内核只在系统属性{@code homesphere.energyKernel}设为{@code vector}、
+ * 且JVM以{@code --add-modules jdk.incubator.vector}启动时使用（模块不可用时回退到标量内核）：
+ * 它通过方法句柄调用Vector API，在不同JVM和硬件上的表现不稳定，可能与标量内核持平甚至更慢，
+ * 启用前应先在目标环境上用{@link #main(String[])}的基准测试确认。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see EnergyKernel
+ */
+public final class EnergyKernels {
+    /**
+     * 标量内核
+     */
+    private static final EnergyKernel SCALAR = new ScalarEnergyKernel();
+
+    /**
+     * 向量内核，Vector API不可用时为null
+     */
+    private static final EnergyKernel VECTOR = loadVector();
+
+    /**
+     * 默认内核
+     */
+    private static final EnergyKernel DEFAULT =
+            "vector".equals(System.getProperty("homesphere.energyKernel", "scalar").toLowerCase(Locale.ROOT)) && VECTOR != null
+                    ? VECTOR : SCALAR;
+
+    private EnergyKernels() {
+
+    }
+
+    /**
+     * 获取默认的能耗聚合内核
+     *
+     * @return 标量内核，或按系统属性启用的向量内核
+     */
+    public static EnergyKernel get() {
+        return DEFAULT;
+    }
+
+    /**
+     * 获取标量内核
+     *
+     * @return 标量内核
+     */
+    public static EnergyKernel scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * 获取向量内核
+     *
+     * @return 向量内核，JVM未启用{@code jdk.incubator.vector}模块时返回null
+     */
+    public static EnergyKernel vector() {
+        return VECTOR;
+    }
+
+    private static EnergyKernel loadVector() {
+        if (ModuleLayer.boot().findModule(VectorEnergyKernel.MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            return new VectorEnergyKernel();
+        } catch (LinkageError e) {
+            System.out.println("Vector API不可用，能耗聚合使用标量内核：" + e);
+            return null;
+        }
+    }
+
+    /**
+     * 能耗聚合基准测试：随机生成设备的运行区间，分别用标量内核和向量内核按设备聚合，比较耗时和结果
+     * （输出的耗时比大于1表示向量内核更快）
+     * <p>
+     * 运行方式：{@code java --add-modules jdk.incubator.vector cn.edu.nwpu.homesphere.EnergyKernels [设备数] [每台设备的区间数] [轮数]}
+     *
+     * @param args 可选参数：设备数（默认100000）、每台设备的区间数（默认90，约一季度每天一次开关机）、轮数（默认10）
+     */
+    public static void main(String[] args) {
+        int devices = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        int perDevice = args.length > 1 ? Integer.parseInt(args[1]) : 90;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        int intervals = devices * perDevice;
+        int[] offsets = new int[devices + 1];
+        long[] starts = new long[intervals];
+        long[] ends = new long[intervals];
+        double[] watts = new double[intervals];
+        Random random = new Random(42);
+        long day = 24 * 60 * 60 * 1000L;
+        long origin = 1_700_000_000_000L;
+        for (int d = 0; d < devices; d++) {
+            offsets[d + 1] = offsets[d] + perDevice;
+            double rated = 5 + random.nextInt(3000);
+            for (int i = offsets[d]; i < offsets[d + 1]; i++) {
+                starts[i] = origin + (i - offsets[d]) * day + random.nextInt((int) (day / 2));
+                ends[i] = starts[i] + random.nextInt((int) (day / 2));
+                watts[i] = rated;
+            }
+        }
+        long windowStart = origin + day * perDevice / 10;
+        long windowEnd = origin + day * perDevice * 9 / 10;
+        System.out.println("设备数=" + devices + "，区间数=" + intervals);
+
+        double[] expected = new double[devices];
+        double scalarMillis = benchmark(SCALAR, offsets, starts, ends, watts, windowStart, windowEnd, expected, rounds);
+        if (VECTOR == null) {
+            System.out.println("未启用jdk.incubator.vector模块，跳过向量内核（启动参数加上--add-modules jdk.incubator.vector）");
+            return;
+        }
+        double[] actual = new double[devices];
+        double vectorMillis = benchmark(VECTOR, offsets, starts, ends, watts, windowStart, windowEnd, actual, rounds);
+        double maxError = 0;
+        for (int d = 0; d < devices; d++) {
+            maxError = Math.max(maxError, Math.abs(actual[d] - expected[d]) / Math.max(1, Math.abs(expected[d])));
+        }
+        System.out.printf("耗时比（标量/向量）=%.2f，最大相对误差=%.2e%n", scalarMillis / vectorMillis, maxError);
+    }
+
+    /**
+     * 预热后多轮计时，返回最好一轮的耗时（毫秒）
+     */
+    private static double benchmark(EnergyKernel kernel, int[] offsets, long[] starts, long[] ends, double[] watts,
+                                    long windowStart, long windowEnd, double[] out, int rounds) {
+        for (int i = 0; i < 5; i++) {
+            kernel.aggregate(offsets, starts, ends, watts, windowStart, windowEnd, out);
+        }
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            kernel.aggregate(offsets, starts, ends, watts, windowStart, windowEnd, out);
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+        }
+        System.out.printf("%s：%.2f毫秒，每秒%.1f百万个区间%n", kernel.getName(), best, starts.length / best / 1000);
+        return best;
+    }
+}
@@ -0,0 +1,37 @@
+package cn.edu.nwpu.homesphere;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 能耗报告的JFR事件，记录一次{@link HomeSphereSystem#reportEnergies}的设备数、统计区间、总能耗和耗时。
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+@Name("cn.edu.nwpu.homesphere.EnergyReport")
+@Label("Energy Report")
+@Category({"HomeSphere", "Energy"})
+@Description("生成设备能耗报告")
+class EnergyReportEvent extends Event {
+    /**
+     * 参与统计的设备数
+     */
+    @Label("Device Count")
+    int deviceCount;
+
+    /**
+     * 统计区间长度（单位：毫秒）
+     */
+    @Label("Period Millis")
+    long periodMillis;
+
+    /**
+     * 各设备的能耗合计（单位：度/kW·h）
+     */
+    @Label("Energy kWh")
+    double energy;
+}
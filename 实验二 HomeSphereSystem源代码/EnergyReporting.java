@@ -13,6 +13,20 @@ import java.util.Date;
  */
 public interface EnergyReporting {
 
+    /**
+     * 获取设备名称（由{@link Device#getName()}实现），用于能耗报告中标识设备。
+     *
+     * @return 设备名称
+     */
+    String getName();
+
+    /**
+     * 获取设备编号（由{@link Device#getDeviceId()}实现），用于能耗报告中标识设备。
+     *
+     * @return 设备编号
+     */
+    int getDeviceId();
+
     /**
      * 获取设备当前的功率值。
      * <p>
@@ -0,0 +1,80 @@
+package cn.edu.nwpu.homesphere;
+
+/**
+ * 设备群类，表示整个平台上所有家庭构成的“设备群”，持有需要跨家庭共享的全局数据结构。
+ * <p>
+ * 目前包括跨家庭的设备倒排索引（{@link DeviceIndex}）、用户目录（{@link UserDirectory}）和设备群实时功率表（{@link PowerGauge}）。
+ * 所有{@link Household}默认归属同一个全局设备群。
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+public final class Fleet {
+    /**
+     * 全局唯一的设备群实例
+     */
+    private static final Fleet INSTANCE = new Fleet();
+
+    /**
+     * 跨家庭的设备倒排索引
+     */
+    private final DeviceIndex deviceIndex = new DeviceIndex();
+
+    /**
+     * 跨家庭的用户目录
+     */
+    private final UserDirectory userDirectory = new UserDirectory();
+
+    /**
+     * 设备群实时功率表，汇总所有家庭的功率表
+     */
+    private final PowerGauge powerGauge = new PowerGauge();
+
+    private Fleet() {
+
+    }
+
+    /**
+     * 获取全局设备群实例
+     *
+     * @return 设备群对象
+     */
+    public static Fleet getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 获取跨家庭的设备倒排索引
+     *
+     * @return 设备倒排索引（{@link DeviceIndex}）
+     */
+    public DeviceIndex getDeviceIndex() {
+        return deviceIndex;
+    }
+
+    /**
+     * 获取跨家庭的用户目录
+     *
+     * @return 用户目录（{@link UserDirectory}）
+     */
+    public UserDirectory getUserDirectory() {
+        return userDirectory;
+    }
+
+    /**
+     * 获取设备群实时功率表（所有家庭开机设备的额定功率之和）
+     *
+     * @return 功率表（{@link PowerGauge}）
+     */
+    public PowerGauge getPowerGauge() {
+        return powerGauge;
+    }
+
+    /**
+     * 清空设备倒排索引和用户目录，供测试在用例之间隔离全局状态
+     */
+    void reset() {
+        deviceIndex.clear();
+        userDirectory.clear();
+    }
+}
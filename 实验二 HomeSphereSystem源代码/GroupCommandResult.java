@@ -0,0 +1,135 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.Arrays;
+
+/**
+ * 群组命令执行结果类，用于汇总一次批量设备命令（如“关闭全屋灯泡”）的成功/失败情况。
+ * <p>
+ * 该类只记录成功数量、失败数量及失败设备的编号（以紧凑的int数组保存），
+ * 不保存设备对象本身，因此即使一次命令覆盖数万台设备，结果对象也只占用很小的内存。
+ * 各房间分别产生自己的结果，再通过{@link #merge(GroupCommandResult)}合并为家庭级别的汇总。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see Room#groupCommand(Class, java.util.function.Predicate, java.util.function.Consumer)
+ * @see Household#groupCommand(Class, java.util.function.Predicate, java.util.function.Consumer)
+ */
+public class GroupCommandResult {
+    /**
+     * 命令执行成功的设备数量
+     */
+    private int succeeded;
+
+    /**
+     * 命令执行失败的设备数量
+     */
+    private int failed;
+
+    /**
+     * 执行失败的设备编号，仅前{@link #failed}个元素有效
+     */
+    private int[] failedDeviceIds = new int[0];
+
+    /**
+     * 无参构造方法，创建一个空的执行结果（成功与失败数量均为0）
+     */
+    public GroupCommandResult() {
+
+    }
+
+    /**
+     * 记录一台设备执行成功
+     */
+    void recordSuccess() {
+        succeeded++;
+    }
+
+    /**
+     * 记录一台设备执行失败
+     *
+     * @param deviceId 执行失败的设备编号
+     */
+    void recordFailure(int deviceId) {
+        if (failed == failedDeviceIds.length) {
+            failedDeviceIds = Arrays.copyOf(failedDeviceIds, Math.max(4, failed * 2));
+        }
+        failedDeviceIds[failed++] = deviceId;
+    }
+
+    /**
+     * 将另一个执行结果合并到当前结果中（用于汇总各房间的结果）
+     *
+     * @param other 待合并的执行结果
+     * @return 当前结果对象本身，便于链式调用
+     */
+    GroupCommandResult merge(GroupCommandResult other) {
+        succeeded += other.succeeded;
+        if (other.failed > 0) {
+            if (failed + other.failed > failedDeviceIds.length) {
+                failedDeviceIds = Arrays.copyOf(failedDeviceIds, failed + other.failed);
+            }
+            System.arraycopy(other.failedDeviceIds, 0, failedDeviceIds, failed, other.failed);
+            failed += other.failed;
+        }
+        return this;
+    }
+
+    /**
+     * 获取执行成功的设备数量
+     *
+     * @return 成功数量
+     */
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    /**
+     * 获取执行失败的设备数量
+     *
+     * @return 失败数量
+     */
+    public int getFailed() {
+        return failed;
+    }
+
+    /**
+     * 获取本次命令覆盖的设备总数（成功数量 + 失败数量）
+     *
+     * @return 设备总数
+     */
+    public int getTotal() {
+        return succeeded + failed;
+    }
+
+    /**
+     * 判断本次命令是否全部执行成功
+     *
+     * @return {@code true}表示没有失败的设备，否则返回{@code false}
+     */
+    public boolean isAllSucceeded() {
+        return failed == 0;
+    }
+
+    /**
+     * 获取执行失败的设备编号
+     *
+     * @return 失败设备编号数组（副本），无失败时返回空数组
+     */
+    public int[] getFailedDeviceIds() {
+        return Arrays.copyOf(failedDeviceIds, failed);
+    }
+
+    /**
+     * 重写toString方法，返回执行结果的简要信息字符串
+     *
+     * @return 包含成功数量、失败数量及失败设备编号的字符串
+     */
+    @Override
+    public String toString() {
+        return "GroupCommandResult{" +
+                "succeeded=" + succeeded +
+                ", failed=" + failed +
+                ", failedDeviceIds=" + Arrays.toString(getFailedDeviceIds()) +
+                '}';
+    }
+}
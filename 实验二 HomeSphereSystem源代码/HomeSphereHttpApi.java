@@ -0,0 +1,692 @@
+package cn.edu.nwpu.homesphere;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 智能家居系统的本地HTTP/JSON接口，使{@link HomeSphereSystem}的功能可以在进程外调用。
+ * <p>
+ * 接口仅监听本机回环地址，连接的接收与读写由JDK内置HTTP服务器基于NIO选择器完成，
+ * 请求处理交给一个固定大小的线程池，处理过程只涉及内存操作，不会长时间阻塞线程。
+ * 设备动作和场景执行过程中的控制台提示信息默认关闭（见{@link ConsoleOutput}），避免所有处理线程争用{@link System#out}的锁，
+ * 调试时可通过{@link #setConsoleOutput(boolean)}打开。
+ * 除登录外，所有接口都需要在请求头中携带登录时返回的会话令牌：{@code Authorization: Bearer <token>}。
+ * 会话在一段时间内没有请求（默认30分钟，见{@link #setSessionTimeoutMillis(long)}）后失效，注销时立即失效；
+ * 会话数量达到上限时，登录会先清理已失效的会话，仍然超出时淘汰最早到期的会话。
+ * <ul>
+ *     <li>{@code POST /api/login}：表单参数loginName、password，返回会话令牌；</li>
+ *     <li>{@code POST /api/logout}：注销当前会话；</li>
+ *     <li>{@code GET /api/users|rooms|devices|scenes?cursor=&limit=}：分页列出用户、房间、设备、场景；</li>
+ *     <li>{@code POST /api/scenes/{sceneId}/trigger}：手动触发场景；</li>
+ *     <li>{@code POST /api/devices/{deviceId}/commands}：表单参数command、parameters，对设备执行一条动作指令；</li>
+ *     <li>{@code GET /api/energy?start=&end=}：统计时间段（毫秒时间戳，默认最近24小时）内各设备实际开机期间的能耗。</li>
+ * </ul>
+ * 所有响应均为UTF-8编码的JSON，出错时返回{@code {"error":"原因"}}及对应的HTTP状态码（服务器内部错误只返回概要信息，详情打印到控制台）。
+ * <p>
+ * JDK内置HTTP服务器默认不关闭Nagle算法，小响应可能被延迟发送，对延迟敏感的场合（如压测）可在启动时加上
+ * {@code -Dsun.net.httpserver.nodelay=true}。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see HttpLoadGenerator
+ */
+public class HomeSphereHttpApi implements AutoCloseable {
+    /**
+     * 分页接口的默认每页数量
+     */
+    private static final int DEFAULT_LIMIT = 50;
+
+    /**
+     * 分页接口允许的最大每页数量
+     */
+    private static final int MAX_LIMIT = 1000;
+
+    /**
+     * 能耗统计的默认时间跨度（24小时）
+     */
+    private static final long DEFAULT_ENERGY_PERIOD = TimeUnit.HOURS.toMillis(24);
+
+    /**
+     * 会话的默认空闲超时时间（30分钟）
+     */
+    private static final long DEFAULT_SESSION_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+
+    /**
+     * 同时保留的会话数上限
+     */
+    private static final int MAX_SESSIONS = 10000;
+
+    /**
+     * 被暴露的智能家居系统
+     */
+    private final HomeSphereSystem system;
+
+    /**
+     * JDK内置HTTP服务器
+     */
+    private final HttpServer server;
+
+    /**
+     * 处理请求的线程池
+     */
+    private final ExecutorService executor;
+
+    /**
+     * 会话令牌 -> 会话
+     */
+    private final Map<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+
+    /**
+     * 会话的空闲超时时间（毫秒）
+     */
+    private volatile long sessionTimeoutMillis = DEFAULT_SESSION_TIMEOUT;
+
+    /**
+     * 处理请求时是否打印设备动作和场景执行的提示信息
+     */
+    private volatile boolean consoleOutput;
+
+    /**
+     * 生成会话令牌的随机数源
+     */
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * 有参构造方法，在本机回环地址的指定端口上创建接口（需调用{@link #start()}后才开始处理请求）
+     *
+     * @param system  被暴露的智能家居系统（需已关联家庭）
+     * @param port    监听端口，0表示由系统分配空闲端口
+     * @param threads 处理请求的线程数（至少为1）
+     * @throws IOException 端口绑定失败
+     */
+    public HomeSphereHttpApi(HomeSphereSystem system, int port, int threads) throws IOException {
+        this.system = system;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "homesphere-http-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/api/login", route(this::login, false));
+        server.createContext("/api/logout", route(this::logout, true));
+        server.createContext("/api/users", route(this::users, true));
+        server.createContext("/api/rooms", route(this::rooms, true));
+        server.createContext("/api/devices", route(this::devices, true));
+        server.createContext("/api/scenes", route(this::scenes, true));
+        server.createContext("/api/energy", route(this::energy, true));
+    }
+
+    /**
+     * 开始处理请求
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * 获取实际监听的端口
+     *
+     * @return 端口号
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * 设置会话的空闲超时时间，超过该时间没有请求的会话失效（对已有会话同样生效）
+     *
+     * @param sessionTimeoutMillis 空闲超时时间（毫秒，至少为1）
+     * @throws IllegalArgumentException 超时时间小于1
+     */
+    public void setSessionTimeoutMillis(long sessionTimeoutMillis) {
+        if (sessionTimeoutMillis < 1) {
+            throw new IllegalArgumentException("会话超时时间至少为1毫秒：" + sessionTimeoutMillis);
+        }
+        this.sessionTimeoutMillis = sessionTimeoutMillis;
+    }
+
+    /**
+     * 设置处理请求时是否打印设备动作和场景执行的提示信息（默认不打印）
+     *
+     * @param consoleOutput {@code true}表示打印
+     */
+    public void setConsoleOutput(boolean consoleOutput) {
+        this.consoleOutput = consoleOutput;
+    }
+
+    /**
+     * 获取当前保留的会话数（含尚未清理的已失效会话）
+     *
+     * @return 会话数
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * 停止接口并关闭线程池，所有会话随之失效
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+        sessions.clear();
+    }
+
+    /**
+     * 接口处理逻辑
+     */
+    @FunctionalInterface
+    private interface Endpoint {
+        /**
+         * 处理一次请求
+         *
+         * @param exchange 请求
+         * @param user     已登录的用户（登录接口为null）
+         * @param json     用于写入响应JSON的缓冲区
+         * @return HTTP状态码
+         */
+        int handle(HttpExchange exchange, User user, StringBuilder json) throws Exception;
+    }
+
+    /**
+     * 处理接口时出现的客户端错误（如参数无效、资源不存在）
+     */
+    private static final class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * 登录会话，记录用户及最近一次请求的时间
+     */
+    private static final class Session {
+        final User user;
+        volatile long lastAccess;
+
+        Session(User user, long now) {
+            this.user = user;
+            this.lastAccess = now;
+        }
+    }
+
+    /**
+     * 按令牌查找未失效的会话并刷新其访问时间，已失效的会话顺便移除
+     *
+     * @param token 会话令牌
+     * @return 登录用户，会话不存在或已失效时返回null
+     */
+    private User touch(String token) {
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - session.lastAccess > sessionTimeoutMillis) {
+            sessions.remove(token, session);
+            return null;
+        }
+        session.lastAccess = now;
+        return session.user;
+    }
+
+    /**
+     * 为新会话腾出位置：先清理已失效的会话，仍达到上限时淘汰最早到期的会话
+     *
+     * @param now 当前时间
+     */
+    private void evictSessions(long now) {
+        if (sessions.size() < MAX_SESSIONS) {
+            return;
+        }
+        long timeout = sessionTimeoutMillis;
+        sessions.values().removeIf(session -> now - session.lastAccess > timeout);
+        while (sessions.size() >= MAX_SESSIONS) {
+            String oldest = null;
+            long oldestAccess = Long.MAX_VALUE;
+            for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+                if (entry.getValue().lastAccess < oldestAccess) {
+                    oldest = entry.getKey();
+                    oldestAccess = entry.getValue().lastAccess;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            sessions.remove(oldest);
+        }
+    }
+
+    /**
+     * 将接口处理逻辑包装为HTTP处理器：校验会话、统一输出JSON及错误信息
+     *
+     * @param endpoint     接口处理逻辑
+     * @param requireLogin 是否需要登录
+     * @return HTTP处理器
+     */
+    private HttpHandler route(Endpoint endpoint, boolean requireLogin) {
+        return exchange -> {
+            StringBuilder json = new StringBuilder(256);
+            int status;
+            try {
+                User user = null;
+                if (requireLogin) {
+                    user = touch(token(exchange));
+                    if (user == null) {
+                        throw new ApiException(401, "未登录或会话已失效");
+                    }
+                }
+                User actor = user;
+                status = consoleOutput ? endpoint.handle(exchange, actor, json)
+                        : ConsoleOutput.muted(() -> endpoint.handle(exchange, actor, json));
+            } catch (ApiException e) {
+                status = e.status;
+                json.setLength(0);
+                json.append("{\"error\":");
+                appendString(json, e.getMessage());
+                json.append('}');
+            } catch (Exception e) {
+                System.out.println("接口处理失败：" + exchange.getRequestMethod() + " " + exchange.getRequestURI() + "，" + e);
+                status = 500;
+                json.setLength(0);
+                json.append("{\"error\":\"服务器内部错误\"}");
+            }
+            byte[] body = json.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        };
+    }
+
+    /**
+     * 登录：校验用户名和密码，成功后返回会话令牌
+     */
+    private int login(HttpExchange exchange, User ignored, StringBuilder json) throws IOException {
+        requireMethod(exchange, "POST");
+        Map<String, String> form = parseForm(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        User user = system.authenticate(form.get("loginName"), form.get("password"));
+        if (user == null) {
+            throw new ApiException(401, "用户名或密码错误");
+        }
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        StringBuilder token = new StringBuilder(32);
+        for (byte b : bytes) {
+            token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        long now = System.currentTimeMillis();
+        evictSessions(now);
+        sessions.put(token.toString(), new Session(user, now));
+        json.append("{\"token\":\"").append(token).append("\",\"user\":");
+        appendUser(json, user);
+        json.append('}');
+        return 200;
+    }
+
+    /**
+     * 注销当前会话
+     */
+    private int logout(HttpExchange exchange, User user, StringBuilder json) {
+        requireMethod(exchange, "POST");
+        sessions.remove(token(exchange));
+        json.append("{\"loggedOut\":true}");
+        return 200;
+    }
+
+    /**
+     * 分页列出用户
+     */
+    private int users(HttpExchange exchange, User user, StringBuilder json) {
+        requireMethod(exchange, "GET");
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        Page<User> page = system.getHousehold().listUsers(cursor(query), limit(query));
+        json.append("{\"items\":[");
+        for (int i = 0; i < page.getItems().size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            appendUser(json, page.getItems().get(i));
+        }
+        appendPageEnd(json, page);
+        return 200;
+    }
+
+    /**
+     * 分页列出房间
+     */
+    private int rooms(HttpExchange exchange, User user, StringBuilder json) {
+        requireMethod(exchange, "GET");
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        Page<Room> page = system.getHousehold().listRooms(cursor(query), limit(query));
+        json.append("{\"items\":[");
+        for (int i = 0; i < page.getItems().size(); i++) {
+            Room room = page.getItems().get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"roomId\":").append(room.getRoomId()).append(",\"name\":");
+            appendString(json, room.getName());
+            json.append(",\"area\":").append(room.getArea())
+                    .append(",\"deviceCount\":").append(room.getDeviceCount())
+                    .append(",\"poweredOnCount\":").append(room.getPoweredOnCount())
+                    .append(",\"onlineCount\":").append(room.getOnlineCount())
+                    .append(",\"powerDraw\":").append(room.getPowerDraw()).append('}');
+        }
+        appendPageEnd(json, page);
+        return 200;
+    }
+
+    /**
+     * 分页列出设备，或对单台设备执行动作指令（/api/devices/{deviceId}/commands）
+     */
+    private int devices(HttpExchange exchange, User user, StringBuilder json) throws IOException {
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        if (path.length == 5 && path[4].equals("commands")) {
+            return command(exchange, user, parseId(path[3]), json);
+        }
+        if (path.length != 3) {
+            throw new ApiException(404, "接口不存在：" + exchange.getRequestURI().getPath());
+        }
+        requireMethod(exchange, "GET");
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        Page<Device> page = system.getHousehold().listDevices(cursor(query), limit(query));
+        json.append("{\"items\":[");
+        for (int i = 0; i < page.getItems().size(); i++) {
+            Device device = page.getItems().get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"deviceId\":").append(device.getDeviceId()).append(",\"name\":");
+            appendString(json, device.getName());
+            json.append(",\"type\":\"").append(device.getClass().getSimpleName())
+                    .append("\",\"power\":").append(device.isPowerStatus())
+                    .append(",\"online\":").append(device.isOnline())
+                    .append(",\"roomId\":").append(device.getRoom() == null ? "null" : device.getRoom().getRoomId())
+                    .append('}');
+        }
+        appendPageEnd(json, page);
+        return 200;
+    }
+
+    /**
+     * 以当前会话用户的身份对单台设备执行一条动作指令，无权操作该设备时返回403
+     */
+    private int command(HttpExchange exchange, User user, int deviceId, StringBuilder json) throws IOException {
+        requireMethod(exchange, "POST");
+        Device device = system.getHousehold().getDevice(deviceId);
+        if (device == null) {
+            throw new ApiException(404, "设备不存在：" + deviceId);
+        }
+        if (!PermissionTable.isPermitted(user, device)) {
+            throw new ApiException(403, PermissionTable.denied(user, device));
+        }
+        Map<String, String> form = parseForm(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+        String command = form.get("command");
+        if (ActionHandlers.resolve(command) == null) {
+            throw new ApiException(400, "不支持的动作指令：" + command);
+        }
+        DeviceAction action;
+        try {
+            action = new DeviceAction(command, form.getOrDefault("parameters", ""), device);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, e.getMessage());
+        }
+        boolean success = PermissionTable.runAs(user, action::run);
+        json.append("{\"deviceId\":").append(deviceId).append(",\"command\":");
+        appendString(json, command);
+        json.append(",\"success\":").append(success).append('}');
+        return success ? 200 : 409;
+    }
+
+    /**
+     * 分页列出场景，或以当前会话用户的身份手动触发单个场景（/api/scenes/{sceneId}/trigger），无权操作场景中的设备时返回403
+     */
+    private int scenes(HttpExchange exchange, User user, StringBuilder json) throws NoSuchMethodException {
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        if (path.length == 5 && path[4].equals("trigger")) {
+            requireMethod(exchange, "POST");
+            int sceneId = parseId(path[3]);
+            AutomationScene scene = system.getHousehold().getAutoScene(sceneId);
+            if (scene == null) {
+                throw new ApiException(404, "场景不存在：" + sceneId);
+            }
+            Device denied = PermissionTable.runAs(user, scene::trigger);
+            if (denied != null) {
+                throw new ApiException(403, PermissionTable.denied(user, denied));
+            }
+            json.append("{\"sceneId\":").append(sceneId).append(",\"triggered\":true}");
+            return 200;
+        }
+        if (path.length != 3) {
+            throw new ApiException(404, "接口不存在：" + exchange.getRequestURI().getPath());
+        }
+        requireMethod(exchange, "GET");
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        Page<AutomationScene> page = system.getHousehold().listAutoScenes(cursor(query), limit(query));
+        json.append("{\"items\":[");
+        for (int i = 0; i < page.getItems().size(); i++) {
+            AutomationScene scene = page.getItems().get(i);
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"sceneId\":").append(scene.getSceneId()).append(",\"name\":");
+            appendString(json, scene.getName());
+            json.append(",\"description\":");
+            appendString(json, scene.getDescription());
+            json.append(",\"steps\":").append(scene.compile().size()).append('}');
+        }
+        appendPageEnd(json, page);
+        return 200;
+    }
+
+    /**
+     * 统计时间段内各能耗报告设备的能耗
+     */
+    private int energy(HttpExchange exchange, User user, StringBuilder json) {
+        requireMethod(exchange, "GET");
+        Map<String, String> query = parseForm(exchange.getRequestURI().getRawQuery());
+        long end = parseLong(query.get("end"), System.currentTimeMillis());
+        long start = parseLong(query.get("start"), end - DEFAULT_ENERGY_PERIOD);
+        if (start > end) {
+            throw new ApiException(400, "开始时间不能晚于结束时间");
+        }
+        Collection<EnergyReporting> reportings = system.getHousehold().getCapabilities().devicesWith(EnergyReporting.class);
+        double[] energies = system.reportEnergies(reportings, new Date(start), new Date(end));
+        double total = 0;
+        json.append("{\"items\":[");
+        boolean first = true;
+        int i = 0;
+        for (EnergyReporting reporting : reportings) {
+            double energy = energies[i++];
+            total += energy;
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"deviceId\":").append(reporting.getDeviceId()).append(",\"name\":");
+            appendString(json, reporting.getName());
+            json.append(",\"energy\":").append(energy).append('}');
+        }
+        json.append("],\"start\":").append(start).append(",\"end\":").append(end)
+                .append(",\"total\":").append(total).append('}');
+        return 200;
+    }
+
+    /**
+     * 输出用户信息（不含密码）
+     */
+    private static void appendUser(StringBuilder json, User user) {
+        json.append("{\"userId\":").append(user.getUserId()).append(",\"loginName\":");
+        appendString(json, user.getLoginName());
+        json.append(",\"userName\":");
+        appendString(json, user.getUserName());
+        json.append(",\"admin\":").append(user.isAdmin()).append('}');
+    }
+
+    /**
+     * 输出分页结果的结尾部分（下一页游标及是否还有下一页）
+     */
+    private static void appendPageEnd(StringBuilder json, Page<?> page) {
+        json.append("],\"nextCursor\":").append(page.getNextCursor())
+                .append(",\"hasMore\":").append(page.hasMore()).append('}');
+    }
+
+    /**
+     * 以JSON字符串的形式输出文本（转义引号、反斜杠及控制字符），null输出为JSON的null
+     *
+     * @param json 输出缓冲区
+     * @param text 文本
+     */
+    static void appendString(StringBuilder json, String text) {
+        if (text == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * 校验请求方法
+     */
+    private static void requireMethod(HttpExchange exchange, String method) {
+        if (!exchange.getRequestMethod().equals(method)) {
+            throw new ApiException(405, "请使用" + method + "方法");
+        }
+    }
+
+    /**
+     * 从请求头中取出会话令牌
+     */
+    private static String token(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return "";
+        }
+        return header.substring(7).trim();
+    }
+
+    /**
+     * 解析application/x-www-form-urlencoded格式的参数（URL查询串或请求体）
+     *
+     * @param raw 原始参数串，可为null
+     * @return 参数名 -> 参数值
+     * @throws ApiException 参数中含有无效的%转义序列（状态码400）
+     */
+    static Map<String, String> parseForm(String raw) {
+        Map<String, String> result = new HashMap<String, String>();
+        if (raw == null || raw.isEmpty()) {
+            return result;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            try {
+                result.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+            } catch (IllegalArgumentException e) {
+                throw new ApiException(400, "参数编码无效：" + pair);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 读取分页游标，未指定时为第一页
+     */
+    private static int cursor(Map<String, String> query) {
+        String cursor = query.get("cursor");
+        return cursor == null ? Page.FIRST : parseId(cursor);
+    }
+
+    /**
+     * 读取每页数量，未指定时使用默认值
+     */
+    private static int limit(Map<String, String> query) {
+        String limit = query.get("limit");
+        int value = limit == null ? DEFAULT_LIMIT : parseId(limit);
+        if (value < 1 || value > MAX_LIMIT) {
+            throw new ApiException(400, "每页数量应在1-" + MAX_LIMIT + "之间：" + value);
+        }
+        return value;
+    }
+
+    /**
+     * 解析路径或参数中的整数编号
+     */
+    private static int parseId(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "不是有效的整数：" + text);
+        }
+    }
+
+    /**
+     * 解析可选的长整数参数
+     */
+    private static long parseLong(String text, long defaultValue) {
+        if (text == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, "不是有效的时间戳：" + text);
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package cn.edu.nwpu.homesphere;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 系统运行指标类，统计登录、场景触发、设备动作执行和能耗报告的次数与耗时，并以JMX MBean的形式对外暴露。
+ * <p>
+ * 计数使用分段累加器（{@link LongAdder}），耗时使用{@link LatencyHistogram}，记录指标时不分配对象、不加锁。
+ * 类加载时自动注册到平台MBeanServer，对象名为：
+ * <ul>
+ *     <li>{@code cn.edu.nwpu.homesphere:type=HomeSphereMetrics}（计数）</li>
+ *     <li>{@code cn.edu.nwpu.homesphere:type=Latency,name=login|sceneTrigger|actionExecute|energyReport}（耗时分布）</li>
+ * </ul>
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+public final class HomeSphereMetrics implements HomeSphereMetricsMBean {
+    /**
+     * 全局唯一的指标实例
+     */
+    private static final HomeSphereMetrics INSTANCE = new HomeSphereMetrics();
+
+    /**
+     * 登录成功次数
+     */
+    private final LongAdder loginSuccesses = new LongAdder();
+
+    /**
+     * 登录失败次数
+     */
+    private final LongAdder loginFailures = new LongAdder();
+
+    /**
+     * 设备动作执行失败次数
+     */
+    private final LongAdder actionFailures = new LongAdder();
+
+    /**
+     * 登录耗时分布
+     */
+    private final LatencyHistogram loginLatency = new LatencyHistogram();
+
+    /**
+     * 场景触发耗时分布
+     */
+    private final LatencyHistogram sceneLatency = new LatencyHistogram();
+
+    /**
+     * 设备动作执行耗时分布
+     */
+    private final LatencyHistogram actionLatency = new LatencyHistogram();
+
+    /**
+     * 能耗报告生成耗时分布
+     */
+    private final LatencyHistogram reportLatency = new LatencyHistogram();
+
+    static {
+        INSTANCE.registerMBeans();
+    }
+
+    private HomeSphereMetrics() {
+
+    }
+
+    /**
+     * 获取全局指标实例
+     *
+     * @return 指标对象
+     */
+    public static HomeSphereMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * 记录一次登录
+     *
+     * @param success    是否登录成功
+     * @param startNanos 登录开始时由{@link System#nanoTime()}得到的时刻
+     */
+    void recordLogin(boolean success, long startNanos) {
+        loginLatency.recordSince(startNanos);
+        if (success) {
+            loginSuccesses.increment();
+        } else {
+            loginFailures.increment();
+        }
+    }
+
+    /**
+     * 记录一次场景触发
+     *
+     * @param startNanos 触发开始时由{@link System#nanoTime()}得到的时刻
+     */
+    void recordSceneTrigger(long startNanos) {
+        sceneLatency.recordSince(startNanos);
+    }
+
+    /**
+     * 记录一次设备动作执行
+     *
+     * @param success    是否执行成功
+     * @param startNanos 执行开始时由{@link System#nanoTime()}得到的时刻
+     */
+    void recordAction(boolean success, long startNanos) {
+        actionLatency.recordSince(startNanos);
+        if (!success) {
+            actionFailures.increment();
+        }
+    }
+
+    /**
+     * 记录一次能耗报告生成
+     *
+     * @param startNanos 生成开始时由{@link System#nanoTime()}得到的时刻
+     */
+    void recordEnergyReport(long startNanos) {
+        reportLatency.recordSince(startNanos);
+    }
+
+    @Override
+    public long getLoginSuccessCount() {
+        return loginSuccesses.sum();
+    }
+
+    @Override
+    public long getLoginFailureCount() {
+        return loginFailures.sum();
+    }
+
+    @Override
+    public long getSceneTriggerCount() {
+        return sceneLatency.getCount();
+    }
+
+    @Override
+    public long getActionCount() {
+        return actionLatency.getCount();
+    }
+
+    @Override
+    public long getActionFailureCount() {
+        return actionFailures.sum();
+    }
+
+    @Override
+    public long getEnergyReportCount() {
+        return reportLatency.getCount();
+    }
+
+    /**
+     * 获取登录耗时分布
+     *
+     * @return 耗时直方图
+     */
+    public LatencyHistogram getLoginLatency() {
+        return loginLatency;
+    }
+
+    /**
+     * 获取场景触发耗时分布
+     *
+     * @return 耗时直方图
+     */
+    public LatencyHistogram getSceneLatency() {
+        return sceneLatency;
+    }
+
+    /**
+     * 获取设备动作执行耗时分布
+     *
+     * @return 耗时直方图
+     */
+    public LatencyHistogram getActionLatency() {
+        return actionLatency;
+    }
+
+    /**
+     * 获取能耗报告生成耗时分布
+     *
+     * @return 耗时直方图
+     */
+    public LatencyHistogram getReportLatency() {
+        return reportLatency;
+    }
+
+    /**
+     * 将计数与各耗时分布注册到平台MBeanServer；注册失败（如重复注册）只打印提示，不影响系统运行
+     */
+    private void registerMBeans() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            register(server, "cn.edu.nwpu.homesphere:type=HomeSphereMetrics", this);
+            register(server, "cn.edu.nwpu.homesphere:type=Latency,name=login", loginLatency);
+            register(server, "cn.edu.nwpu.homesphere:type=Latency,name=sceneTrigger", sceneLatency);
+            register(server, "cn.edu.nwpu.homesphere:type=Latency,name=actionExecute", actionLatency);
+            register(server, "cn.edu.nwpu.homesphere:type=Latency,name=energyReport", reportLatency);
+        } catch (JMException | SecurityException e) {
+            System.out.println("运行指标MBean注册失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 注册单个MBean，已存在同名MBean时跳过
+     */
+    private static void register(MBeanServer server, String name, Object mbean) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        if (!server.isRegistered(objectName)) {
+            server.registerMBean(mbean, objectName);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package cn.edu.nwpu.homesphere;
+
+/**
+ * 系统运行指标的JMX管理接口，通过JConsole/VisualVM等工具查看登录、场景触发、动作执行和能耗报告的计数。
+ * <p>
+ * 各类操作的耗时分布通过单独注册的{@link LatencyHistogramMBean}查看。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see HomeSphereMetrics
+ */
+public interface HomeSphereMetricsMBean {
+
+    /**
+     * 获取登录成功次数
+     *
+     * @return 登录成功次数
+     */
+    long getLoginSuccessCount();
+
+    /**
+     * 获取登录失败次数
+     *
+     * @return 登录失败次数
+     */
+    long getLoginFailureCount();
+
+    /**
+     * 获取场景触发次数
+     *
+     * @return 场景触发次数
+     */
+    long getSceneTriggerCount();
+
+    /**
+     * 获取设备动作执行次数（含失败）
+     *
+     * @return 动作执行次数
+     */
+    long getActionCount();
+
+    /**
+     * 获取设备动作执行失败次数
+     *
+     * @return 动作执行失败次数
+     */
+    long getActionFailureCount();
+
+    /**
+     * 获取能耗报告生成次数
+     *
+     * @return 能耗报告生成次数
+     */
+    long getEnergyReportCount();
+}
@@ -1,4 +1,5 @@
 package cn.edu.nwpu.homesphere;
+import java.util.Collection;
 import java.util.List;
 import java.util.Date;
 
@@ -12,6 +13,11 @@ import java.util.Date;
  * @version 1.0
  */
 public class HomeSphereSystem {
+    /**
+     * 信息展示时每次从家庭中分页读取的元素数量
+     */
+    private static final int DISPLAY_PAGE_SIZE = 100;
+
     /**
      * 系统当前管理的家庭对象，包含家庭下的用户、房间、设备及场景信息
      */
@@ -61,21 +67,49 @@ public class HomeSphereSystem {
     /**
      * 用户登录功能，验证用户名密码并设置当前登录用户
      * <p>
-     * 遍历系统管理家庭下的所有用户，匹配用户名（loginName）和密码（loginPassword）；
+     * 通过{@link #authenticate(String, String)}匹配用户名（loginName）和密码（loginPassword）；
      * 匹配成功则打印“登录成功”并更新currentUser，匹配失败则打印“系统中没有该用户，请先注册”。
      *
      * @param loginName  用户登录名
      * @param loginPassword 用户登录密码
      */
     public void login(String loginName, String loginPassword) {
-        for (User user : household.getUsers()) {
-            if (user.getLoginName().equals(loginName) && user.getLoginPassword().equals(loginPassword)) {
-                System.out.println("登录成功！");
-                currentUser = user;
-            } else {
-                System.out.println("系统中没有该用户，请先注册！");
-            }
+        User user = authenticate(loginName, loginPassword);
+        if (user != null) {
+            System.out.println("登录成功！");
+            currentUser = user;
+        } else {
+            System.out.println("系统中没有该用户，请先注册！");
+        }
+    }
+
+    /**
+     * 校验用户名和密码，不改变当前登录用户（供{@link #login(String, String)}及{@link HomeSphereHttpApi}使用）
+     * <p>
+     * 登录名通过全局用户目录（{@link UserDirectory#findByLogin(String)}）查找，不区分大小写，
+     * 找到的用户必须是当前家庭的成员，再以{@link User#checkPassword(String)}校验密码。
+     * 每次校验的结果和耗时会记录到运行指标（{@link HomeSphereMetrics}）和JFR事件（{@link LoginEvent}）。
+     *
+     * @param loginName     用户登录名
+     * @param loginPassword 用户登录密码
+     * @return 匹配的用户，用户名或密码错误时返回null
+     */
+    User authenticate(String loginName, String loginPassword) {
+        LoginEvent event = new LoginEvent();
+        event.begin();
+        long start = System.nanoTime();
+        User matched = Fleet.getInstance().getUserDirectory().findByLogin(loginName);
+        if (matched != null && (household.getUser(matched.getUserId()) != matched || !matched.checkPassword(loginPassword))) {
+            matched = null;
         }
+        boolean success = matched != null;
+        HomeSphereMetrics.getInstance().recordLogin(success, start);
+        if (event.shouldCommit()) {
+            event.loginName = loginName;
+            event.success = success;
+            event.commit();
+        }
+        return matched;
     }
 
     /**
@@ -117,7 +151,7 @@ public class HomeSphereSystem {
        int newId = lastId + 1;
 
         User newUser = new User(newId, loginName, loginPassword, userName, email);
-        household.getUsers().add(newUser);
+        household.addUser(newUser);
 
         return newUser;
 
@@ -126,83 +160,144 @@ public class HomeSphereSystem {
     /**
      * 展示系统管理家庭下的所有用户信息
      * <p>
-     * 遍历家庭的用户列表，打印每个用户的详细信息（依赖{@link User#toString()}方法）。
+     * 按用户编号分页读取家庭成员（每页{@value #DISPLAY_PAGE_SIZE}个），打印每个用户的详细信息（依赖{@link User#toString()}方法）。
      */
     void displayUsers(){
-        for (User user : household.getUsers()) {
-            System.out.println(user);
-        }
+        int cursor = Page.FIRST;
+        Page<User> page;
+        do {
+            page = household.listUsers(cursor, DISPLAY_PAGE_SIZE);
+            for (User user : page.getItems()) {
+                System.out.println(user);
+            }
+            cursor = page.getNextCursor();
+        } while (page.hasMore());
     }
 
     /**
      * 展示系统管理家庭下的所有房间信息
      * <p>
-     * 遍历家庭的房间列表，打印每个房间的详细信息（依赖{@link Room#toString()}方法）。
+     * 按房间编号分页读取房间（每页{@value #DISPLAY_PAGE_SIZE}个），打印每个房间的详细信息（依赖{@link Room#toString()}方法）。
      */
     void displayRooms(){
-        for (Room room : household.getRooms()) {
-            System.out.println(room);
-        }
+        int cursor = Page.FIRST;
+        Page<Room> page;
+        do {
+            page = household.listRooms(cursor, DISPLAY_PAGE_SIZE);
+            for (Room room : page.getItems()) {
+                System.out.println(room);
+            }
+            cursor = page.getNextCursor();
+        } while (page.hasMore());
     }
 
     /**
      * 展示系统管理家庭下的所有设备信息
      * <p>
-     * 先通过家庭的{@link Household#listAllDevices()}获取所有设备，再遍历打印每个设备的详细信息（依赖{@link Device#toString()}方法）。
+     * 按设备编号分页读取家庭内所有设备（每页{@value #DISPLAY_PAGE_SIZE}个），打印每个设备的详细信息（依赖{@link Device#toString()}方法），
+     * 不会一次性复制出全部设备。
      */
     void displayDevices(){
-        List<Device> allDevices = this.household.listAllDevices();
-        for (Device device : allDevices) {
-            System.out.println(device);
-        }
+        int cursor = Page.FIRST;
+        Page<Device> page;
+        do {
+            page = household.listDevices(cursor, DISPLAY_PAGE_SIZE);
+            for (Device device : page.getItems()) {
+                System.out.println(device);
+            }
+            cursor = page.getNextCursor();
+        } while (page.hasMore());
     }
 
     /**
      * 展示系统管理家庭下的所有自动化场景信息
      * <p>
-     * 遍历家庭的自动化场景列表，打印每个场景的详细信息（依赖{@link AutomationScene#toString()}方法）。
+     * 按场景编号分页读取自动化场景（每页{@value #DISPLAY_PAGE_SIZE}个），打印每个场景的详细信息（依赖{@link AutomationScene#toString()}方法）。
      */
     void displayAutoScenes(){
-        List<AutomationScene> allScenes = this.household.getAutoScenes();
-        for (AutomationScene scene : allScenes) {
-            System.out.println(scene);
-        }
+        int cursor = Page.FIRST;
+        Page<AutomationScene> page;
+        do {
+            page = household.listAutoScenes(cursor, DISPLAY_PAGE_SIZE);
+            for (AutomationScene scene : page.getItems()) {
+                System.out.println(scene);
+            }
+            cursor = page.getNextCursor();
+        } while (page.hasMore());
     }
 
     /**
-     * 展示指定时间段内，家庭中空调（AirConditioner）和灯泡（LightBulb）的能耗情况
+     * 展示指定时间段内，家庭中所有能耗报告设备（如空调、灯泡）的能耗情况
      * <p>
-     * 遍历家庭所有设备，筛选出空调和灯泡类型的设备，调用其{@link EnergyReporting#getReport(Date, Date)}方法计算能耗并打印。
+     * 通过家庭的能力注册表（{@link CapabilityRegistry}）直接获取实现了{@link EnergyReporting}的设备，
+     * 由{@link #reportEnergies(Collection, Date, Date)}一次算出各设备的能耗并打印，无需遍历全部设备或判断设备类型。
      *
      * @param startTime 能耗统计的开始时间
      * @param endTime   能耗统计的结束时间
      */
     void displayEnergyReportings(Date startTime, Date endTime){
-        List<Device> allDevices = this.household.listAllDevices();
-        for (Device device : allDevices) {
-            if(device instanceof AirConditioner){
-                System.out.println("设备+"+device.getName()+"在这段时间的能耗为："+((AirConditioner)device).getReport(startTime,endTime)+"度");
-            }
-            else if(device instanceof LightBulb){
-                System.out.println("设备+"+device.getName()+"在这段时间的能耗为："+((LightBulb)device).getReport(startTime,endTime)+"度");
+        Collection<EnergyReporting> reportings = this.household.getCapabilities().devicesWith(EnergyReporting.class);
+        double[] reports = reportEnergies(reportings, startTime, endTime);
+        int i = 0;
+        for (EnergyReporting reporting : reportings) {
+            System.out.println("设备+"+reporting.getName()+"在这段时间的能耗为："+reports[i++]+"度");
+        }
+    }
+
+    /**
+     * 计算一组能耗报告设备在指定时间段内的能耗，并记录运行指标和JFR事件
+     * <p>
+     * 从各设备的开关机时间线提取时间段内的开机区间（{@link EnergyIntervals}），按额定功率由默认的能耗聚合内核
+     * （{@link EnergyKernels#get()}）批量计算，结果与分时电价出账（{@link TariffCostEngine#bill}）的用电量一致。
+     * 与{@link EnergyReporting#getReport(Date, Date)}按整个时间段计算不同，这里只统计设备实际开机的时间。
+     * 每次调用记为一次能耗报告（{@link HomeSphereMetrics}、{@link EnergyReportEvent}）。
+     *
+     * @param reportings 能耗报告设备（均为{@link Device}）
+     * @param startTime  能耗统计的开始时间（包含）
+     * @param endTime    能耗统计的结束时间（不包含）
+     * @return 各设备的能耗（单位：度），按{@code reportings}的遍历顺序排列
+     */
+    double[] reportEnergies(Collection<? extends EnergyReporting> reportings, Date startTime, Date endTime) {
+        EnergyReportEvent event = new EnergyReportEvent();
+        event.begin();
+        long start = System.nanoTime();
+        EnergyIntervals intervals = new EnergyIntervals();
+        for (EnergyReporting reporting : reportings) {
+            intervals.addDevice((Device) reporting, startTime.getTime(), endTime.getTime());
+        }
+        double[] reports = intervals.kilowattHours(EnergyKernels.get());
+        HomeSphereMetrics.getInstance().recordEnergyReport(start);
+        if (event.shouldCommit()) {
+            event.deviceCount = reports.length;
+            event.periodMillis = endTime.getTime() - startTime.getTime();
+            for (double report : reports) {
+                event.energy += report;
             }
+            event.commit();
         }
+        return reports;
     }
 
     /**
      * 根据场景ID手动触发指定的自动化场景
      * <p>
-     * 遍历家庭的自动化场景列表，找到场景ID匹配的场景，调用其{@link AutomationScene#manualTrig()}方法执行场景动作。
+     * 按场景编号查找自动化场景（{@link Household#getAutoScene(int)}），以当前登录用户的身份（{@link PermissionTable#runAs(User, PermissionTable.Action)}）
+     * 调用其{@link AutomationScene#manualTrig()}方法执行场景动作。未登录时不触发场景，只提示先登录。
      *
      * @param sceneId 需触发的自动化场景编号
      * @throws NoSuchMethodException 若场景执行动作时出现方法调用异常（依赖{@link AutomationScene#manualTrig()}的异常抛出）
      */
     void manualTrigSceneById(int sceneId) throws NoSuchMethodException {
-        List<AutomationScene>  allScenes = this.household.getAutoScenes();
-        for (AutomationScene scene : allScenes) {
-            if(scene.getSceneId() == sceneId){
+        if (currentUser == null) {
+            System.out.println("未登录，请先登录后再触发场景");
+            return;
+        }
+        AutomationScene scene = this.household.getAutoScene(sceneId);
+        if (scene != null) {
+            PermissionTable.runAs(currentUser, () -> {
                 scene.manualTrig();
-            }
+                return null;
+            });
         }
     }
 
@@ -5,8 +5,15 @@ import org.junit.Test;
 import org.junit.After;
 import static org.junit.Assert.*;
 
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Random;
 
 public class HomeSphereSystemTest {
 	private HomeSphereSystem system;
@@ -25,6 +32,7 @@ public class HomeSphereSystemTest {
 
 	@Before
 	public void setUp() {
+		Fleet.getInstance().reset();
 		household = new Household(1, "友谊西路127号");
 		system = new HomeSphereSystem(household);
 		// 创建制造商
@@ -294,7 +302,7 @@ public class HomeSphereSystemTest {
 		assertEquals(2, actions.size());
 
 		// 测试手动触发场景
-		eveningScene.manualTrig(); // 应该执行两个动作
+		PermissionTable.runAs(admin, eveningScene::trigger); // 应该执行两个动作
 	}
 
 	@Test
@@ -307,8 +315,11 @@ public class HomeSphereSystemTest {
 		assertEquals("20.0", action.getParameters());
 		assertEquals(ac, action.getDevice());
 
-		// 测试执行动作
-		action.execute(); // 应该设置空调目标温度为20.0
+		// 测试执行动作：没有绑定操作者时被拒绝，以管理员身份执行成功
+		double before = ac.getTargetTemp();
+		action.execute();
+		assertEquals(before, ac.getTargetTemp(), 0.01);
+		assertTrue(PermissionTable.runAs(admin, action::run)); // 应该设置空调目标温度为20.0
 		assertEquals(20.0, ac.getTargetTemp(), 0.01);
 	}
 
@@ -350,6 +361,13 @@ public class HomeSphereSystemTest {
 		system.login("hxt", "123456"); // 应该打印登录消息
 		assertNotNull(system.getCurrentUser());
 
+		// 登录名与用户目录一致，不区分大小写；其他家庭的用户不能登录本家庭
+		assertSame(regularUser, system.authenticate("HXT", "123456"));
+		Household other = new Household(2, "其他家庭");
+		other.addUser(new User(1, "outsider", "654321", "外人", "outsider@nwpu.edu.cn"));
+		assertNull(system.authenticate("outsider", "654321"));
+		assertNotNull(new HomeSphereSystem(other).authenticate("outsider", "654321"));
+
 		// 测试显示功能
 		system.displayUsers(); // 应该打印用户列表
 		system.displayRooms(); // 应该打印房间列表
@@ -368,4 +386,1424 @@ public class HomeSphereSystemTest {
 		assertNull(system.getCurrentUser());
 	}
 
-}
\ No newline at end of file
+	@Test
+	public void testGroupCommand() {
+		// 测试没有绑定操作者时全部设备记为失败
+		GroupCommandResult result = household.groupPower(Device.class, true);
+		assertEquals(3, result.getFailed());
+		assertFalse(ac.isPowerStatus());
+
+		// 测试批量开机
+		result = PermissionTable.runAs(admin, () -> household.groupPower(Device.class, true));
+		assertEquals(3, result.getSucceeded());
+		assertTrue(result.isAllSucceeded());
+		assertTrue(ac.isPowerStatus());
+		assertTrue(lock.isPowerStatus());
+
+		// 测试按类型批量关机
+		result = PermissionTable.runAs(admin, () -> household.groupPower(LightBulb.class, false));
+		assertEquals(1, result.getTotal());
+		assertFalse(light.isPowerStatus());
+		assertTrue(ac.isPowerStatus());
+
+		// 测试按条件批量设置亮度与目标温度
+		PermissionTable.runAs(admin, () -> household.groupSetBrightness(bulb -> bulb.getBrightness() > 50, 30));
+		assertEquals(30, light.getBrightness());
+		PermissionTable.runAs(admin, () -> household.groupSetTargetTemp(null, 24.0));
+		assertEquals(24.0, ac.getTargetTemp(), 0.01);
+
+		// 测试指定房间及失败汇总
+		result = PermissionTable.runAs(admin, () -> household.groupCommand(2, SmartLock.class, null, l -> {
+			throw new IllegalStateException("锁离线");
+		}));
+		assertEquals(1, result.getFailed());
+		assertArrayEquals(new int[]{3}, result.getFailedDeviceIds());
+	}
+
+	@Test
+	public void testProtocolDriver() throws Exception {
+		// 测试协议解析
+		assertEquals(2, acManufacturer.getProtocolList().size());
+		assertEquals("ZigBee", acManufacturer.getProtocolList().get(1));
+
+		// 未注册驱动时只在本地生效
+		assertNull(ProtocolDrivers.driverFor(acManufacturer));
+		assertTrue(ProtocolDrivers.dispatch(ac, "powerOn", null).get());
+
+		SimulatedProtocolDriver zigbee = new SimulatedProtocolDriver("ZigBee", 2, 64, 1, 0.0, 42L);
+		SimulatedProtocolDriver wifi = new SimulatedProtocolDriver("WiFi", 1, 64, 1, 1.0, 42L);
+		zigbee.start();
+		wifi.start();
+		ProtocolDrivers.register(zigbee);
+		ProtocolDrivers.register(wifi);
+		try {
+			// 按声明顺序选择驱动：AC Corp优先使用WiFi
+			assertSame(wifi, ProtocolDrivers.driverFor(acManufacturer));
+			ProtocolDrivers.unregister("wifi");
+			assertSame(zigbee, ProtocolDrivers.driverFor(acManufacturer));
+
+			// 测试批量发送
+			List<java.util.concurrent.CompletableFuture<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < 200; i++) {
+				results.add(ProtocolDrivers.dispatch(ac, "setTemperature", "26.0"));
+			}
+			for (java.util.concurrent.CompletableFuture<Boolean> result : results) {
+				assertTrue(result.get());
+			}
+			assertEquals(200, zigbee.getRequestCount());
+			assertTrue(zigbee.getBatchCount() < 200);
+
+			// 测试失败注入：下发失败会记录ERROR日志
+			SimulatedProtocolDriver failing = new SimulatedProtocolDriver("WiFi", 1, 8, 0, 1.0, 7L);
+			failing.start();
+			ProtocolDrivers.register(failing);
+			assertFalse(ProtocolDrivers.dispatch(light, "powerOn", null).get());
+			assertEquals(RunningLog.Type.ERROR, light.getRunningLogs().get(0).getType());
+
+			// 关闭后提交的请求立即以失败结束
+			failing.close();
+			assertFalse(failing.send(new DriverRequest(light.getDeviceId(), "powerOff", null)).get(1, java.util.concurrent.TimeUnit.SECONDS));
+		} finally {
+			ProtocolDrivers.unregister("ZigBee");
+			ProtocolDrivers.unregister("WiFi");
+		}
+	}
+
+	@Test
+	public void testFleetDeviceIndex() {
+		DeviceIndex index = Fleet.getInstance().getDeviceIndex();
+		household.setRegion("西安");
+
+		// 测试按制造商、类型、协议、地区组合查询
+		List<Device> acCorpDevices = index.query(1, null, null, "西安");
+		assertEquals(2, acCorpDevices.size()); // AC, Lock
+		assertEquals(1, index.query(1, SmartLock.class, "zigbee", "西安").size());
+		assertEquals(0, index.query(2, AirConditioner.class, null, "西安").size());
+		assertEquals(3, index.queryIds(null, null, "WiFi", "西安").size()); // 两家制造商都支持WiFi
+
+		// 测试设备增删后索引保持一致
+		livingRoom.removeDevice(1);
+		assertEquals(1, index.query(1, null, null, "西安").size());
+		bedroom.addDevice(scale);
+		assertTrue(index.queryIds(2, BathroomScale.class, null, "西安").contains(4));
+		household.removeRoom(2);
+		assertEquals(1, index.query(null, null, null, "西安").size()); // 仅剩Light
+
+		// 测试编号已被其他设备占用的设备不能加入家庭，房间和家庭保持不变
+		LightBulb duplicate = new LightBulb(2, "Duplicate Light", lightManufacturer);
+		try {
+			livingRoom.addDevice(duplicate);
+			fail("设备编号重复时应拒绝加入");
+		} catch (IllegalArgumentException e) {
+			assertSame(light, index.getDevice(2));
+			assertNull(duplicate.getRoom());
+			assertEquals(1, livingRoom.getDevices().size());
+		}
+		Room annex = new Room(3, "Annex", 10);
+		annex.addDevice(duplicate);
+		try {
+			household.addRoom(annex);
+			fail("房间内设备编号重复时应拒绝加入");
+		} catch (IllegalArgumentException e) {
+			assertNull(household.getRoom(3));
+		}
+	}
+
+	@Test
+	public void testCompactIdSet() {
+		CompactIdSet evens = new CompactIdSet();
+		CompactIdSet threes = new CompactIdSet();
+		for (int i = 0; i < 200000; i++) {
+			if (i % 2 == 0) evens.add(i);
+			if (i % 3 == 0) threes.add(i);
+		}
+		assertEquals(100000, evens.size());
+		assertFalse(evens.add(10));
+		CompactIdSet sixes = evens.and(threes);
+		assertEquals(33334, sixes.size());
+		assertTrue(sixes.contains(199998));
+		assertFalse(sixes.contains(4));
+		for (int i = 0; i < 200000; i += 2) {
+			evens.remove(i);
+		}
+		assertTrue(evens.isEmpty());
+	}
+
+	@Test
+	public void testCapabilityRegistry() {
+		CapabilityRegistry capabilities = household.getCapabilities();
+
+		// 测试按能力分组
+		assertEquals(2, capabilities.count(EnergyReporting.class)); // AC, Light
+		assertEquals(1, capabilities.count(BatteryPowered.class)); // Lock
+		assertEquals(1, capabilities.count(Lockable.class));
+		assertTrue(capabilities.devicesWith(Lockable.class).contains(lock));
+
+		// 测试设备增删后分组同步更新，已返回的集合是快照，遍历期间增删设备不受影响
+		Collection<BatteryPowered> batteries = capabilities.devicesWith(BatteryPowered.class);
+		bedroom.addDevice(scale);
+		assertEquals(1, batteries.size());
+		assertEquals(2, capabilities.count(BatteryPowered.class));
+		livingRoom.removeDevice(2);
+		assertEquals(1, capabilities.count(EnergyReporting.class));
+		assertEquals("Living Room AC", capabilities.devicesWith(EnergyReporting.class).iterator().next().getName());
+	}
+
+	@Test
+	public void testPagedListing() {
+		// 测试设备分页：按编号升序、游标翻页
+		Page<Device> first = household.listDevices(Page.FIRST, 2);
+		assertEquals(2, first.getItems().size());
+		assertEquals(1, first.getItems().get(0).getDeviceId());
+		assertTrue(first.hasMore());
+
+		Page<Device> second = household.listDevices(first.getNextCursor(), 2);
+		assertEquals(1, second.getItems().size());
+		assertEquals(3, second.getItems().get(0).getDeviceId());
+		assertFalse(second.hasMore());
+
+		// 翻页过程中新增设备不影响已返回的结果
+		bedroom.addDevice(scale);
+		assertEquals(4, household.listDevices(second.getNextCursor(), 2).getItems().get(0).getDeviceId());
+
+		// 测试用户、场景分页与流式遍历
+		assertEquals(2, household.listUsers(Page.FIRST, 10).getItems().size());
+		assertEquals(1, household.listAutoScenes(Page.FIRST, 10).getItems().size());
+		assertEquals(4, household.streamDevices().count());
+		assertEquals("Bedroom", household.streamRooms().skip(1).findFirst().get().getName());
+	}
+
+	@Test
+	public void testRoomAggregates() throws InterruptedException {
+		// 初始状态：设备均为关机离线
+		assertEquals(2, livingRoom.getDeviceCount());
+		assertEquals(0, livingRoom.getPoweredOnCount());
+		assertEquals(0.0, livingRoom.getPowerDraw(), 0.001);
+
+		// 测试开关机、上下线时统计数据增量更新
+		ac.powerOn();
+		ac.powerOn(); // 重复开机不重复计数
+		light.powerOn();
+		light.setOnline(true);
+		assertEquals(2, livingRoom.getPoweredOnCount());
+		assertEquals(1, livingRoom.getOnlineCount());
+		assertEquals(750.0, livingRoom.getPowerDraw(), 0.001);
+
+		light.powerOff(); // 关机同时下线
+		assertEquals(1, livingRoom.getPoweredOnCount());
+		assertEquals(0, livingRoom.getOnlineCount());
+		assertEquals(700.0, livingRoom.getPowerDraw(), 0.001);
+
+		// 测试移除开机设备
+		livingRoom.removeDevice(1);
+		assertEquals(1, livingRoom.getDeviceCount());
+		assertEquals(0, livingRoom.getPoweredOnCount());
+		assertEquals(0.0, livingRoom.getPowerDraw(), 0.001);
+		assertNull(ac.getRoom());
+
+		// 测试设备加入、移出房间与开关机并发进行时统计不重复、不遗漏
+		Room spare = new Room(9, "Spare", 10);
+		LightBulb racing = new LightBulb(90, "Racing Light", lightManufacturer);
+		Thread toggler = new Thread(() -> {
+			for (int i = 0; i < 2000; i++) {
+				racing.powerOn();
+				racing.powerOff();
+			}
+		});
+		toggler.start();
+		for (int i = 0; i < 2000; i++) {
+			spare.addDevice(racing);
+			spare.detachDevice(90);
+		}
+		toggler.join();
+		assertEquals(0, spare.getPoweredOnCount());
+		assertEquals(0.0, spare.getPowerDraw(), 0.001);
+		racing.powerOn();
+		spare.addDevice(racing);
+		assertEquals(1, spare.getPoweredOnCount());
+	}
+
+	@Test
+	public void testPowerGauge() throws InterruptedException {
+		PowerGauge fleetGauge = Fleet.getInstance().getPowerGauge();
+		double fleetBefore = fleetGauge.getWatts();
+
+		// 测试功率逐级汇总到房间、家庭和设备群
+		ac.powerOn();
+		light.powerOn();
+		assertEquals(750.0, livingRoom.getPowerGauge().getWatts(), 0.001);
+		assertEquals(750.0, household.getPowerGauge().getWatts(), 0.001);
+		assertEquals(fleetBefore + 750.0, fleetGauge.getWatts(), 0.001);
+
+		// 测试房间移出家庭后从家庭功率中扣除
+		household.removeRoom(1);
+		assertEquals(0.0, household.getPowerGauge().getWatts(), 0.001);
+		assertEquals(750.0, livingRoom.getPowerDraw(), 0.001);
+
+		// 测试多线程并发开关机
+		household.addRoom(livingRoom);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < 1000; i++) {
+					light.powerOff();
+					light.powerOn();
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(750.0, household.getPowerGauge().getWatts(), 0.001);
+		ac.powerOff();
+		light.powerOff();
+		assertEquals(fleetBefore, fleetGauge.getWatts(), 0.001);
+	}
+
+	@Test
+	public void testMetrics() throws Exception {
+		HomeSphereMetrics metrics = HomeSphereMetrics.getInstance();
+		long logins = metrics.getLoginSuccessCount();
+		long actions = metrics.getActionCount();
+		long failures = metrics.getActionFailureCount();
+		long scenes = metrics.getSceneTriggerCount();
+
+		system.login("admin", "111111");
+		light.powerOn();
+		system.manualTrigSceneById(1);
+		assertFalse(PermissionTable.runAs(admin, new DeviceAction("selfDestruct", "", ac)::run)); // 指令不受支持，执行失败
+		assertEquals(logins + 1, metrics.getLoginSuccessCount());
+		assertEquals(scenes + 1, metrics.getSceneTriggerCount());
+		assertEquals(actions + 3, metrics.getActionCount());
+		assertEquals(failures + 1, metrics.getActionFailureCount());
+		assertTrue(metrics.getSceneLatency().getMaxMicros() > 0);
+
+		// 测试通过JMX读取指标
+		javax.management.MBeanServer server = java.lang.management.ManagementFactory.getPlatformMBeanServer();
+		Object count = server.getAttribute(
+				new javax.management.ObjectName("cn.edu.nwpu.homesphere:type=HomeSphereMetrics"), "SceneTriggerCount");
+		assertEquals(metrics.getSceneTriggerCount(), ((Long) count).longValue());
+	}
+
+	@Test
+	public void testLatencyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (int i = 1; i <= 100; i++) {
+			histogram.record(i * 1000L);
+		}
+		assertEquals(100, histogram.getCount());
+		assertEquals(50.5, histogram.getMeanMicros(), 0.01);
+		assertEquals(100.0, histogram.getMaxMicros(), 0.01);
+		// 分位数按2的幂区间估算
+		assertTrue(histogram.getP50Micros() >= 50 && histogram.getP50Micros() <= 100);
+		assertTrue(histogram.getP99Micros() >= 99 && histogram.getP99Micros() <= 100);
+	}
+
+	@Test
+	public void testFlightRecorderEvents() throws Exception {
+		java.nio.file.Path file = java.nio.file.Files.createTempFile("homesphere", ".jfr");
+		try (jdk.jfr.Recording recording = new jdk.jfr.Recording()) {
+			recording.enable("cn.edu.nwpu.homesphere.SceneTrigger");
+			recording.enable("cn.edu.nwpu.homesphere.ActionExecute");
+			recording.start();
+			light.powerOn();
+			PermissionTable.runAs(admin, eveningScene::trigger);
+			recording.stop();
+			recording.dump(file);
+		}
+		List<jdk.jfr.consumer.RecordedEvent> events = jdk.jfr.consumer.RecordingFile.readAllEvents(file);
+		java.nio.file.Files.deleteIfExists(file);
+
+		int scenes = 0;
+		int actions = 0;
+		for (jdk.jfr.consumer.RecordedEvent event : events) {
+			String name = event.getEventType().getName();
+			if (name.equals("cn.edu.nwpu.homesphere.SceneTrigger")) {
+				scenes++;
+				assertEquals(1, event.getInt("sceneId"));
+			} else if (name.equals("cn.edu.nwpu.homesphere.ActionExecute")) {
+				actions++;
+			}
+		}
+		assertEquals(1, scenes);
+		assertEquals(2, actions);
+	}
+
+	@Test
+	public void testScenePlan() throws NoSuchMethodException {
+		// 测试编译：重复设置同一空调温度只保留最后一次
+		AutomationScene scene = new AutomationScene(2, "回家模式", "开灯并调节温度");
+		scene.addAction(new DeviceAction("setTemperature", "20.0", ac));
+		scene.addAction(new DeviceAction("powerOn", "", light));
+		DeviceAction lastTemp = new DeviceAction("setTemperature", "24.0", ac);
+		scene.addAction(lastTemp);
+		ScenePlan plan = scene.compile();
+		assertEquals(2, plan.size());
+		assertEquals(1, plan.getMergedCount());
+		assertSame(plan, scene.compile()); // 场景未变化时复用计划
+
+		PermissionTable.runAs(admin, scene::trigger);
+		assertEquals(24.0, ac.getTargetTemp(), 0.01);
+		assertTrue(light.isPowerStatus());
+
+		// 测试执行时跳过无变化的动作
+		assertEquals(0, (int) PermissionTable.runAs(admin, plan::execute));
+
+		// 测试修改动作后计划失效
+		lastTemp.setParameters("27.5");
+		assertNotSame(plan, scene.compile());
+		PermissionTable.runAs(admin, scene::trigger);
+		assertEquals(27.5, ac.getTargetTemp(), 0.01);
+
+		// 测试不支持的指令及设备类型不匹配
+		scene.addAction(new DeviceAction("setTemperature", "20.0", lock));
+		scene.addAction(new DeviceAction("selfDestruct", "", lock));
+		assertEquals(4, scene.compile().size());
+		PermissionTable.runAs(admin, scene::trigger);
+
+		// 测试足迹很大的场景：在循环中加锁，不会因设备数量而栈溢出
+		AutomationScene wholeBuilding = new AutomationScene(3, "全楼开灯", "打开整栋楼的灯");
+		for (int i = 0; i < 20000; i++) {
+			wholeBuilding.addAction(new DeviceAction("powerOn", "", new LightBulb(100000 + i, "灯" + i, lightManufacturer)));
+		}
+		assertEquals(20000, wholeBuilding.compile().getFootprint().length);
+		assertEquals(20000, (int) PermissionTable.runAsSystem(wholeBuilding.compile()::execute));
+	}
+
+	@Test
+	public void testSceneScheduler() throws InterruptedException {
+		AutomationScene warm = new AutomationScene(3, "制热", "空调调至28度");
+		warm.addAction(new DeviceAction("setTemperature", "28.0", ac));
+		AutomationScene cool = new AutomationScene(2, "制冷", "空调调至18度");
+		cool.addAction(new DeviceAction("setTemperature", "18.0", ac));
+		AutomationScene lights = new AutomationScene(4, "开灯", "打开厨房灯");
+		lights.addAction(new DeviceAction("powerOn", "", light));
+
+		// 测试冲突分组：两个空调场景冲突，开灯场景独立
+		List<List<AutomationScene>> groups = SceneScheduler.partition(java.util.Arrays.asList(warm, lights, cool));
+		assertEquals(2, groups.size());
+		assertSame(cool, groups.get(0).get(0)); // 组内按场景编号排序
+		assertSame(warm, groups.get(0).get(1));
+		assertArrayEquals(new int[]{1}, warm.compile().getFootprint());
+
+		// 测试场景以调用线程的操作者身份执行：没有绑定操作者时不执行；以系统身份调度时结果确定，编号较大的制热场景最后执行
+		try (SceneScheduler scheduler = new SceneScheduler(4)) {
+			scheduler.runAll(java.util.Arrays.asList(warm, lights, cool));
+			assertFalse(light.isPowerStatus());
+			assertEquals(2, (int) PermissionTable.runAsSystem(() -> scheduler.runAll(java.util.Arrays.asList(warm, lights, cool))));
+		}
+		assertEquals(28.0, ac.getTargetTemp(), 0.01);
+		assertTrue(light.isPowerStatus());
+	}
+
+	@Test
+	public void testTypedActionPayload() throws NoSuchMethodException {
+		// 测试创建动作时即完成参数解析
+		DeviceAction dim = new DeviceAction("setBrightness", "30", light);
+		assertEquals(ActionPayload.Kind.INT, dim.getPayload().getKind());
+		assertEquals(30, dim.getPayload().getInt());
+		assertTrue(PermissionTable.runAs(admin, dim::run));
+		assertEquals(30, light.getBrightness());
+
+		DeviceAction both = new DeviceAction("setLight", "80,4000", light);
+		assertEquals(2, both.getPayload().getFieldCount());
+		assertTrue(PermissionTable.runAs(admin, both::run));
+		assertEquals(80, light.getBrightness());
+		assertEquals(4000, light.getColorTemp());
+
+		SmartLock lock = new SmartLock(9, "大门锁", null);
+		assertTrue(PermissionTable.runAs(admin, new DeviceAction("setLocked", "off", lock)::run));
+		assertFalse(lock.isLocked());
+		assertTrue(PermissionTable.runAs(admin, new DeviceAction("setBatteryLevel", "15", lock)::run));
+		assertEquals(15, lock.getBatteryLevel());
+
+		// 测试已知指令的无效参数在创建时即被拒绝
+		String[][] invalid = {{"setTemperature", "abc"}, {"setBrightness", "150"}, {"setBrightness", "2.5"},
+				{"setLight", "80"}, {"setLocked", "maybe"}, {"setTemperature", null}};
+		for (String[] args : invalid) {
+			try {
+				new DeviceAction(args[0], args[1], args[0].equals("setLocked") ? lock : light);
+				fail("应拒绝参数：" + args[0] + " " + args[1]);
+			} catch (IllegalArgumentException expected) {
+				// 预期异常
+			}
+		}
+
+		// 测试先后修改指令和参数：中间状态不抛异常，参数无效的动作执行失败
+		DeviceAction changed = new DeviceAction("powerOn", "", light);
+		changed.setCommand("setColorTemp");
+		assertNull(changed.getPayload());
+		changed.setParameters("2700");
+		assertTrue(PermissionTable.runAs(admin, changed::run));
+		assertEquals(2700, light.getColorTemp());
+	}
+
+	@Test
+	public void testHttpApi() throws Exception {
+		try (HomeSphereHttpApi api = new HomeSphereHttpApi(system, 0, 4)) {
+			api.start();
+			URI base = URI.create("http://127.0.0.1:" + api.getPort());
+			HttpClient client = HttpClient.newHttpClient();
+
+			// 测试未登录访问被拒绝
+			HttpResponse<String> denied = client.send(
+					HttpRequest.newBuilder(base.resolve("/api/devices")).build(),
+					HttpResponse.BodyHandlers.ofString());
+			assertEquals(401, denied.statusCode());
+
+			HttpLoadGenerator generator = new HttpLoadGenerator(base);
+			String token = generator.login("admin", "111111");
+
+			// 测试列出设备及对设备执行指令
+			HttpResponse<String> devices = client.send(
+					HttpRequest.newBuilder(base.resolve("/api/devices?limit=2"))
+							.header("Authorization", "Bearer " + token).build(),
+					HttpResponse.BodyHandlers.ofString());
+			assertEquals(200, devices.statusCode());
+			assertTrue(devices.body().contains("\"name\":\"Living Room AC\""));
+			assertTrue(devices.body().contains("\"hasMore\":true"));
+
+			HttpResponse<String> command = client.send(
+					HttpRequest.newBuilder(base.resolve("/api/devices/1/commands"))
+							.header("Authorization", "Bearer " + token)
+							.POST(HttpRequest.BodyPublishers.ofString("command=setTemperature&parameters=19.5"))
+							.build(),
+					HttpResponse.BodyHandlers.ofString());
+			assertEquals(200, command.statusCode());
+			assertEquals(19.5, ac.getTargetTemp(), 0.01);
+
+			HttpResponse<String> invalid = client.send(
+					HttpRequest.newBuilder(base.resolve("/api/devices/1/commands"))
+							.header("Authorization", "Bearer " + token)
+							.POST(HttpRequest.BodyPublishers.ofString("command=setTemperature&parameters=hot"))
+							.build(),
+					HttpResponse.BodyHandlers.ofString());
+			assertEquals(400, invalid.statusCode());
+
+			HttpResponse<String> trigger = client.send(
+					HttpRequest.newBuilder(base.resolve("/api/scenes/1/trigger"))
+							.header("Authorization", "Bearer " + token)
+							.POST(HttpRequest.BodyPublishers.noBody())
+							.build(),
+					HttpResponse.BodyHandlers.ofString());
+			assertEquals(200, trigger.statusCode());
+			assertEquals(26.0, ac.getTargetTemp(), 0.01);
+
+			// 测试参数中无效的%转义序列返回400
+			HttpResponse<String> malformed = client.send(
+					HttpRequest.newBuilder(base.resolve("/api/devices/1/commands"))
+							.header("Authorization", "Bearer " + token)
+							.POST(HttpRequest.BodyPublishers.ofString("command=setTemperature&parameters=%zz"))
+							.build(),
+					HttpResponse.BodyHandlers.ofString());
+			assertEquals(400, malformed.statusCode());
+
+			// 测试本地客户端压测：全部请求成功
+			HttpLoadGenerator.Result result = generator.run(token, "/api/rooms", 2000, 16);
+			assertEquals(0, result.getFailures());
+			assertEquals(2000, result.getLatency().getCount());
+			System.out.println(result);
+
+			// 测试注销后会话立即失效，空闲超时的会话同样失效
+			HttpResponse<String> logout = client.send(
+					HttpRequest.newBuilder(base.resolve("/api/logout"))
+							.header("Authorization", "Bearer " + token)
+							.POST(HttpRequest.BodyPublishers.noBody())
+							.build(),
+					HttpResponse.BodyHandlers.ofString());
+			assertEquals(200, logout.statusCode());
+			assertEquals(0, api.getSessionCount());
+			HttpRequest rooms = HttpRequest.newBuilder(base.resolve("/api/rooms"))
+					.header("Authorization", "Bearer " + token).build();
+			assertEquals(401, client.send(rooms, HttpResponse.BodyHandlers.ofString()).statusCode());
+
+			String idle = generator.login("admin", "111111");
+			api.setSessionTimeoutMillis(1);
+			Thread.sleep(20);
+			HttpRequest expired = HttpRequest.newBuilder(base.resolve("/api/rooms"))
+					.header("Authorization", "Bearer " + idle).build();
+			assertEquals(401, client.send(expired, HttpResponse.BodyHandlers.ofString()).statusCode());
+			assertEquals(0, api.getSessionCount());
+		}
+	}
+
+	@Test
+	public void testHouseholdGeneratorAndReplay() throws InterruptedException {
+		HouseholdGenerator generator = new HouseholdGenerator(7);
+		generator.setLogDays(30);
+		List<Household> fleet = generator.generateFleet(3);
+		assertEquals(3, fleet.size());
+		Household first = fleet.get(0);
+		assertEquals(6 * 8, first.listAllDevices().size());
+		assertEquals(4, first.getUsers().size());
+		assertTrue(first.getUsers().get(0).isAdmin());
+		assertEquals(10001, first.listDevices(Page.FIRST, 1).getItems().get(0).getDeviceId());
+
+		// 测试同一种子生成的数据可复现（先将原家庭移出设备群，重新生成的家庭才能占用相同的设备编号）
+		Household original = fleet.get(1);
+		original.setFleetMember(false);
+		Household again = new HouseholdGenerator(7).generateHousehold(2);
+		assertEquals(original.getRegion(), again.getRegion());
+		for (int i = 0; i < 48; i++) {
+			Device a = original.listAllDevices().get(i);
+			Device b = again.listAllDevices().get(i);
+			assertEquals(a.getDeviceId(), b.getDeviceId());
+			assertEquals(a.getClass(), b.getClass());
+			assertEquals(a.getManufacturer().getManufacturerId(), b.getManufacturer().getManufacturerId());
+		}
+
+		// 测试设备类型覆盖全部四类，并生成了运行日志
+		java.util.Set<Class<?>> types = new java.util.HashSet<Class<?>>();
+		int logs = 0;
+		for (Household h : fleet) {
+			for (Device d : h.listAllDevices()) {
+				types.add(d.getClass());
+				logs += d.getRunningLogs().size();
+			}
+		}
+		assertEquals(4, types.size());
+		assertTrue(logs > 3 * 48 * 30);
+
+		// 测试负载回放
+		WorkloadReplayer replayer = new WorkloadReplayer(fleet, 11);
+		WorkloadReplayer.Report report = replayer.replay(300, 5000, 2);
+		assertEquals(300, report.getCount());
+		assertEquals(0, report.getErrors());
+		assertEquals(300, report.getLoginLatency().getCount() + report.getSceneLatency().getCount()
+				+ report.getTelemetryLatency().getCount());
+		assertTrue(report.getLoginLatency().getCount() > 0);
+
+		// 测试操作失败时只计入错误数，回放线程继续执行后续操作
+		Household broken = new Household(900, "故障小区");
+		Room hall = new Room(1, "大厅", 30);
+		broken.addRoom(hall);
+		hall.addDevice(new LightBulb(9000001, "故障灯", lightManufacturer) {
+			@Override
+			public void setOnline(boolean online) {
+				throw new IllegalStateException("设备无响应");
+			}
+		});
+		WorkloadReplayer failing = new WorkloadReplayer(List.of(broken), 11);
+		failing.setMix(0, 0, 1);
+		WorkloadReplayer.Report failed = failing.replay(20, 5000, 2);
+		assertEquals(20, failed.getErrors());
+		assertEquals(0, failed.getCount());
+
+		// 测试家庭编号超出范围时拒绝生成，避免设备编号溢出
+		try {
+			generator.generateHousehold(HouseholdGenerator.MAX_HOUSEHOLD_ID + 1);
+			fail("家庭编号超出范围时应拒绝生成");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains(String.valueOf(HouseholdGenerator.MAX_HOUSEHOLD_ID)));
+		}
+	}
+
+	@Test
+	public void testHouseholdImporter() throws Exception {
+		String jsonl = String.join("\n",
+				"{\"type\":\"manufacturer\",\"id\":91,\"name\":\"导入制造商\",\"protocols\":\"WiFi\"}",
+				"{\"type\":\"household\",\"id\":9001,\"address\":\"导入小区1号\",\"region\":\"宝鸡\"}",
+				"{\"type\":\"room\",\"id\":1,\"name\":\"客厅\",\"area\":30.5}",
+				"{\"type\":\"device\",\"id\":900101,\"kind\":\"AirConditioner\",\"name\":\"空调\",\"manufacturerId\":91,\"roomId\":1}",
+				"{\"type\":\"device\",\"id\":900102,\"kind\":\"LightBulb\",\"name\":\"灯\\\"1\\\"\",\"manufacturerId\":91,\"roomId\":1}",
+				"{\"type\":\"user\",\"id\":1,\"loginName\":\"owner\",\"password\":\"111111\",\"admin\":true}",
+				"{\"type\":\"scene\",\"id\":1,\"name\":\"回家\",\"description\":\"开灯\"}",
+				"{\"type\":\"action\",\"sceneId\":1,\"deviceId\":900102,\"command\":\"setBrightness\",\"parameters\":\"60\"}",
+				"",
+				"{\"type\":\"household\",\"id\":9002,\"address\":\"导入小区2号\",\"region\":\"宝鸡\"}",
+				"{\"type\":\"room\",\"id\":1,\"name\":\"卧室\",\"area\":15}",
+				"{\"type\":\"device\",\"id\":900101,\"kind\":\"SmartLock\",\"name\":\"锁\",\"manufacturerId\":91,\"roomId\":1}",
+				"{\"type\":\"household\",\"id\":9003,\"address\":\"导入小区3号\",\"region\":\"宝鸡\"}",
+				"{\"type\":\"device\",\"id\":900301,\"kind\":\"SmartLock\",\"name\":\"锁\",\"manufacturerId\":91,\"roomId\":7}");
+		HouseholdImporter importer = new HouseholdImporter(2);
+		List<Household> imported = java.util.Collections.synchronizedList(new ArrayList<Household>());
+		HouseholdImporter.ImportResult result = importer.importFrom(new java.io.StringReader(jsonl),
+				HouseholdImporter.Format.JSONL, imported::add);
+
+		// 测试合法家庭被导入，设备编号重复、房间引用无效的家庭被整体拒绝
+		assertEquals(1, result.getHouseholds());
+		assertEquals(2, result.getDevices());
+		assertEquals(2, result.getRejectedHouseholds());
+		assertEquals(2, result.getErrorCount());
+		assertEquals(1, imported.size());
+		Household home = imported.get(0);
+		assertEquals(9001, home.getHouseholdId());
+		assertEquals("灯\"1\"", home.getDevice(900102).getName());
+		assertTrue(home.getAdmin().getLoginName().equals("owner"));
+		assertNull(PermissionTable.runAs(home.getAdmin(), home.getAutoScene(1)::trigger));
+		assertEquals(60, ((LightBulb) home.getDevice(900102)).getBrightness());
+		assertEquals(2, Fleet.getInstance().getDeviceIndex().query(91, null, null, "宝鸡").size());
+
+		// 测试CSV格式，及动作参数校验
+		String csv = String.join("\n",
+				"household,9004,\"导入小区4号, 东门\",宝鸡",
+				"room,1,书房,12",
+				"device,900401,BathroomScale,体重秤,91,1",
+				"household,9005,导入小区5号,宝鸡",
+				"room,1,书房,12",
+				"device,900501,LightBulb,灯,91,1",
+				"scene,1,夜灯,调暗",
+				"action,1,900501,setBrightness,500");
+		result = importer.importFrom(new java.io.StringReader(csv), HouseholdImporter.Format.CSV, imported::add);
+		assertEquals(1, result.getHouseholds());
+		assertEquals(1, result.getRejectedHouseholds());
+		assertTrue(result.getErrors().get(0).startsWith("第8行"));
+		assertEquals("导入小区4号, 东门", imported.get(1).getAddress());
+
+		// 测试解析失败的家庭不会让后面的家庭抢先占用编号：编号重复时总是拒绝文件中靠后的家庭
+		for (int round = 0; round < 5; round++) {
+			int base = 920000 + round * 10000;
+			StringBuilder lines = new StringBuilder();
+			lines.append("household,").append(base).append(",大家庭,宝鸡\nroom,1,客厅,30\n");
+			for (int d = 1; d <= 2000; d++) {
+				lines.append("device,").append(base + d).append(",LightBulb,灯,91,1\n");
+			}
+			lines.append("household,").append(base + 1).append(",损坏家庭,宝鸡\nroom,x,客厅,30\n");
+			lines.append("household,").append(base + 2).append(",小家庭,宝鸡\nroom,1,客厅,30\n");
+			lines.append("device,").append(base + 2000).append(",LightBulb,灯,91,1\n");
+			List<Household> ordered = java.util.Collections.synchronizedList(new ArrayList<Household>());
+			HouseholdImporter parallel = new HouseholdImporter(3);
+			parallel.addManufacturer(new Manufacturer(91, "导入制造商", "WiFi"));
+			result = parallel.importFrom(new java.io.StringReader(lines.toString()),
+					HouseholdImporter.Format.CSV, ordered::add);
+			assertEquals(1, ordered.size());
+			assertEquals(base, ordered.get(0).getHouseholdId());
+			assertEquals(2, result.getRejectedHouseholds());
+		}
+	}
+
+	@Test
+	public void testRunningLogSpill() throws Exception {
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("homesphere-logs");
+		RunningLogStore previous = RunningLogStore.getDefault();
+		RunningLogStore store = new RunningLogStore(dir, 8, 16);
+		RunningLogStore.setDefault(store);
+		try {
+			AirConditioner oldAc = new AirConditioner(77, "老空调", acManufacturer);
+			long base = 1_600_000_000_000L;
+			for (int i = 0; i < 100; i++) {
+				oldAc.addRunningLogs(new RunningLog(new Date(base + i * 1000L), "事件" + i, RunningLog.Type.INFO, i % 2 == 0 ? null : "备注"));
+			}
+
+			// 测试内存中只保留少量最近日志，其余溢出到段文件
+			assertTrue(oldAc.getResidentLogCount() <= 8);
+			assertEquals(100, oldAc.getRunningLogs().size());
+			try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(dir)) {
+				assertTrue(files.count() >= 5);
+			}
+
+			// 测试按编号读取、顺序遍历和时间范围查询
+			assertEquals("事件0", oldAc.getRunningLogs().get(0).getEvent());
+			assertNull(oldAc.getRunningLogs().get(0).getNote());
+			assertEquals("事件57", oldAc.getRunningLogs().get(57).getEvent());
+			assertEquals("事件99", oldAc.getRunningLogs().get(99).getEvent());
+			int i = 0;
+			for (RunningLog log : oldAc.getRunningLogs()) {
+				assertEquals("事件" + i++, log.getEvent());
+			}
+			assertEquals(100, i);
+			List<RunningLog> range = oldAc.getRunningLogs(new Date(base + 30_000), new Date(base + 40_000));
+			assertEquals(10, range.size());
+			assertEquals("事件30", range.get(0).getEvent());
+			assertEquals(RunningLog.Type.INFO, range.get(0).getType());
+
+			// 测试段被继续追加后，缓存的映射失效并重新读取
+			for (int j = 100; j < 140; j++) {
+				oldAc.addRunningLogs(new RunningLog(new Date(base + j * 1000L), "事件" + j, RunningLog.Type.INFO, null));
+			}
+			assertEquals("事件99", oldAc.getRunningLogs().get(99).getEvent());
+			assertEquals("事件120", oldAc.getRunningLogs().get(120).getEvent());
+			assertEquals(40, oldAc.getRunningLogs(new Date(base + 95_000), new Date(base + 135_000)).size());
+
+			// 测试未配置存储时日志全部保存在内存中
+			RunningLogStore.setDefault(null);
+			for (int j = 0; j < 20; j++) {
+				light.addRunningLogs(new RunningLog(new Date(), "事件" + j, RunningLog.Type.INFO, ""));
+			}
+			assertEquals(20, light.getResidentLogCount());
+		} finally {
+			store.close();
+			RunningLogStore.setDefault(previous);
+		}
+		try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(dir)) {
+			assertEquals(0, files.count());
+		}
+		java.nio.file.Files.delete(dir);
+	}
+
+	@Test
+	public void testDeviceStateTable() {
+		DeviceStateTable previous = DeviceStateTable.getDefault();
+		DeviceStateTable table = new DeviceStateTable();
+		DeviceStateTable.setDefault(table);
+		try {
+			AirConditioner offAc = new AirConditioner(81, "堆外空调", acManufacturer);
+			LightBulb offLight = new LightBulb(82, "堆外灯泡", lightManufacturer);
+			SmartLock offLock = new SmartLock(83, "堆外门锁", acManufacturer);
+			BathroomScale offScale = new BathroomScale(84, "堆外体重秤", acManufacturer);
+			offAc.setTargetTemp(23);
+			// 设备加入家庭时才分配槽位，已有的状态随之搬入状态表
+			assertEquals(0, table.size());
+			Room offRoom = new Room(8, "堆外房间", 20);
+			offRoom.addDevice(offAc);
+			offRoom.addDevice(offLight);
+			offRoom.addDevice(offLock);
+			offRoom.addDevice(offScale);
+			household.addRoom(offRoom);
+			assertEquals(4, table.size());
+			assertSame(table, offAc.getStateTable());
+			assertEquals(23, offAc.getTargetTemp(), 1e-9);
+			assertTrue(table.getOffHeapBytes() > 0);
+
+			// 测试原有getter/setter读写状态表中的槽位
+			offAc.setCurrTemp(28.5);
+			offAc.setTargetTemp(24);
+			offLight.setBrightness(60);
+			offLight.setColorTemp(4000);
+			offLock.setLocked(true);
+			offLock.setBatteryLevel(15);
+			offScale.setBodyMass(61.2);
+			offScale.setBatteryLevel(80);
+			assertEquals(28.5, offAc.getCurrTemp(), 1e-9);
+			assertEquals(24, offAc.getTargetTemp(), 1e-9);
+			assertEquals(60, offLight.getBrightness());
+			assertEquals(4000, offLight.getColorTemp());
+			assertTrue(offLock.isLocked());
+			assertEquals(15, offLock.getBatteryLevel());
+			assertEquals(61.2, offScale.getBodyMass(), 1e-9);
+			assertEquals(80, offScale.getBatteryLevel());
+
+			// 测试开关机与在线状态，以及按列扫描
+			offAc.powerOn();
+			offLight.powerOn();
+			offLight.powerOff();
+			assertTrue(offAc.isPowerStatus());
+			assertFalse(offLight.isPowerStatus());
+			assertEquals(1, table.countPoweredOn());
+			List<Integer> low = new ArrayList<Integer>();
+			table.forEachLowBattery(20, low::add);
+			assertEquals(java.util.Arrays.asList(83), low);
+
+			// 测试电量耗尽的电池设备同样被找出，非电池设备不会被找出
+			offScale.setBatteryLevel(0);
+			low.clear();
+			table.forEachLowBattery(20, low::add);
+			assertEquals(java.util.Arrays.asList(83, 84), low);
+
+			// 测试设备移出家庭时状态搬回堆上、槽位立即归还
+			offRoom.removeDevice(84);
+			assertEquals(3, table.size());
+			assertNull(offScale.getStateTable());
+			assertEquals(61.2, offScale.getBodyMass(), 1e-9);
+			household.removeRoom(8);
+			assertEquals(0, table.size());
+			assertEquals(0, table.countPoweredOn());
+			assertEquals(24, offAc.getTargetTemp(), 1e-9);
+			assertTrue(offAc.isPowerStatus());
+			assertEquals(4000, offLight.getColorTemp());
+			assertTrue(offLock.isLocked());
+
+			// 测试未启用状态表时加入家庭的设备不受影响
+			assertNull(ac.getStateTable());
+			ac.setCurrTemp(19.5);
+			assertEquals(19.5, ac.getCurrTemp(), 1e-9);
+		} finally {
+			DeviceStateTable.setDefault(previous);
+		}
+	}
+
+	@Test
+	public void testHouseholdSnapshot() {
+		HouseholdSnapshot before = household.snapshot();
+		assertEquals(2, before.getRooms().size());
+		assertEquals(3, before.getDeviceCount());
+		assertEquals("Living Room", before.getRoom(1).getName());
+
+		// 测试修改后旧快照保持不变，新快照版本号递增
+		livingRoom.addDevice(scale);
+		HouseholdSnapshot after = household.snapshot();
+		assertEquals(3, before.getDeviceCount());
+		assertEquals(4, after.getDeviceCount());
+		assertTrue(after.getVersion() > before.getVersion());
+
+		// 测试未修改的部分在快照之间共享
+		assertSame(before.getRoom(2), after.getRoom(2));
+		assertSame(before.getUsers(), after.getUsers());
+		assertSame(before.getAutoScenes(), after.getAutoScenes());
+
+		// 测试快照不可修改
+		try {
+			after.getRoom(1).getDevices().clear();
+			fail("快照中的设备列表不应允许修改");
+		} catch (UnsupportedOperationException e) {
+			assertEquals(3, after.getRoom(1).getDevices().size());
+		}
+		try {
+			household.getUsers().clear();
+			fail("家庭返回的用户列表不应允许修改");
+		} catch (UnsupportedOperationException e) {
+			assertSame(after.getUsers(), household.getUsers());
+		}
+		try {
+			household.getRooms().clear();
+			fail("家庭返回的房间列表不应允许修改");
+		} catch (UnsupportedOperationException e) {
+			assertEquals(2, household.getRooms().size());
+		}
+
+		// 测试遍历快照期间并发修改家庭结构不会影响遍历
+		int count = 0;
+		for (Device device : household.snapshot().getDevices()) {
+			bedroom.removeDevice(3);
+			count++;
+		}
+		assertEquals(4, count);
+		assertEquals(3, household.snapshot().getDeviceCount());
+		household.removeRoom(2);
+		assertNull(household.snapshot().getRoom(2));
+		assertEquals(1, household.snapshot().getRooms().size());
+	}
+
+	@Test
+	public void testPersistentIdList() {
+		// 测试乱序插入后按编号升序遍历，按下标和编号访问
+		PersistentIdList<Integer> list = PersistentIdList.empty();
+		java.util.List<Integer> ids = new java.util.ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			ids.add(i * 2);
+		}
+		java.util.Collections.shuffle(ids, new java.util.Random(7));
+		for (int id : ids) {
+			list = list.with(id, id);
+		}
+		assertEquals(1000, list.size());
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(Integer.valueOf(i * 2), list.get(i));
+		}
+		assertEquals(Integer.valueOf(998), list.find(998));
+		assertNull(list.find(999));
+
+		// 测试增删返回新列表，旧列表保持不变
+		PersistentIdList<Integer> before = list;
+		for (int i = 0; i < 1000; i += 2) {
+			list = list.without(i * 2);
+		}
+		assertSame(list, list.without(1));
+		assertEquals(500, list.size());
+		assertEquals(1000, before.size());
+		int expected = 2;
+		for (int value : list) {
+			assertEquals(expected, value);
+			expected += 4;
+		}
+		assertEquals(Integer.valueOf(1998), list.get(499));
+		try {
+			list.add(1);
+			fail("持久化列表不应允许修改");
+		} catch (UnsupportedOperationException e) {
+			assertEquals(500, list.size());
+		}
+	}
+
+	@Test
+	public void testChangeFeed() throws Exception {
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("homesphere-feed");
+		try {
+			ChangeFeed feed = new ChangeFeed(dir, household.getHouseholdId(), 4);
+			household.setChangeFeed(feed);
+			ac.setTargetTemp(20);
+			light.powerOn();
+			Room study = new Room(3, "书房", 12);
+			study.addDevice(new LightBulb(31, "台灯", lightManufacturer));
+			household.addRoom(study);
+			study.setName("办公室");
+			household.removeUser(2);
+			household.setChangeFeed(null);
+			ac.setTargetTemp(21);
+
+			// 测试事件按发生顺序编号，并携带变化的属性
+			List<ChangeEvent> events = feed.poll(1, 100);
+			assertEquals(6, events.size());
+			for (int i = 0; i < events.size(); i++) {
+				assertEquals(i + 1, events.get(i).getSequence());
+			}
+			assertEquals(ChangeEvent.Type.DEVICE_STATE, events.get(0).getType());
+			assertEquals("20.0", events.get(0).get("targetTemp"));
+			assertEquals("true", events.get(1).get("powerStatus"));
+			assertEquals(ChangeEvent.Type.ROOM_ADDED, events.get(2).getType());
+			assertEquals(ChangeEvent.Type.DEVICE_ADDED, events.get(3).getType());
+			assertEquals("LightBulb", events.get(3).get("kind"));
+			assertEquals("3", events.get(3).get("room"));
+			assertEquals("办公室", events.get(4).get("name"));
+			assertEquals(ChangeEvent.Type.USER_REMOVED, events.get(5).getType());
+
+			// 测试用户事件不携带密码
+			for (ChangeEvent event : household.describe(0)) {
+				if (event.getType() == ChangeEvent.Type.USER_ADDED) {
+					assertNotNull(event.get("loginName"));
+					assertNull(event.get("password"));
+				}
+			}
+
+			// 测试批量拉取和消费进度的持久化
+			List<ChangeEvent> batch = feed.poll(1, 3);
+			assertEquals(3, batch.size());
+			feed.commitOffset("billing", batch.get(2).getSequence());
+			feed.close();
+
+			// 测试重新打开后恢复序号，并从提交的进度继续拉取
+			ChangeFeed reopened = new ChangeFeed(dir, household.getHouseholdId(), 4);
+			assertEquals(6, reopened.getLastSequence());
+			long offset = reopened.getCommittedOffset("billing");
+			assertEquals(3, offset);
+			assertEquals(0, reopened.getCommittedOffset("analytics"));
+			List<ChangeEvent> rest = reopened.poll(offset + 1, 100);
+			assertEquals(3, rest.size());
+			assertEquals(4, rest.get(0).getSequence());
+			assertEquals(7, reopened.append(ChangeEvent.Type.SCENE_REMOVED, 1, java.util.Map.of()).getSequence());
+			assertTrue(reopened.poll(8, 10, 10).isEmpty());
+
+			// 测试删除所有消费者都已越过的旧段
+			assertEquals(1, reopened.deleteBefore(5));
+			assertEquals(5, reopened.poll(1, 1).get(0).getSequence());
+			reopened.close();
+
+			// 测试最后一段末尾的记录字节数损坏时，重新打开后从该记录处截断，不按损坏的字节数分配缓冲区
+			java.nio.file.Path last;
+			try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.list(dir)) {
+				last = files.filter(file -> file.toString().endsWith(".seg")).max(java.util.Comparator.naturalOrder()).get();
+			}
+			long size = java.nio.file.Files.size(last);
+			java.nio.file.Files.write(last, new byte[]{0x7F, -1, -1, -1, 1, 2, 3}, java.nio.file.StandardOpenOption.APPEND);
+			ChangeFeed repaired = new ChangeFeed(dir, household.getHouseholdId(), 4);
+			assertEquals(7, repaired.getLastSequence());
+			assertEquals(size, java.nio.file.Files.size(last));
+			assertEquals(8, repaired.append(ChangeEvent.Type.SCENE_REMOVED, 1, java.util.Map.of()).getSequence());
+			repaired.close();
+		} finally {
+			household.setChangeFeed(null);
+			try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.walk(dir)) {
+				files.sorted(java.util.Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+			}
+		}
+	}
+
+	@Test
+	public void testReplication() throws Exception {
+		java.nio.file.Path dir = java.nio.file.Files.createTempDirectory("homesphere-leader");
+		ChangeFeed feed = new ChangeFeed(dir, household.getHouseholdId(), 16);
+		household.setChangeFeed(feed);
+		ac.setTargetTemp(22);
+		ReplicationLeader leader = new ReplicationLeader(household, 0);
+		ReplicationFollower follower = new ReplicationFollower(household.getHouseholdId(), "localhost", leader.getPort());
+		follower.addManufacturer(acManufacturer);
+		try {
+			// 测试副本初次连接时通过快照获得完整的家庭状态
+			leader.start();
+			follower.start();
+			assertTrue(follower.awaitLag(0, 5000));
+			Household replica = follower.getHousehold();
+			assertNotSame(household, replica);
+			assertEquals(household.listAllDevices().size(), replica.listAllDevices().size());
+			assertEquals(22.0, ((AirConditioner) replica.getDevice(1)).getTargetTemp(), 0.001);
+			assertEquals(80, ((LightBulb) replica.getDevice(2)).getBrightness());
+			assertTrue(replica.getUser(1).isAdmin());
+			assertEquals(1, replica.getAutoScenes().size());
+
+			// 测试之后的修改以增量事件的形式应用到副本
+			Room study = new Room(3, "书房", 12);
+			study.addDevice(new LightBulb(31, "台灯", lightManufacturer));
+			household.addRoom(study);
+			User guest = system.register("guest", "654321", "访客", "guest@nwpu.edu.cn");
+			household.getPermissions().grantRoom(guest, study);
+			study.addDevice(new LightBulb(32, "落地灯", lightManufacturer));
+			ac.setTargetTemp(25);
+			light.powerOn();
+			household.removeUser(2);
+			study.removeDevice(32);
+			light.setName("厨房吊灯");
+			admin.setUserName("户主");
+			eveningScene.setName("睡眠模式");
+			eveningScene.getActions().get(1).setParameters("27.0");
+			assertTrue(follower.awaitSequence(feed.getLastSequence(), 5000));
+			HouseholdSnapshot read = follower.read(0, 5000);
+			assertNotNull(read.getRoom(3));
+			assertNull(replica.getDevice(32));
+			assertEquals(1, read.getRoom(3).getDevices().size());
+			assertEquals("台灯", replica.getDevice(31).getName());
+			assertEquals(25.0, ((AirConditioner) replica.getDevice(1)).getTargetTemp(), 0.001);
+			assertTrue(replica.getDevice(2).isPowerStatus());
+			assertNull(replica.getUser(2));
+			// 测试设备改名、用户和场景的修改同样复制到副本
+			assertEquals("厨房吊灯", replica.getDevice(2).getName());
+			assertEquals("户主", replica.getUser(1).getUserName());
+			assertEquals("睡眠模式", replica.getAutoScene(1).getName());
+			assertEquals("27.0", replica.getAutoScene(1).getActions().get(1).getParameters());
+			// 副本的设备不进入全局设备索引
+			assertFalse(Fleet.getInstance().getDeviceIndex().query(null, LightBulb.class, null, null).stream()
+					.anyMatch(device -> device == replica.getDevice(31)));
+
+			// 测试主节点停止后副本被判定为落后，提升后成为可用的主家庭
+			leader.close();
+			Thread.sleep(3L * ReplicationLeader.HEARTBEAT_MILLIS + 100);
+			assertEquals(Long.MAX_VALUE, follower.getLag());
+			try {
+				follower.read(0, 100);
+				fail("主节点停止后不应继续提供有界延迟读取");
+			} catch (IllegalStateException e) {
+				// 预期异常
+			}
+			household.setFleetMember(false);
+			Household promoted = follower.promote();
+			assertSame(replica, promoted);
+			assertTrue(Fleet.getInstance().getDeviceIndex().query(null, LightBulb.class, null, null).stream()
+					.anyMatch(device -> device == promoted.getDevice(31)));
+
+			// 测试提升后的家庭保留登录凭据和授权：成员以原密码登录，只能操作被授权房间内的设备
+			HomeSphereSystem promotedSystem = new HomeSphereSystem(promoted);
+			assertNull(promotedSystem.authenticate("guest", "123456"));
+			promotedSystem.login("guest", "654321");
+			User loggedIn = promotedSystem.getCurrentUser();
+			assertSame(promoted.getUser(guest.getUserId()), loggedIn);
+			assertNull(loggedIn.getLoginPassword());
+			assertTrue(PermissionTable.runAs(loggedIn, new DeviceAction("powerOn", "", promoted.getDevice(31))::run));
+			assertTrue(promoted.getDevice(31).isPowerStatus());
+			assertFalse(PermissionTable.runAs(loggedIn, new DeviceAction("powerOn", "", promoted.getDevice(1))::run));
+			assertFalse(promoted.getDevice(1).isPowerStatus());
+			promoted.setFleetMember(false);
+		} finally {
+			follower.close();
+			leader.close();
+			household.setChangeFeed(null);
+			feed.close();
+			try (java.util.stream.Stream<java.nio.file.Path> files = java.nio.file.Files.walk(dir)) {
+				files.sorted(java.util.Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+			}
+		}
+	}
+
+	@Test
+	public void testEnergyAnomalyDetector() {
+		EnergyAnomalyDetector detector = new EnergyAnomalyDetector(16);
+		List<RunningLog> reported = new ArrayList<RunningLog>();
+		detector.addListener((device, log, watts, expected) -> reported.add(log));
+		ac.powerOn();
+		int acLogs = ac.getRunningLogs().size();
+		long start = new Date().getTime();
+
+		// 测试预热期间只积累基线，不报告异常
+		for (int i = 0; i < 40; i++) {
+			assertFalse(detector.sample(ac, start + i * 60_000L, 1000 + (i % 5) * 10));
+		}
+		assertEquals(1020, detector.getBaselineWatts(ac.getDeviceId()), 10);
+		assertTrue(Double.isNaN(detector.getBaselineWatts(99)));
+
+		// 测试略高于基线时报告WARNING，冷却时间内不重复报告
+		assertTrue(detector.sample(ac, start + 40 * 60_000L, 1230));
+		assertFalse(detector.sample(ac, start + 41 * 60_000L, 1230));
+		assertEquals(1, reported.size());
+		assertEquals(RunningLog.Type.WARNING, reported.get(0).getType());
+		assertEquals(acLogs + 1, ac.getRunningLogs().size());
+		assertEquals("能耗异常", ac.getRunningLogs().get(acLogs).getEvent());
+
+		// 测试大幅偏离基线时即使在冷却时间内也升级为ERROR
+		assertTrue(detector.sample(ac, start + 42 * 60_000L, 5000));
+		assertEquals(RunningLog.Type.ERROR, reported.get(1).getType());
+		// 异常采样以很小的权重计入基线，基线不会被拉高
+		assertEquals(1020, detector.getBaselineWatts(ac.getDeviceId()), 30);
+
+		// 测试关机状态下仍在耗电的设备立即报告ERROR
+		light.powerOff();
+		assertFalse(detector.sample(light, start, 1));
+		assertTrue(detector.sample(light, start + 60_000L, 15));
+		assertEquals(RunningLog.Type.ERROR, reported.get(2).getType());
+		assertEquals(3, detector.getAnomalyCount());
+		assertEquals(45, detector.getSampleCount());
+		assertEquals(2, detector.getDeviceCount());
+
+		// 测试按时间段用电量换算平均功率：1分钟0.017度约合1020瓦，处于基线范围内
+		assertFalse(detector.sampleEnergy(ac, start + 43 * 60_000L, start + 44 * 60_000L, 0.017));
+
+		// 测试超出容量时丢弃新设备的采样并计数
+		EnergyAnomalyDetector full = new EnergyAnomalyDetector(1);
+		full.sample(ac, start);
+		assertFalse(full.sample(light, start));
+		assertEquals(1, full.getUntrackedSampleCount());
+		assertEquals(1, full.getSampleCount());
+		assertTrue(Double.isNaN(full.getBaselineWatts(light.getDeviceId())));
+
+		// 测试跟踪的设备超过初始槽位数时扩容，已有基线保持不变；编号为Integer.MIN_VALUE的设备也能被跟踪
+		EnergyAnomalyDetector growing = new EnergyAnomalyDetector(EnergyAnomalyDetector.INITIAL_SLOTS * 4);
+		LightBulb edge = new LightBulb(Integer.MIN_VALUE, "边界灯", lightManufacturer);
+		edge.powerOn();
+		growing.sample(edge, start, 42);
+		for (int id = 1; id <= EnergyAnomalyDetector.INITIAL_SLOTS * 3; id++) {
+			LightBulb bulb = new LightBulb(id, "灯" + id, lightManufacturer);
+			bulb.powerOn();
+			growing.sample(bulb, start, id);
+		}
+		assertEquals(EnergyAnomalyDetector.INITIAL_SLOTS * 3 + 1, growing.getDeviceCount());
+		assertEquals(42, growing.getBaselineWatts(Integer.MIN_VALUE), 1e-9);
+		assertEquals(7, growing.getBaselineWatts(7), 1e-9);
+		assertEquals(0, growing.getUntrackedSampleCount());
+	}
+
+	@Test
+	public void testTariffCostEngine() {
+		Tariff tariff = new Tariff("峰谷电价", new int[]{0, 8 * 60, 22 * 60}, new double[]{0.3, 0.6, 0.3},
+				java.util.TimeZone.getTimeZone("UTC"));
+		long day = java.time.Instant.parse("2026-01-05T00:00:00Z").toEpochMilli();
+		long hour = 3_600_000L;
+
+		// 测试开机区间跨越时段时按各时段的单价分别计费
+		assertEquals(0.6, tariff.getPrice(day + 8 * hour), 1e-9);
+		assertEquals(0.9, tariff.cost(day + 7 * hour, day + 9 * hour, 1000), 1e-9);
+		assertEquals(22.8, tariff.cost(day, day + 48 * hour, 1000), 1e-9);
+		assertEquals(0, tariff.cost(day + hour, day, 1000), 1e-9);
+
+		// 测试基于基本类型数组的批量计算：设备0有两个区间，设备1没有区间
+		TariffCostEngine engine = new TariffCostEngine(tariff);
+		double[] costs = new double[2];
+		double[] energies = new double[2];
+		engine.computeDeviceCosts(new int[]{0, 2, 2}, new long[]{day + 7 * hour, day + 23 * hour},
+				new long[]{day + 9 * hour, day + 25 * hour}, new double[]{1000, 500}, costs, energies);
+		assertEquals(0.9 + 0.3, costs[0], 1e-9);
+		assertEquals(3.0, energies[0], 1e-9);
+		assertEquals(0, costs[1], 1e-9);
+		double[] sums = TariffCostEngine.sumByGroup(new int[]{0, 1, 0}, new double[]{1, 2, 0.5}, 2);
+		assertEquals(1.5, sums[0], 1e-9);
+		assertEquals(2, sums[1], 1e-9);
+
+		// 测试根据开关机时间线出账，并按房间、家庭汇总（灯在统计区间内第一次切换为关机，视为此前一直开机）
+		ac.getPowerTimeline().record(day + 9 * hour, false);
+		ac.getPowerTimeline().record(day + 7 * hour, true);
+		light.getPowerTimeline().record(day + hour, false);
+		TariffCostEngine.Bill bill = engine.bill(List.of(household), new Date(day), new Date(day + 24 * hour));
+		assertEquals(2, bill.getDevices().size());
+		assertEquals(0.63, bill.getCost(ac), 1e-9);
+		assertEquals(1.4, bill.getEnergy(ac), 1e-9);
+		assertEquals(0.015, bill.getCost(light), 1e-9);
+		assertEquals(0.645, bill.getCost(livingRoom), 1e-9);
+		assertEquals(0, bill.getCost(bedroom), 1e-9);
+		assertEquals(0.645, bill.getCost(household), 1e-9);
+		assertEquals(0.645, bill.getTotalCost(), 1e-9);
+
+		// 测试家庭能耗报表与出账使用同样的开机区间和能耗聚合内核，结果一致
+		double[] reports = system.reportEnergies(List.of((EnergyReporting) ac, (EnergyReporting) light),
+				new Date(day), new Date(day + 24 * hour));
+		assertEquals(bill.getEnergy(ac), reports[0], 1e-9);
+		assertEquals(bill.getEnergy(light), reports[1], 1e-9);
+		assertEquals(0.05, reports[1], 1e-9);
+
+		// 测试统计区间内没有开关机记录时，按区间之前最后一条记录判断设备是否一直开机
+		bill = engine.bill(List.of(household), new Date(day + 8 * hour), new Date(day + 8 * hour + hour / 2));
+		assertEquals(0.35, bill.getEnergy(ac), 1e-9);
+		assertEquals(0.21, bill.getCost(ac), 1e-9);
+		assertEquals(0, bill.getCost(light), 1e-9);
+
+		// 测试丢弃已出账的记录后，之后的出账结果不变
+		ac.discardPowerHistory(new Date(day + 8 * hour));
+		assertEquals(2, ac.getPowerTimeline().size());
+		bill = engine.bill(List.of(household), new Date(day + 8 * hour), new Date(day + 8 * hour + hour / 2));
+		assertEquals(0.35, bill.getEnergy(ac), 1e-9);
+
+		// 测试设备开关机时自动记录到时间线，重复开机不产生新的记录
+		long now = System.currentTimeMillis();
+		ac.powerOn();
+		ac.powerOn();
+		assertEquals(3, ac.getPowerTimeline().size());
+		bill = engine.bill(List.of(household), new Date(now - hour), new Date(now + hour));
+		assertEquals(ac.getRatedPower() / 1000, bill.getEnergy(ac), 0.01);
+		ac.powerOff();
+		assertEquals(4, ac.getPowerTimeline().size());
+	}
+
+	@Test
+	public void testEnergyKernels() {
+		// 两台设备：设备0有19个区间（向量内核处理整块后还剩尾部），设备1没有区间
+		Random random = new Random(7);
+		int[] offsets = {0, 19, 19};
+		long[] starts = new long[19];
+		long[] ends = new long[19];
+		double[] watts = new double[19];
+		double expected = 0;
+		for (int i = 0; i < 19; i++) {
+			starts[i] = i * 1000L;
+			ends[i] = starts[i] + random.nextInt(2000);
+			watts[i] = 1 + random.nextInt(100);
+			expected += Math.max(0, Math.min(ends[i], 15_000) - Math.max(starts[i], 3_500)) * watts[i];
+		}
+
+		// 测试各内核按统计窗口裁剪区间后聚合，结果一致
+		List<EnergyKernel> kernels = new ArrayList<EnergyKernel>();
+		kernels.add(EnergyKernels.scalar());
+		if (EnergyKernels.vector() != null) {
+			kernels.add(EnergyKernels.vector());
+		}
+		// 未设置homesphere.energyKernel时默认使用标量内核
+		assertSame(EnergyKernels.scalar(), EnergyKernels.get());
+		for (EnergyKernel kernel : kernels) {
+			double[] out = new double[2];
+			kernel.aggregate(offsets, starts, ends, watts, 3_500, 15_000, out);
+			assertEquals(kernel.getName(), expected, out[0], 1e-6);
+			assertEquals(0, out[1], 0);
+			assertEquals(0, kernel.wattMillis(starts, ends, watts, 0, 19, 30_000, 40_000), 0);
+		}
+
+		// 测试电费引擎使用指定内核计算用电量
+		Tariff tariff = Tariff.flat("统一电价", 0.5);
+		double[] costs = new double[2];
+		double[] energies = new double[2];
+		new TariffCostEngine(tariff, EnergyKernels.scalar()).computeDeviceCosts(new int[]{0, 1, 1},
+				new long[]{0}, new long[]{3_600_000}, new double[]{2000}, costs, energies);
+		assertEquals(2.0, energies[0], 1e-9);
+		assertEquals(1.0, costs[0], 1e-9);
+	}
+
+	@Test
+	public void testUserDirectory() {
+		UserDirectory directory = Fleet.getInstance().getUserDirectory();
+
+		// 测试家庭添加用户时自动登记，邮箱和登录名不区分大小写
+		assertSame(admin, directory.findByEmail("ADMIN@nwpu.edu.cn"));
+		assertSame(regularUser, directory.findByLogin("HXT"));
+		assertEquals(household.getHouseholdId(), directory.getHouseholdId(regularUser));
+		assertNull(directory.findByEmail("nobody@nwpu.edu.cn"));
+
+		// 测试跨家庭的登录名前缀查找和昵称片段查找
+		Household other = new Household(8801, "长安校区");
+		User first = new User(1, "hxt_wife", "111111", "航小妹", "wife@nwpu.edu.cn");
+		User second = new User(2, "hxa", "111111", "天天", "hxa@nwpu.edu.cn");
+		other.addUser(first);
+		other.addUser(second);
+		List<User> byPrefix = directory.findByLoginPrefix("Hxt", 10);
+		assertEquals(2, byPrefix.size());
+		assertSame(regularUser, byPrefix.get(0));
+		assertSame(first, byPrefix.get(1));
+		assertEquals(1, directory.findByLoginPrefix("hx", 1).size());
+		List<User> byName = directory.findByNameFragment("天", 10);
+		assertEquals(2, byName.size());
+		assertTrue(byName.stream().anyMatch(user -> user == regularUser));
+		assertTrue(byName.stream().anyMatch(user -> user == second));
+		assertSame(first, directory.findByNameFragment("小妹", 10).get(0));
+		assertTrue(directory.findByNameFragment("不存在", 10).isEmpty());
+
+		// 测试邮箱和登录名在整个设备群内唯一
+		try {
+			other.addUser(new User(3, "another", "111111", "冒名者", "Admin@NWPU.edu.cn"));
+			fail("邮箱重复时应拒绝添加用户");
+		} catch (IllegalArgumentException e) {
+			assertEquals(2, other.getUsers().size());
+		}
+		try {
+			other.addUser(new User(3, "ADMIN", "111111", "冒名者", "another@nwpu.edu.cn"));
+			fail("登录名重复时应拒绝添加用户");
+		} catch (IllegalArgumentException e) {
+			// 预期异常
+		}
+
+		// 测试修改邮箱、登录名和昵称后自动更新索引，与其他用户冲突时拒绝修改
+		first.setEmail("wife@homesphere.cn");
+		assertNull(directory.findByEmail("wife@nwpu.edu.cn"));
+		assertSame(first, directory.findByEmail("wife@homesphere.cn"));
+		first.setLoginName("hxt_spouse");
+		assertNull(directory.findByLogin("hxt_wife"));
+		assertSame(first, directory.findByLogin("hxt_spouse"));
+		first.setUserName("航小妹妹");
+		assertSame(first, directory.findByNameFragment("妹妹", 10).get(0));
+		try {
+			first.setLoginName("ADMIN");
+			fail("登录名重复时应拒绝修改");
+		} catch (IllegalArgumentException e) {
+			assertEquals("hxt_spouse", first.getLoginName());
+			assertSame(first, directory.findByLogin("hxt_spouse"));
+		}
+		other.removeUser(1);
+		other.removeUser(2);
+		assertNull(directory.findByLogin("hxt_spouse"));
+		byName = directory.findByNameFragment("天", 10);
+		assertEquals(1, byName.size());
+		assertSame(regularUser, byName.get(0));
+	}
+
+	@Test
+	public void testPermissionTable() throws Exception {
+		PermissionTable permissions = household.getPermissions();
+		assertEquals(3, permissions.getDeviceCount());
+
+		// 测试未绑定操作者时一律拒绝，系统身份和管理员不受限制
+		assertFalse(PermissionTable.isPermitted(null, ac));
+		assertTrue(PermissionTable.isPermitted(admin, lock));
+		assertFalse(PermissionTable.isPermitted(regularUser, ac));
+		assertFalse(new DeviceAction("setTemperature", "20.0", ac).run());
+		assertEquals(3, household.groupPower(Device.class, true).getFailed());
+		assertTrue(PermissionTable.runAsSystem(new DeviceAction("setTemperature", "20.0", ac)::run));
+		assertEquals(20.0, ac.getTargetTemp(), 0.01);
+		assertNull(PermissionTable.getActingUser());
+
+		// 测试普通成员无授权时指令被拒绝，授权后可以执行
+		DeviceAction action = new DeviceAction("setTemperature", "18.0", ac);
+		assertFalse(PermissionTable.runAs(regularUser, action::run));
+		assertEquals(20.0, ac.getTargetTemp(), 0.01);
+		assertNull(PermissionTable.getActingUser());
+		permissions.grantDevice(regularUser, ac);
+		assertTrue(PermissionTable.runAs(regularUser, action::run));
+		assertEquals(18.0, ac.getTargetTemp(), 0.01);
+		try {
+			permissions.grantDevice(regularUser, scale);
+			fail("不属于家庭的设备不能授权");
+		} catch (IllegalArgumentException e) {
+			assertFalse(PermissionTable.isPermitted(regularUser, scale));
+		}
+
+		// 测试群组命令只对有权操作的设备执行
+		GroupCommandResult result = PermissionTable.runAs(regularUser, () -> household.groupPower(Device.class, true));
+		assertEquals(1, result.getSucceeded());
+		assertEquals(2, result.getFailed());
+		assertTrue(ac.isPowerStatus());
+		assertFalse(lock.isPowerStatus());
+
+		// 测试未登录时不能触发场景；场景涉及无权操作的设备时整体不执行，房间授权后可以触发
+		light.powerOn();
+		system.manualTrigSceneById(1);
+		assertTrue(light.isPowerStatus());
+		eveningScene.manualTrig();
+		assertTrue(light.isPowerStatus());
+		PermissionTable.runAs(regularUser, () -> {
+			eveningScene.manualTrig();
+			return null;
+		});
+		assertTrue(light.isPowerStatus());
+		assertEquals(18.0, ac.getTargetTemp(), 0.01);
+		permissions.grantRoom(regularUser, livingRoom);
+		PermissionTable.runAs(regularUser, () -> {
+			eveningScene.manualTrig();
+			return null;
+		});
+		assertFalse(light.isPowerStatus());
+		assertEquals(26.0, ac.getTargetTemp(), 0.01);
+
+		// 测试房间授权包括之后加入房间的设备，撤销房间授权不影响单独授权的设备
+		LightBulb lamp = new LightBulb(5, "Floor Lamp", lightManufacturer);
+		livingRoom.addDevice(lamp);
+		assertEquals(4, permissions.getDeviceCount());
+		assertTrue(PermissionTable.isPermitted(regularUser, lamp));
+		assertFalse(PermissionTable.isPermitted(regularUser, lock));
+		permissions.revokeRoom(regularUser, livingRoom);
+		assertFalse(PermissionTable.isPermitted(regularUser, lamp));
+		assertFalse(PermissionTable.isPermitted(regularUser, light));
+		assertTrue(PermissionTable.isPermitted(regularUser, ac));
+
+		// 测试设备移出家庭后授权撤销、槽位复用；用户移出家庭后全部授权撤销
+		livingRoom.removeDevice(1);
+		assertFalse(PermissionTable.isPermitted(regularUser, ac));
+		assertEquals(3, permissions.getDeviceCount());
+		livingRoom.addDevice(ac);
+		assertFalse(PermissionTable.isPermitted(regularUser, ac));
+		permissions.grantRoom(regularUser, bedroom);
+		assertTrue(PermissionTable.isPermitted(regularUser, lock));
+		household.removeUser(regularUser.getUserId());
+		assertFalse(PermissionTable.isPermitted(regularUser, lock));
+	}
+}
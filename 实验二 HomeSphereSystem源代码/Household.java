@@ -2,11 +2,23 @@ package cn.edu.nwpu.homesphere;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * 家庭类，用于封装智能家居系统中的家庭信息及关联资源，是用户、房间、智能场景的聚合容器。
  * <p>
  * 该类提供家庭资源的管理能力，包括用户增删、房间管理、智能场景维护，以及统一获取家庭所有设备的功能。
+ * <p>
+ * 结构性修改（增删房间、用户、场景，修改地址、地区、管理员）在当前家庭对象上加锁，每次修改后发布一个新的
+ * {@link HouseholdSnapshot}；报表、展示等只读路径通过{@link #snapshot()}获取快照后遍历，既不阻塞写入方，也不会看到修改到一半的状态。
+ * 配置了变更流（{@link #setChangeFeed(ChangeFeed)}）时，上述修改以及设备的加入、移出和状态变化都会按发生顺序记录为{@link ChangeEvent}。
  *
  * @author 余燚
  * @version 1.0
@@ -22,25 +34,66 @@ public class Household {
      */
     private String address;
 
+    /**
+     * 家庭所在地区（如“西安”“陕西”），用于跨家庭的设备运营查询（如按地区召回），可为null
+     */
+    private String region;
+
     /**
      * 家庭管理员用户（拥有家庭资源的最高管理权限）
      */
     private User admin;
 
     /**
-     * 家庭内所有用户的集合（包含管理员和普通成员），初始化为空列表
+     * 按编号排序的用户索引，用于稳定顺序的分页和流式遍历
      */
-    private List<User> users = new ArrayList<User>();
+    private final NavigableMap<Integer, User> usersById = new ConcurrentSkipListMap<Integer, User>();
 
     /**
-     * 家庭内所有房间的集合（如客厅、卧室、厨房等），初始化为空列表
+     * 按编号排序的房间索引，用于稳定顺序的分页和流式遍历
      */
-    private List<Room> rooms = new ArrayList<Room>();
+    private final NavigableMap<Integer, Room> roomsById = new ConcurrentSkipListMap<Integer, Room>();
 
     /**
-     * 家庭内所有自动化场景的集合（如“早安场景”“离家模式”等），初始化为空列表
+     * 按编号排序的设备索引（涵盖所有房间），用于稳定顺序的分页和流式遍历
      */
-    private List<AutomationScene> autoScenes = new ArrayList<AutomationScene>();
+    private final NavigableMap<Integer, Device> devicesById = new ConcurrentSkipListMap<Integer, Device>();
+
+    /**
+     * 按编号排序的自动化场景索引，用于稳定顺序的分页和流式遍历
+     */
+    private final NavigableMap<Integer, AutomationScene> scenesById = new ConcurrentSkipListMap<Integer, AutomationScene>();
+
+    /**
+     * 家庭内设备的能力注册表，设备加入家庭时按能力接口分组
+     */
+    private final CapabilityRegistry capabilities = new CapabilityRegistry();
+
+    /**
+     * 家庭成员的设备权限表
+     */
+    private final PermissionTable permissions = new PermissionTable(this);
+
+    /**
+     * 家庭的实时用电功率表，汇总各房间功率表，并逐级汇总到设备群功率表
+     */
+    private final PowerGauge powerGauge = new PowerGauge(Fleet.getInstance().getPowerGauge());
+
+    /**
+     * 家庭当前的快照（含所有用户、房间和自动化场景），每次结构性修改后整体替换
+     */
+    private volatile HouseholdSnapshot snapshot = new HouseholdSnapshot(0, 0, null, null, null,
+            PersistentIdList.empty(), PersistentIdList.empty(), PersistentIdList.empty());
+
+    /**
+     * 家庭的变更流，为null时不记录变更事件
+     */
+    private volatile ChangeFeed changeFeed;
+
+    /**
+     * 是否计入全局设备群：设备登记到全局设备倒排索引、功率计入全局功率表（复制副本为false）
+     */
+    private volatile boolean fleetMember = true;
 
     /**
      * 无参构造方法，创建一个默认的家庭实例
@@ -60,6 +113,21 @@ public class Household {
     public Household(int householdId, String address) {
         this.householdId = householdId;
         this.address = address;
+        republish();
+    }
+
+    /**
+     * 有参构造方法，创建指定编号、地址和所在地区的家庭实例
+     *
+     * @param householdId 家庭唯一编号
+     * @param address     家庭具体地址
+     * @param region      家庭所在地区（如“西安”）
+     */
+    public Household(int householdId, String address, String region) {
+        this.householdId = householdId;
+        this.address = address;
+        this.region = region;
+        republish();
     }
 
     /**
@@ -85,8 +153,31 @@ public class Household {
      *
      * @param address 新的家庭地址（如搬家后更新地址）
      */
-    public void setAddress(String address) {
+    public synchronized void setAddress(String address) {
         this.address = address;
+        republish();
+        recordHouseholdUpdated();
+    }
+
+    /**
+     * 获取家庭所在地区
+     *
+     * @return 所在地区（字符串），未设置时为null
+     */
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * 设置家庭所在地区，并同步更新家庭内所有设备在全局设备倒排索引中的地区
+     *
+     * @param region 新的所在地区
+     */
+    public synchronized void setRegion(String region) {
+        this.region = region;
+        republish();
+        recordHouseholdUpdated();
+        reindex();
     }
 
     /**
@@ -105,18 +196,41 @@ public class Household {
      *
      * @param admin 待设为管理员的用户（{@link User}对象）
      */
-    public void setAdmin(User admin) {
+    public synchronized void setAdmin(User admin) {
         this.admin = admin;
         admin.setAdmin(true);
+        republish();
+        recordHouseholdUpdated();
     }
 
     /**
      * 向家庭添加一个房间
+     * <p>
+     * 房间内已有的设备会同时登记到全局设备倒排索引（{@link DeviceIndex}）。
      *
      * @param room 待添加的房间（{@link Room}对象）
+     * @throws IllegalArgumentException 房间内某台设备的编号已被设备群中的其他设备使用（此时房间不会加入家庭）
      */
-    public void addRoom(Room room){
-        rooms.add(room);
+    public synchronized void addRoom(Room room){
+        if (fleetMember) {
+            for (Device device : room.listDevices()) {
+                Device owner = Fleet.getInstance().getDeviceIndex().getDevice(device.getDeviceId());
+                if (owner != null && owner != device) {
+                    throw new IllegalArgumentException("设备编号" + device.getDeviceId() + "已被设备" + owner.getName() + "使用");
+                }
+            }
+        }
+        roomsById.put(room.getRoomId(), room);
+        room.setHousehold(this);
+        if (changeFeed != null) {
+            record(ChangeEvent.Type.ROOM_ADDED, room.getRoomId(), roomAttributes(room));
+        }
+        for (Device device : room.listDevices()) {
+            deviceAdded(device);
+            recordDeviceAdded(device);
+        }
+        HouseholdSnapshot current = snapshot;
+        publish(current.roomList().with(room.getRoomId(), room.snapshot()), current.userList(), current.sceneList());
     }
 
     /**
@@ -126,42 +240,72 @@ public class Household {
      *
      * @param roomId 待移除房间的编号
      */
-    public void removeRoom(int roomId){
-        int originalSize = this.rooms.size();
-        rooms.removeIf(room -> room.getRoomId() == roomId);
-
-        if (originalSize > rooms.size()) {
+    public synchronized void removeRoom(int roomId){
+        if (detachRoom(roomId)) {
             System.out.println("成功移除房间号为" + roomId + "的房间");
         } else {
             System.out.println("未找到房间号为" + roomId + "的设备，操作执行失败");
         }
     }
 
+    /**
+     * 根据房间编号从家庭中移除指定房间，不打印提示信息（副本应用复制来的事件时使用）
+     *
+     * @param roomId 待移除房间的编号
+     * @return {@code true}表示移除了房间
+     */
+    synchronized boolean detachRoom(int roomId) {
+        Room room = roomsById.remove(roomId);
+        if (room == null) {
+            return false;
+        }
+        for (Device device : room.listDevices()) {
+            deviceRemoved(device);
+            recordDeviceRemoved(device);
+        }
+        room.setHousehold(null);
+        record(ChangeEvent.Type.ROOM_REMOVED, roomId, Map.of());
+        HouseholdSnapshot current = snapshot;
+        publish(current.roomList().without(roomId), current.userList(), current.sceneList());
+        return true;
+    }
+
     /**
      * 获取家庭内所有房间的集合
      * <p>
-     * 若家庭内无房间，会打印提示信息并返回null；否则返回房间列表。
+     * 若家庭内无房间，会打印提示信息并返回null；否则返回当前快照中房间的不可变列表（按房间编号升序）。
      *
      * @return 房间列表（{@link List}<{@link Room}>），无房间时返回null
      */
     public List<Room> getRooms() {
-        if(this.rooms.isEmpty())
+        List<RoomSnapshot> rooms = snapshot.getRooms();
+        if(rooms.isEmpty())
         {
             System.out.println("家庭内还没有房间，请添加！");
             return null;
         }
         else{
-            return this.rooms;
+            return rooms.stream().map(RoomSnapshot::getRoom).toList();
         }
     }
 
     /**
-     * 向家庭添加一个家庭成员（用户）
+     * 向家庭添加一个家庭成员（用户），并登记到全局用户目录（{@link Fleet#getUserDirectory()}）
      *
      * @param user 待添加的家庭成员（{@link User}对象）
+     * @throws IllegalArgumentException 用户的邮箱或登录名已被其他家庭成员使用
      */
-    public void addUser(User user){
-        users.add(user);
+    public synchronized void addUser(User user){
+        if (fleetMember) {
+            Fleet.getInstance().getUserDirectory().register(householdId, user);
+        }
+        usersById.put(user.getUserId(), user);
+        HouseholdSnapshot current = snapshot;
+        publish(current.roomList(), current.userList().with(user.getUserId(), user), current.sceneList());
+        if (changeFeed != null) {
+            record(ChangeEvent.Type.USER_ADDED, user.getUserId(), userAttributes(user));
+        }
+        user.setHousehold(this);
     }
 
     /**
@@ -171,31 +315,49 @@ public class Household {
      *
      * @param userId 待移除用户的编号
      */
-    public void removeUser(int userId){
-        int originalSize = this.users.size();
-        users.removeIf(user -> user.getUserId() == userId);
-
-        if (originalSize > users.size()) {
+    public synchronized void removeUser(int userId){
+        if (detachUser(userId)) {
             System.out.println("成功移除编号为为" + userId + "的用户");
         } else {
             System.out.println("未找到编号号为" + userId + "的用户，操作执行失败");
         }
     }
 
+    /**
+     * 根据用户编号从家庭中移除指定家庭成员，不打印提示信息（副本应用复制来的事件时使用）
+     *
+     * @param userId 待移除用户的编号
+     * @return {@code true}表示移除了用户
+     */
+    synchronized boolean detachUser(int userId) {
+        User removed = usersById.remove(userId);
+        if (removed == null) {
+            return false;
+        }
+        Fleet.getInstance().getUserDirectory().unregister(householdId, removed);
+        permissions.revokeAll(removed);
+        removed.setHousehold(null);
+        HouseholdSnapshot current = snapshot;
+        publish(current.roomList(), current.userList().without(userId), current.sceneList());
+        record(ChangeEvent.Type.USER_REMOVED, userId, Map.of());
+        return true;
+    }
+
     /**
      * 获取家庭内所有用户的集合
      * <p>
-     * 若家庭内无用户，会打印提示信息并返回null；否则返回用户列表。
+     * 若家庭内无用户，会打印提示信息并返回null；否则返回当前快照中的不可变用户列表（按用户编号升序）。
      *
      * @return 用户列表（{@link List}<{@link User}>），无用户时返回null
      */
     public List<User> getUsers() {
-        if(this.users.isEmpty()){
+        List<User> users = snapshot.getUsers();
+        if(users.isEmpty()){
             System.out.println("家庭里还没有用户，请添加！");
             return null;
         }
         else{
-            return this.users;
+            return users;
         }
     }
 
@@ -204,8 +366,14 @@ public class Household {
      *
      * @param autoScene 待添加的自动化场景（{@link AutomationScene}对象）
      */
-    public void addAutoScene(AutomationScene autoScene){
-        autoScenes.add(autoScene);
+    public synchronized void addAutoScene(AutomationScene autoScene){
+        scenesById.put(autoScene.getSceneId(), autoScene);
+        HouseholdSnapshot current = snapshot;
+        publish(current.roomList(), current.userList(), current.sceneList().with(autoScene.getSceneId(), autoScene));
+        if (changeFeed != null) {
+            record(ChangeEvent.Type.SCENE_ADDED, autoScene.getSceneId(), sceneAttributes(autoScene));
+        }
+        autoScene.setHousehold(this);
     }
 
     /**
@@ -215,30 +383,86 @@ public class Household {
      *
      * @param sceneId 待移除场景的编号（参数名原“aceneId”为笔误，建议修正为“sceneId”）
      */
-    public void removeAutoScene(int sceneId){
-        int originalSize = this.autoScenes.size();
-        autoScenes.removeIf(scene -> scene.getSceneId() == sceneId);
-
-        if (originalSize > autoScenes.size()) {
+    public synchronized void removeAutoScene(int sceneId){
+        if (detachAutoScene(sceneId)) {
             System.out.println("成功移除编号为为" + sceneId + "的智能场景");
         } else {
             System.out.println("未找到编号号为" + sceneId + "的智能场景，操作执行失败");
         }
     }
 
+    /**
+     * 根据场景编号从家庭中移除指定自动化场景，不打印提示信息（副本应用复制来的事件时使用）
+     *
+     * @param sceneId 待移除场景的编号
+     * @return {@code true}表示移除了场景
+     */
+    synchronized boolean detachAutoScene(int sceneId) {
+        AutomationScene removed = scenesById.remove(sceneId);
+        if (removed == null) {
+            return false;
+        }
+        removed.setHousehold(null);
+        HouseholdSnapshot current = snapshot;
+        publish(current.roomList(), current.userList(), current.sceneList().without(sceneId));
+        record(ChangeEvent.Type.SCENE_REMOVED, sceneId, Map.of());
+        return true;
+    }
+
     /**
      * 获取家庭内所有自动化场景的集合
      * <p>
-     * 若家庭内无自动化场景，会打印提示信息，返回场景列表。
+     * 若家庭内无自动化场景，会打印提示信息，返回当前快照中的不可变场景列表（按场景编号升序）。
      *
-     * @return 自动化场景列表（{@link List}<{@link AutomationScene}>），无场景时返回null
+     * @return 自动化场景列表（{@link List}<{@link AutomationScene}>）
      */
     public List<AutomationScene> getAutoScenes() {
-        if(this.autoScenes.isEmpty()){
+        List<AutomationScene> autoScenes = snapshot.getAutoScenes();
+        if(autoScenes.isEmpty()){
             System.out.println("家庭里还没有智能场景，请添加！");
         }
 
-            return this.autoScenes;
+            return autoScenes;
+    }
+
+    /**
+     * 按编号查找自动化场景
+     *
+     * @param sceneId 场景编号
+     * @return 场景（{@link AutomationScene}），不存在时返回null
+     */
+    public AutomationScene getAutoScene(int sceneId) {
+        return scenesById.get(sceneId);
+    }
+
+    /**
+     * 按编号查找房间
+     *
+     * @param roomId 房间编号
+     * @return 房间（{@link Room}），不存在时返回null
+     */
+    public Room getRoom(int roomId) {
+        return roomsById.get(roomId);
+    }
+
+    /**
+     * 按编号查找家庭成员
+     *
+     * @param userId 用户编号
+     * @return 用户（{@link User}），不存在时返回null
+     */
+    public User getUser(int userId) {
+        return usersById.get(userId);
+    }
+
+    /**
+     * 按编号查找家庭内的设备
+     *
+     * @param deviceId 设备编号
+     * @return 设备（{@link Device}），不存在时返回null
+     */
+    public Device getDevice(int deviceId) {
+        return devicesById.get(deviceId);
     }
 
     /**
@@ -249,13 +473,567 @@ public class Household {
      * @return 家庭内所有设备的列表（{@link List}<{@link Device}>），无设备时返回空列表
      */
     public List<Device> listAllDevices(){
-        List<Device> houseDevices = new ArrayList<Device>();
+        return new ArrayList<Device>(snapshot.getDevices());
+    }
+
+    /**
+     * 获取家庭当前的不可变快照（一次volatile读，无需加锁）
+     * <p>
+     * 长时间的遍历（能耗报表、导出等）应基于快照进行：遍历期间其他线程增删房间、设备、用户或场景，
+     * 不会影响已获取的快照，也不会被本次遍历阻塞。
+     *
+     * @return 家庭快照（{@link HouseholdSnapshot}）
+     */
+    public HouseholdSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 房间内增删设备或修改属性后的回调（由{@link Room}在发布新的房间快照后调用），只替换该房间的快照
+     *
+     * @param room 发生变化的房间
+     */
+    synchronized void roomChanged(Room room) {
+        if (room.getHousehold() == this) {
+            HouseholdSnapshot current = snapshot;
+            publish(current.roomList().with(room.getRoomId(), room.snapshot()), current.userList(), current.sceneList());
+        }
+    }
+
+    /**
+     * 以家庭当前属性发布新快照，集合部分沿用上一个快照
+     */
+    private void republish() {
+        HouseholdSnapshot current = snapshot;
+        publish(current.roomList(), current.userList(), current.sceneList());
+    }
+
+    /**
+     * 发布新快照，未修改的集合直接传入上一个快照中的列表以共享结构（调用方需持有当前对象的锁或处于构造过程中）
+     *
+     * @param rooms      房间快照列表
+     * @param users      用户列表
+     * @param autoScenes 场景列表
+     */
+    private void publish(PersistentIdList<RoomSnapshot> rooms, PersistentIdList<User> users,
+                         PersistentIdList<AutomationScene> autoScenes) {
+        snapshot = new HouseholdSnapshot(snapshot.getVersion() + 1, householdId, address, region, admin,
+                rooms, users, autoScenes);
+    }
+
+    /**
+     * 获取家庭内设备的能力注册表，可按能力接口直接获取设备（如所有能耗报告设备）
+     *
+     * @return 能力注册表（{@link CapabilityRegistry}）
+     */
+    public CapabilityRegistry getCapabilities() {
+        return capabilities;
+    }
+
+    /**
+     * 获取家庭的实时用电功率表（所有房间开机设备的额定功率之和）
+     *
+     * @return 功率表（{@link PowerGauge}）
+     */
+    public PowerGauge getPowerGauge() {
+        return powerGauge;
+    }
+
+    /**
+     * 获取家庭成员的设备权限表，用于按设备或按房间为成员授权
+     *
+     * @return 权限表（{@link PermissionTable}）
+     */
+    public PermissionTable getPermissions() {
+        return permissions;
+    }
+
+    /**
+     * 设备加入家庭时的回调（由{@link Room#addDevice(Device)}及{@link #addRoom(Room)}调用），
+     * 登记全局设备倒排索引和能力注册表；最先登记全局索引，编号冲突时家庭的数据保持不变。
+     * 启用了堆外存储（{@link DeviceStateTable#getDefault()}）时，设备状态随后搬入状态表
+     *
+     * @param device 加入家庭的设备
+     * @throws IllegalArgumentException 设备编号已被设备群中的其他设备使用
+     */
+    void deviceAdded(Device device) {
+        if (fleetMember) {
+            Fleet.getInstance().getDeviceIndex().register(device, region);
+        }
+        devicesById.put(device.getDeviceId(), device);
+        capabilities.register(device);
+        permissions.deviceAdded(device);
+        DeviceStateTable table = DeviceStateTable.getDefault();
+        if (table != null) {
+            device.attachState(table);
+        }
+    }
+
+    /**
+     * 记录设备加入事件，须在设备已出现在家庭快照中之后调用（{@link Room}发布新快照之后，或在家庭的锁内）
+     * <p>
+     * 主节点生成副本快照时先读取变更流序号、再读取家庭快照（见{@link ReplicationLeader}）：
+     * 先发布后记录保证序号不超过快照序号的加入事件一定已体现在快照中，之后的事件副本重复应用不影响结果。
+     *
+     * @param device 加入家庭的设备
+     */
+    void recordDeviceAdded(Device device) {
+        if (changeFeed != null) {
+            record(ChangeEvent.Type.DEVICE_ADDED, device.getDeviceId(), deviceAttributes(device));
+        }
+    }
 
-        for(Room room : this.rooms){
-            List<Device> roomDevices = room.getDevices();
-            houseDevices.addAll(roomDevices);
+    /**
+     * 设备移出家庭时的回调（由{@link Room#removeDevice(int)}及{@link #removeRoom(int)}调用），
+     * 从能力注册表和全局设备倒排索引中移除；设备状态若在状态表中，搬回堆上并归还槽位
+     *
+     * @param device 移出家庭的设备
+     */
+    void deviceRemoved(Device device) {
+        devicesById.remove(device.getDeviceId(), device);
+        capabilities.unregister(device);
+        permissions.deviceRemoved(device);
+        if (fleetMember) {
+            Fleet.getInstance().getDeviceIndex().unregister(device);
         }
+        device.detachState();
+    }
+
+    /**
+     * 记录设备移出事件，须在设备已从家庭快照中消失之后调用（理由同{@link #recordDeviceAdded(Device)}）
+     *
+     * @param device 移出家庭的设备
+     */
+    void recordDeviceRemoved(Device device) {
+        record(ChangeEvent.Type.DEVICE_REMOVED, device.getDeviceId(), Map.of());
+    }
+
+    /**
+     * 设备状态变化时的回调（由{@link Device#stateChanged(String, double)}等方法调用），记录设备状态事件
+     *
+     * @param device    状态变化的设备
+     * @param attribute 状态属性名
+     * @param value     新的状态值
+     */
+    void deviceStateChanged(Device device, String attribute, String value) {
+        record(ChangeEvent.Type.DEVICE_STATE, device.getDeviceId(), Map.of(attribute, value));
+    }
 
-        return houseDevices;
+    /**
+     * 房间名称或面积变化时的回调（由{@link Room#setName(String)}及{@link Room#setArea(double)}调用），记录房间更新事件
+     *
+     * @param room 发生变化的房间
+     */
+    void roomUpdated(Room room) {
+        if (changeFeed != null) {
+            record(ChangeEvent.Type.ROOM_UPDATED, room.getRoomId(), roomAttributes(room));
+        }
+    }
+
+    /**
+     * 用户属性变化时的回调（由{@link User}的setter调用），记录用户更新事件
+     *
+     * @param user 发生变化的用户
+     */
+    void userUpdated(User user) {
+        if (changeFeed != null) {
+            record(ChangeEvent.Type.USER_UPDATED, user.getUserId(), userAttributes(user));
+        }
+    }
+
+    /**
+     * 成员授权变化时的回调（由{@link PermissionTable}在其锁内调用），记录用户修改后的全部授权
+     *
+     * @param user 授权被修改的用户
+     */
+    void permissionsUpdated(User user) {
+        if (changeFeed != null) {
+            record(ChangeEvent.Type.PERMISSION_UPDATED, user.getUserId(), permissions.describe(user));
+        }
+    }
+
+    /**
+     * 场景名称、描述或动作变化时的回调（由{@link AutomationScene}在其锁内调用），记录场景更新事件
+     *
+     * @param scene 发生变化的场景
+     */
+    void sceneUpdated(AutomationScene scene) {
+        if (changeFeed != null) {
+            record(ChangeEvent.Type.SCENE_UPDATED, scene.getSceneId(), sceneAttributes(scene));
+        }
+    }
+
+    /**
+     * 设置家庭的变更流，之后的修改都会记录到该流中
+     *
+     * @param changeFeed 变更流，传入null表示停止记录
+     */
+    public void setChangeFeed(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    /**
+     * 判断家庭是否配置了变更流（设备在转换状态值之前先检查，未配置时不产生任何开销）
+     *
+     * @return {@code true}表示已配置
+     */
+    boolean hasChangeFeed() {
+        return changeFeed != null;
+    }
+
+    /**
+     * 获取家庭的变更流
+     *
+     * @return 变更流（{@link ChangeFeed}），未配置时返回null
+     */
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * 追加一个变更事件，未配置变更流时忽略
+     */
+    private void record(ChangeEvent.Type type, int entityId, Map<String, String> attributes) {
+        ChangeFeed feed = changeFeed;
+        if (feed != null) {
+            feed.append(type, entityId, attributes);
+        }
+    }
+
+    private void recordHouseholdUpdated() {
+        if (changeFeed != null) {
+            record(ChangeEvent.Type.HOUSEHOLD_UPDATED, householdId, householdAttributes());
+        }
+    }
+
+    /**
+     * 设置家庭是否计入全局设备群（{@link Fleet}）：设备是否登记到全局设备倒排索引、用户是否登记到全局用户目录、功率是否计入全局功率表。
+     * 由复制副本关闭，副本提升为主节点时重新开启
+     * <p>
+     * 同一进程中的副本与主节点拥有编号相同的设备，副本的设备不能覆盖主节点设备在全局索引中的登记，功率也不能重复计入。
+     *
+     * @param fleetMember {@code true}表示计入（默认）
+     */
+    synchronized void setFleetMember(boolean fleetMember) {
+        this.fleetMember = fleetMember;
+        powerGauge.attachTo(fleetMember ? Fleet.getInstance().getPowerGauge() : null);
+        for (RoomSnapshot room : snapshot.getRooms()) {
+            for (Device device : room.getDevices()) {
+                if (!fleetMember) {
+                    Fleet.getInstance().getDeviceIndex().unregister(device);
+                    continue;
+                }
+                try {
+                    Fleet.getInstance().getDeviceIndex().register(device, region);
+                } catch (IllegalArgumentException e) {
+                    System.out.println("家庭" + householdId + "的设备未登记到设备倒排索引：" + e.getMessage());
+                }
+            }
+        }
+        for (User user : snapshot.getUsers()) {
+            if (!fleetMember) {
+                Fleet.getInstance().getUserDirectory().unregister(householdId, user);
+                continue;
+            }
+            try {
+                Fleet.getInstance().getUserDirectory().register(householdId, user);
+            } catch (IllegalArgumentException e) {
+                System.out.println("家庭" + householdId + "的用户未登记到用户目录：" + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 按当前地区重新登记家庭内所有设备到全局设备倒排索引
+     */
+    private void reindex() {
+        if (!fleetMember) {
+            return;
+        }
+        for (RoomSnapshot room : snapshot.getRooms()) {
+            for (Device device : room.getDevices()) {
+                Fleet.getInstance().getDeviceIndex().register(device, region);
+            }
+        }
+    }
+
+    /**
+     * 以一组事件描述家庭当前的完整状态，供复制副本初始化（持有家庭的锁，期间结构性修改不会发生）
+     * <p>
+     * 事件依次为用户、家庭属性、各房间、各房间的设备（含状态）、场景、成员的授权，序号均为传入的序号。
+     *
+     * @param sequence 快照对应的变更流序号
+     * @return 描述家庭完整状态的事件
+     */
+    synchronized List<ChangeEvent> describe(long sequence) {
+        List<ChangeEvent> events = new ArrayList<ChangeEvent>();
+        long now = System.currentTimeMillis();
+        HouseholdSnapshot current = snapshot;
+        for (User user : current.getUsers()) {
+            events.add(new ChangeEvent(sequence, householdId, now, ChangeEvent.Type.USER_ADDED, user.getUserId(), userAttributes(user)));
+        }
+        events.add(new ChangeEvent(sequence, householdId, now, ChangeEvent.Type.HOUSEHOLD_UPDATED, householdId, householdAttributes()));
+        for (RoomSnapshot room : current.getRooms()) {
+            events.add(new ChangeEvent(sequence, householdId, now, ChangeEvent.Type.ROOM_ADDED, room.getRoomId(), roomAttributes(room.getRoom())));
+            for (Device device : room.getDevices()) {
+                events.add(new ChangeEvent(sequence, householdId, now, ChangeEvent.Type.DEVICE_ADDED, device.getDeviceId(), deviceAttributes(device)));
+            }
+        }
+        for (AutomationScene scene : current.getAutoScenes()) {
+            events.add(new ChangeEvent(sequence, householdId, now, ChangeEvent.Type.SCENE_ADDED, scene.getSceneId(), sceneAttributes(scene)));
+        }
+        for (User user : current.getUsers()) {
+            Map<String, String> grants = permissions.describe(user);
+            if (!grants.isEmpty()) {
+                events.add(new ChangeEvent(sequence, householdId, now, ChangeEvent.Type.PERMISSION_UPDATED, user.getUserId(), grants));
+            }
+        }
+        return events;
+    }
+
+    private Map<String, String> householdAttributes() {
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        putIfPresent(attributes, "address", address);
+        putIfPresent(attributes, "region", region);
+        if (admin != null) {
+            attributes.put("admin", Integer.toString(admin.getUserId()));
+        }
+        return attributes;
+    }
+
+    private static Map<String, String> userAttributes(User user) {
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        putIfPresent(attributes, "loginName", user.getLoginName());
+        putIfPresent(attributes, "userName", user.getUserName());
+        putIfPresent(attributes, "email", user.getEmail());
+        attributes.put("admin", Boolean.toString(user.isAdmin()));
+        putIfPresent(attributes, "credential", user.getCredential());
+        return attributes;
+    }
+
+    private static Map<String, String> deviceAttributes(Device device) {
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        if (device.getRoom() != null) {
+            attributes.put("room", Integer.toString(device.getRoom().getRoomId()));
+        }
+        attributes.put("kind", device.getClass().getSimpleName());
+        putIfPresent(attributes, "name", device.getName());
+        if (device.getManufacturer() != null) {
+            attributes.put("manufacturer", Integer.toString(device.getManufacturer().getManufacturerId()));
+        }
+        device.describeState(attributes);
+        return attributes;
+    }
+
+    private static Map<String, String> sceneAttributes(AutomationScene scene) {
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        putIfPresent(attributes, "name", scene.getName());
+        putIfPresent(attributes, "description", scene.getDescription());
+        List<DeviceAction> actions = scene.listActions();
+        attributes.put("actions", Integer.toString(actions.size()));
+        for (int i = 0; i < actions.size(); i++) {
+            DeviceAction action = actions.get(i);
+            attributes.put("action." + i + ".device", Integer.toString(action.getDevice().getDeviceId()));
+            putIfPresent(attributes, "action." + i + ".command", action.getCommand());
+            putIfPresent(attributes, "action." + i + ".parameters", action.getParameters());
+        }
+        return attributes;
+    }
+
+    private static Map<String, String> roomAttributes(Room room) {
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        putIfPresent(attributes, "name", room.getName());
+        attributes.put("area", Double.toString(room.getArea()));
+        return attributes;
+    }
+
+    private static void putIfPresent(Map<String, String> attributes, String name, String value) {
+        if (value != null) {
+            attributes.put(name, value);
+        }
+    }
+
+    /**
+     * 按用户编号升序分页列出家庭成员
+     *
+     * @param cursor 游标：第一页传入{@link Page#FIRST}，之后传入上一页的{@link Page#getNextCursor()}
+     * @param limit  每页最多返回的用户数（至少为1）
+     * @return 一页用户（{@link Page}<{@link User}>）
+     */
+    public Page<User> listUsers(int cursor, int limit) {
+        return page(usersById, cursor, limit);
+    }
+
+    /**
+     * 按房间编号升序分页列出房间
+     *
+     * @param cursor 游标：第一页传入{@link Page#FIRST}，之后传入上一页的{@link Page#getNextCursor()}
+     * @param limit  每页最多返回的房间数（至少为1）
+     * @return 一页房间（{@link Page}<{@link Room}>）
+     */
+    public Page<Room> listRooms(int cursor, int limit) {
+        return page(roomsById, cursor, limit);
+    }
+
+    /**
+     * 按设备编号升序分页列出家庭内所有房间的设备
+     *
+     * @param cursor 游标：第一页传入{@link Page#FIRST}，之后传入上一页的{@link Page#getNextCursor()}
+     * @param limit  每页最多返回的设备数（至少为1）
+     * @return 一页设备（{@link Page}<{@link Device}>）
+     */
+    public Page<Device> listDevices(int cursor, int limit) {
+        return page(devicesById, cursor, limit);
+    }
+
+    /**
+     * 按场景编号升序分页列出自动化场景
+     *
+     * @param cursor 游标：第一页传入{@link Page#FIRST}，之后传入上一页的{@link Page#getNextCursor()}
+     * @param limit  每页最多返回的场景数（至少为1）
+     * @return 一页场景（{@link Page}<{@link AutomationScene}>）
+     */
+    public Page<AutomationScene> listAutoScenes(int cursor, int limit) {
+        return page(scenesById, cursor, limit);
+    }
+
+    /**
+     * 以流的形式按编号升序遍历家庭成员（惰性遍历，不复制用户集合，遍历期间的增删不会导致异常）
+     *
+     * @return 用户流（{@link Stream}<{@link User}>）
+     */
+    public Stream<User> streamUsers() {
+        return usersById.values().stream();
+    }
+
+    /**
+     * 以流的形式按编号升序遍历房间（惰性遍历，不复制房间集合）
+     *
+     * @return 房间流（{@link Stream}<{@link Room}>）
+     */
+    public Stream<Room> streamRooms() {
+        return roomsById.values().stream();
+    }
+
+    /**
+     * 以流的形式按编号升序遍历家庭内所有设备（惰性遍历，不复制设备集合，适合大规模导出）
+     *
+     * @return 设备流（{@link Stream}<{@link Device}>）
+     */
+    public Stream<Device> streamDevices() {
+        return devicesById.values().stream();
+    }
+
+    /**
+     * 以流的形式按编号升序遍历自动化场景（惰性遍历，不复制场景集合）
+     *
+     * @return 场景流（{@link Stream}<{@link AutomationScene}>）
+     */
+    public Stream<AutomationScene> streamAutoScenes() {
+        return scenesById.values().stream();
+    }
+
+    /**
+     * 从按编号排序的索引中取出游标之后的一页元素
+     *
+     * @param index  按编号排序的索引
+     * @param cursor 游标（上一页最后一个元素的编号）
+     * @param limit  每页最多返回的元素数
+     * @param <T>    元素类型
+     * @return 一页元素
+     */
+    private static <T> Page<T> page(NavigableMap<Integer, T> index, int cursor, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("每页数量至少为1：" + limit);
+        }
+        NavigableMap<Integer, T> rest = cursor == Page.FIRST ? index : index.tailMap(cursor, false);
+        List<T> items = new ArrayList<T>(Math.min(limit, 64));
+        int last = cursor;
+        Iterator<Map.Entry<Integer, T>> it = rest.entrySet().iterator();
+        while (it.hasNext() && items.size() < limit) {
+            Map.Entry<Integer, T> entry = it.next();
+            items.add(entry.getValue());
+            last = entry.getKey();
+        }
+        return new Page<T>(items, last, it.hasNext());
+    }
+
+    /**
+     * 对家庭内所有房间中满足条件的设备批量执行同一条命令（群组命令）
+     * <p>
+     * 以房间为单位分批并行执行（每个房间由{@link Room#groupCommand(Class, Predicate, Consumer)}处理），
+     * 最后将各房间的结果合并为一个汇总结果返回。例如关闭全屋灯泡：
+     * {@code household.groupCommand(LightBulb.class, null, Device::powerOff)}。
+     * 各房间在公共线程池中执行，因此先取出当前线程的操作者（{@link PermissionTable#getActingUser()}），再交给各房间检查权限。
+     *
+     * @param type    目标设备类型（传入{@code Device.class}表示所有设备）
+     * @param filter  设备过滤条件，传入{@code null}表示不过滤
+     * @param command 对每台选中设备执行的命令
+     * @param <T>     目标设备类型
+     * @return 全屋本次命令的执行结果汇总（{@link GroupCommandResult}）
+     */
+    public <T extends Device> GroupCommandResult groupCommand(Class<T> type, Predicate<? super T> filter,
+                                                             Consumer<? super T> command) {
+        User actor = PermissionTable.getActingUser();
+        return snapshot.getRooms().parallelStream()
+                .map(RoomSnapshot::getRoom)
+                .collect(GroupCommandResult::new,
+                        (result, room) -> result.merge(room.groupCommand(actor, type, filter, command)),
+                        GroupCommandResult::merge);
+    }
+
+    /**
+     * 对指定房间内满足条件的设备批量执行同一条命令
+     * <p>
+     * 若未找到对应房间，会打印提示信息并返回空的执行结果。
+     *
+     * @param roomId  目标房间编号
+     * @param type    目标设备类型（传入{@code Device.class}表示所有设备）
+     * @param filter  设备过滤条件，传入{@code null}表示不过滤
+     * @param command 对每台选中设备执行的命令
+     * @param <T>     目标设备类型
+     * @return 该房间本次命令的执行结果汇总（{@link GroupCommandResult}）
+     */
+    public <T extends Device> GroupCommandResult groupCommand(int roomId, Class<T> type, Predicate<? super T> filter,
+                                                             Consumer<? super T> command) {
+        RoomSnapshot room = snapshot.getRoom(roomId);
+        if (room != null) {
+            return room.getRoom().groupCommand(type, filter, command);
+        }
+        System.out.println("未找到房间号为" + roomId + "的房间，操作执行失败");
+        return new GroupCommandResult();
+    }
+
+    /**
+     * 批量开启或关闭家庭内指定类型的所有设备
+     *
+     * @param type    目标设备类型（如{@code LightBulb.class}）
+     * @param powerOn {@code true}表示开机，{@code false}表示关机
+     * @return 执行结果汇总（{@link GroupCommandResult}）
+     */
+    public GroupCommandResult groupPower(Class<? extends Device> type, boolean powerOn) {
+        return groupCommand(type, null, powerOn ? Device::powerOn : Device::powerOff);
+    }
+
+    /**
+     * 批量设置家庭内满足条件的灯泡亮度
+     *
+     * @param filter     灯泡过滤条件，传入{@code null}表示所有灯泡
+     * @param brightness 目标亮度（建议取值范围：0-100）
+     * @return 执行结果汇总（{@link GroupCommandResult}）
+     */
+    public GroupCommandResult groupSetBrightness(Predicate<? super LightBulb> filter, int brightness) {
+        return groupCommand(LightBulb.class, filter, light -> light.setBrightness(brightness));
+    }
+
+    /**
+     * 批量设置家庭内满足条件的空调目标温度
+     *
+     * @param filter     空调过滤条件，传入{@code null}表示所有空调
+     * @param targetTemp 目标温度（单位：摄氏度）
+     * @return 执行结果汇总（{@link GroupCommandResult}）
+     */
+    public GroupCommandResult groupSetTargetTemp(Predicate<? super AirConditioner> filter, double targetTemp) {
+        return groupCommand(AirConditioner.class, filter, ac -> ac.setTargetTemp(targetTemp));
     }
 }
@@ -0,0 +1,314 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模拟家庭生成器，根据随机种子生成可复现的大规模测试数据（家庭、房间、设备、制造商、用户、场景及运行日志）。
+ * <p>
+ * 同一种子、同一配置生成的数据完全相同：制造商由种子决定，每个家庭再由种子和家庭编号单独决定，
+ * 因此单独生成某个家庭与在设备群中批量生成它的结果一致。设备类型在空调、灯泡、智能锁、体重秤四类中按比例混合；
+ * 运行日志覆盖截至{@link #setLogEndTime(long)}的若干天，记录每台设备的开机/关机事件以及电池设备的低电量警告。
+ * <p>
+ * 设备编号在设备群内唯一：家庭编号 × {@value #DEVICE_ID_STRIDE} + 家庭内序号；用户密码为"pw" + 用户编号。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see WorkloadReplayer
+ */
+public class HouseholdGenerator {
+    /**
+     * 每个家庭可使用的设备编号区间大小
+     */
+    static final int DEVICE_ID_STRIDE = 10000;
+
+    /**
+     * 允许的最大家庭编号，保证设备编号（家庭编号 × {@value #DEVICE_ID_STRIDE} + 序号）不超出int范围
+     */
+    static final int MAX_HOUSEHOLD_ID = (Integer.MAX_VALUE - (DEVICE_ID_STRIDE - 1)) / DEVICE_ID_STRIDE;
+
+    /**
+     * 生成的家庭所在地区
+     */
+    private static final String[] REGIONS = {"西安", "北京", "上海", "广州", "成都"};
+
+    /**
+     * 生成的房间名称
+     */
+    private static final String[] ROOM_NAMES = {"客厅", "主卧", "次卧", "厨房", "书房", "卫生间", "餐厅", "阳台"};
+
+    /**
+     * 制造商支持的协议组合
+     */
+    private static final String[] PROTOCOLS = {"WiFi", "ZigBee", "WiFi, ZigBee", "Bluetooth", "WiFi, Bluetooth", "Matter"};
+
+    /**
+     * 随机种子
+     */
+    private final long seed;
+
+    /**
+     * 由种子生成的制造商（所有家庭共用）
+     */
+    private final List<Manufacturer> manufacturers;
+
+    /**
+     * 每个家庭的房间数
+     */
+    private int roomsPerHousehold = 6;
+
+    /**
+     * 每个房间的设备数
+     */
+    private int devicesPerRoom = 8;
+
+    /**
+     * 每个家庭的用户数（第一个用户为管理员）
+     */
+    private int usersPerHousehold = 4;
+
+    /**
+     * 每个家庭的自动化场景数
+     */
+    private int scenesPerHousehold = 5;
+
+    /**
+     * 运行日志覆盖的天数
+     */
+    private int logDays = 90;
+
+    /**
+     * 运行日志的截止时间（毫秒时间戳），默认固定为2025-01-01 00:00 UTC以保证可复现
+     */
+    private long logEndTime = 1735689600000L;
+
+    /**
+     * 有参构造方法，创建使用指定种子和默认配置的生成器
+     *
+     * @param seed 随机种子
+     */
+    public HouseholdGenerator(long seed) {
+        this.seed = seed;
+        Random random = new Random(seed);
+        List<Manufacturer> list = new ArrayList<Manufacturer>();
+        for (int i = 1; i <= 8; i++) {
+            list.add(new Manufacturer(i, "制造商" + i, PROTOCOLS[random.nextInt(PROTOCOLS.length)]));
+        }
+        this.manufacturers = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * 生成编号为1到count的一批家庭（设备群）
+     *
+     * @param count 家庭数量
+     * @return 家庭列表（按编号升序）
+     */
+    public List<Household> generateFleet(int count) {
+        List<Household> fleet = new ArrayList<Household>(count);
+        for (int i = 1; i <= count; i++) {
+            fleet.add(generateHousehold(i));
+        }
+        return fleet;
+    }
+
+    /**
+     * 生成单个家庭，结果只由种子、配置和家庭编号决定
+     *
+     * @param householdId 家庭编号（1到{@value #MAX_HOUSEHOLD_ID}）
+     * @return 包含房间、设备、用户、场景及运行日志的家庭
+     * @throws IllegalArgumentException 若家庭编号超出范围，或每个家庭的设备数超出设备编号区间
+     */
+    public Household generateHousehold(int householdId) {
+        if (householdId < 1 || householdId > MAX_HOUSEHOLD_ID) {
+            throw new IllegalArgumentException("家庭编号应在1-" + MAX_HOUSEHOLD_ID + "之间：" + householdId);
+        }
+        if (roomsPerHousehold * devicesPerRoom >= DEVICE_ID_STRIDE) {
+            throw new IllegalArgumentException("每个家庭最多" + (DEVICE_ID_STRIDE - 1) + "台设备");
+        }
+        Random random = new Random(seed * 1_000_003L + householdId);
+        Household household = new Household(householdId, "模拟小区" + householdId + "号",
+                REGIONS[random.nextInt(REGIONS.length)]);
+
+        List<Device> devices = new ArrayList<Device>(roomsPerHousehold * devicesPerRoom);
+        int deviceSeq = 0;
+        for (int r = 1; r <= roomsPerHousehold; r++) {
+            Room room = new Room(r, ROOM_NAMES[(r - 1) % ROOM_NAMES.length] + r, 8 + random.nextInt(30));
+            household.addRoom(room);
+            for (int d = 0; d < devicesPerRoom; d++) {
+                Device device = newDevice(householdId * DEVICE_ID_STRIDE + ++deviceSeq, random);
+                room.addDevice(device);
+                device.getManufacturer().addDevice(device);
+                devices.add(device);
+            }
+        }
+
+        for (int u = 1; u <= usersPerHousehold; u++) {
+            User user = new User(u, "user" + householdId + "_" + u, "pw" + u, "用户" + u,
+                    "user" + householdId + "_" + u + "@homesphere.cn");
+            household.addUser(user);
+            if (u == 1) {
+                household.setAdmin(user);
+            }
+        }
+
+        for (int s = 1; s <= scenesPerHousehold && !devices.isEmpty(); s++) {
+            AutomationScene scene = new AutomationScene(s, "场景" + s, "模拟生成的场景");
+            int actions = 2 + random.nextInt(4);
+            for (int a = 0; a < actions; a++) {
+                scene.addAction(newAction(devices.get(random.nextInt(devices.size())), random));
+            }
+            household.addAutoScene(scene);
+        }
+
+        for (Device device : devices) {
+            generateLogs(device, random);
+        }
+        return household;
+    }
+
+    /**
+     * 按比例生成一台设备（空调30%、灯泡40%、智能锁15%、体重秤15%），并随机设置其状态
+     */
+    private Device newDevice(int deviceId, Random random) {
+        Manufacturer manufacturer = manufacturers.get(random.nextInt(manufacturers.size()));
+        int kind = random.nextInt(100);
+        Device device;
+        if (kind < 30) {
+            AirConditioner ac = new AirConditioner(deviceId, "空调" + deviceId, manufacturer);
+            ac.setCurrTemp(15 + random.nextInt(20));
+            ac.setTargetTemp(18 + random.nextInt(10));
+            device = ac;
+        } else if (kind < 70) {
+            LightBulb light = new LightBulb(deviceId, "灯泡" + deviceId, manufacturer);
+            light.setBrightness(random.nextInt(101));
+            light.setColorTemp(2700 + 100 * random.nextInt(39));
+            device = light;
+        } else if (kind < 85) {
+            SmartLock lock = new SmartLock(deviceId, "智能锁" + deviceId, manufacturer);
+            lock.setLocked(random.nextBoolean());
+            lock.setBatteryLevel(5 + random.nextInt(96));
+            device = lock;
+        } else {
+            BathroomScale scale = new BathroomScale(deviceId, "体重秤" + deviceId, manufacturer);
+            scale.setBodyMass(45 + random.nextInt(600) / 10.0);
+            scale.setBatteryLevel(5 + random.nextInt(96));
+            device = scale;
+        }
+        if (random.nextInt(10) < 6) {
+            device.powerOn();
+            device.setOnline(random.nextInt(10) < 9);
+        }
+        return device;
+    }
+
+    /**
+     * 为设备生成一条与其类型相符的场景动作
+     */
+    private static DeviceAction newAction(Device device, Random random) {
+        if (device instanceof AirConditioner) {
+            return new DeviceAction("setTemperature", Integer.toString(18 + random.nextInt(10)), device);
+        }
+        if (device instanceof LightBulb) {
+            return random.nextBoolean()
+                    ? new DeviceAction("setBrightness", Integer.toString(random.nextInt(101)), device)
+                    : new DeviceAction(random.nextBoolean() ? "powerOn" : "powerOff", "", device);
+        }
+        if (device instanceof SmartLock) {
+            return new DeviceAction("setLocked", Boolean.toString(random.nextBoolean()), device);
+        }
+        return new DeviceAction(random.nextBoolean() ? "powerOn" : "powerOff", "", device);
+    }
+
+    /**
+     * 生成设备的运行日志：每天0-3次开机/关机（同时写入开关机时间线，供分时电费出账），电池设备偶尔产生低电量警告
+     */
+    private void generateLogs(Device device, Random random) {
+        long day = TimeUnit.DAYS.toMillis(1);
+        long start = logEndTime - logDays * day;
+        for (int d = 0; d < logDays; d++) {
+            long dayStart = start + d * day;
+            int sessions = random.nextInt(4);
+            long cursor = dayStart;
+            for (int s = 0; s < sessions; s++) {
+                long on = cursor + (long) (random.nextDouble() * (dayStart + day - cursor) / 2);
+                long off = on + (long) (random.nextDouble() * (dayStart + day - on));
+                device.addRunningLogs(new RunningLog(new Date(on), RunningLog.POWER_ON, RunningLog.Type.INFO, "模拟数据"));
+                device.addRunningLogs(new RunningLog(new Date(off), RunningLog.POWER_OFF, RunningLog.Type.INFO, "模拟数据"));
+                device.getPowerTimeline().record(on, true);
+                device.getPowerTimeline().record(off, false);
+                cursor = off;
+            }
+            if (device instanceof BatteryPowered && random.nextInt(30) == 0) {
+                device.addRunningLogs(new RunningLog(new Date(dayStart + random.nextInt((int) day)),
+                        "低电量", RunningLog.Type.WARNING, "电量低于20%"));
+            }
+        }
+    }
+
+    /**
+     * 获取由种子生成的制造商
+     *
+     * @return 制造商列表（只读）
+     */
+    public List<Manufacturer> getManufacturers() {
+        return manufacturers;
+    }
+
+    /**
+     * 设置每个家庭的房间数
+     *
+     * @param roomsPerHousehold 房间数
+     */
+    public void setRoomsPerHousehold(int roomsPerHousehold) {
+        this.roomsPerHousehold = roomsPerHousehold;
+    }
+
+    /**
+     * 设置每个房间的设备数
+     *
+     * @param devicesPerRoom 设备数
+     */
+    public void setDevicesPerRoom(int devicesPerRoom) {
+        this.devicesPerRoom = devicesPerRoom;
+    }
+
+    /**
+     * 设置每个家庭的用户数（第一个用户为管理员）
+     *
+     * @param usersPerHousehold 用户数
+     */
+    public void setUsersPerHousehold(int usersPerHousehold) {
+        this.usersPerHousehold = usersPerHousehold;
+    }
+
+    /**
+     * 设置每个家庭的自动化场景数
+     *
+     * @param scenesPerHousehold 场景数
+     */
+    public void setScenesPerHousehold(int scenesPerHousehold) {
+        this.scenesPerHousehold = scenesPerHousehold;
+    }
+
+    /**
+     * 设置运行日志覆盖的天数
+     *
+     * @param logDays 天数
+     */
+    public void setLogDays(int logDays) {
+        this.logDays = logDays;
+    }
+
+    /**
+     * 设置运行日志的截止时间
+     *
+     * @param logEndTime 截止时间（毫秒时间戳）
+     */
+    public void setLogEndTime(long logEndTime) {
+        this.logEndTime = logEndTime;
+    }
+}
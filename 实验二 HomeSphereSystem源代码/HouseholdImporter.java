@@ -0,0 +1,866 @@
+package cn.edu.nwpu.homesphere;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 家庭配置批量导入器，以流式方式从JSON Lines或CSV文件读取配置，构建{@link Household}及其房间、设备、用户和场景。
+ * <p>
+ * 文件中每行是一条记录，记录类型由type字段（CSV为第一列）决定：
+ * <ul>
+ *     <li>{@code manufacturer}：id, name, protocols（全局记录，需出现在引用它的设备之前）；</li>
+ *     <li>{@code household}：id, address, region（开始一个新家庭，其后的记录都属于该家庭）；</li>
+ *     <li>{@code room}：id, name, area；</li>
+ *     <li>{@code device}：id, kind（AirConditioner/LightBulb/SmartLock/BathroomScale）, name, manufacturerId, roomId；</li>
+ *     <li>{@code user}：id, loginName, password, userName, email, admin；</li>
+ *     <li>{@code scene}：id, name, description；</li>
+ *     <li>{@code action}：sceneId, deviceId, command, parameters。</li>
+ * </ul>
+ * 读取线程只负责按家庭切分记录，每个家庭的记录作为一批交给线程池并行解析和构建；
+ * 同时处理中的批次数有上限，因此无论文件多大，导入器本身占用的内存都是常量，构建好的家庭逐个交给调用者提供的接收者。
+ * <p>
+ * 导入时逐条校验编号和引用：家庭编号和设备编号在本次导入中唯一，房间、场景、用户编号在家庭内唯一，
+ * 设备引用的房间、动作引用的场景和设备必须已在同一家庭中出现，制造商必须已定义，动作参数须通过{@link DeviceAction}校验。
+ * 任何一条记录出错，所在家庭整体被拒绝（不会交给接收者，也不会登记到全局设备索引）。
+ * 各家庭并行构建，但家庭编号和设备编号按文件中的顺序依次占用，因此编号重复时总是靠后的家庭被拒绝，结果与线程调度无关。
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+public class HouseholdImporter {
+    /**
+     * 输入格式
+     */
+    public enum Format {
+        /** 每行一个JSON对象 */
+        JSONL,
+        /** 逗号分隔，第一列为记录类型 */
+        CSV
+    }
+
+    /**
+     * 最多保留的错误信息条数
+     */
+    private static final int MAX_ERRORS = 100;
+
+    /**
+     * CSV各类型记录的列名（不含第一列的记录类型）
+     */
+    private static final Map<String, String[]> CSV_COLUMNS = new HashMap<String, String[]>();
+
+    static {
+        CSV_COLUMNS.put("manufacturer", new String[]{"id", "name", "protocols"});
+        CSV_COLUMNS.put("household", new String[]{"id", "address", "region"});
+        CSV_COLUMNS.put("room", new String[]{"id", "name", "area"});
+        CSV_COLUMNS.put("device", new String[]{"id", "kind", "name", "manufacturerId", "roomId"});
+        CSV_COLUMNS.put("user", new String[]{"id", "loginName", "password", "userName", "email", "admin"});
+        CSV_COLUMNS.put("scene", new String[]{"id", "name", "description"});
+        CSV_COLUMNS.put("action", new String[]{"sceneId", "deviceId", "command", "parameters"});
+    }
+
+    /**
+     * 并行构建家庭的线程数
+     */
+    private final int threads;
+
+    /**
+     * 已定义的制造商（制造商编号 -> 制造商）
+     */
+    private final Map<Integer, Manufacturer> manufacturers = new ConcurrentHashMap<Integer, Manufacturer>();
+
+    /**
+     * 已导入的家庭编号
+     */
+    private final Set<Integer> householdIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 已导入的设备编号
+     */
+    private final Set<Integer> deviceIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 有参构造方法，创建使用指定线程数的导入器
+     *
+     * @param threads 并行构建家庭的线程数（至少为1）
+     */
+    public HouseholdImporter(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * 预先登记一个制造商，供导入的设备引用
+     *
+     * @param manufacturer 制造商
+     */
+    public void addManufacturer(Manufacturer manufacturer) {
+        manufacturers.put(manufacturer.getManufacturerId(), manufacturer);
+    }
+
+    /**
+     * 从字符流导入家庭配置，等待全部家庭构建完毕后返回
+     * <p>
+     * 接收者会在多个线程中被并发调用，需保证线程安全。同一导入器多次导入时，家庭编号和设备编号在多次导入之间也保持唯一。
+     *
+     * @param reader 配置内容（调用者负责关闭）
+     * @param format 输入格式
+     * @param sink   构建成功的家庭的接收者
+     * @return 导入结果统计
+     * @throws IOException          读取失败
+     * @throws InterruptedException 等待过程中线程被中断
+     */
+    public ImportResult importFrom(Reader reader, Format format, Consumer<Household> sink)
+            throws IOException, InterruptedException {
+        ImportResult result = new ImportResult();
+        long start = System.nanoTime();
+        int maxInFlight = threads * 4;
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "homesphere-import-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+            Batch batch = null;
+            CompletableFuture<Void> claimed = CompletableFuture.completedFuture(null);
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                String type = format == Format.CSV ? csvType(trimmed) : jsonType(trimmed);
+                if ("manufacturer".equals(type)) {
+                    try {
+                        defineManufacturer(parse(trimmed, format));
+                    } catch (IllegalArgumentException e) {
+                        result.error(lineNumber, e.getMessage());
+                    }
+                } else if ("household".equals(type)) {
+                    if (batch != null) {
+                        claimed = submit(executor, inFlight, batch, claimed, format, sink, result);
+                    }
+                    batch = new Batch();
+                    batch.add(trimmed, lineNumber);
+                } else if (batch == null) {
+                    result.error(lineNumber, "记录不属于任何家庭：" + type);
+                } else {
+                    batch.add(trimmed, lineNumber);
+                }
+            }
+            if (batch != null) {
+                submit(executor, inFlight, batch, claimed, format, sink, result);
+            }
+            inFlight.acquire(maxInFlight);
+        } finally {
+            executor.shutdown();
+        }
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * 将一个家庭的记录交给线程池构建，处理中的批次达到上限时阻塞读取线程
+     * <p>
+     * 记录的解析和对象构建并行进行，占用编号则要等前一个家庭占用完毕：线程池按提交顺序取任务，
+     * 前一个家庭的任务总是已经开始执行，因此等待不会死锁。本家庭的完成信号总是串接在前一个家庭的信号之后，
+     * 即使本家庭解析失败、没有占用任何编号，后面的家庭也要等前面所有家庭占用完毕。
+     *
+     * @param previous 前一个家庭占用编号完成的信号
+     * @return 本家庭占用编号完成（或被拒绝）的信号
+     */
+    private CompletableFuture<Void> submit(ExecutorService executor, Semaphore inFlight, Batch batch,
+                                           CompletableFuture<Void> previous, Format format,
+                                           Consumer<Household> sink, ImportResult result) throws InterruptedException {
+        CompletableFuture<Void> claimed = new CompletableFuture<Void>();
+        inFlight.acquire();
+        executor.execute(() -> {
+            try {
+                Household household = build(batch, previous, claimed, format, result);
+                if (household != null) {
+                    sink.accept(household);
+                }
+            } finally {
+                previous.whenComplete((ignored, e) -> claimed.complete(null));
+                inFlight.release();
+            }
+        });
+        return claimed;
+    }
+
+    /**
+     * 定义一个制造商
+     */
+    private void defineManufacturer(Map<String, String> record) {
+        int id = intField(record, "id");
+        if (manufacturers.putIfAbsent(id, new Manufacturer(id, record.get("name"), record.get("protocols"))) != null) {
+            throw new IllegalArgumentException("制造商编号重复：" + id);
+        }
+    }
+
+    /**
+     * 解析并构建一个家庭，再按文件顺序占用家庭编号和设备编号，出错时释放已占用的编号并返回null
+     *
+     * @param batch    一个家庭的全部记录
+     * @param previous 前一个家庭占用编号完成的信号
+     * @param claimed  本家庭占用编号完成的信号
+     * @param format   输入格式
+     * @param result   导入结果统计
+     * @return 构建好的家庭，被拒绝时返回null
+     */
+    private Household build(Batch batch, CompletableFuture<Void> previous, CompletableFuture<Void> claimed,
+                            Format format, ImportResult result) {
+        HouseholdBuilder builder = new HouseholdBuilder();
+        boolean accepted;
+        try {
+            for (int i = 0; i < batch.size; i++) {
+                try {
+                    builder.accept(parse(batch.lines[i], format), batch.lineNumbers[i]);
+                } catch (RuntimeException e) {
+                    result.error(batch.lineNumbers[i], e instanceof IllegalArgumentException ? e.getMessage() : e.toString());
+                    result.rejected.increment();
+                    return null;
+                }
+            }
+            previous.join();
+            accepted = builder.claim(result);
+        } finally {
+            previous.whenComplete((ignored, e) -> claimed.complete(null));
+        }
+        if (!accepted) {
+            result.rejected.increment();
+            return null;
+        }
+        return builder.finish(result);
+    }
+
+    /**
+     * 逐条接收一个家庭的记录并构建对象图，通过校验后才将房间、场景登记到家庭
+     */
+    private final class HouseholdBuilder {
+        private Household household;
+        private final Map<Integer, Room> rooms = new HashMap<Integer, Room>();
+        private final Map<Integer, Device> devices = new HashMap<Integer, Device>();
+        private final Map<Integer, AutomationScene> scenes = new HashMap<Integer, AutomationScene>();
+        private final Map<Integer, User> users = new HashMap<Integer, User>();
+        private final List<Room> roomOrder = new ArrayList<Room>();
+        private final List<AutomationScene> sceneOrder = new ArrayList<AutomationScene>();
+        private final List<User> userOrder = new ArrayList<User>();
+        private final Map<Integer, Integer> deviceLines = new HashMap<Integer, Integer>();
+        private final Map<User, Integer> userLines = new IdentityHashMap<User, Integer>();
+        private int householdLine;
+        private User admin;
+
+        void accept(Map<String, String> record, int lineNumber) {
+            String type = record.get("type");
+            if (household == null) {
+                household = new Household(intField(record, "id"), record.get("address"), record.get("region"));
+                householdLine = lineNumber;
+                return;
+            }
+            switch (type == null ? "" : type) {
+                case "room": {
+                    int id = intField(record, "id");
+                    Room room = new Room(id, record.get("name"), doubleField(record, "area"));
+                    if (rooms.putIfAbsent(id, room) != null) {
+                        throw new IllegalArgumentException("房间编号重复：" + id);
+                    }
+                    roomOrder.add(room);
+                    break;
+                }
+                case "device": {
+                    int id = intField(record, "id");
+                    Room room = rooms.get(intField(record, "roomId"));
+                    if (room == null) {
+                        throw new IllegalArgumentException("设备" + id + "引用了不存在的房间：" + record.get("roomId"));
+                    }
+                    Manufacturer manufacturer = manufacturers.get(intField(record, "manufacturerId"));
+                    if (manufacturer == null) {
+                        throw new IllegalArgumentException("设备" + id + "引用了未定义的制造商：" + record.get("manufacturerId"));
+                    }
+                    if (devices.containsKey(id)) {
+                        throw new IllegalArgumentException("设备编号重复：" + id);
+                    }
+                    Device device = newDevice(record.get("kind"), id, record.get("name"), manufacturer);
+                    devices.put(id, device);
+                    deviceLines.put(id, lineNumber);
+                    room.addDevice(device);
+                    break;
+                }
+                case "user": {
+                    int id = intField(record, "id");
+                    User user = new User(id, required(record, "loginName"), required(record, "password"),
+                            record.get("userName"), record.get("email"));
+                    if (users.putIfAbsent(id, user) != null) {
+                        throw new IllegalArgumentException("用户编号重复：" + id);
+                    }
+                    userOrder.add(user);
+                    userLines.put(user, lineNumber);
+                    if (Boolean.parseBoolean(record.get("admin"))) {
+                        admin = user;
+                    }
+                    break;
+                }
+                case "scene": {
+                    int id = intField(record, "id");
+                    AutomationScene scene = new AutomationScene(id, record.get("name"), record.get("description"));
+                    if (scenes.putIfAbsent(id, scene) != null) {
+                        throw new IllegalArgumentException("场景编号重复：" + id);
+                    }
+                    sceneOrder.add(scene);
+                    break;
+                }
+                case "action": {
+                    AutomationScene scene = scenes.get(intField(record, "sceneId"));
+                    if (scene == null) {
+                        throw new IllegalArgumentException("动作引用了不存在的场景：" + record.get("sceneId"));
+                    }
+                    Device device = devices.get(intField(record, "deviceId"));
+                    if (device == null) {
+                        throw new IllegalArgumentException("动作引用了不存在的设备：" + record.get("deviceId"));
+                    }
+                    String command = required(record, "command");
+                    if (ActionHandlers.resolve(command) == null) {
+                        throw new IllegalArgumentException("不支持的动作指令：" + command);
+                    }
+                    String parameters = record.get("parameters");
+                    scene.addAction(new DeviceAction(command, parameters == null ? "" : parameters, device));
+                    break;
+                }
+                default:
+                    throw new IllegalArgumentException("未知的记录类型：" + type);
+            }
+        }
+
+        /**
+         * 占用家庭编号、设备编号（设备编号也不能与设备群中已有的设备重复），并在全局用户目录中登记用户（占用邮箱和登录名），
+         * 任何一个已被占用时记录错误并释放本家庭已占用的编号和已登记的用户
+         *
+         * @param result 导入结果统计
+         * @return {@code true}表示全部占用成功
+         */
+        boolean claim(ImportResult result) {
+            int id = household.getHouseholdId();
+            if (!householdIds.add(id)) {
+                result.error(householdLine, "家庭编号重复：" + id);
+                return false;
+            }
+            List<Integer> taken = new ArrayList<Integer>(devices.size());
+            for (Integer deviceId : devices.keySet()) {
+                if (Fleet.getInstance().getDeviceIndex().getDevice(deviceId) != null || !deviceIds.add(deviceId)) {
+                    result.error(deviceLines.get(deviceId), "设备编号重复：" + deviceId);
+                    householdIds.remove(id);
+                    deviceIds.removeAll(taken);
+                    return false;
+                }
+                taken.add(deviceId);
+            }
+            UserDirectory directory = Fleet.getInstance().getUserDirectory();
+            for (int i = 0; i < userOrder.size(); i++) {
+                User user = userOrder.get(i);
+                try {
+                    directory.register(id, user);
+                } catch (IllegalArgumentException e) {
+                    result.error(userLines.get(user), e.getMessage());
+                    for (int j = 0; j < i; j++) {
+                        directory.unregister(id, userOrder.get(j));
+                    }
+                    householdIds.remove(id);
+                    deviceIds.removeAll(taken);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Household finish(ImportResult result) {
+            for (Room room : roomOrder) {
+                household.addRoom(room);
+            }
+            for (Device device : devices.values()) {
+                device.getManufacturer().addDevice(device);
+            }
+            for (User user : userOrder) {
+                household.addUser(user);
+            }
+            if (admin != null) {
+                household.setAdmin(admin);
+            }
+            for (AutomationScene scene : sceneOrder) {
+                household.addAutoScene(scene);
+            }
+            result.households.increment();
+            result.rooms.add(roomOrder.size());
+            result.devices.add(devices.size());
+            result.users.add(userOrder.size());
+            result.scenes.add(sceneOrder.size());
+            return household;
+        }
+    }
+
+    /**
+     * 按类型名称创建设备
+     */
+    static Device newDevice(String kind, int id, String name, Manufacturer manufacturer) {
+        switch (kind == null ? "" : kind) {
+            case "AirConditioner":
+                return new AirConditioner(id, name, manufacturer);
+            case "LightBulb":
+                return new LightBulb(id, name, manufacturer);
+            case "SmartLock":
+                return new SmartLock(id, name, manufacturer);
+            case "BathroomScale":
+                return new BathroomScale(id, name, manufacturer);
+            default:
+                throw new IllegalArgumentException("设备" + id + "的类型未知：" + kind);
+        }
+    }
+
+    /**
+     * 读取必填的整数字段
+     */
+    private static int intField(Map<String, String> record, String name) {
+        String value = required(record, name);
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("字段" + name + "不是有效的整数：" + value);
+        }
+    }
+
+    /**
+     * 读取必填的浮点数字段
+     */
+    private static double doubleField(Map<String, String> record, String name) {
+        String value = required(record, name);
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("字段" + name + "不是有效的数字：" + value);
+        }
+    }
+
+    /**
+     * 读取必填字段
+     */
+    private static String required(Map<String, String> record, String name) {
+        String value = record.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("缺少字段：" + name);
+        }
+        return value;
+    }
+
+    /**
+     * 按格式将一行解析为字段名 -> 字段值（记录类型保存在"type"字段）
+     */
+    private static Map<String, String> parse(String line, Format format) {
+        return format == Format.CSV ? parseCsv(line) : parseJson(line);
+    }
+
+    /**
+     * 读取CSV行的第一列（记录类型）
+     */
+    static String csvType(String line) {
+        int comma = line.indexOf(',');
+        return (comma < 0 ? line : line.substring(0, comma)).trim();
+    }
+
+    /**
+     * 在不完整解析的情况下读取JSON行的type字段，供读取线程快速切分家庭
+     */
+    static String jsonType(String line) {
+        int from = 0;
+        while (true) {
+            int key = line.indexOf("\"type\"", from);
+            if (key < 0) {
+                return null;
+            }
+            from = key + 6;
+            if (key > 0 && line.charAt(key - 1) == '\\') {
+                continue;
+            }
+            int i = from;
+            while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i == line.length() || line.charAt(i) != ':') {
+                continue;
+            }
+            i++;
+            while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+                i++;
+            }
+            if (i == line.length() || line.charAt(i) != '"') {
+                return null;
+            }
+            int end = line.indexOf('"', i + 1);
+            return end < 0 ? null : line.substring(i + 1, end);
+        }
+    }
+
+    /**
+     * 解析一行CSV记录，支持以双引号包围的字段（字段内的双引号写作两个双引号）
+     */
+    static Map<String, String> parseCsv(String line) {
+        List<String> values = new ArrayList<String>(8);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("CSV引号未闭合");
+        }
+        values.add(field.toString().trim());
+        String type = values.get(0);
+        String[] columns = CSV_COLUMNS.get(type);
+        if (columns == null) {
+            throw new IllegalArgumentException("未知的记录类型：" + type);
+        }
+        if (values.size() - 1 > columns.length) {
+            throw new IllegalArgumentException(type + "记录最多" + columns.length + "列，实际为" + (values.size() - 1) + "列");
+        }
+        Map<String, String> record = new HashMap<String, String>(columns.length * 2);
+        record.put("type", type);
+        for (int i = 1; i < values.size(); i++) {
+            if (!values.get(i).isEmpty()) {
+                record.put(columns[i - 1], values.get(i));
+            }
+        }
+        return record;
+    }
+
+    /**
+     * 解析一行扁平JSON对象（值只能是字符串、数字、布尔值或null），所有值以字符串形式返回
+     */
+    static Map<String, String> parseJson(String line) {
+        JsonCursor cursor = new JsonCursor(line);
+        Map<String, String> record = new HashMap<String, String>(16);
+        cursor.expect('{');
+        if (!cursor.consume('}')) {
+            do {
+                String key = cursor.string();
+                cursor.expect(':');
+                record.put(key, cursor.value());
+            } while (cursor.consume(','));
+            cursor.expect('}');
+        }
+        cursor.end();
+        return record;
+    }
+
+    /**
+     * 扁平JSON对象的逐字符解析器
+     */
+    private static final class JsonCursor {
+        private final String text;
+        private int pos;
+
+        JsonCursor(String text) {
+            this.text = text;
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        boolean consume(char c) {
+            skipWhitespace();
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        void expect(char c) {
+            if (!consume(c)) {
+                throw new IllegalArgumentException("JSON格式错误：第" + (pos + 1) + "个字符处应为'" + c + "'");
+            }
+        }
+
+        void end() {
+            skipWhitespace();
+            if (pos != text.length()) {
+                throw new IllegalArgumentException("JSON格式错误：对象之后有多余内容");
+            }
+        }
+
+        String string() {
+            expect('"');
+            StringBuilder sb = null;
+            int start = pos;
+            while (pos < text.length()) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return sb == null ? text.substring(start, pos - 1) : sb.toString();
+                }
+                if (c == '\\') {
+                    if (sb == null) {
+                        sb = new StringBuilder(text.substring(start, pos - 1));
+                    }
+                    if (pos >= text.length()) {
+                        break;
+                    }
+                    char e = text.charAt(pos++);
+                    switch (e) {
+                        case 'n': sb.append('\n'); break;
+                        case 't': sb.append('\t'); break;
+                        case 'r': sb.append('\r'); break;
+                        case 'b': sb.append('\b'); break;
+                        case 'f': sb.append('\f'); break;
+                        case 'u':
+                            if (pos + 4 > text.length()) {
+                                throw new IllegalArgumentException("JSON格式错误：\\u转义不完整");
+                            }
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                            pos += 4;
+                            break;
+                        default: sb.append(e);
+                    }
+                } else if (sb != null) {
+                    sb.append(c);
+                }
+            }
+            throw new IllegalArgumentException("JSON格式错误：字符串未闭合");
+        }
+
+        String value() {
+            skipWhitespace();
+            if (pos < text.length() && text.charAt(pos) == '"') {
+                return string();
+            }
+            int start = pos;
+            while (pos < text.length() && ",}".indexOf(text.charAt(pos)) < 0 && !Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+            String literal = text.substring(start, pos);
+            if (literal.isEmpty() || literal.charAt(0) == '{' || literal.charAt(0) == '[') {
+                throw new IllegalArgumentException("JSON格式错误：只支持字符串、数字、布尔值或null");
+            }
+            return literal.equals("null") ? null : literal;
+        }
+    }
+
+    /**
+     * 一个家庭的原始记录行
+     */
+    private static final class Batch {
+        private String[] lines = new String[16];
+        private int[] lineNumbers = new int[16];
+        private int size;
+
+        void add(String line, int lineNumber) {
+            if (size == lines.length) {
+                lines = Arrays.copyOf(lines, size * 2);
+                lineNumbers = Arrays.copyOf(lineNumbers, size * 2);
+            }
+            lines[size] = line;
+            lineNumbers[size++] = lineNumber;
+        }
+    }
+
+    /**
+     * 一次导入的结果统计
+     */
+    public static final class ImportResult {
+        private final LongAdder households = new LongAdder();
+        private final LongAdder rooms = new LongAdder();
+        private final LongAdder devices = new LongAdder();
+        private final LongAdder users = new LongAdder();
+        private final LongAdder scenes = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder errorCount = new LongAdder();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+        private long elapsedNanos;
+
+        void error(int lineNumber, String message) {
+            errorCount.increment();
+            if (errors.size() < MAX_ERRORS) {
+                errors.add("第" + lineNumber + "行：" + message);
+            }
+        }
+
+        /**
+         * 获取成功导入的家庭数
+         *
+         * @return 家庭数
+         */
+        public long getHouseholds() {
+            return households.sum();
+        }
+
+        /**
+         * 获取成功导入的房间数
+         *
+         * @return 房间数
+         */
+        public long getRooms() {
+            return rooms.sum();
+        }
+
+        /**
+         * 获取成功导入的设备数
+         *
+         * @return 设备数
+         */
+        public long getDevices() {
+            return devices.sum();
+        }
+
+        /**
+         * 获取成功导入的用户数
+         *
+         * @return 用户数
+         */
+        public long getUsers() {
+            return users.sum();
+        }
+
+        /**
+         * 获取成功导入的场景数
+         *
+         * @return 场景数
+         */
+        public long getScenes() {
+            return scenes.sum();
+        }
+
+        /**
+         * 获取因校验失败被拒绝的家庭数
+         *
+         * @return 被拒绝的家庭数
+         */
+        public long getRejectedHouseholds() {
+            return rejected.sum();
+        }
+
+        /**
+         * 获取错误总数
+         *
+         * @return 错误数
+         */
+        public long getErrorCount() {
+            return errorCount.sum();
+        }
+
+        /**
+         * 获取错误信息（最多保留前{@value #MAX_ERRORS}条，顺序与并行处理顺序有关）
+         *
+         * @return 错误信息列表副本
+         */
+        public List<String> getErrors() {
+            synchronized (errors) {
+                return new ArrayList<String>(errors);
+            }
+        }
+
+        /**
+         * 获取导入耗时
+         *
+         * @return 耗时（单位：毫秒）
+         */
+        public long getElapsedMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+        }
+
+        @Override
+        public String toString() {
+            return "ImportResult{" +
+                    "households=" + getHouseholds() +
+                    ", rooms=" + getRooms() +
+                    ", devices=" + getDevices() +
+                    ", users=" + getUsers() +
+                    ", scenes=" + getScenes() +
+                    ", rejectedHouseholds=" + getRejectedHouseholds() +
+                    ", errors=" + getErrorCount() +
+                    ", elapsedMillis=" + getElapsedMillis() +
+                    '}';
+        }
+    }
+
+    /**
+     * 生成一个包含指定数量设备的JSON Lines临时文件并导入，打印导入耗时
+     *
+     * @param args 可选参数：设备数（默认1000000）、线程数（默认为CPU核数）
+     * @throws Exception 读写临时文件失败
+     */
+    public static void main(String[] args) throws Exception {
+        int deviceCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        String[] kinds = {"AirConditioner", "LightBulb", "SmartLock", "BathroomScale"};
+        Path file = Files.createTempFile("homesphere-import", ".jsonl");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                out.write("{\"type\":\"manufacturer\",\"id\":1,\"name\":\"HomeSphere\",\"protocols\":\"WiFi, ZigBee\"}\n");
+                for (int id = 1; id <= deviceCount; id++) {
+                    if (id % 100 == 1) {
+                        int household = id / 100 + 1;
+                        out.write("{\"type\":\"household\",\"id\":" + household + ",\"address\":\"小区" + household
+                                + "号\",\"region\":\"西安\"}\n");
+                        for (int room = 1; room <= 10; room++) {
+                            out.write("{\"type\":\"room\",\"id\":" + room + ",\"name\":\"房间" + room + "\",\"area\":20}\n");
+                        }
+                        out.write("{\"type\":\"user\",\"id\":1,\"loginName\":\"admin" + household
+                                + "\",\"password\":\"111111\",\"admin\":true}\n");
+                    }
+                    out.write("{\"type\":\"device\",\"id\":" + id + ",\"kind\":\"" + kinds[id % 4] + "\",\"name\":\"设备" + id
+                            + "\",\"manufacturerId\":1,\"roomId\":" + ((id - 1) % 100 / 10 + 1) + "}\n");
+                }
+            }
+            HouseholdImporter importer = new HouseholdImporter(threads);
+            LongAdder imported = new LongAdder();
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                System.out.println(importer.importFrom(reader, Format.JSONL, household -> imported.increment()));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
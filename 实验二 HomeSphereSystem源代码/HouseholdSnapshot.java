@@ -0,0 +1,237 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 家庭快照类，是某一时刻家庭属性、房间、用户和自动化场景集合的不可变副本。
+ * <p>
+ * 家庭每次发生结构性修改（增删房间、用户、场景，房间内增删设备，修改地址、地区或管理员）时，
+ * 写入方在家庭的锁内基于上一个快照构造新快照并通过volatile字段发布（{@link Household#snapshot()}）。
+ * 新快照与旧快照共享未修改的部分：只增删了用户时房间列表和场景列表原样复用，某个房间增删设备时
+ * 只替换该房间的{@link RoomSnapshot}，其余房间的快照（及其设备列表）原样复用。各集合都是按编号排序的
+ * {@link PersistentIdList}，替换或增删其中一个元素只复制O(log n)个节点，因此每次发布的代价与集合大小无关地保持在O(log n)。
+ * <p>
+ * 因此读取方获取快照只需一次volatile读，之后无论遍历多久（如长时间的能耗报表、导出），
+ * 都不会阻塞写入方，也不会看到修改到一半的家庭结构；写入方也从不等待读取方。
+ * 快照只固定集合结构，房间、设备、用户对象本身仍是实时对象。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see Household#snapshot()
+ */
+public final class HouseholdSnapshot {
+    /**
+     * 快照版本号，家庭每发布一个新快照加1
+     */
+    private final long version;
+
+    /**
+     * 家庭编号
+     */
+    private final int householdId;
+
+    /**
+     * 家庭地址
+     */
+    private final String address;
+
+    /**
+     * 所在地区
+     */
+    private final String region;
+
+    /**
+     * 家庭管理员
+     */
+    private final User admin;
+
+    /**
+     * 各房间的快照（持久化列表，按房间编号升序）
+     */
+    private final PersistentIdList<RoomSnapshot> rooms;
+
+    /**
+     * 家庭成员（持久化列表，按用户编号升序）
+     */
+    private final PersistentIdList<User> users;
+
+    /**
+     * 自动化场景（持久化列表，按场景编号升序）
+     */
+    private final PersistentIdList<AutomationScene> autoScenes;
+
+    /**
+     * 有参构造方法，由{@link Household}在发布快照时调用
+     *
+     * @param version     版本号
+     * @param householdId 家庭编号
+     * @param address     家庭地址
+     * @param region      所在地区
+     * @param admin       家庭管理员
+     * @param rooms       各房间的快照
+     * @param users       家庭成员
+     * @param autoScenes  自动化场景
+     */
+    HouseholdSnapshot(long version, int householdId, String address, String region, User admin,
+                      PersistentIdList<RoomSnapshot> rooms, PersistentIdList<User> users,
+                      PersistentIdList<AutomationScene> autoScenes) {
+        this.version = version;
+        this.householdId = householdId;
+        this.address = address;
+        this.region = region;
+        this.admin = admin;
+        this.rooms = rooms;
+        this.users = users;
+        this.autoScenes = autoScenes;
+    }
+
+    /**
+     * 获取快照版本号，版本号相同的两次读取看到的是同一个快照
+     *
+     * @return 版本号
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * 获取家庭编号
+     *
+     * @return 家庭编号
+     */
+    public int getHouseholdId() {
+        return householdId;
+    }
+
+    /**
+     * 获取快照时的家庭地址
+     *
+     * @return 家庭地址
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * 获取快照时的所在地区
+     *
+     * @return 所在地区
+     */
+    public String getRegion() {
+        return region;
+    }
+
+    /**
+     * 获取快照时的家庭管理员
+     *
+     * @return 管理员用户，未设置时为null
+     */
+    public User getAdmin() {
+        return admin;
+    }
+
+    /**
+     * 获取快照时各房间的快照
+     *
+     * @return 不可变房间快照列表（按房间编号升序）
+     */
+    public List<RoomSnapshot> getRooms() {
+        return rooms;
+    }
+
+    /**
+     * 获取房间快照的持久化列表，供{@link Household}在此基础上构造下一个快照
+     *
+     * @return 持久化房间快照列表
+     */
+    PersistentIdList<RoomSnapshot> roomList() {
+        return rooms;
+    }
+
+    /**
+     * 按编号查找房间快照
+     *
+     * @param roomId 房间编号
+     * @return 房间快照，不存在时返回null
+     */
+    public RoomSnapshot getRoom(int roomId) {
+        return rooms.find(roomId);
+    }
+
+    /**
+     * 获取快照时的家庭成员
+     *
+     * @return 不可变用户列表（按用户编号升序）
+     */
+    public List<User> getUsers() {
+        return users;
+    }
+
+    /**
+     * 获取家庭成员的持久化列表，供{@link Household}在此基础上构造下一个快照
+     *
+     * @return 持久化用户列表
+     */
+    PersistentIdList<User> userList() {
+        return users;
+    }
+
+    /**
+     * 获取快照时的自动化场景
+     *
+     * @return 不可变场景列表（按场景编号升序）
+     */
+    public List<AutomationScene> getAutoScenes() {
+        return autoScenes;
+    }
+
+    /**
+     * 获取自动化场景的持久化列表，供{@link Household}在此基础上构造下一个快照
+     *
+     * @return 持久化场景列表
+     */
+    PersistentIdList<AutomationScene> sceneList() {
+        return autoScenes;
+    }
+
+    /**
+     * 汇总快照时所有房间的设备（按房间顺序）
+     *
+     * @return 不可变设备列表
+     */
+    public List<Device> getDevices() {
+        List<Device> devices = new ArrayList<Device>(getDeviceCount());
+        for (RoomSnapshot room : rooms) {
+            devices.addAll(room.getDevices());
+        }
+        return Collections.unmodifiableList(devices);
+    }
+
+    /**
+     * 获取快照时家庭内的设备总数
+     *
+     * @return 设备数量
+     */
+    public int getDeviceCount() {
+        int count = 0;
+        for (RoomSnapshot room : rooms) {
+            count += room.getDevices().size();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "HouseholdSnapshot{" +
+                "version=" + version +
+                ", householdId=" + householdId +
+                ", address='" + address + '\'' +
+                ", region='" + region + '\'' +
+                ", roomCount=" + rooms.size() +
+                ", userCount=" + users.size() +
+                ", sceneCount=" + autoScenes.size() +
+                '}';
+    }
+}
@@ -0,0 +1,196 @@
+package cn.edu.nwpu.homesphere;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 本地HTTP接口（{@link HomeSphereHttpApi}）的压力测试工具，使用JDK自带的{@link HttpClient}异步发送请求。
+ * <p>
+ * 以固定的并发数持续发送请求（同一时刻最多有concurrency个请求未完成），统计吞吐量、失败数及延迟分布。
+ * 直接运行{@link #main(String[])}会在进程内启动一个示例家庭的接口并对其施压：
+ * <pre>
+ * java cn.edu.nwpu.homesphere.HttpLoadGenerator [请求总数] [并发数] [路径]
+ * </pre>
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+public class HttpLoadGenerator {
+    /**
+     * 从登录响应中提取会话令牌
+     */
+    private static final Pattern TOKEN = Pattern.compile("\"token\":\"([0-9a-f]+)\"");
+
+    /**
+     * 异步HTTP客户端（复用连接）
+     */
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    /**
+     * 接口根地址（如http://127.0.0.1:8080）
+     */
+    private final URI base;
+
+    /**
+     * 有参构造方法，创建面向指定接口根地址的压力测试工具
+     *
+     * @param base 接口根地址
+     */
+    public HttpLoadGenerator(URI base) {
+        this.base = base;
+    }
+
+    /**
+     * 登录并返回会话令牌
+     *
+     * @param loginName 用户登录名
+     * @param password  用户登录密码
+     * @return 会话令牌
+     * @throws Exception 请求失败或登录失败
+     */
+    public String login(String loginName, String password) throws Exception {
+        String form = "loginName=" + URLEncoder.encode(loginName, StandardCharsets.UTF_8)
+                + "&password=" + URLEncoder.encode(password, StandardCharsets.UTF_8);
+        HttpRequest request = HttpRequest.newBuilder(base.resolve("/api/login"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        Matcher matcher = TOKEN.matcher(response.body());
+        if (response.statusCode() != 200 || !matcher.find()) {
+            throw new IllegalStateException("登录失败：" + response.statusCode() + " " + response.body());
+        }
+        return matcher.group(1);
+    }
+
+    /**
+     * 以固定并发数对指定路径发送GET请求，等待全部完成
+     *
+     * @param token       会话令牌
+     * @param path        请求路径（如"/api/devices?limit=20"）
+     * @param requests    请求总数
+     * @param concurrency 并发数（同时未完成的请求数上限）
+     * @return 压测结果
+     * @throws InterruptedException 等待过程中线程被中断
+     */
+    public Result run(String token, String path, int requests, int concurrency) throws InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(base.resolve(path))
+                .header("Authorization", "Bearer " + token)
+                .GET()
+                .build();
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicLong failures = new AtomicLong();
+        Semaphore permits = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(requests);
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            permits.acquire();
+            long sent = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                latency.recordSince(sent);
+                if (error != null || response.statusCode() != 200) {
+                    failures.incrementAndGet();
+                }
+                permits.release();
+                done.countDown();
+            });
+        }
+        done.await();
+        return new Result(requests, failures.get(), System.nanoTime() - start, latency);
+    }
+
+    /**
+     * 一次压测的结果
+     */
+    public static final class Result {
+        private final long requests;
+        private final long failures;
+        private final long elapsedNanos;
+        private final LatencyHistogram latency;
+
+        Result(long requests, long failures, long elapsedNanos, LatencyHistogram latency) {
+            this.requests = requests;
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+        }
+
+        /**
+         * 获取失败（网络错误或非200响应）的请求数
+         *
+         * @return 失败数
+         */
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * 获取吞吐量
+         *
+         * @return 每秒完成的请求数
+         */
+        public double getThroughput() {
+            return requests * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * 获取请求延迟分布
+         *
+         * @return 延迟直方图
+         */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("请求数=%d，失败数=%d，吞吐量=%.0f次/秒，P50=%.0fμs，P99=%.0fμs，最大=%.0fμs",
+                    requests, failures, getThroughput(),
+                    latency.getP50Micros(), latency.getP99Micros(), latency.getMaxMicros());
+        }
+    }
+
+    /**
+     * 在进程内启动示例家庭的HTTP接口并进行压力测试（未指定时关闭内置HTTP服务器的Nagle算法，避免小响应被延迟发送）
+     *
+     * @param args 可选参数：请求总数（默认200000）、并发数（默认64）、请求路径（默认/api/devices?limit=20）
+     * @throws Exception 启动或请求失败
+     */
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int concurrency = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        String path = args.length > 2 ? args[2] : "/api/devices?limit=20";
+        System.getProperties().putIfAbsent("sun.net.httpserver.nodelay", "true");
+
+        Household household = new Household(1, "友谊西路127号");
+        Manufacturer manufacturer = new Manufacturer(1, "HomeSphere", "WiFi");
+        for (int r = 1; r <= 10; r++) {
+            Room room = new Room(r, "房间" + r, 20);
+            household.addRoom(room);
+            for (int d = 1; d <= 10; d++) {
+                int deviceId = r * 100 + d;
+                room.addDevice(d % 2 == 0 ? new LightBulb(deviceId, "灯" + deviceId, manufacturer)
+                        : new AirConditioner(deviceId, "空调" + deviceId, manufacturer));
+            }
+        }
+        household.addUser(new User(1, "admin", "111111", "管理员", "admin@nwpu.edu.cn"));
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        try (HomeSphereHttpApi api = new HomeSphereHttpApi(new HomeSphereSystem(household), 0, threads)) {
+            api.start();
+            HttpLoadGenerator generator = new HttpLoadGenerator(URI.create("http://127.0.0.1:" + api.getPort()));
+            String token = generator.login("admin", "111111");
+            generator.run(token, path, Math.min(requests, 20000), concurrency); // 预热
+            System.out.println(generator.run(token, path, requests, concurrency));
+        }
+    }
+}
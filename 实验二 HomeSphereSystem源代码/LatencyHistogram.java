@@ -0,0 +1,128 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 耗时直方图类，以很低的开销统计某类操作（如场景触发、动作执行）的耗时分布。
+ * <p>
+ * 耗时（纳秒）按2的幂划分为64个区间，每个区间使用一个分段累加器（{@link LongAdder}）计数，
+ * 记录一次耗时只需一次位运算和几次累加，不分配任何对象，多线程并发记录时互不争用。
+ * 分位数按区间上界估算，精度为2倍，足以发现延迟毛刺。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see HomeSphereMetrics
+ */
+public class LatencyHistogram implements LatencyHistogramMBean {
+    /**
+     * 区间数量：第i个区间统计耗时位于[2^(i-1), 2^i)纳秒的操作
+     */
+    private static final int BUCKETS = 64;
+
+    /**
+     * 各区间的计数
+     */
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    /**
+     * 操作次数
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * 累计耗时（单位：纳秒）
+     */
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * 最大耗时（单位：纳秒）
+     */
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * 无参构造方法，创建一个空的耗时直方图
+     */
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * 记录一次操作的耗时
+     *
+     * @param nanos 操作耗时（单位：纳秒，负数按0处理）
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * 记录从指定起始时刻到现在的耗时
+     *
+     * @param startNanos 操作开始时由{@link System#nanoTime()}得到的时刻
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / 1000.0 / n;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return percentileNanos(0.50) / 1000.0;
+    }
+
+    @Override
+    public double getP99Micros() {
+        return percentileNanos(0.99) / 1000.0;
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1000.0;
+    }
+
+    /**
+     * 估算指定分位的耗时（取所在区间的上界）
+     *
+     * @param quantile 分位（0-1，如0.99）
+     * @return 估算耗时（单位：纳秒），没有记录时返回0
+     */
+    public long percentileNanos(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return i == 0 ? 0 : Math.min(maxNanos.get(), (1L << Math.min(i, 62)) - 1);
+            }
+        }
+        return maxNanos.get();
+    }
+}
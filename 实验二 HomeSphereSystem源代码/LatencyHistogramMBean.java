@@ -0,0 +1,46 @@
+package cn.edu.nwpu.homesphere;
+
+/**
+ * 耗时直方图的JMX管理接口，通过JConsole/VisualVM等工具查看某类操作的耗时分布。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see LatencyHistogram
+ */
+public interface LatencyHistogramMBean {
+
+    /**
+     * 获取已记录的操作次数
+     *
+     * @return 操作次数
+     */
+    long getCount();
+
+    /**
+     * 获取平均耗时
+     *
+     * @return 平均耗时（单位：微秒）
+     */
+    double getMeanMicros();
+
+    /**
+     * 获取耗时中位数（近似值，精度为2倍区间）
+     *
+     * @return 耗时中位数（单位：微秒）
+     */
+    double getP50Micros();
+
+    /**
+     * 获取99分位耗时（近似值，精度为2倍区间）
+     *
+     * @return 99分位耗时（单位：微秒）
+     */
+    double getP99Micros();
+
+    /**
+     * 获取最大耗时
+     *
+     * @return 最大耗时（单位：微秒）
+     */
+    double getMaxMicros();
+}
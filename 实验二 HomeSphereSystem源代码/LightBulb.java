@@ -1,6 +1,7 @@
 package cn.edu.nwpu.homesphere;
 
 import java.util.Date;
+import java.util.Map;
 
 /**
  * 智能灯泡设备类，继承自设备基类{@link Device}，并实现能耗报告接口{@link EnergyReporting}。
@@ -11,20 +12,10 @@ import java.util.Date;
  * @version 1.0
  */
 public class LightBulb extends Device implements EnergyReporting {
-    /**
-     * 灯泡当前亮度（建议取值范围：0-100，0表示最低亮度，100表示最高亮度）
-     */
-    private int brightness;
-
-    /**
-     * 灯泡当前色温（单位：开尔文/K，常见范围：2700K-6500K，如2700K为暖光，6500K为冷光）
-     */
-    private int colorTemp;
-
     /**
      * 灯泡额定功率（固定值50瓦特/W，不受亮度、色温调节影响）
      */
-    private final double power = 50;
+    private static final double POWER = 50;
 
     /**
      * 构造方法：创建智能灯泡设备实例
@@ -34,7 +25,7 @@ public class LightBulb extends Device implements EnergyReporting {
      * @param manufacturer 设备制造商信息（{@link Manufacturer}对象）
      */
     public LightBulb(int deviceId, String name, Manufacturer manufacturer) {
-        super(deviceId, name, manufacturer);
+        super(deviceId, name, manufacturer, new HeapState());
     }
 
     /**
@@ -43,7 +34,7 @@ public class LightBulb extends Device implements EnergyReporting {
      * @return 亮度值（参考范围：0-100）
      */
     public int getBrightness() {
-        return brightness;
+        return readInt(DeviceStateTable.BRIGHTNESS);
     }
 
     /**
@@ -52,7 +43,10 @@ public class LightBulb extends Device implements EnergyReporting {
      * @param brightness 待设置的亮度值（建议控制在0-100范围内，避免超出硬件支持范围）
      */
     public void setBrightness(int brightness) {
-        this.brightness = brightness;
+        synchronized (this) {
+            writeInt(DeviceStateTable.BRIGHTNESS, brightness);
+            stateChanged("brightness", brightness);
+        }
     }
 
     /**
@@ -61,7 +55,7 @@ public class LightBulb extends Device implements EnergyReporting {
      * @return 色温值（单位：开尔文/K）
      */
     public int getColorTemp() {
-        return colorTemp;
+        return readInt(DeviceStateTable.COLOR_TEMP);
     }
 
     /**
@@ -70,7 +64,20 @@ public class LightBulb extends Device implements EnergyReporting {
      * @param colorTemp 待设置的色温值（建议控制在2700K-6500K常见范围，具体以硬件支持为准）
      */
     public void setColorTemp(int colorTemp) {
-        this.colorTemp = colorTemp;
+        synchronized (this) {
+            writeInt(DeviceStateTable.COLOR_TEMP, colorTemp);
+            stateChanged("colorTemp", colorTemp);
+        }
+    }
+
+    /**
+     * 获取额定功率（50W），供房间统计当前用电功率使用
+     *
+     * @return 额定功率（单位：瓦特/W）
+     */
+    @Override
+    double getRatedPower() {
+        return POWER;
     }
 
     /**
@@ -84,7 +91,7 @@ public class LightBulb extends Device implements EnergyReporting {
     @Override
     public double getPower() {
         if (this.isPowerStatus()) {
-            return power;
+            return POWER;
         } else {
             return 0;
         }
@@ -107,6 +114,87 @@ public class LightBulb extends Device implements EnergyReporting {
 
         double diff = (double) (endMs - startMs) / (60 * 60 * 1000);
 
-        return (power / 1000) * diff;
+        return (POWER / 1000) * diff;
+    }
+
+    @Override
+    void describeState(Map<String, String> attributes) {
+        super.describeState(attributes);
+        attributes.put("brightness", String.valueOf(getBrightness()));
+        attributes.put("colorTemp", String.valueOf(getColorTemp()));
+    }
+
+    @Override
+    boolean applyState(String attribute, String value) {
+        switch (attribute) {
+            case "brightness":
+                setBrightness(Integer.parseInt(value));
+                return true;
+            case "colorTemp":
+                setColorTemp(Integer.parseInt(value));
+                return true;
+            default:
+                return super.applyState(attribute, value);
+        }
+    }
+
+    @Override
+    HeapState newHeapState() {
+        return new HeapState();
+    }
+
+    /**
+     * 不在状态表中时保存亮度和色温的堆上对象
+     */
+    static class HeapState extends Device.HeapState {
+        /**
+         * 亮度
+         */
+        private int brightness;
+
+        /**
+         * 色温
+         */
+        private int colorTemp;
+
+        @Override
+        int getInt(int column, int slot) {
+            switch (column) {
+                case DeviceStateTable.BRIGHTNESS:
+                    return brightness;
+                case DeviceStateTable.COLOR_TEMP:
+                    return colorTemp;
+                default:
+                    return super.getInt(column, slot);
+            }
+        }
+
+        @Override
+        void setInt(int column, int slot, int value) {
+            switch (column) {
+                case DeviceStateTable.BRIGHTNESS:
+                    brightness = value;
+                    break;
+                case DeviceStateTable.COLOR_TEMP:
+                    colorTemp = value;
+                    break;
+                default:
+                    super.setInt(column, slot, value);
+            }
+        }
+
+        @Override
+        void copyTo(DeviceStateTable table, int slot) {
+            super.copyTo(table, slot);
+            table.setInt(DeviceStateTable.BRIGHTNESS, slot, brightness);
+            table.setInt(DeviceStateTable.COLOR_TEMP, slot, colorTemp);
+        }
+
+        @Override
+        void copyFrom(DeviceStateTable table, int slot) {
+            super.copyFrom(table, slot);
+            brightness = table.getInt(DeviceStateTable.BRIGHTNESS, slot);
+            colorTemp = table.getInt(DeviceStateTable.COLOR_TEMP, slot);
+        }
     }
-}
\ No newline at end of file
+}
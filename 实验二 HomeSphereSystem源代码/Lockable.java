@@ -0,0 +1,28 @@
+package cn.edu.nwpu.homesphere;
+
+/**
+ * 可上锁接口，定义具有锁定/解锁能力的智能设备的状态查询与控制规范。
+ * <p>
+ * 实现此接口的设备（如智能锁）会被{@link CapabilityRegistry}归入“可上锁”能力分组，
+ * 便于统一进行“离家全部上锁”等批量操作。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see SmartLock
+ */
+public interface Lockable {
+
+    /**
+     * 获取设备当前的锁定状态
+     *
+     * @return {@code true}表示锁定，{@code false}表示解锁
+     */
+    boolean isLocked();
+
+    /**
+     * 设置设备的锁定状态
+     *
+     * @param locked {@code true}设为锁定，{@code false}设为解锁
+     */
+    void setLocked(boolean locked);
+}
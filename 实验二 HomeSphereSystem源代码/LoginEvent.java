@@ -0,0 +1,31 @@
+package cn.edu.nwpu.homesphere;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 用户登录的JFR事件，记录一次{@link HomeSphereSystem#login(String, String)}的登录名、结果和耗时（不记录密码）。
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+@Name("cn.edu.nwpu.homesphere.Login")
+@Label("Login")
+@Category({"HomeSphere", "User"})
+@Description("用户登录")
+class LoginEvent extends Event {
+    /**
+     * 登录名
+     */
+    @Label("Login Name")
+    String loginName;
+
+    /**
+     * 是否登录成功
+     */
+    @Label("Success")
+    boolean success;
+}
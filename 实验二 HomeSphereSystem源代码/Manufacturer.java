@@ -2,6 +2,8 @@ package cn.edu.nwpu.homesphere;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * 设备制造商类，用于封装设备生产商的基础信息及该厂商生产的所有设备。
@@ -29,9 +31,14 @@ public class Manufacturer {
     private String protocols;
 
     /**
-     * 该制造商生产的所有设备集合，初始化为空列表
+     * 按分隔符拆分后的协议列表（由{@link #protocols}解析得到，供{@link ProtocolDrivers}选择驱动）
      */
-    private List<Device> devices = new ArrayList<Device>();
+    private List<String> protocolList = List.of();
+
+    /**
+     * 该制造商生产的所有设备集合（设备编号 -> 设备，保持添加顺序），初始化为空集合；读写均在当前对象上加锁，支持并行导入
+     */
+    private Map<Integer, Device> devices = new LinkedHashMap<Integer, Device>();
 
     /**
      * 无参构造方法，创建一个默认的制造商实例
@@ -53,6 +60,7 @@ public class Manufacturer {
         this.manufacturerId = manufacturerId;
         this.name = name;
         this.protocols = protocols;
+        this.protocolList = parseProtocols(protocols);
     }
 
     /**
@@ -82,34 +90,47 @@ public class Manufacturer {
         return protocols;
     }
 
+    /**
+     * 获取拆分后的通信协议列表（按声明顺序）
+     *
+     * @return 不可修改的协议名称列表（如["WiFi", "ZigBee"]），未设置协议时返回空列表
+     */
+    public List<String> getProtocolList() {
+        return protocolList;
+    }
+
+    /**
+     * 将协议字符串按逗号、分号、斜杠或空白拆分为协议列表
+     *
+     * @param protocols 协议字符串（如“WiFi, ZigBee”）
+     * @return 不可修改的协议名称列表，参数为null或空白时返回空列表
+     */
+    private static List<String> parseProtocols(String protocols) {
+        if (protocols == null || protocols.isBlank()) {
+            return List.of();
+        }
+        return List.of(protocols.trim().split("[,，;；/\\s]+"));
+    }
+
     /**
      * 向当前制造商添加一个其生产的设备
      *
      * @param device 待添加的设备（{@link Device}或其子类实例，需确保设备确实由该厂商生产）
      */
-    public void addDevice(Device device) {
-        devices.add(device);
+    public synchronized void addDevice(Device device) {
+        devices.put(device.getDeviceId(), device);
     }
 
     /**
      * 从当前制造商的设备集合中移除指定设备
      * <p>
-     * 先遍历设备集合判断目标设备是否存在：存在则移除，不存在则打印“当前制造商所制造的设备里没有[设备名]”的提示。
-     * 设备匹配逻辑依赖{@link Device#equals(Object)}方法（基于设备编号匹配）。
+     * 按设备编号直接定位并移除目标设备（无需遍历），不存在则打印“当前制造商所制造的设备里没有[设备名]”的提示。
+     * 设备匹配逻辑与{@link Device#equals(Object)}一致（基于设备编号匹配）。
      *
      * @param device 待移除的设备（{@link Device}或其子类实例）
      */
-    public void removeDevice(Device device) {
-        boolean found = false;
-        for (Device device1 : devices) {
-            if (device1.equals(device)) {
-                found = true;
-                break;
-            }
-        }
-        if (found) {
-            devices.remove(device);
-        } else {
+    public synchronized void removeDevice(Device device) {
+        if (devices.remove(device.getDeviceId()) == null) {
             System.out.println("当前制造商所制造的设备里没有" + device.getName());
         }
     }
@@ -119,12 +140,12 @@ public class Manufacturer {
      * <p>
      * 若制造商无生产设备，会打印“当前制造商没有设备”的提示信息，返回设备列表。
      *
-     * @return 设备列表（{@link List}<{@link Device}>），无设备时返回null
+     * @return 设备列表副本（{@link List}<{@link Device}>，按添加顺序），无设备时返回空列表
      */
-    public List<Device> getDevices() {
+    public synchronized List<Device> getDevices() {
         if(devices.isEmpty()) {
             System.out.println("当前制造商没有设备");
         }
-        return devices;
+        return new ArrayList<Device>(devices.values());
     }
 }
\ No newline at end of file
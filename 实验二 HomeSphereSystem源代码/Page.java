@@ -0,0 +1,91 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.List;
+
+/**
+ * 分页结果类，用于基于游标的分页查询（如分页列出用户、房间、设备、场景）。
+ * <p>
+ * 游标即上一页最后一个元素的编号，下一页从编号大于游标的元素开始，因此翻页过程中即使有元素增删，
+ * 也不会出现重复或遗漏已存在元素的情况；每一页只占用与页大小相当的内存。
+ * 第一页使用{@link #FIRST}作为游标。
+ *
+ * @param <T> 元素类型
+ * @author 余燚
+ * @version 1.0
+ * @see Household#listDevices(int, int)
+ */
+public final class Page<T> {
+    /**
+     * 第一页使用的游标（小于任何合法编号）
+     */
+    public static final int FIRST = Integer.MIN_VALUE;
+
+    /**
+     * 本页的元素（按编号升序）
+     */
+    private final List<T> items;
+
+    /**
+     * 获取下一页时使用的游标（本页最后一个元素的编号）
+     */
+    private final int nextCursor;
+
+    /**
+     * 是否还有下一页
+     */
+    private final boolean hasMore;
+
+    /**
+     * 有参构造方法，创建一页分页结果
+     *
+     * @param items      本页元素
+     * @param nextCursor 下一页游标
+     * @param hasMore    是否还有下一页
+     */
+    Page(List<T> items, int nextCursor, boolean hasMore) {
+        this.items = List.copyOf(items);
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * 获取本页的元素
+     *
+     * @return 只读元素列表（按编号升序）
+     */
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * 获取下一页游标
+     *
+     * @return 下一页游标，传给下一次分页查询
+     */
+    public int getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * 判断是否还有下一页
+     *
+     * @return {@code true}表示还有下一页
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * 重写toString方法，返回分页结果的简要信息
+     *
+     * @return 包含本页元素数量、下一页游标和是否还有下一页的字符串
+     */
+    @Override
+    public String toString() {
+        return "Page{" +
+                "size=" + items.size() +
+                ", nextCursor=" + nextCursor +
+                ", hasMore=" + hasMore +
+                '}';
+    }
+}
@@ -0,0 +1,459 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.TreeSet;
+
+/**
+ * 权限表类，记录家庭成员可以操作哪些设备（按设备或按房间授权），每条设备指令、群组命令和场景触发执行前都会检查权限。
+ * <p>
+ * 设备加入家庭时分配一个家庭内连续的槽位编号（移出家庭后槽位回收复用），授权修改时把用户的全部授权（单台设备及房间内的所有设备）
+ * 编译成按槽位索引的位图，整体替换用户当前的位图（写时复制）。检查权限时只需读取用户的位图并测试一位，不加任何锁，
+ * 授权修改对并发的检查立即可见。房间授权包括之后加入该房间的设备；设备移出家庭时，针对它的授权随之撤销。
+ * <p>
+ * 操作者通过{@link #runAs(User, Action)}绑定到当前线程。<b>默认拒绝</b>：没有绑定操作者时，设备指令、群组命令和场景触发一律视为无权，
+ * 面向用户的入口（HTTP接口、{@link HomeSphereSystem}的登录会话、{@link WorkloadReplayer}模拟的用户操作）以用户身份执行，
+ * 系统内部发起的操作（定时场景、{@link SceneScheduler}的批量调度等）需通过{@link #runAsSystem(Action)}显式以系统身份执行，
+ * 系统身份和管理员一样不受限制。
+ * 修改授权的方法线程安全。所属家庭配置了变更流时，每次授权修改都会记录用户修改后的全部授权（{@link ChangeEvent.Type#PERMISSION_UPDATED}），
+ * 复制副本据此维护相同的授权，提升为主节点后成员的权限保持不变。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see Household#getPermissions()
+ */
+public class PermissionTable {
+    /**
+     * 当前线程的操作者
+     */
+    private static final ThreadLocal<User> ACTING_USER = new ThreadLocal<User>();
+
+    /**
+     * 系统身份的哨兵用户，只用于标记{@link #runAsSystem(Action)}绑定的操作者，不属于任何家庭
+     */
+    private static final User SYSTEM = new User();
+
+    /**
+     * 权限表所属的家庭，授权修改时通知其记录权限事件，为null时不记录
+     */
+    private final Household household;
+
+    /**
+     * 用户 -> 授权记录
+     */
+    private final Map<User, Grant> grants = new IdentityHashMap<User, Grant>();
+
+    /**
+     * 下一个未使用过的槽位编号
+     */
+    private int nextSlot;
+
+    /**
+     * 已回收、可复用的槽位编号
+     */
+    private int[] freeSlots = new int[16];
+
+    /**
+     * 可复用的槽位数量
+     */
+    private int freeCount;
+
+    /**
+     * 用户的授权记录，保存授权的原始形式，供重新编译位图使用
+     */
+    private static final class Grant {
+        final Set<Device> devices = Collections.newSetFromMap(new IdentityHashMap<Device, Boolean>());
+        final Set<Room> rooms = Collections.newSetFromMap(new IdentityHashMap<Room, Boolean>());
+
+        boolean isEmpty() {
+            return devices.isEmpty() && rooms.isEmpty();
+        }
+    }
+
+    /**
+     * 编译好的权限位图，创建后不可修改
+     */
+    static final class Mask {
+        /**
+         * 位图所属的权限表（槽位编号只在同一个权限表内有意义）
+         */
+        final PermissionTable table;
+
+        /**
+         * 按设备槽位索引的位图
+         */
+        final long[] bits;
+
+        Mask(PermissionTable table, long[] bits) {
+            this.table = table;
+            this.bits = bits;
+        }
+
+        boolean test(int slot) {
+            int word = slot >>> 6;
+            return word < bits.length && (bits[word] & 1L << slot) != 0;
+        }
+    }
+
+    /**
+     * 无参构造方法，创建一个不属于任何家庭的权限表
+     */
+    public PermissionTable() {
+        this(null);
+    }
+
+    /**
+     * 有参构造方法，创建属于指定家庭的权限表（由{@link Household}创建）
+     *
+     * @param household 所属家庭
+     */
+    PermissionTable(Household household) {
+        this.household = household;
+    }
+
+    /**
+     * 以指定用户的身份执行操作，执行期间当前线程的设备指令、群组命令和场景触发都按该用户的权限检查
+     *
+     * @param user   操作者，传入null表示没有操作者（执行期间的设备指令、群组命令和场景触发都会被拒绝）
+     * @param action 待执行的操作
+     * @param <T>    操作结果类型
+     * @param <E>    操作可能抛出的异常类型
+     * @return 操作结果
+     * @throws E 操作抛出的异常
+     */
+    public static <T, E extends Exception> T runAs(User user, Action<T, E> action) throws E {
+        User previous = ACTING_USER.get();
+        ACTING_USER.set(user);
+        try {
+            return action.run();
+        } finally {
+            if (previous == null) {
+                ACTING_USER.remove();
+            } else {
+                ACTING_USER.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 以系统身份执行操作（定时场景、批量调度等系统内部发起的操作），执行期间不做权限限制
+     *
+     * @param action 待执行的操作
+     * @param <T>    操作结果类型
+     * @param <E>    操作可能抛出的异常类型
+     * @return 操作结果
+     * @throws E 操作抛出的异常
+     */
+    public static <T, E extends Exception> T runAsSystem(Action<T, E> action) throws E {
+        return runAs(SYSTEM, action);
+    }
+
+    /**
+     * 获取当前线程的操作者
+     *
+     * @return 操作者，未绑定时返回null；以系统身份执行时返回系统哨兵用户（不属于任何家庭，可原样传给{@link #runAs(User, Action)}）
+     */
+    public static User getActingUser() {
+        return ACTING_USER.get();
+    }
+
+    /**
+     * 检查当前线程的操作者能否操作指定设备
+     *
+     * @param device 目标设备
+     * @return {@code true}表示允许
+     */
+    static boolean isPermitted(Device device) {
+        return isPermitted(ACTING_USER.get(), device);
+    }
+
+    /**
+     * 检查用户能否操作指定设备：只读取用户当前的权限位图，不加锁
+     *
+     * @param user   用户，为null表示没有操作者
+     * @param device 目标设备
+     * @return {@code true}表示允许（系统身份、管理员或拥有该设备的授权），用户为null时返回{@code false}
+     */
+    public static boolean isPermitted(User user, Device device) {
+        if (user == null) {
+            return false;
+        }
+        if (user == SYSTEM || user.isAdmin()) {
+            return true;
+        }
+        Mask mask = user.permissionMask;
+        if (mask == null) {
+            return false;
+        }
+        PermissionTable table = device.permissionTable;
+        int slot = device.permissionSlot;
+        return table == mask.table && slot >= 0 && mask.test(slot);
+    }
+
+    /**
+     * 生成无权操作设备时的提示信息
+     *
+     * @param user   操作者，为null表示没有操作者
+     * @param device 目标设备
+     * @return 提示信息
+     */
+    static String denied(User user, Device device) {
+        if (user == null) {
+            return "未登录，无权操作设备" + device.getName() + "，请先登录";
+        }
+        return "用户" + user.getLoginName() + "无权操作设备" + device.getName();
+    }
+
+    /**
+     * 授权用户操作单台设备
+     *
+     * @param user   用户
+     * @param device 设备，必须已加入本权限表所属的家庭
+     * @throws IllegalArgumentException 设备不属于本家庭
+     */
+    public synchronized void grantDevice(User user, Device device) {
+        if (device.permissionTable != this) {
+            throw new IllegalArgumentException("设备" + device.getName() + "不属于当前家庭");
+        }
+        if (grants.computeIfAbsent(user, key -> new Grant()).devices.add(device)) {
+            compile(user);
+            changed(user);
+        }
+    }
+
+    /**
+     * 撤销用户对单台设备的授权（通过房间授权获得的权限不受影响）
+     *
+     * @param user   用户
+     * @param device 设备
+     */
+    public synchronized void revokeDevice(User user, Device device) {
+        Grant grant = grants.get(user);
+        if (grant != null && grant.devices.remove(device)) {
+            compile(user);
+            changed(user);
+        }
+    }
+
+    /**
+     * 授权用户操作房间内的所有设备，包括之后加入该房间的设备
+     *
+     * @param user 用户
+     * @param room 房间
+     */
+    public synchronized void grantRoom(User user, Room room) {
+        if (grants.computeIfAbsent(user, key -> new Grant()).rooms.add(room)) {
+            compile(user);
+            changed(user);
+        }
+    }
+
+    /**
+     * 撤销用户对房间的授权（单独授权的设备不受影响）
+     *
+     * @param user 用户
+     * @param room 房间
+     */
+    public synchronized void revokeRoom(User user, Room room) {
+        Grant grant = grants.get(user);
+        if (grant != null && grant.rooms.remove(room)) {
+            compile(user);
+            changed(user);
+        }
+    }
+
+    /**
+     * 撤销用户的全部授权（用户移出家庭时调用）
+     *
+     * @param user 用户
+     */
+    public synchronized void revokeAll(User user) {
+        if (grants.remove(user) != null) {
+            compile(user);
+        }
+    }
+
+    /**
+     * 以复制来的授权整体替换用户的授权（副本应用权限事件时使用），不属于本家庭的设备被忽略
+     *
+     * @param user    用户
+     * @param devices 单独授权的设备
+     * @param rooms   授权的房间
+     */
+    synchronized void replace(User user, Collection<Device> devices, Collection<Room> rooms) {
+        Grant grant = new Grant();
+        for (Device device : devices) {
+            if (device.permissionTable == this) {
+                grant.devices.add(device);
+            }
+        }
+        grant.rooms.addAll(rooms);
+        grants.put(user, grant);
+        compile(user);
+        changed(user);
+    }
+
+    /**
+     * 将用户当前的全部授权写入属性表，供变更流的权限事件使用：devices、rooms分别为按编号升序、逗号分隔的设备编号和房间编号
+     *
+     * @param user 用户
+     * @return 属性表，用户没有任何授权时为空
+     */
+    synchronized Map<String, String> describe(User user) {
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        Grant grant = grants.get(user);
+        if (grant == null) {
+            return attributes;
+        }
+        Set<Integer> devices = new TreeSet<Integer>();
+        for (Device device : grant.devices) {
+            devices.add(device.getDeviceId());
+        }
+        Set<Integer> rooms = new TreeSet<Integer>();
+        for (Room room : grant.rooms) {
+            rooms.add(room.getRoomId());
+        }
+        attributes.put("devices", join(devices));
+        attributes.put("rooms", join(rooms));
+        return attributes;
+    }
+
+    private static String join(Set<Integer> ids) {
+        StringJoiner joiner = new StringJoiner(",");
+        for (int id : ids) {
+            joiner.add(Integer.toString(id));
+        }
+        return joiner.toString();
+    }
+
+    /**
+     * 授权修改后通知所属家庭记录权限事件（调用时已持有本对象的锁，事件顺序与修改顺序一致）
+     *
+     * @param user 授权被修改的用户
+     */
+    private void changed(User user) {
+        if (household != null) {
+            household.permissionsUpdated(user);
+        }
+    }
+
+    /**
+     * 获取已分配槽位的设备数
+     *
+     * @return 设备数
+     */
+    public synchronized int getDeviceCount() {
+        return nextSlot - freeCount;
+    }
+
+    /**
+     * 设备加入家庭时的回调（由{@link Household}调用）：分配槽位，并为拥有设备所在房间授权的用户补上该设备
+     *
+     * @param device 加入家庭的设备
+     */
+    synchronized void deviceAdded(Device device) {
+        if (device.permissionTable == this) {
+            return;
+        }
+        int slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+        device.permissionSlot = slot;
+        device.permissionTable = this;
+        Room room = device.getRoom();
+        if (room == null) {
+            return;
+        }
+        for (Map.Entry<User, Grant> entry : grants.entrySet()) {
+            if (entry.getValue().rooms.contains(room)) {
+                User user = entry.getKey();
+                long[] bits = user.permissionMask.bits;
+                bits = Arrays.copyOf(bits, Math.max(bits.length, (slot >>> 6) + 1));
+                bits[slot >>> 6] |= 1L << slot;
+                user.permissionMask = new Mask(this, bits);
+            }
+        }
+    }
+
+    /**
+     * 设备移出家庭时的回调（由{@link Household}调用）：撤销针对该设备的授权，重新编译受影响用户的位图后回收槽位
+     *
+     * @param device 移出家庭的设备
+     */
+    synchronized void deviceRemoved(Device device) {
+        if (device.permissionTable != this) {
+            return;
+        }
+        int slot = device.permissionSlot;
+        device.permissionTable = null;
+        device.permissionSlot = -1;
+        Iterator<Map.Entry<User, Grant>> it = grants.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<User, Grant> entry = it.next();
+            User user = entry.getKey();
+            entry.getValue().devices.remove(device);
+            if (user.permissionMask != null && user.permissionMask.test(slot)) {
+                if (entry.getValue().isEmpty()) {
+                    it.remove();
+                }
+                compile(user);
+            }
+        }
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    /**
+     * 按用户当前的授权记录重新编译位图并发布（调用时已持有本对象的锁）
+     *
+     * @param user 用户
+     */
+    private void compile(User user) {
+        Grant grant = grants.get(user);
+        if (grant == null || grant.isEmpty()) {
+            grants.remove(user);
+            user.permissionMask = null;
+            return;
+        }
+        long[] bits = new long[(nextSlot + 63) >>> 6];
+        for (Device device : grant.devices) {
+            set(bits, device);
+        }
+        for (Room room : grant.rooms) {
+            for (Device device : room.listDevices()) {
+                set(bits, device);
+            }
+        }
+        user.permissionMask = new Mask(this, bits);
+    }
+
+    private void set(long[] bits, Device device) {
+        if (device.permissionTable == this) {
+            bits[device.permissionSlot >>> 6] |= 1L << device.permissionSlot;
+        }
+    }
+
+    /**
+     * 以指定用户身份执行的操作
+     *
+     * @param <T> 操作结果类型
+     * @param <E> 操作可能抛出的异常类型
+     */
+    @FunctionalInterface
+    public interface Action<T, E extends Exception> {
+        /**
+         * 执行操作
+         *
+         * @return 操作结果
+         * @throws E 操作失败
+         */
+        T run() throws E;
+    }
+}
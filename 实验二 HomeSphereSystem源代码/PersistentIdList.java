@@ -0,0 +1,290 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * 持久化编号列表类，用于以不可变快照的方式保存按编号排序的元素（如房间中的设备、家庭中的房间和用户）。
+ * <p>
+ * 内部是一棵按编号排序、记录子树大小的不可变AVL树。{@link #with(int, Object)}和{@link #without(int)}
+ * 只复制从根到目标节点路径上的O(log n)个节点，其余节点与旧列表共享，因此每次发布新快照的开销为O(log n)，
+ * 旧快照保持不变，可被读线程无锁地继续使用。按下标访问和按编号查找也是O(log n)，遍历按编号升序进行。
+ * 列表本身不可修改，调用{@code add}、{@code set}、{@code remove}等方法会抛出{@link UnsupportedOperationException}。
+ *
+ * @param <E> 元素类型
+ * @author 余燚
+ * @version 1.0
+ * @see RoomSnapshot
+ * @see HouseholdSnapshot
+ */
+public final class PersistentIdList<E> extends AbstractList<E> {
+    /**
+     * 空列表（所有元素类型共享）
+     */
+    private static final PersistentIdList<?> EMPTY = new PersistentIdList<>(null);
+
+    /**
+     * 根节点，空列表为{@code null}
+     */
+    private final Node<E> root;
+
+    /**
+     * 私有构造方法，以给定根节点创建列表
+     *
+     * @param root 根节点
+     */
+    private PersistentIdList(Node<E> root) {
+        this.root = root;
+    }
+
+    /**
+     * 获取空列表
+     *
+     * @param <E> 元素类型
+     * @return 空列表
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> PersistentIdList<E> empty() {
+        return (PersistentIdList<E>) EMPTY;
+    }
+
+    /**
+     * 返回加入（或替换）了指定编号元素的新列表，原列表不变
+     *
+     * @param id      元素编号
+     * @param element 元素
+     * @return 新列表；若该编号已对应同一个元素则返回本列表
+     */
+    public PersistentIdList<E> with(int id, E element) {
+        Node<E> updated = insert(root, id, element);
+        return updated == root ? this : new PersistentIdList<>(updated);
+    }
+
+    /**
+     * 返回移除了指定编号元素的新列表，原列表不变
+     *
+     * @param id 元素编号
+     * @return 新列表；若编号不存在则返回本列表
+     */
+    public PersistentIdList<E> without(int id) {
+        Node<E> updated = remove(root, id);
+        return updated == root ? this : new PersistentIdList<>(updated);
+    }
+
+    /**
+     * 按编号查找元素
+     *
+     * @param id 元素编号
+     * @return 对应的元素，不存在时返回{@code null}
+     */
+    public E find(int id) {
+        Node<E> node = root;
+        while (node != null) {
+            if (id < node.id) {
+                node = node.left;
+            } else if (id > node.id) {
+                node = node.right;
+            } else {
+                return node.element;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public E get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("下标" + index + "越界，列表大小为" + size());
+        }
+        Node<E> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.element;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size(root);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<>() {
+            private final Deque<Node<E>> path = new ArrayDeque<>();
+
+            {
+                pushLeft(root);
+            }
+
+            private void pushLeft(Node<E> node) {
+                for (; node != null; node = node.left) {
+                    path.push(node);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return !path.isEmpty();
+            }
+
+            @Override
+            public E next() {
+                if (path.isEmpty()) {
+                    throw new NoSuchElementException();
+                }
+                Node<E> node = path.pop();
+                pushLeft(node.right);
+                return node.element;
+            }
+        };
+    }
+
+    @Override
+    public void forEach(Consumer<? super E> action) {
+        forEach(root, action);
+    }
+
+    /**
+     * 按编号升序遍历子树
+     *
+     * @param node   子树根节点
+     * @param action 对每个元素执行的操作
+     * @param <E>    元素类型
+     */
+    private static <E> void forEach(Node<E> node, Consumer<? super E> action) {
+        while (node != null) {
+            forEach(node.left, action);
+            action.accept(node.element);
+            node = node.right;
+        }
+    }
+
+    /**
+     * 在子树中插入或替换元素，返回新子树
+     */
+    private static <E> Node<E> insert(Node<E> node, int id, E element) {
+        if (node == null) {
+            return new Node<>(id, element, null, null);
+        }
+        if (id < node.id) {
+            Node<E> left = insert(node.left, id, element);
+            return left == node.left ? node : balance(node, left, node.right);
+        }
+        if (id > node.id) {
+            Node<E> right = insert(node.right, id, element);
+            return right == node.right ? node : balance(node, node.left, right);
+        }
+        return node.element == element ? node : new Node<>(id, element, node.left, node.right);
+    }
+
+    /**
+     * 从子树中移除指定编号的元素，返回新子树
+     */
+    private static <E> Node<E> remove(Node<E> node, int id) {
+        if (node == null) {
+            return null;
+        }
+        if (id < node.id) {
+            Node<E> left = remove(node.left, id);
+            return left == node.left ? node : balance(node, left, node.right);
+        }
+        if (id > node.id) {
+            Node<E> right = remove(node.right, id);
+            return right == node.right ? node : balance(node, node.left, right);
+        }
+        if (node.left == null) {
+            return node.right;
+        }
+        if (node.right == null) {
+            return node.left;
+        }
+        Node<E> successor = node.right;
+        while (successor.left != null) {
+            successor = successor.left;
+        }
+        return balance(successor, node.left, removeFirst(node.right));
+    }
+
+    /**
+     * 移除子树中编号最小的元素，返回新子树
+     */
+    private static <E> Node<E> removeFirst(Node<E> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+        return balance(node, removeFirst(node.left), node.right);
+    }
+
+    /**
+     * 以给定节点的编号和元素、新的左右子树构造节点，必要时旋转以恢复AVL平衡
+     */
+    private static <E> Node<E> balance(Node<E> top, Node<E> left, Node<E> right) {
+        int leftHeight = height(left);
+        int rightHeight = height(right);
+        if (leftHeight > rightHeight + 1) {
+            if (height(left.left) >= height(left.right)) {
+                return join(left, left.left, join(top, left.right, right));
+            }
+            Node<E> pivot = left.right;
+            return join(pivot, join(left, left.left, pivot.left), join(top, pivot.right, right));
+        }
+        if (rightHeight > leftHeight + 1) {
+            if (height(right.right) >= height(right.left)) {
+                return join(right, join(top, left, right.left), right.right);
+            }
+            Node<E> pivot = right.left;
+            return join(pivot, join(top, left, pivot.left), join(right, pivot.right, right.right));
+        }
+        return join(top, left, right);
+    }
+
+    /**
+     * 以给定节点的编号和元素、新的左右子树构造节点（不做平衡）
+     */
+    private static <E> Node<E> join(Node<E> top, Node<E> left, Node<E> right) {
+        return new Node<>(top.id, top.element, left, right);
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static int height(Node<?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * 不可变的树节点
+     *
+     * @param <E> 元素类型
+     */
+    private static final class Node<E> {
+        final int id;
+        final E element;
+        final Node<E> left;
+        final Node<E> right;
+        final int size;
+        final int height;
+
+        Node(int id, E element, Node<E> left, Node<E> right) {
+            this.id = id;
+            this.element = element;
+            this.left = left;
+            this.right = right;
+            this.size = size(left) + size(right) + 1;
+            this.height = Math.max(height(left), height(right)) + 1;
+        }
+    }
+}
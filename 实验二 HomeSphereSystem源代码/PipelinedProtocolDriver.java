@@ -0,0 +1,243 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带连接池和流水线的协议驱动抽象基类，子类只需提供协议名称和连接的创建方式。
+ * <p>
+ * 调用{@link #send(DriverRequest)}的线程只负责把请求放入队列并立即返回；
+ * 后台发送线程（数量与连接池大小相同）从队列中一次取出至多{@code maxBatchSize}条请求，
+ * 借用一条连接以流水线方式整批发送，再按顺序完成每条请求的结果。
+ * 因此大量并发命令只需要很少的连接和往返次数。
+ * <p>
+ * 后台发送线程在{@link #start()}时才启动（构造方法中不启动，避免子类字段尚未初始化时就被发送线程使用），
+ * 启动前提交的请求会在队列中等待。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see ConnectionPool
+ */
+public abstract class PipelinedProtocolDriver implements ProtocolDriver {
+    /**
+     * 借用连接的最长等待时间（毫秒）
+     */
+    private static final long ACQUIRE_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * 协议名称
+     */
+    private final String protocol;
+
+    /**
+     * 单批最多打包的请求数
+     */
+    private final int maxBatchSize;
+
+    /**
+     * 驱动使用的连接池
+     */
+    private final ConnectionPool pool;
+
+    /**
+     * 等待发送的请求队列
+     */
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<Pending>();
+
+    /**
+     * 后台发送线程
+     */
+    private final Thread[] senders;
+
+    /**
+     * 后台发送线程是否已启动
+     */
+    private boolean started;
+
+    /**
+     * 驱动是否已关闭
+     */
+    private volatile boolean closed;
+
+    /**
+     * 排队中的请求及其对应的结果
+     */
+    private static final class Pending {
+        final DriverRequest request;
+        final CompletableFuture<Boolean> result = new CompletableFuture<Boolean>();
+
+        Pending(DriverRequest request) {
+            this.request = request;
+        }
+    }
+
+    /**
+     * 有参构造方法，创建驱动（需调用{@link #start()}启动后台发送线程）
+     *
+     * @param protocol     协议名称（如"WiFi"）
+     * @param poolSize     连接池大小，同时也是后台发送线程数
+     * @param maxBatchSize 单批最多打包的请求数
+     */
+    protected PipelinedProtocolDriver(String protocol, int poolSize, int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("批量大小至少为1：" + maxBatchSize);
+        }
+        this.protocol = protocol;
+        this.maxBatchSize = maxBatchSize;
+        this.pool = new ConnectionPool(poolSize, this::openConnection);
+        this.senders = new Thread[poolSize];
+        for (int i = 0; i < poolSize; i++) {
+            senders[i] = new Thread(this::sendLoop, "homesphere-" + protocol + "-sender-" + i);
+            senders[i].setDaemon(true);
+        }
+    }
+
+    /**
+     * 启动后台发送线程，重复调用或驱动关闭后调用不做任何操作
+     *
+     * @return 当前驱动
+     */
+    public synchronized PipelinedProtocolDriver start() {
+        if (!started && !closed) {
+            started = true;
+            for (Thread sender : senders) {
+                sender.start();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 创建一条新的驱动连接，由连接池按需调用
+     *
+     * @return 新连接
+     */
+    protected abstract DriverConnection openConnection();
+
+    @Override
+    public String getProtocol() {
+        return protocol;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> send(DriverRequest request) {
+        Pending pending = new Pending(request);
+        if (closed) {
+            pending.result.complete(false);
+            return pending.result;
+        }
+        queue.add(pending);
+        if (closed) {
+            // close()可能在检查之后、入队之前已经清空了队列
+            failRemaining();
+        }
+        return pending.result;
+    }
+
+    /**
+     * 获取驱动使用的连接池
+     *
+     * @return 连接池
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * 后台发送线程主循环：取出一批请求，借用连接整批发送并完成结果
+     */
+    private void sendLoop() {
+        List<Pending> batch = new ArrayList<Pending>(maxBatchSize);
+        List<DriverRequest> requests = new ArrayList<DriverRequest>(maxBatchSize);
+        while (!closed) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                for (Pending pending : batch) {
+                    requests.add(pending.request);
+                }
+                transmit(batch, requests);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+                requests.clear();
+            }
+        }
+        failRemaining();
+    }
+
+    /**
+     * 借用连接发送一批请求；发送异常时整批请求失败，且该连接被关闭不再复用
+     *
+     * @param batch    排队中的请求
+     * @param requests 与batch一一对应的请求内容
+     * @throws InterruptedException 等待连接时线程被中断
+     */
+    private void transmit(List<Pending> batch, List<DriverRequest> requests) throws InterruptedException {
+        DriverConnection connection;
+        try {
+            connection = pool.acquire(ACQUIRE_TIMEOUT_MILLIS);
+        } catch (RuntimeException e) {
+            completeAll(batch, e);
+            return;
+        }
+        try {
+            boolean[] results = connection.transmit(requests);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(i < results.length && results[i]);
+            }
+        } catch (InterruptedException e) {
+            connection.close();
+            completeAll(batch, e);
+            throw e;
+        } catch (Exception e) {
+            connection.close();
+            completeAll(batch, e);
+        } finally {
+            pool.release(connection);
+        }
+    }
+
+    /**
+     * 将一批请求全部以异常结束
+     *
+     * @param batch 排队中的请求
+     * @param cause 失败原因
+     */
+    private static void completeAll(List<Pending> batch, Throwable cause) {
+        for (Pending pending : batch) {
+            pending.result.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * 驱动关闭后，将队列中尚未发送的请求全部以失败结束
+     */
+    private void failRemaining() {
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.result.complete(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        for (Thread sender : senders) {
+            sender.interrupt();
+        }
+        failRemaining();
+        pool.close();
+    }
+}
@@ -0,0 +1,87 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 实时用电功率表，用于统计房间、家庭及整个设备群的瞬时总功率。
+ * <p>
+ * 功率表只在设备开关机时变化，变化量沿“房间 -> 家庭 -> 设备群”逐级累加到上级功率表，
+ * 因此读取任意一级的总功率都无需遍历设备。内部使用分段累加器（{@link LongAdder}）以毫瓦为单位计数，
+ * 多核并发写入时各线程落在不同的分段上，互不争用；读取时只需合并固定数量的分段。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see Room#getPowerGauge()
+ * @see Household#getPowerGauge()
+ * @see Fleet#getPowerGauge()
+ */
+public class PowerGauge {
+    /**
+     * 当前功率（单位：毫瓦）
+     */
+    private final LongAdder milliwatts = new LongAdder();
+
+    /**
+     * 上级功率表（如房间的上级为家庭），没有上级时为null
+     */
+    private volatile PowerGauge parent;
+
+    /**
+     * 无参构造方法，创建一个没有上级的功率表
+     */
+    public PowerGauge() {
+
+    }
+
+    /**
+     * 有参构造方法，创建一个挂在指定上级之下的功率表
+     *
+     * @param parent 上级功率表
+     */
+    public PowerGauge(PowerGauge parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * 累加功率变化量，并逐级累加到所有上级功率表
+     *
+     * @param deltaWatts 功率变化量（单位：瓦特，开机为正、关机为负）
+     */
+    public void add(double deltaWatts) {
+        long delta = Math.round(deltaWatts * 1000);
+        for (PowerGauge gauge = this; gauge != null; gauge = gauge.parent) {
+            gauge.milliwatts.add(delta);
+        }
+    }
+
+    /**
+     * 获取当前总功率
+     *
+     * @return 当前总功率（单位：瓦特/W）
+     */
+    public double getWatts() {
+        return milliwatts.sum() / 1000.0;
+    }
+
+    /**
+     * 将功率表改挂到新的上级之下：当前读数从旧上级链扣除，并计入新上级链
+     * <p>
+     * 仅在房间加入/移出家庭时调用；若改挂期间恰有设备开关机，上级读数可能出现一次短暂偏差。
+     *
+     * @param newParent 新的上级功率表，传入null表示不再挂在任何上级之下
+     */
+    void attachTo(PowerGauge newParent) {
+        long current = milliwatts.sum();
+        PowerGauge oldParent = this.parent;
+        if (oldParent == newParent) {
+            return;
+        }
+        for (PowerGauge gauge = oldParent; gauge != null; gauge = gauge.parent) {
+            gauge.milliwatts.add(-current);
+        }
+        this.parent = newParent;
+        for (PowerGauge gauge = newParent; gauge != null; gauge = gauge.parent) {
+            gauge.milliwatts.add(current);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.Arrays;
+
+/**
+ * 设备开关机时间线，按时间顺序记录设备的每次电源状态切换，供分时电费计算（{@link TariffCostEngine}）提取开机区间。
+ * <p>
+ * 切换由{@link Device}在电源状态真正变化时写入（见{@link Device#powerOn()}、{@link Device#powerOff()}），
+ * 模拟或导入历史数据时也可直接写入过去的切换。每次切换压缩为一个long：毫秒时间戳左移1位，最低位为切换后的状态，
+ * 按时间升序保存在数组中。查询某段时间内的开机区间先二分查找区间开始时的状态，再顺序扫描区间内的切换，
+ * 代价为O(log n + k)，与设备的历史长度无关；已出账的较早切换可通过{@link #discardBefore(long)}丢弃。该类线程安全。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see TariffCostEngine
+ */
+final class PowerTimeline {
+    /**
+     * 按时间升序排列的切换记录，仅前{@link #size}个元素有效
+     */
+    private long[] entries = new long[4];
+
+    /**
+     * 切换记录数
+     */
+    private int size;
+
+    /**
+     * 接收开机区间的回调
+     */
+    @FunctionalInterface
+    interface IntervalSink {
+        /**
+         * 接收一个开机区间
+         *
+         * @param start 开机时间（毫秒时间戳，包含）
+         * @param end   关机时间（毫秒时间戳，不包含）
+         */
+        void accept(long start, long end);
+    }
+
+    /**
+     * 记录一次电源状态切换；时间早于已有记录时按时间插入到对应位置
+     *
+     * @param time 切换时间（毫秒时间戳）
+     * @param on   切换后的电源状态
+     */
+    synchronized void record(long time, boolean on) {
+        int index = upperBound(time);
+        if (size == entries.length) {
+            entries = Arrays.copyOf(entries, size * 2);
+        }
+        System.arraycopy(entries, index, entries, index + 1, size - index);
+        entries[index] = time << 1 | (on ? 1 : 0);
+        size++;
+    }
+
+    /**
+     * 按时间顺序输出统计区间内的各个开机区间
+     * <p>
+     * 区间开始时的电源状态取此前最后一次切换后的状态；此前没有切换时取第一次切换之前的状态，
+     * 没有任何切换记录时取设备当前的电源状态。最后一个未关机的区间计到统计结束为止。
+     *
+     * @param start   统计开始时间（包含）
+     * @param end     统计结束时间（不包含）
+     * @param current 设备当前的电源状态
+     * @param sink    接收开机区间的回调
+     */
+    synchronized void forEachOnInterval(long start, long end, boolean current, IntervalSink sink) {
+        int i = upperBound(start);
+        boolean on;
+        if (i > 0) {
+            on = isOn(entries[i - 1]);
+        } else {
+            on = size > 0 ? !isOn(entries[0]) : current;
+        }
+        long onSince = start;
+        for (; i < size; i++) {
+            long time = entries[i] >> 1;
+            if (time >= end) {
+                break;
+            }
+            boolean next = isOn(entries[i]);
+            if (next && !on) {
+                onSince = time;
+            } else if (!next && on && time > onSince) {
+                sink.accept(onSince, time);
+            }
+            on = next;
+        }
+        if (on && end > onSince) {
+            sink.accept(onSince, end);
+        }
+    }
+
+    /**
+     * 丢弃指定时间之前的切换记录，保留该时间之前的最后一次切换，使之后的查询仍能得到正确的起始状态
+     *
+     * @param time 时间（毫秒时间戳）
+     */
+    synchronized void discardBefore(long time) {
+        int keep = upperBound(time) - 1;
+        if (keep > 0) {
+            System.arraycopy(entries, keep, entries, 0, size - keep);
+            size -= keep;
+        }
+    }
+
+    /**
+     * 获取切换记录数
+     *
+     * @return 记录数
+     */
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 查找第一个时间晚于指定时间的记录下标（调用方需持有当前对象的锁）
+     */
+    private int upperBound(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (entries[mid] >> 1 <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static boolean isOn(long entry) {
+        return (entry & 1) != 0;
+    }
+}
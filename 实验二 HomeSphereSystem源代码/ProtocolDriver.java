@@ -0,0 +1,54 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 协议驱动接口（SPI），定义把设备命令通过某一厂商通信协议（如WiFi、ZigBee）下发到物理设备的规范。
+ * <p>
+ * 驱动通过{@link ProtocolDrivers#register(ProtocolDriver)}注册，系统根据设备制造商的
+ * {@link Manufacturer#getProtocols()}选择驱动。{@link #send(DriverRequest)}为异步调用，
+ * 实现类应当对请求进行排队、批量打包并复用连接。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see PipelinedProtocolDriver
+ * @see SimulatedProtocolDriver
+ */
+public interface ProtocolDriver {
+
+    /**
+     * 获取驱动支持的协议名称（与{@link Manufacturer#getProtocols()}中的协议名匹配，不区分大小写）
+     *
+     * @return 协议名称（如"WiFi"）
+     */
+    String getProtocol();
+
+    /**
+     * 异步发送一条请求
+     *
+     * @param request 待发送的请求
+     * @return 请求完成后得到的结果：{@code true}表示设备已确认，{@code false}表示执行失败
+     */
+    CompletableFuture<Boolean> send(DriverRequest request);
+
+    /**
+     * 异步发送一批请求，默认逐条调用{@link #send(DriverRequest)}（实现类会将其合并为批量发送）
+     *
+     * @param requests 待发送的请求
+     * @return 与请求一一对应的结果
+     */
+    default List<CompletableFuture<Boolean>> sendAll(List<DriverRequest> requests) {
+        List<CompletableFuture<Boolean>> results = new ArrayList<CompletableFuture<Boolean>>(requests.size());
+        for (DriverRequest request : requests) {
+            results.add(send(request));
+        }
+        return results;
+    }
+
+    /**
+     * 关闭驱动，释放连接等资源
+     */
+    void close();
+}
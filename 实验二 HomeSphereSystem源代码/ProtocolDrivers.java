@@ -0,0 +1,107 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 协议驱动注册表，负责按制造商支持的通信协议选择{@link ProtocolDriver}并下发设备命令。
+ * <p>
+ * 制造商可支持多种协议（如“WiFi, ZigBee”），按声明顺序选择第一个已注册驱动的协议；
+ * 若没有任何可用驱动，命令只在本地生效（与引入驱动之前的行为一致）。
+ * 下发失败时会在设备运行日志中记录一条ERROR日志。
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+public final class ProtocolDrivers {
+    /**
+     * 已注册的驱动（键为小写协议名）
+     */
+    private static final Map<String, ProtocolDriver> DRIVERS = new ConcurrentHashMap<String, ProtocolDriver>();
+
+    /**
+     * 无驱动时返回的已完成结果，避免每次下发都创建新对象
+     */
+    private static final CompletableFuture<Boolean> LOCAL_ONLY = CompletableFuture.completedFuture(true);
+
+    private ProtocolDrivers() {
+
+    }
+
+    /**
+     * 注册一个协议驱动，同一协议的旧驱动会被替换并关闭
+     *
+     * @param driver 待注册的驱动
+     */
+    public static void register(ProtocolDriver driver) {
+        ProtocolDriver old = DRIVERS.put(key(driver.getProtocol()), driver);
+        if (old != null && old != driver) {
+            old.close();
+        }
+    }
+
+    /**
+     * 注销并关闭指定协议的驱动
+     *
+     * @param protocol 协议名称
+     */
+    public static void unregister(String protocol) {
+        ProtocolDriver old = DRIVERS.remove(key(protocol));
+        if (old != null) {
+            old.close();
+        }
+    }
+
+    /**
+     * 根据制造商支持的协议选择驱动
+     *
+     * @param manufacturer 设备制造商（可为null）
+     * @return 第一个已注册驱动的协议所对应的驱动，没有可用驱动时返回null
+     */
+    public static ProtocolDriver driverFor(Manufacturer manufacturer) {
+        if (manufacturer == null || DRIVERS.isEmpty()) {
+            return null;
+        }
+        for (String protocol : manufacturer.getProtocolList()) {
+            ProtocolDriver driver = DRIVERS.get(key(protocol));
+            if (driver != null) {
+                return driver;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 通过设备制造商对应的驱动下发一条命令
+     *
+     * @param device     目标设备
+     * @param command    命令名称
+     * @param parameters 命令参数（可为null）
+     * @return 下发结果（失败日志写入后才完成）；没有可用驱动时返回已完成的{@code true}
+     */
+    public static CompletableFuture<Boolean> dispatch(Device device, String command, String parameters) {
+        ProtocolDriver driver = driverFor(device.getManufacturer());
+        if (driver == null) {
+            return LOCAL_ONLY;
+        }
+        return driver.send(new DriverRequest(device.getDeviceId(), command, parameters)).whenComplete((ok, error) -> {
+            if (error != null || !ok) {
+                device.addRunningLogs(new RunningLog(new Date(), "命令下发失败：" + command,
+                        RunningLog.Type.ERROR, error != null ? String.valueOf(error) : driver.getProtocol() + "驱动返回失败"));
+            }
+        });
+    }
+
+    /**
+     * 将协议名称统一为小写，便于不区分大小写匹配
+     *
+     * @param protocol 协议名称
+     * @return 小写协议名称
+     */
+    private static String key(String protocol) {
+        return protocol.trim().toLowerCase(Locale.ROOT);
+    }
+}
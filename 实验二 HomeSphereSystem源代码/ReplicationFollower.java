@@ -0,0 +1,591 @@
+package cn.edu.nwpu.homesphere;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 家庭状态复制的副本，连接{@link ReplicationLeader}接收变更事件，在本地维护一个与主节点一致的家庭副本，供读取（列表展示、能耗报表等）使用。
+ * <p>
+ * 首次连接（或进度已不在主节点保留范围内）时，副本先在一个新的家庭对象上应用主节点发来的完整快照，应用完毕后才替换当前副本，
+ * 读取方不会看到初始化到一半的家庭；之后逐批应用事件，每批应用完毕后更新已应用序号。连接断开时自动重连，并从已应用的序号继续。
+ * 副本的家庭不计入全局设备群（见{@link Household#setFleetMember(boolean)}），同一进程中的主节点与副本互不干扰。
+ * <p>
+ * 读取方通过{@link #read(long, long)}获取落后不超过指定事件数的家庭快照；副本与主节点失去联系超过3个心跳周期时视为落后无限大。
+ * 主节点失效时可调用{@link #promote()}停止复制，将副本家庭提升为主节点使用（配置新的变更流后再创建{@link ReplicationLeader}，
+ * 其余副本连接新的主节点时会因变更流标识不同而重新接收快照）。用户的登录凭据（密码的加盐摘要）和设备授权同样随事件复制，
+ * 提升后成员可以直接登录，权限与原主节点一致。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see ReplicationLeader
+ */
+public class ReplicationFollower implements AutoCloseable {
+    /**
+     * 判断与主节点失去联系的时间（3个心跳周期）
+     */
+    private static final long STALE_NANOS = TimeUnit.MILLISECONDS.toNanos(3L * ReplicationLeader.HEARTBEAT_MILLIS);
+
+    /**
+     * 被复制的家庭编号
+     */
+    private final int householdId;
+
+    /**
+     * 主节点地址
+     */
+    private final InetSocketAddress leader;
+
+    /**
+     * 已知的制造商（制造商编号 -> 制造商），未知编号的设备使用占位制造商
+     */
+    private final Map<Integer, Manufacturer> manufacturers = new ConcurrentHashMap<Integer, Manufacturer>();
+
+    /**
+     * 当前的家庭副本（初始化快照后整体替换）
+     */
+    private volatile Household household;
+
+    /**
+     * 已应用的变更流标识
+     */
+    private String feedId = "";
+
+    /**
+     * 已应用的最后一个事件的序号
+     */
+    private long appliedSequence;
+
+    /**
+     * 主节点最近一次告知的最新序号
+     */
+    private long leaderSequence;
+
+    /**
+     * 最近一次收到主节点数据的时间（System.nanoTime()）
+     */
+    private long lastContact;
+
+    /**
+     * 当前连接
+     */
+    private volatile Socket socket;
+
+    /**
+     * 复制线程
+     */
+    private Thread thread;
+
+    /**
+     * 是否已停止复制
+     */
+    private volatile boolean stopped;
+
+    /**
+     * 有参构造方法，创建连接指定主节点的副本（需调用{@link #start()}后才开始复制）
+     *
+     * @param householdId 被复制的家庭编号
+     * @param host        主节点主机名（通常为localhost）
+     * @param port        主节点端口
+     */
+    public ReplicationFollower(int householdId, String host, int port) {
+        this.householdId = householdId;
+        this.leader = new InetSocketAddress(host, port);
+        this.household = newReplica();
+        this.lastContact = System.nanoTime() - STALE_NANOS;
+    }
+
+    /**
+     * 预先登记一个制造商，供复制来的设备引用
+     *
+     * @param manufacturer 制造商
+     */
+    public void addManufacturer(Manufacturer manufacturer) {
+        manufacturers.put(manufacturer.getManufacturerId(), manufacturer);
+    }
+
+    /**
+     * 启动复制线程
+     */
+    public synchronized void start() {
+        if (thread == null) {
+            thread = new Thread(this::replicate, "homesphere-follower-" + householdId);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * 获取当前的家庭副本
+     * <p>
+     * 副本重新初始化（如主节点切换）后会替换为新的家庭对象，长期持有时应重新获取。
+     *
+     * @return 家庭副本
+     */
+    public Household getHousehold() {
+        return household;
+    }
+
+    /**
+     * 获取已应用的最后一个事件的序号
+     *
+     * @return 序号
+     */
+    public synchronized long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * 获取当前落后主节点的事件数
+     *
+     * @return 落后的事件数，与主节点失去联系时返回{@link Long#MAX_VALUE}
+     */
+    public synchronized long getLag() {
+        if (System.nanoTime() - lastContact > STALE_NANOS) {
+            return Long.MAX_VALUE;
+        }
+        return Math.max(0, leaderSequence - appliedSequence);
+    }
+
+    /**
+     * 等待副本落后的事件数不超过指定值
+     *
+     * @param maxLag        允许落后的最大事件数
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return {@code true}表示在超时前满足条件
+     * @throws InterruptedException 等待过程中线程被中断
+     */
+    public synchronized boolean awaitLag(long maxLag, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (getLag() > maxLag) {
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(Math.min(remaining, ReplicationLeader.HEARTBEAT_MILLIS));
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return true;
+    }
+
+    /**
+     * 等待副本应用到指定序号（写入方在主节点上完成修改后取得{@link ChangeFeed#getLastSequence()}，
+     * 据此在副本上读到自己的修改）
+     *
+     * @param sequence      需要应用到的序号
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return {@code true}表示在超时前已应用到该序号
+     * @throws InterruptedException 等待过程中线程被中断
+     */
+    public synchronized boolean awaitSequence(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        long remaining = timeoutMillis;
+        while (appliedSequence < sequence) {
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return true;
+    }
+
+    /**
+     * 以有界延迟读取家庭副本：等待副本落后不超过指定事件数后返回当前快照
+     *
+     * @param maxLag        允许落后的最大事件数（0表示与主节点最近告知的最新序号一致）
+     * @param timeoutMillis 最长等待时间（毫秒）
+     * @return 家庭快照
+     * @throws IllegalStateException 超时仍落后过多（或与主节点失去联系）
+     * @throws InterruptedException  等待过程中线程被中断
+     */
+    public HouseholdSnapshot read(long maxLag, long timeoutMillis) throws InterruptedException {
+        if (!awaitLag(maxLag, timeoutMillis)) {
+            throw new IllegalStateException("副本落后主节点超过" + maxLag + "个事件（当前落后" + lagText() + "）");
+        }
+        return household.snapshot();
+    }
+
+    private String lagText() {
+        long lag = getLag();
+        return lag == Long.MAX_VALUE ? "未知，已失去联系" : lag + "个事件";
+    }
+
+    /**
+     * 停止复制，将家庭副本提升为主节点使用：副本重新计入全局设备群，之后可配置变更流并创建{@link ReplicationLeader}
+     * <p>
+     * 提升后的用户保留复制来的登录凭据和授权，可以直接以原密码登录（{@link HomeSphereSystem#login(String, String)}）。
+     *
+     * @return 提升后的家庭
+     * @throws InterruptedException 等待复制线程结束时被中断
+     */
+    public Household promote() throws InterruptedException {
+        close();
+        Thread current;
+        synchronized (this) {
+            current = thread;
+        }
+        if (current != null) {
+            current.join();
+        }
+        Household promoted = household;
+        promoted.setFleetMember(true);
+        return promoted;
+    }
+
+    /**
+     * 停止复制并断开连接（家庭副本保留最后的状态，仍可读取）
+     */
+    @Override
+    public void close() {
+        stopped = true;
+        Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // 忽略关闭失败
+            }
+        }
+    }
+
+    /**
+     * 复制线程主循环：连接主节点并应用事件，连接断开后稍后重连
+     */
+    private void replicate() {
+        while (!stopped) {
+            try (Socket s = new Socket()) {
+                socket = s;
+                if (stopped) {
+                    return;
+                }
+                s.connect(leader, ReplicationLeader.HEARTBEAT_MILLIS * 5);
+                s.setTcpNoDelay(true);
+                s.setSoTimeout((int) TimeUnit.NANOSECONDS.toMillis(STALE_NANOS));
+                follow(s);
+            } catch (IOException e) {
+                // 主节点不可用或连接断开，稍后重连
+            }
+            if (!stopped) {
+                try {
+                    Thread.sleep(ReplicationLeader.HEARTBEAT_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 在一个连接上完成握手并持续应用事件
+     */
+    private void follow(Socket s) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 1 << 16));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+        synchronized (this) {
+            out.writeInt(ReplicationLeader.MAGIC);
+            out.writeUTF(feedId);
+            out.writeLong(appliedSequence);
+        }
+        out.flush();
+        if (in.readInt() != ReplicationLeader.MAGIC) {
+            throw new IOException("主节点协议不匹配");
+        }
+        String leaderFeedId = in.readUTF();
+        if (in.readInt() != householdId) {
+            throw new IOException("主节点复制的不是家庭" + householdId);
+        }
+        if (in.readBoolean()) {
+            long sequence = in.readLong();
+            Household replica = newReplica();
+            for (ChangeEvent event : readBatch(in)) {
+                apply(replica, event);
+            }
+            synchronized (this) {
+                household = replica;
+                feedId = leaderFeedId;
+                appliedSequence = sequence;
+                leaderSequence = sequence;
+                lastContact = System.nanoTime();
+                notifyAll();
+            }
+        }
+        while (!stopped) {
+            long latest = in.readLong();
+            List<ChangeEvent> batch = readBatch(in);
+            Household current = household;
+            for (ChangeEvent event : batch) {
+                apply(current, event);
+            }
+            synchronized (this) {
+                if (!batch.isEmpty()) {
+                    appliedSequence = batch.get(batch.size() - 1).getSequence();
+                }
+                leaderSequence = latest;
+                lastContact = System.nanoTime();
+                notifyAll();
+            }
+        }
+    }
+
+    private List<ChangeEvent> readBatch(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<ChangeEvent> events = new ArrayList<ChangeEvent>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(ChangeFeed.readEvent(in, householdId));
+        }
+        return events;
+    }
+
+    private Household newReplica() {
+        Household replica = new Household(householdId, null);
+        replica.setFleetMember(false);
+        return replica;
+    }
+
+    /**
+     * 将一个事件应用到家庭副本（重复应用同一事件不影响结果）
+     *
+     * @param target 家庭副本
+     * @param event  变更事件
+     */
+    private void apply(Household target, ChangeEvent event) {
+        Map<String, String> attributes = event.getAttributes();
+        int id = event.getEntityId();
+        switch (event.getType()) {
+            case HOUSEHOLD_UPDATED: {
+                if (!Objects.equals(target.getAddress(), attributes.get("address"))) {
+                    target.setAddress(attributes.get("address"));
+                }
+                if (!Objects.equals(target.getRegion(), attributes.get("region"))) {
+                    target.setRegion(attributes.get("region"));
+                }
+                String admin = attributes.get("admin");
+                User user = admin == null ? null : target.getUser(Integer.parseInt(admin));
+                if (user != null && target.getAdmin() != user) {
+                    target.setAdmin(user);
+                }
+                break;
+            }
+            case ROOM_ADDED:
+            case ROOM_UPDATED: {
+                Room room = target.getRoom(id);
+                String name = attributes.get("name");
+                double area = Double.parseDouble(attributes.getOrDefault("area", "0"));
+                if (room == null) {
+                    target.addRoom(new Room(id, name, area));
+                } else {
+                    if (!Objects.equals(room.getName(), name)) {
+                        room.setName(name);
+                    }
+                    if (room.getArea() != area) {
+                        room.setArea(area);
+                    }
+                }
+                break;
+            }
+            case ROOM_REMOVED:
+                target.detachRoom(id);
+                break;
+            case DEVICE_ADDED: {
+                Room room = attributes.containsKey("room") ? target.getRoom(Integer.parseInt(attributes.get("room"))) : null;
+                Device device = target.getDevice(id);
+                if (device != null && device.getRoom() != room) {
+                    device.getRoom().detachDevice(id);
+                    device = null;
+                }
+                if (device == null) {
+                    if (room == null) {
+                        break;
+                    }
+                    try {
+                        device = HouseholdImporter.newDevice(attributes.get("kind"), id, attributes.get("name"),
+                                manufacturer(attributes.get("manufacturer")));
+                    } catch (IllegalArgumentException e) {
+                        // 本进程不认识的设备类型，跳过
+                        break;
+                    }
+                    room.addDevice(device);
+                }
+                applyStates(device, attributes);
+                break;
+            }
+            case DEVICE_REMOVED: {
+                Device device = target.getDevice(id);
+                if (device != null && device.getRoom() != null) {
+                    device.getRoom().detachDevice(id);
+                }
+                break;
+            }
+            case DEVICE_STATE: {
+                Device device = target.getDevice(id);
+                if (device != null) {
+                    applyStates(device, attributes);
+                }
+                break;
+            }
+            case USER_ADDED:
+            case USER_UPDATED: {
+                User user = target.getUser(id);
+                if (user == null) {
+                    // 复制流只传播密码的加盐摘要，副本上的用户没有明文密码，以摘要校验登录
+                    user = new User(id, attributes.get("loginName"), null,
+                            attributes.get("userName"), attributes.get("email"));
+                    user.setCredential(attributes.get("credential"));
+                    target.addUser(user);
+                } else {
+                    if (!Objects.equals(user.getCredential(), attributes.get("credential"))) {
+                        user.setCredential(attributes.get("credential"));
+                    }
+                    if (!Objects.equals(user.getLoginName(), attributes.get("loginName"))) {
+                        user.setLoginName(attributes.get("loginName"));
+                    }
+                    if (!Objects.equals(user.getUserName(), attributes.get("userName"))) {
+                        user.setUserName(attributes.get("userName"));
+                    }
+                    if (!Objects.equals(user.getEmail(), attributes.get("email"))) {
+                        user.setEmail(attributes.get("email"));
+                    }
+                }
+                boolean admin = Boolean.parseBoolean(attributes.get("admin"));
+                if (user.isAdmin() != admin) {
+                    user.setAdmin(admin);
+                }
+                break;
+            }
+            case USER_REMOVED:
+                target.detachUser(id);
+                break;
+            case SCENE_ADDED:
+            case SCENE_UPDATED: {
+                target.detachAutoScene(id);
+                AutomationScene scene = new AutomationScene(id, attributes.get("name"), attributes.get("description"));
+                int actions = Integer.parseInt(attributes.getOrDefault("actions", "0"));
+                for (int i = 0; i < actions; i++) {
+                    Device device = target.getDevice(Integer.parseInt(attributes.get("action." + i + ".device")));
+                    if (device != null) {
+                        String parameters = attributes.get("action." + i + ".parameters");
+                        try {
+                            scene.addAction(new DeviceAction(attributes.get("action." + i + ".command"),
+                                    parameters == null ? "" : parameters, device));
+                        } catch (IllegalArgumentException e) {
+                            // 主节点上已通过校验的动作不会出现此情况，防御性跳过
+                        }
+                    }
+                }
+                target.addAutoScene(scene);
+                break;
+            }
+            case SCENE_REMOVED:
+                target.detachAutoScene(id);
+                break;
+            case PERMISSION_UPDATED: {
+                User user = target.getUser(id);
+                if (user == null) {
+                    break;
+                }
+                List<Device> devices = new ArrayList<Device>();
+                for (int deviceId : ids(attributes.get("devices"))) {
+                    Device device = target.getDevice(deviceId);
+                    if (device != null) {
+                        devices.add(device);
+                    }
+                }
+                List<Room> rooms = new ArrayList<Room>();
+                for (int roomId : ids(attributes.get("rooms"))) {
+                    Room room = target.getRoom(roomId);
+                    if (room != null) {
+                        rooms.add(room);
+                    }
+                }
+                target.getPermissions().replace(user, devices, rooms);
+                break;
+            }
+            default:
+                break;
+        }
+    }
+
+    /**
+     * 解析权限事件中逗号分隔的编号
+     */
+    private static List<Integer> ids(String value) {
+        List<Integer> ids = new ArrayList<Integer>();
+        if (value != null && !value.isEmpty()) {
+            for (String id : value.split(",")) {
+                ids.add(Integer.parseInt(id));
+            }
+        }
+        return ids;
+    }
+
+    private static void applyStates(Device device, Map<String, String> attributes) {
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            device.applyState(attribute.getKey(), attribute.getValue());
+        }
+    }
+
+    private Manufacturer manufacturer(String id) {
+        if (id == null) {
+            return null;
+        }
+        int manufacturerId = Integer.parseInt(id);
+        return manufacturers.computeIfAbsent(manufacturerId, key -> new Manufacturer(key, "制造商" + key, ""));
+    }
+
+    /**
+     * 启动一个副本进程，每秒打印一次复制进度；在标准输入中输入“promote 端口 变更流目录”可将其提升为主节点
+     *
+     * @param args 可选参数：主节点端口（默认7070）、家庭编号（默认1）、主节点主机（默认localhost）
+     * @throws Exception 提升为主节点时端口绑定或变更流打开失败
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        int householdId = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        String host = args.length > 2 ? args[2] : "localhost";
+
+        ReplicationFollower follower = new ReplicationFollower(householdId, host, port);
+        follower.start();
+        Thread reporter = new Thread(() -> {
+            while (!follower.stopped) {
+                HouseholdSnapshot snapshot = follower.getHousehold().snapshot();
+                System.out.println("已应用序号=" + follower.getAppliedSequence() + "，落后=" + follower.lagText()
+                        + "，房间数=" + snapshot.getRooms().size() + "，设备数=" + snapshot.getDeviceCount());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }, "homesphere-follower-report");
+        reporter.setDaemon(true);
+        reporter.start();
+
+        BufferedReader console = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = console.readLine()) != null) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length == 3 && "promote".equals(parts[0])) {
+                Household household = follower.promote();
+                household.setChangeFeed(new ChangeFeed(Paths.get(parts[2]), householdId, 4096));
+                ReplicationLeader leader = new ReplicationLeader(household, Integer.parseInt(parts[1]));
+                leader.start();
+                System.out.println("已提升为主节点：端口" + leader.getPort());
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package cn.edu.nwpu.homesphere;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 家庭状态复制的主节点，通过本机回环地址上的套接字把一个家庭的变更流（{@link ChangeFeed}）推送给任意多个副本（{@link ReplicationFollower}）。
+ * <p>
+ * 每个副本一个连接、一个线程，协议（大端序）如下：
+ * <pre>
+ * 副本 -> 主节点：int 魔数 | UTF 副本已应用的变更流标识（首次为空串） | long 已应用的序号
+ * 主节点 -> 副本：int 魔数 | UTF 变更流标识 | int 家庭编号 | boolean 是否发送快照
+ *                [long 快照序号 | int 事件数 | 事件*]           （需要快照时）
+ *                (long 主节点最新序号 | int 事件数 | 事件*)*     （之后持续推送，无新事件时每{@value #HEARTBEAT_MILLIS}毫秒发送一次空批次作为心跳）
+ * </pre>
+ * 事件格式与变更流段文件中的格式相同（{@link ChangeFeed#writeEvent(java.io.DataOutput, ChangeEvent)}）。
+ * 副本的进度属于同一个变更流、且所需事件仍在保留范围内时直接从断点继续推送；否则先发送一份完整快照
+ * （{@link Household#describe(long)}，在家庭的锁内与快照序号一同获取），再从快照序号之后继续推送。
+ * 设备的加入、移出和状态事件都在修改体现到家庭快照之后才记录，因此序号不超过快照序号的事件一定已体现在快照中；
+ * 快照之后的少量事件也可能已体现在快照中，副本重复应用它们不影响结果。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see ReplicationFollower
+ */
+public class ReplicationLeader implements AutoCloseable {
+    /**
+     * 协议魔数（"HSRP"）
+     */
+    static final int MAGIC = 0x48535250;
+
+    /**
+     * 无新事件时发送心跳的间隔（毫秒）
+     */
+    static final int HEARTBEAT_MILLIS = 200;
+
+    /**
+     * 每批最多推送的事件数
+     */
+    private static final int BATCH_SIZE = 512;
+
+    /**
+     * 被复制的家庭
+     */
+    private final Household household;
+
+    /**
+     * 家庭的变更流
+     */
+    private final ChangeFeed feed;
+
+    /**
+     * 监听套接字
+     */
+    private final ServerSocket server;
+
+    /**
+     * 当前连接的副本
+     */
+    private final Set<Socket> followers = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 是否已关闭
+     */
+    private volatile boolean closed;
+
+    /**
+     * 有参构造方法，在本机回环地址的指定端口上创建主节点（需调用{@link #start()}后才开始接受副本连接）
+     *
+     * @param household 被复制的家庭（需已配置变更流，见{@link Household#setChangeFeed(ChangeFeed)}）
+     * @param port      监听端口，0表示由系统分配空闲端口
+     * @throws IOException 端口绑定失败
+     */
+    public ReplicationLeader(Household household, int port) throws IOException {
+        if (household.getChangeFeed() == null) {
+            throw new IllegalArgumentException("家庭" + household.getHouseholdId() + "未配置变更流，无法作为复制主节点");
+        }
+        this.household = household;
+        this.feed = household.getChangeFeed();
+        this.server = new ServerSocket();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * 开始接受副本连接
+     */
+    public void start() {
+        Thread acceptor = new Thread(this::acceptLoop, "homesphere-replication-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * 获取实际监听的端口
+     *
+     * @return 端口号
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * 获取当前连接的副本数
+     *
+     * @return 副本数
+     */
+    public int getFollowerCount() {
+        return followers.size();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = server.accept();
+                socket.setTcpNoDelay(true);
+                followers.add(socket);
+                Thread thread = new Thread(() -> serve(socket), "homesphere-replication-" + socket.getPort());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.out.println("复制主节点接受连接失败：" + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 为一个副本服务：握手，必要时发送快照，之后持续推送新事件直到连接断开
+     */
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream(), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            String followerFeedId = in.readUTF();
+            long applied = in.readLong();
+            out.writeInt(MAGIC);
+            out.writeUTF(feed.getFeedId());
+            out.writeInt(household.getHouseholdId());
+            long next;
+            if (followerFeedId.equals(feed.getFeedId()) && applied + 1 >= feed.getFirstSequence()
+                    && applied <= feed.getLastSequence()) {
+                out.writeBoolean(false);
+                next = applied + 1;
+            } else {
+                long sequence;
+                List<ChangeEvent> events;
+                synchronized (household) {
+                    sequence = feed.getLastSequence();
+                    events = household.describe(sequence);
+                }
+                out.writeBoolean(true);
+                out.writeLong(sequence);
+                writeBatch(out, events);
+                next = sequence + 1;
+            }
+            out.flush();
+            while (!closed) {
+                List<ChangeEvent> batch = feed.poll(next, BATCH_SIZE, HEARTBEAT_MILLIS);
+                if (!batch.isEmpty() && batch.get(0).getSequence() != next) {
+                    // 所需事件已被删除，断开连接，副本重连后会收到新的快照
+                    return;
+                }
+                out.writeLong(feed.getLastSequence());
+                writeBatch(out, batch);
+                out.flush();
+                if (!batch.isEmpty()) {
+                    next = batch.get(batch.size() - 1).getSequence() + 1;
+                }
+            }
+        } catch (IOException e) {
+            // 副本断开连接
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    private static void writeBatch(DataOutputStream out, List<ChangeEvent> events) throws IOException {
+        out.writeInt(events.size());
+        for (ChangeEvent event : events) {
+            ChangeFeed.writeEvent(out, event);
+        }
+    }
+
+    /**
+     * 停止接受连接并断开所有副本（变更流不会被关闭）
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            server.close();
+        } catch (IOException e) {
+            // 忽略关闭失败
+        }
+        for (Socket socket : followers) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 忽略关闭失败
+            }
+        }
+    }
+
+    /**
+     * 启动一个复制主节点进程：生成一个模拟家庭，配置变更流后持续产生遥测数据，供其他进程中的副本连接
+     *
+     * @param args 可选参数：端口（默认7070）、变更流目录（默认临时目录下的homesphere-leader）、家庭编号（默认1）、每秒遥测次数（默认100）
+     * @throws Exception 端口绑定或变更流打开失败
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7070;
+        Path dir = args.length > 1 ? Paths.get(args[1]) : Paths.get(System.getProperty("java.io.tmpdir"), "homesphere-leader");
+        int householdId = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int rate = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+
+        Household household = new HouseholdGenerator(42).generateHousehold(householdId);
+        ChangeFeed feed = new ChangeFeed(dir, householdId, 4096);
+        household.setChangeFeed(feed);
+        ReplicationLeader leader = new ReplicationLeader(household, port);
+        leader.start();
+        System.out.println("复制主节点已启动：端口" + leader.getPort() + "，家庭" + householdId + "，变更流目录" + dir);
+
+        List<Device> devices = household.listAllDevices();
+        Random random = new Random();
+        long interval = 1_000_000_000L / Math.max(1, rate);
+        long lastReport = System.nanoTime();
+        while (true) {
+            Device device = devices.get(random.nextInt(devices.size()));
+            if (device instanceof AirConditioner) {
+                ((AirConditioner) device).setCurrTemp(15 + random.nextInt(200) / 10.0);
+            } else if (device instanceof BatteryPowered) {
+                ((BatteryPowered) device).setBatteryLevel(random.nextInt(101));
+            } else {
+                device.setOnline(!device.isOnline());
+            }
+            if (System.nanoTime() - lastReport >= 1_000_000_000L) {
+                System.out.println("最新序号=" + feed.getLastSequence() + "，副本数=" + leader.getFollowerCount());
+                lastReport = System.nanoTime();
+            }
+            Thread.sleep(interval / 1_000_000, (int) (interval % 1_000_000));
+        }
+    }
+}
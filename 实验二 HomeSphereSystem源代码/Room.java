@@ -1,12 +1,20 @@
 package cn.edu.nwpu.homesphere;
 
 import java.util.List;
-import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * 房间类，用于封装智能家居系统中的房间信息及房间内的设备集合，是设备的物理归属容器。
  * <p>
  * 该类管理房间的基本属性（编号、名称、面积），并提供设备的添加、移除及查询功能，建立“房间-设备”的物理关联关系。
+ * 房间还维护设备数量、开机数量、在线数量和当前用电功率等统计数据，这些数据在设备增删及开关机、上下线时以O(1)代价增量更新，
+ * 读取时无需遍历设备。
+ * <p>
+ * 增删设备在当前房间对象上加锁，每次修改后发布一个不可变的{@link RoomSnapshot}，
+ * 系统内部的遍历（群组命令、家庭快照等）都基于快照进行，不与并发的增删操作冲突。
+ * 设备集合只保存在快照的{@link PersistentIdList}中（按设备编号排序），增删一台设备的代价为O(log n)。
  *
  * @author 余燚
  * @version 1.0
@@ -28,9 +36,29 @@ public class Room {
     private double area;
 
     /**
-     * 房间内所有设备的集合（如客厅的空调、台灯，卧室的体重秤等），初始化为空列表
+     * 房间当前的快照（含房间内所有设备），每次增删设备或修改名称、面积时整体替换
+     */
+    private volatile RoomSnapshot snapshot;
+
+    /**
+     * 房间所属的家庭，由{@link Household#addRoom(Room)}设置，未加入家庭时为null
+     */
+    private volatile Household household;
+
+    /**
+     * 房间内处于开机状态的设备数量
      */
-    private List<Device> devices = new ArrayList<Device>();
+    private final AtomicInteger poweredOnCount = new AtomicInteger();
+
+    /**
+     * 房间内处于在线状态的设备数量
+     */
+    private final AtomicInteger onlineCount = new AtomicInteger();
+
+    /**
+     * 房间的实时用电功率表，加入家庭后汇总到家庭功率表
+     */
+    private final PowerGauge powerGauge = new PowerGauge();
 
     /**
      * 无参构造方法，创建一个默认的房间实例
@@ -38,7 +66,7 @@ public class Room {
      * 注意：使用此构造后需手动设置房间编号、名称等核心属性，否则无法完整标识房间信息。
      */
     public Room() {
-
+        this.snapshot = new RoomSnapshot(this, null, 0, PersistentIdList.empty());
     }
 
     /**
@@ -52,6 +80,7 @@ public class Room {
         this.roomId = roomId;
         this.name = name;
         this.area = area;
+        this.snapshot = new RoomSnapshot(this, name, area, PersistentIdList.empty());
     }
 
     /**
@@ -77,8 +106,13 @@ public class Room {
      *
      * @param name 新的房间名称
      */
-    public void setName(String name) {
+    public synchronized void setName(String name) {
         this.name = name;
+        publish(snapshot.deviceList());
+        Household current = household;
+        if (current != null) {
+            current.roomUpdated(this);
+        }
     }
 
     /**
@@ -95,18 +129,65 @@ public class Room {
      *
      * @param area 新的房间面积（单位：平方米/㎡）
      */
-    public void setArea(double area) {
+    public synchronized void setArea(double area) {
         this.area = area;
+        publish(snapshot.deviceList());
+        Household current = household;
+        if (current != null) {
+            current.roomUpdated(this);
+        }
+    }
+
+    /**
+     * 获取房间所属的家庭
+     *
+     * @return 所属家庭（{@link Household}），未加入家庭时为null
+     */
+    public Household getHousehold() {
+        return household;
+    }
+
+    /**
+     * 设置房间所属的家庭（仅由{@link Household}在增删房间时调用）
+     *
+     * @param household 所属家庭，移出家庭时传入null
+     */
+    void setHousehold(Household household) {
+        this.household = household;
+        powerGauge.attachTo(household == null ? null : household.getPowerGauge());
+    }
+
+    /**
+     * 获取房间当前的快照（一次volatile读，无需加锁）
+     *
+     * @return 房间快照（{@link RoomSnapshot}）
+     */
+    public RoomSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * 发布新的房间快照，并通知所属家庭更新家庭快照（调用方需持有当前对象的锁）
+     *
+     * @param devices 新快照的设备列表
+     */
+    private void publish(PersistentIdList<Device> devices) {
+        snapshot = new RoomSnapshot(this, name, area, devices);
+        Household current = household;
+        if (current != null) {
+            current.roomChanged(this);
+        }
     }
 
     /**
      * 获取房间内所有设备的集合
      * <p>
-     * 若房间内无设备，会打印“房间里没有设备，请添加”的提示信息并返回null；否则返回设备列表。
+     * 若房间内无设备，会打印“房间里没有设备，请添加”的提示信息并返回null；否则返回当前快照中的不可变设备列表（按设备编号升序）。
      *
      * @return 设备列表（{@link List}<{@link Device}>），无设备时返回null
      */
     public List<Device> getDevices() {
+        List<Device> devices = snapshot.getDevices();
         if (devices.isEmpty()) {
             System.out.println("房间里没有设备，请添加");
             return null;
@@ -114,13 +195,51 @@ public class Room {
         return devices;
     }
 
+    /**
+     * 获取房间内设备的只读视图，供系统内部遍历使用
+     * <p>
+     * 与{@link #getDevices()}不同，房间内无设备时返回空列表，且不打印提示信息；返回的是当前快照中的不可变列表，
+     * 遍历期间其他线程增删设备不会影响本次遍历。
+     *
+     * @return 只读设备列表（{@link List}<{@link Device}>）
+     */
+    List<Device> listDevices() {
+        return snapshot.getDevices();
+    }
+
     /**
      * 向房间内添加一个设备（建立设备与房间的物理归属关系）
+     * <p>
+     * 若房间已加入家庭，设备会同时登记到全局设备倒排索引（{@link DeviceIndex}）。同一台设备重复添加时不做任何操作。
      *
      * @param device 待添加的设备（{@link Device}或其子类实例，如空调、灯泡等）
+     * @throws IllegalArgumentException 房间内已有编号相同的其他设备，或房间已加入家庭且设备编号已被设备群中的其他设备使用（此时设备不会加入房间）
      */
-    public void addDevice(Device device) {
-        this.devices.add(device);
+    public synchronized void addDevice(Device device) {
+        PersistentIdList<Device> devices = snapshot.deviceList();
+        Device existing = devices.find(device.getDeviceId());
+        if (existing == device) {
+            return;
+        }
+        if (existing != null) {
+            throw new IllegalArgumentException("房间内已有设备号为" + device.getDeviceId() + "的设备" + existing.getName());
+        }
+        Room previous = device.getRoom();
+        Household current = household;
+        device.setRoom(this);
+        if (current != null) {
+            try {
+                current.deviceAdded(device);
+            } catch (IllegalArgumentException e) {
+                device.setRoom(previous);
+                throw e;
+            }
+        }
+        device.countIn(this);
+        publish(devices.with(device.getDeviceId(), device));
+        if (current != null) {
+            current.recordDeviceAdded(device);
+        }
     }
 
     /**
@@ -132,17 +251,172 @@ public class Room {
      *
      * @param deviceId 待移除设备的唯一编号
      */
-    public void removeDevice(int deviceId) {
-        int originalSize = this.devices.size();
-        devices.removeIf(device -> device.getDeviceId() == deviceId);
-
-        if (originalSize > devices.size()) {
-            System.out.println("成功移除设备号为" + deviceId + "的设备，共移除" + (originalSize - devices.size()) + "台");
+    public synchronized void removeDevice(int deviceId) {
+        int originalSize = getDeviceCount();
+        if (detachDevice(deviceId)) {
+            System.out.println("成功移除设备号为" + deviceId + "的设备，共移除" + (originalSize - getDeviceCount()) + "台");
         } else {
             System.out.println("未找到设备号为" + deviceId + "的设备，操作执行失败");
         }
     }
 
+    /**
+     * 根据设备编号从房间内移除指定设备，不打印提示信息（副本应用复制来的事件时使用）
+     * <p>
+     * 设备移出事件在新快照发布之后才记录，见{@link Household#recordDeviceAdded(Device)}。
+     *
+     * @param deviceId 待移除设备的唯一编号
+     * @return {@code true}表示移除了设备
+     */
+    synchronized boolean detachDevice(int deviceId) {
+        PersistentIdList<Device> devices = snapshot.deviceList();
+        Device device = devices.find(deviceId);
+        if (device == null) {
+            return false;
+        }
+        Household current = household;
+        device.countOut();
+        device.setRoom(null);
+        if (current != null) {
+            current.deviceRemoved(device);
+        }
+        publish(devices.without(deviceId));
+        if (current != null) {
+            current.recordDeviceRemoved(device);
+        }
+        return true;
+    }
+
+    /**
+     * 获取房间内的设备数量
+     *
+     * @return 设备数量
+     */
+    public int getDeviceCount() {
+        return snapshot.getDevices().size();
+    }
+
+    /**
+     * 获取房间内处于开机状态的设备数量（增量维护，不遍历设备）
+     *
+     * @return 开机设备数量
+     */
+    public int getPoweredOnCount() {
+        return poweredOnCount.get();
+    }
+
+    /**
+     * 获取房间内处于在线状态的设备数量（增量维护，不遍历设备）
+     *
+     * @return 在线设备数量
+     */
+    public int getOnlineCount() {
+        return onlineCount.get();
+    }
+
+    /**
+     * 获取房间当前的用电功率，即所有开机设备的额定功率之和（增量维护，不遍历设备）
+     *
+     * @return 当前用电功率（单位：瓦特/W）
+     */
+    public double getPowerDraw() {
+        return powerGauge.getWatts();
+    }
+
+    /**
+     * 获取房间的实时用电功率表
+     *
+     * @return 功率表（{@link PowerGauge}）
+     */
+    public PowerGauge getPowerGauge() {
+        return powerGauge;
+    }
+
+    /**
+     * 设备开关机状态变化时的回调（由{@link Device#powerOn()}、{@link Device#powerOff()}调用），
+     * 更新开机数量，并将功率变化逐级计入房间、家庭和设备群的功率表
+     *
+     * @param device  状态变化的设备
+     * @param powerOn {@code true}表示变为开机，{@code false}表示变为关机
+     */
+    void powerChanged(Device device, boolean powerOn) {
+        double watts = device.getRatedPower();
+        if (powerOn) {
+            poweredOnCount.incrementAndGet();
+            powerGauge.add(watts);
+        } else {
+            poweredOnCount.decrementAndGet();
+            powerGauge.add(-watts);
+        }
+    }
+
+    /**
+     * 设备在线状态变化时的回调（由{@link Device#setOnline(boolean)}调用），更新在线数量
+     *
+     * @param online {@code true}表示变为在线，{@code false}表示变为离线
+     */
+    void onlineChanged(boolean online) {
+        if (online) {
+            onlineCount.incrementAndGet();
+        } else {
+            onlineCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * 对房间内满足条件的设备批量执行同一条命令（群组命令）
+     * <p>
+     * 先按设备类型筛选，再按条件过滤，对每台选中的设备执行命令；单台设备执行抛出异常时记为失败，
+     * 不影响其余设备的执行。当前线程的操作者（{@link PermissionTable#getActingUser()}）无权操作的设备同样记为失败，不执行命令；
+     * 当前线程没有绑定操作者时所有选中的设备都记为失败（系统内部调用需通过{@link PermissionTable#runAsSystem}执行）。
+     * 整个房间只产生一个汇总结果，不逐台打印提示信息。
+     *
+     * @param type    目标设备类型（如{@code LightBulb.class}，传入{@code Device.class}表示所有设备）
+     * @param filter  设备过滤条件，传入{@code null}表示不过滤
+     * @param command 对每台选中设备执行的命令（如{@code Device::powerOff}）
+     * @param <T>     目标设备类型
+     * @return 房间内本次命令的执行结果汇总（{@link GroupCommandResult}）
+     */
+    public <T extends Device> GroupCommandResult groupCommand(Class<T> type, Predicate<? super T> filter,
+                                                             Consumer<? super T> command) {
+        return groupCommand(PermissionTable.getActingUser(), type, filter, command);
+    }
+
+    /**
+     * 以指定操作者的身份对房间内满足条件的设备批量执行同一条命令（由{@link Household}的全屋群组命令在线程池中调用）
+     *
+     * @param actor   操作者，为null表示没有操作者（所有选中的设备都记为失败）
+     * @param type    目标设备类型
+     * @param filter  设备过滤条件，传入{@code null}表示不过滤
+     * @param command 对每台选中设备执行的命令
+     * @param <T>     目标设备类型
+     * @return 房间内本次命令的执行结果汇总
+     */
+    <T extends Device> GroupCommandResult groupCommand(User actor, Class<T> type, Predicate<? super T> filter,
+                                                       Consumer<? super T> command) {
+        GroupCommandResult result = new GroupCommandResult();
+        for (Device device : listDevices()) {
+            if (!type.isInstance(device)) {
+                continue;
+            }
+            T target = type.cast(device);
+            if (filter != null && !filter.test(target)) {
+                continue;
+            }
+            if (!PermissionTable.isPermitted(actor, device)) {
+                result.recordFailure(device.getDeviceId());
+                continue;
+            }
+            try {
+                command.accept(target);
+                result.recordSuccess();
+            } catch (RuntimeException e) {
+                result.recordFailure(device.getDeviceId());
+            }
+        }
+        return result;
+    }
+
     /**
      * 重写equals方法，判断两个房间是否为同一房间（基于房间唯一编号匹配）
      *
@@ -159,7 +433,7 @@ public class Room {
     /**
      * 重写toString方法，返回房间的完整信息字符串
      *
-     * @return 包含房间编号、名称、面积及设备集合的字符串（设备信息依赖{@link Device#toString()}）
+     * @return 包含房间编号、名称、面积及设备数量的字符串（设备明细请通过{@link Household#listDevices(int, int)}分页获取）
      */
     @Override
     public String toString() {
@@ -167,7 +441,7 @@ public class Room {
                 "roomId=" + roomId +
                 ", name='" + name + '\'' +
                 ", area=" + area +
-                ", devices=" + devices +
+                ", deviceCount=" + snapshot.getDevices().size() +
                 '}';
     }
 }
\ No newline at end of file
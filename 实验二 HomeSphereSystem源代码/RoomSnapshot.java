@@ -0,0 +1,116 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.List;
+
+/**
+ * 房间快照类，是某一时刻房间属性及其设备集合的不可变副本。
+ * <p>
+ * 房间每次增删设备或修改名称、面积时发布一个新快照（{@link Room#snapshot()}），读取方拿到快照后可以任意遍历，
+ * 不会与并发的增删操作冲突，也不会看到修改到一半的状态。设备列表是{@link PersistentIdList}，
+ * 增删一台设备只复制O(log n)个节点，其余部分与上一个快照共享；只修改名称或面积时新快照直接复用原设备列表。
+ * 快照只固定集合结构，设备对象本身仍是实时对象，其开关机等状态以读取时为准。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see HouseholdSnapshot
+ */
+public final class RoomSnapshot {
+    /**
+     * 对应的房间
+     */
+    private final Room room;
+
+    /**
+     * 房间名称
+     */
+    private final String name;
+
+    /**
+     * 房间面积
+     */
+    private final double area;
+
+    /**
+     * 房间内的设备（持久化列表，按设备编号升序）
+     */
+    private final PersistentIdList<Device> devices;
+
+    /**
+     * 有参构造方法，由{@link Room}在发布快照时调用
+     *
+     * @param room    对应的房间
+     * @param name    房间名称
+     * @param area    房间面积
+     * @param devices 房间内的设备
+     */
+    RoomSnapshot(Room room, String name, double area, PersistentIdList<Device> devices) {
+        this.room = room;
+        this.name = name;
+        this.area = area;
+        this.devices = devices;
+    }
+
+    /**
+     * 获取对应的房间
+     *
+     * @return 房间（{@link Room}对象）
+     */
+    public Room getRoom() {
+        return room;
+    }
+
+    /**
+     * 获取房间编号
+     *
+     * @return 房间编号
+     */
+    public int getRoomId() {
+        return room.getRoomId();
+    }
+
+    /**
+     * 获取快照时的房间名称
+     *
+     * @return 房间名称
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取快照时的房间面积
+     *
+     * @return 房间面积（单位：平方米/㎡）
+     */
+    public double getArea() {
+        return area;
+    }
+
+    /**
+     * 获取快照时房间内的设备
+     *
+     * @return 不可变设备列表（按设备编号升序）
+     */
+    public List<Device> getDevices() {
+        return devices;
+    }
+
+    /**
+     * 获取快照时房间内设备的持久化列表，供{@link Room}在此基础上构造下一个快照
+     *
+     * @return 持久化设备列表
+     */
+    PersistentIdList<Device> deviceList() {
+        return devices;
+    }
+
+    @Override
+    public String toString() {
+        return "RoomSnapshot{" +
+                "roomId=" + getRoomId() +
+                ", name='" + name + '\'' +
+                ", area=" + area +
+                ", deviceCount=" + devices.size() +
+                '}';
+    }
+}
@@ -11,6 +11,15 @@ import java.util.Date;
  * @version 1.0
  */
 public class RunningLog {
+    /**
+     * 开机日志的事件描述
+     */
+    public static final String POWER_ON = "开机";
+
+    /**
+     * 关机日志的事件描述
+     */
+    public static final String POWER_OFF = "关机";
     /**
      * 日志记录的具体时间（精确到毫秒，反映事件发生的时间点）
      */
@@ -142,6 +151,15 @@ public class RunningLog {
 
     }
 
+    /**
+     * 获取原始的事件类型编码（供{@link RunningLogStore}写入日志段文件）
+     *
+     * @return 事件类型编码
+     */
+    int getTypeCode() {
+        return type;
+    }
+
     /**
      * 获取日志备注信息
      * @return 备注字符串（补充事件细节）
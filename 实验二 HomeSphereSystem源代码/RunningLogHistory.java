@@ -0,0 +1,290 @@
+package cn.edu.nwpu.homesphere;
+
+import java.nio.MappedByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * 设备运行日志历史类，在内存中只保留最近的一小段日志，更早的日志溢出到{@link RunningLogStore}的段文件中。
+ * <p>
+ * 日志按写入顺序编号：编号小于{@link #spilled}的日志位于段文件中，其余位于内存中的环形缓冲区。
+ * 内存中的日志达到存储的{@link RunningLogStore#getTailCapacity()}条时，较早的一半被追加到段文件，
+ * 因此无论设备积累了多少年的日志，其占用的堆内存都与新设备相同（另外每段只多占两个long的时间范围）。
+ * 未配置默认存储时，所有日志都保存在内存中。
+ * <p>
+ * 最近读取的一个段的映射会被保留，连续读取同一段时不必重新打开文件；各段的时间范围保存在内存中，
+ * 范围查询只映射与查询范围相交的段。
+ * <p>
+ * 该类的方法均在当前对象上加锁，可以被驱动回调线程等并发写入。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see Device#getRunningLogs()
+ */
+final class RunningLogHistory {
+    /**
+     * 内存中的最近日志（环形缓冲区）
+     */
+    private RunningLog[] tail = new RunningLog[8];
+
+    /**
+     * 环形缓冲区中最早一条日志的位置
+     */
+    private int head;
+
+    /**
+     * 环形缓冲区中的日志条数
+     */
+    private int tailSize;
+
+    /**
+     * 已溢出到段文件的日志条数
+     */
+    private long spilled;
+
+    /**
+     * 首次溢出时确定的日志存储，之后不再改变
+     */
+    private RunningLogStore store;
+
+    /**
+     * 在存储中的段文件前缀编号
+     */
+    private long handle;
+
+    /**
+     * 各段中有时间的日志的最早时间，按段序号索引
+     */
+    private long[] segmentMin = new long[0];
+
+    /**
+     * 各段中有时间的日志的最晚时间，按段序号索引
+     */
+    private long[] segmentMax = new long[0];
+
+    /**
+     * 最近映射的段文件，没有时为null
+     */
+    private MappedByteBuffer mapped;
+
+    /**
+     * 最近映射的段序号
+     */
+    private int mappedSegment = -1;
+
+    /**
+     * 追加一条日志，内存中的日志达到上限时将较早的一半溢出到段文件
+     *
+     * @param log 运行日志
+     */
+    synchronized void add(RunningLog log) {
+        RunningLogStore target = store != null ? store : RunningLogStore.getDefault();
+        if (target != null && tailSize >= target.getTailCapacity()) {
+            spill(target);
+        }
+        if (tailSize == tail.length) {
+            RunningLog[] grown = new RunningLog[tail.length * 2];
+            for (int i = 0; i < tailSize; i++) {
+                grown[i] = tail[(head + i) % tail.length];
+            }
+            tail = grown;
+            head = 0;
+        }
+        tail[(head + tailSize) % tail.length] = log;
+        tailSize++;
+    }
+
+    /**
+     * 将内存中较早的一半日志溢出到段文件
+     */
+    private void spill(RunningLogStore target) {
+        if (store == null) {
+            store = target;
+            handle = target.register(this);
+        }
+        int count = tailSize / 2;
+        int perSegment = store.getRecordsPerSegment();
+        int lastSegment = (int) ((spilled + count - 1) / perSegment);
+        if (lastSegment >= segmentMin.length) {
+            int from = segmentMin.length;
+            int length = Math.max(lastSegment + 1, from * 2);
+            segmentMin = Arrays.copyOf(segmentMin, length);
+            segmentMax = Arrays.copyOf(segmentMax, length);
+            Arrays.fill(segmentMin, from, length, Long.MAX_VALUE);
+            Arrays.fill(segmentMax, from, length, Long.MIN_VALUE);
+        }
+        RunningLog[] batch = new RunningLog[count];
+        for (int i = 0; i < count; i++) {
+            RunningLog log = tail[(head + i) % tail.length];
+            batch[i] = log;
+            tail[(head + i) % tail.length] = null;
+            if (log.getDateTime() != null) {
+                int segment = (int) ((spilled + i) / perSegment);
+                segmentMin[segment] = Math.min(segmentMin[segment], log.getDateTime().getTime());
+                segmentMax[segment] = Math.max(segmentMax[segment], log.getDateTime().getTime());
+            }
+        }
+        if (mappedSegment >= spilled / perSegment) {
+            // 被追加的段需要重新映射
+            mapped = null;
+            mappedSegment = -1;
+        }
+        store.append(handle, spilled, batch, 0, count);
+        head = (head + count) % tail.length;
+        tailSize -= count;
+        spilled += count;
+    }
+
+    /**
+     * 获取日志总条数（包括已溢出的日志）
+     *
+     * @return 日志条数
+     */
+    synchronized long size() {
+        return spilled + tailSize;
+    }
+
+    /**
+     * 获取内存中保留的日志条数
+     *
+     * @return 日志条数
+     */
+    synchronized int residentSize() {
+        return tailSize;
+    }
+
+    /**
+     * 按编号读取一条日志，已溢出的日志从段文件中读取
+     *
+     * @param index 日志编号（从0开始）
+     * @return 运行日志
+     */
+    synchronized RunningLog get(long index) {
+        if (index < 0 || index >= spilled + tailSize) {
+            throw new IndexOutOfBoundsException("日志编号越界：" + index);
+        }
+        if (index >= spilled) {
+            return tail[(int) ((head + index - spilled) % tail.length)];
+        }
+        int perSegment = store.getRecordsPerSegment();
+        return store.read(segment((int) (index / perSegment)), (int) (index % perSegment));
+    }
+
+    /**
+     * 获取段文件的映射，与最近映射的段相同时直接复用
+     *
+     * @param segment 段序号
+     * @return 段文件的映射
+     */
+    private MappedByteBuffer segment(int segment) {
+        if (segment != mappedSegment) {
+            mapped = store.map(handle, segment);
+            mappedSegment = segment;
+        }
+        return mapped;
+    }
+
+    /**
+     * 读取一页日志：编号所在的整个段，或内存中的全部日志
+     *
+     * @param index 页内任意一条日志的编号
+     * @param page  用于存放结果的列表（会被清空）
+     * @return 页内第一条日志的编号
+     */
+    synchronized long page(long index, List<RunningLog> page) {
+        page.clear();
+        if (index >= spilled) {
+            for (int i = 0; i < tailSize; i++) {
+                page.add(tail[(head + i) % tail.length]);
+            }
+            return spilled;
+        }
+        int perSegment = store.getRecordsPerSegment();
+        int segment = (int) (index / perSegment);
+        page.addAll(store.readSegment(segment(segment)));
+        return (long) segment * perSegment;
+    }
+
+    /**
+     * 查询时间在[from, to)范围内的日志，按内存中记录的时间范围跳过不相交的段
+     *
+     * @param from 起始时间（包含）
+     * @param to   结束时间（不包含）
+     * @return 符合条件的日志（按写入顺序）
+     */
+    synchronized List<RunningLog> range(Date from, Date to) {
+        long start = from.getTime();
+        long end = to.getTime();
+        List<RunningLog> result = new ArrayList<RunningLog>();
+        if (spilled > 0) {
+            int perSegment = store.getRecordsPerSegment();
+            int segments = (int) ((spilled + perSegment - 1) / perSegment);
+            for (int s = 0; s < segments; s++) {
+                if (segmentMin[s] < end && segmentMax[s] >= start) {
+                    store.readRange(segment(s), start, end, result);
+                }
+            }
+        }
+        for (int i = 0; i < tailSize; i++) {
+            RunningLog log = tail[(head + i) % tail.length];
+            if (log.getDateTime() != null && log.getDateTime().getTime() >= start && log.getDateTime().getTime() < end) {
+                result.add(log);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取全部日志的只读视图：按需从段文件中读取，顺序遍历时每次读入一整段
+     *
+     * @return 只读日志列表
+     */
+    List<RunningLog> view() {
+        return new View();
+    }
+
+    /**
+     * 全部日志的只读视图，仅缓存最近读取的一页
+     */
+    private final class View extends AbstractList<RunningLog> {
+        @Override
+        public RunningLog get(int index) {
+            return RunningLogHistory.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, RunningLogHistory.this.size());
+        }
+
+        @Override
+        public Iterator<RunningLog> iterator() {
+            return new Iterator<RunningLog>() {
+                private final List<RunningLog> page = new ArrayList<RunningLog>();
+                private long pageStart;
+                private long next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < RunningLogHistory.this.size();
+                }
+
+                @Override
+                public RunningLog next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    if (next < pageStart || next >= pageStart + page.size()) {
+                        pageStart = page(next, page);
+                    }
+                    return page.get((int) (next++ - pageStart));
+                }
+            };
+        }
+    }
+}
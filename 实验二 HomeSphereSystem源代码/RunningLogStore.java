@@ -0,0 +1,360 @@
+package cn.edu.nwpu.homesphere;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 运行日志段存储类，将设备较早的运行日志溢出到磁盘上的分段文件中，只在需要时通过内存映射读回。
+ * <p>
+ * 每台设备的日志在内存中只保留最近的{@link #getTailCapacity()}条（见{@link RunningLogHistory}），
+ * 更早的日志按写入顺序追加到该设备的段文件中，每个段文件最多保存{@link #getRecordsPerSegment()}条日志。
+ * 段文件格式（大端序）：
+ * <pre>
+ * 文件头：int 魔数 | int 日志条数 | long 最早时间 | long 最晚时间 | int[recordsPerSegment] 各条日志的偏移量
+ * 日志：long 时间（无时间为Long.MIN_VALUE） | int 类型编码 | 字符串 事件 | 字符串 备注
+ * 字符串：int 字节数（null为-1） | UTF-8字节
+ * </pre>
+ * 由于除最后一个段以外的段都是满的，第i条溢出日志位于第i / recordsPerSegment个段，可以直接定位。
+ * 段文件的映射和各段的时间范围由{@link RunningLogHistory}缓存在内存中，范围查询时不必打开不相交的段。
+ * <p>
+ * 该存储只是运行期的溢出区，不是持久化存储：设备对象被回收时其段文件随之删除，{@link #close()}会删除全部段文件。
+ * 默认存储由系统属性{@code homesphere.runningLogs.dir}指定，未指定时所有日志都保存在内存中（与原先行为一致）。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see RunningLogHistory
+ */
+public final class RunningLogStore implements AutoCloseable {
+    /**
+     * 段文件魔数（"HSLG"）
+     */
+    private static final int MAGIC = 0x48534C47;
+
+    /**
+     * 段文件头中偏移量表之前的字节数
+     */
+    private static final int HEADER_FIXED = 4 + 4 + 8 + 8;
+
+    /**
+     * 设备对象被回收时删除其段文件
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    /**
+     * 当前默认的日志存储，为null时日志全部保存在内存中
+     */
+    private static volatile RunningLogStore defaultStore;
+
+    static {
+        String dir = System.getProperty("homesphere.runningLogs.dir");
+        if (dir != null && !dir.isEmpty()) {
+            try {
+                defaultStore = new RunningLogStore(Paths.get(dir), 64, 1024);
+            } catch (IOException e) {
+                System.out.println("运行日志目录不可用，日志将全部保存在内存中：" + e);
+            }
+        }
+    }
+
+    /**
+     * 段文件所在目录
+     */
+    private final Path directory;
+
+    /**
+     * 每台设备在内存中保留的最近日志条数
+     */
+    private final int tailCapacity;
+
+    /**
+     * 每个段文件最多保存的日志条数
+     */
+    private final int recordsPerSegment;
+
+    /**
+     * 为每台设备的日志分配唯一的段文件前缀
+     */
+    private final AtomicLong nextHandle = new AtomicLong();
+
+    /**
+     * 有参构造方法，在指定目录创建日志存储（目录不存在时自动创建）
+     *
+     * @param directory         段文件所在目录
+     * @param tailCapacity      每台设备在内存中保留的最近日志条数（至少为2）
+     * @param recordsPerSegment 每个段文件最多保存的日志条数（至少为1）
+     * @throws IOException 目录创建失败
+     */
+    public RunningLogStore(Path directory, int tailCapacity, int recordsPerSegment) throws IOException {
+        if (tailCapacity < 2 || recordsPerSegment < 1) {
+            throw new IllegalArgumentException("内存日志条数至少为2，每段日志条数至少为1");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.tailCapacity = tailCapacity;
+        this.recordsPerSegment = recordsPerSegment;
+    }
+
+    /**
+     * 获取默认的日志存储
+     *
+     * @return 默认存储，未配置时返回null
+     */
+    public static RunningLogStore getDefault() {
+        return defaultStore;
+    }
+
+    /**
+     * 设置默认的日志存储（只影响之后首次溢出的设备，已溢出的设备继续使用原来的存储）
+     *
+     * @param store 日志存储，传入null表示之后的日志全部保存在内存中
+     */
+    public static void setDefault(RunningLogStore store) {
+        defaultStore = store;
+    }
+
+    /**
+     * 获取每台设备在内存中保留的最近日志条数
+     *
+     * @return 日志条数
+     */
+    public int getTailCapacity() {
+        return tailCapacity;
+    }
+
+    /**
+     * 获取每个段文件最多保存的日志条数
+     *
+     * @return 日志条数
+     */
+    public int getRecordsPerSegment() {
+        return recordsPerSegment;
+    }
+
+    /**
+     * 为一台设备的日志分配段文件前缀，并在owner被回收时删除其全部段文件
+     *
+     * @param owner 持有日志的对象
+     * @return 段文件前缀编号
+     */
+    long register(Object owner) {
+        long handle = nextHandle.incrementAndGet();
+        Path dir = directory;
+        CLEANER.register(owner, () -> deleteSegments(dir, handle));
+        return handle;
+    }
+
+    /**
+     * 将一批日志追加到指定设备的段文件中（超出当前段容量时自动写入下一个段）
+     *
+     * @param handle  段文件前缀编号
+     * @param spilled 此前已溢出的日志条数
+     * @param logs    待追加的日志（按写入顺序）
+     * @param from    起始下标
+     * @param count   条数
+     */
+    void append(long handle, long spilled, RunningLog[] logs, int from, int count) {
+        try {
+            while (count > 0) {
+                int segment = (int) (spilled / recordsPerSegment);
+                int existing = (int) (spilled % recordsPerSegment);
+                int n = Math.min(count, recordsPerSegment - existing);
+                appendToSegment(segmentPath(directory, handle, segment), existing, logs, from, n);
+                spilled += n;
+                from += n;
+                count -= n;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("运行日志写入失败", e);
+        }
+    }
+
+    /**
+     * 向单个段文件追加日志，并更新文件头中的条数、时间范围和偏移量
+     */
+    private void appendToSegment(Path path, int existing, RunningLog[] logs, int from, int n) throws IOException {
+        int dataStart = HEADER_FIXED + 4 * recordsPerSegment;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long minTime = Long.MAX_VALUE;
+            long maxTime = Long.MIN_VALUE;
+            if (existing > 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_FIXED);
+                channel.read(header, 0);
+                minTime = header.getLong(8);
+                maxTime = header.getLong(16);
+            }
+            long position = Math.max(channel.size(), dataStart);
+            ByteBuffer offsets = ByteBuffer.allocate(4 * n);
+            ByteBuffer data = ByteBuffer.allocate(64 * n);
+            for (int i = 0; i < n; i++) {
+                RunningLog log = logs[from + i];
+                long time = log.getDateTime() == null ? Long.MIN_VALUE : log.getDateTime().getTime();
+                if (log.getDateTime() != null) {
+                    minTime = Math.min(minTime, time);
+                    maxTime = Math.max(maxTime, time);
+                }
+                byte[] event = log.getEvent() == null ? null : log.getEvent().getBytes(StandardCharsets.UTF_8);
+                byte[] note = log.getNote() == null ? null : log.getNote().getBytes(StandardCharsets.UTF_8);
+                int size = 8 + 4 + 4 + (event == null ? 0 : event.length) + 4 + (note == null ? 0 : note.length);
+                if (data.remaining() < size) {
+                    data = ByteBuffer.allocate(Math.max(data.capacity() * 2, data.position() + size)).put(data.flip());
+                }
+                offsets.putInt((int) (position + data.position()));
+                data.putLong(time).putInt(log.getTypeCode());
+                putString(data, event);
+                putString(data, note);
+            }
+            channel.write(data.flip(), position);
+            channel.write(offsets.flip(), HEADER_FIXED + 4L * existing);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_FIXED);
+            header.putInt(MAGIC).putInt(existing + n).putLong(minTime).putLong(maxTime);
+            channel.write(header.flip(), 0);
+        }
+    }
+
+    /**
+     * 读取段中的一条日志
+     *
+     * @param buffer 段文件的映射（见{@link #map(long, int)}）
+     * @param index  段内序号
+     * @return 运行日志
+     */
+    RunningLog read(ByteBuffer buffer, int index) {
+        return decode(buffer, buffer.getInt(HEADER_FIXED + 4 * index));
+    }
+
+    /**
+     * 读取段中的全部日志
+     *
+     * @param buffer 段文件的映射
+     * @return 段内日志（按写入顺序）
+     */
+    List<RunningLog> readSegment(ByteBuffer buffer) {
+        int count = buffer.getInt(4);
+        List<RunningLog> logs = new ArrayList<RunningLog>(count);
+        for (int i = 0; i < count; i++) {
+            logs.add(decode(buffer, buffer.getInt(HEADER_FIXED + 4 * i)));
+        }
+        return logs;
+    }
+
+    /**
+     * 读取段中时间在[from, to)范围内的日志
+     *
+     * @param buffer 段文件的映射
+     * @param from   起始时间（包含）
+     * @param to     结束时间（不包含）
+     * @param result 结果列表
+     */
+    void readRange(ByteBuffer buffer, long from, long to, List<RunningLog> result) {
+        int count = buffer.getInt(4);
+        for (int i = 0; i < count; i++) {
+            int offset = buffer.getInt(HEADER_FIXED + 4 * i);
+            long time = buffer.getLong(offset);
+            if (time >= from && time < to) {
+                result.add(decode(buffer, offset));
+            }
+        }
+    }
+
+    /**
+     * 以只读方式映射一个段文件（映射只包含当时已写入的日志，段文件再被追加后需要重新映射）
+     *
+     * @param handle  段文件前缀编号
+     * @param segment 段序号
+     * @return 段文件的映射
+     */
+    MappedByteBuffer map(long handle, int segment) {
+        try (FileChannel channel = FileChannel.open(segmentPath(directory, handle, segment), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IllegalStateException("运行日志段文件已损坏：" + segmentPath(directory, handle, segment));
+            }
+            return buffer;
+        } catch (IOException e) {
+            throw new UncheckedIOException("运行日志读取失败", e);
+        }
+    }
+
+    /**
+     * 从指定偏移量解码一条日志
+     */
+    private static RunningLog decode(ByteBuffer buffer, int offset) {
+        ByteBuffer in = buffer.duplicate().position(offset);
+        long time = in.getLong();
+        int type = in.getInt();
+        String event = getString(in);
+        String note = getString(in);
+        return new RunningLog(time == Long.MIN_VALUE ? null : new Date(time), event, type, note);
+    }
+
+    private static void putString(ByteBuffer out, byte[] bytes) {
+        if (bytes == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 获取段文件路径
+     */
+    private static Path segmentPath(Path directory, long handle, int segment) {
+        return directory.resolve("log-" + handle + "-" + segment + ".seg");
+    }
+
+    /**
+     * 删除一台设备的全部段文件
+     */
+    private static void deleteSegments(Path directory, long handle) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "log-" + handle + "-*.seg")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            // 目录已被删除或不可访问，忽略
+        }
+    }
+
+    /**
+     * 删除当前存储的全部段文件；若当前存储是默认存储，则之后的日志改为全部保存在内存中
+     * <p>
+     * 关闭后仍引用该存储的设备无法再读取已溢出的日志。
+     */
+    @Override
+    public void close() {
+        if (defaultStore == this) {
+            defaultStore = null;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "log-*.seg")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("运行日志段文件删除失败", e);
+        }
+    }
+}
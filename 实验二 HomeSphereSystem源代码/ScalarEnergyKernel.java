@@ -0,0 +1,32 @@
+package cn.edu.nwpu.homesphere;
+
+/**
+ * 标量能耗聚合内核，逐个区间计算，在任何JVM上可用，也是向量内核处理尾部区间时使用的算法。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see EnergyKernels#scalar()
+ */
+final class ScalarEnergyKernel implements EnergyKernel {
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public double wattMillis(long[] starts, long[] ends, double[] watts, int from, int to, long windowStart, long windowEnd) {
+        return sum(starts, ends, watts, from, to, windowStart, windowEnd);
+    }
+
+    /**
+     * 逐个区间裁剪并累加（无分支写法，便于JIT展开循环）
+     */
+    static double sum(long[] starts, long[] ends, double[] watts, int from, int to, long windowStart, long windowEnd) {
+        double sum = 0;
+        for (int k = from; k < to; k++) {
+            long duration = Math.max(0, Math.min(ends[k], windowEnd) - Math.max(starts[k], windowStart));
+            sum += duration * watts[k];
+        }
+        return sum;
+    }
+}
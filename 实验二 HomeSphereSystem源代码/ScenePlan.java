@@ -0,0 +1,254 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 场景执行计划类，由{@link AutomationScene}的动作列表编译而成，编译后不可修改。
+ * <p>
+ * 编译时完成以下工作，之后每次触发场景都直接复用：
+ * <ul>
+ *     <li>取出每个动作预先查找好的处理器（{@link ActionHandler}）和参数（{@link ActionPayload}），并校验设备类型；</li>
+ *     <li>合并对同一设备同一属性的重复写入（如对同一台空调两次设置温度），只保留最后一次，并保持其原有位置。</li>
+ * </ul>
+ * 执行时若某一步在设备当前状态下不会产生任何变化（如空调已是目标温度），则直接跳过。
+ * <p>
+ * 计划还记录场景涉及的全部设备（足迹）。设备按编号散列到固定数量的条带锁上，编译时算出足迹对应的条带（升序、去重），
+ * 执行前在循环中依次锁定这些条带，执行完毕后逆序释放。所有场景都按条带编号升序加锁，因此并发触发的场景之间不会死锁；
+ * 持有的锁数量不超过条带数，足迹再大也不会加深调用栈。足迹不相交的场景通常落在不同条带上，可以并行执行
+ * （偶尔共用条带时只是串行执行，不影响结果）。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see AutomationScene#compile()
+ */
+public final class ScenePlan {
+    /**
+     * 计划中保留的动作（按执行顺序）
+     */
+    private final DeviceAction[] actions;
+
+    /**
+     * 与{@link #actions}一一对应的处理器
+     */
+    private final ActionHandler[] handlers;
+
+    /**
+     * 与{@link #actions}一一对应的预解析参数
+     */
+    private final ActionPayload[] payloads;
+
+    /**
+     * 与{@link #actions}一一对应的编译期失败原因，可执行的动作为null
+     */
+    private final String[] errors;
+
+    /**
+     * 编译时被合并掉的重复动作数量
+     */
+    private final int mergedCount;
+
+    /**
+     * 场景涉及的设备（足迹），按设备编号升序排列、不重复，同时也是执行时的加锁顺序
+     */
+    private final Device[] footprint;
+
+    /**
+     * 条带锁数量（2的幂）
+     */
+    private static final int STRIPES = 1024;
+
+    /**
+     * 所有场景共用的条带锁
+     */
+    private static final ReentrantLock[] LOCKS = new ReentrantLock[STRIPES];
+
+    static {
+        for (int i = 0; i < STRIPES; i++) {
+            LOCKS[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * 足迹对应的条带编号，升序、不重复，即执行时的加锁顺序
+     */
+    private final int[] stripes;
+
+    private ScenePlan(DeviceAction[] actions, ActionHandler[] handlers, ActionPayload[] payloads,
+                      String[] errors, int mergedCount) {
+        this.actions = actions;
+        this.handlers = handlers;
+        this.payloads = payloads;
+        this.errors = errors;
+        this.mergedCount = mergedCount;
+        this.footprint = computeFootprint(actions);
+        this.stripes = computeStripes(footprint);
+    }
+
+    /**
+     * 计算足迹对应的条带编号，升序排列并去重
+     *
+     * @param footprint 设备足迹
+     * @return 条带编号
+     */
+    private static int[] computeStripes(Device[] footprint) {
+        int[] stripes = new int[footprint.length];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = (footprint[i].getDeviceId() * 0x9E3779B9 >>> 16) & (STRIPES - 1);
+        }
+        return Arrays.stream(stripes).sorted().distinct().toArray();
+    }
+
+    /**
+     * 计算动作涉及的设备集合，按设备编号升序排列并去重
+     *
+     * @param actions 计划中的动作
+     * @return 设备足迹
+     */
+    private static Device[] computeFootprint(DeviceAction[] actions) {
+        Map<Device, Boolean> seen = new IdentityHashMap<Device, Boolean>();
+        for (DeviceAction action : actions) {
+            seen.put(action.getDevice(), Boolean.TRUE);
+        }
+        Device[] devices = seen.keySet().toArray(new Device[0]);
+        Arrays.sort(devices, Comparator.comparingInt(Device::getDeviceId)
+                .thenComparingInt(System::identityHashCode));
+        return devices;
+    }
+
+    /**
+     * 将动作列表编译为执行计划
+     *
+     * @param source 场景中的动作（按添加顺序）
+     * @return 执行计划
+     */
+    static ScenePlan compile(List<DeviceAction> source) {
+        int n = source.size();
+        ActionHandler[] resolved = new ActionHandler[n];
+        String[] keys = new String[n];
+        Map<String, Integer> lastWrite = new HashMap<String, Integer>();
+        for (int i = 0; i < n; i++) {
+            DeviceAction action = source.get(i);
+            resolved[i] = action.getHandler();
+            if (action.checkPrepared() == null) {
+                keys[i] = action.getDevice().getDeviceId() + ":" + resolved[i].getAttribute();
+                lastWrite.put(keys[i], i);
+            }
+        }
+
+        int kept = 0;
+        DeviceAction[] actions = new DeviceAction[n];
+        ActionHandler[] handlers = new ActionHandler[n];
+        ActionPayload[] payloads = new ActionPayload[n];
+        String[] errors = new String[n];
+        for (int i = 0; i < n; i++) {
+            if (keys[i] != null && lastWrite.get(keys[i]) != i) {
+                continue;
+            }
+            DeviceAction action = source.get(i);
+            actions[kept] = action;
+            handlers[kept] = resolved[i];
+            payloads[kept] = action.getPayload();
+            errors[kept] = action.checkPrepared();
+            kept++;
+        }
+        return new ScenePlan(Arrays.copyOf(actions, kept), Arrays.copyOf(handlers, kept),
+                Arrays.copyOf(payloads, kept), Arrays.copyOf(errors, kept), n - kept);
+    }
+
+    /**
+     * 查找足迹中指定用户无权操作的第一台设备，场景触发前据此整体拒绝，不会只执行其中一部分动作
+     *
+     * @param user 操作者，为null表示没有操作者（足迹非空时总是拒绝）
+     * @return 无权操作的设备，全部有权时返回null
+     */
+    Device findDenied(User user) {
+        for (Device device : footprint) {
+            if (!PermissionTable.isPermitted(user, device)) {
+                return device;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按条带编号升序锁定足迹对应的全部条带后，按顺序执行计划中的每一步，跳过不会产生变化的步骤
+     *
+     * @return 实际执行（未被跳过）的步骤数
+     */
+    int execute() {
+        int locked = 0;
+        try {
+            for (; locked < stripes.length; locked++) {
+                LOCKS[stripes[locked]].lock();
+            }
+            return executeSteps();
+        } finally {
+            while (locked > 0) {
+                LOCKS[stripes[--locked]].unlock();
+            }
+        }
+    }
+
+    /**
+     * 按顺序执行计划中的每一步（调用时已持有足迹对应的全部条带锁）
+     *
+     * @return 实际执行的步骤数
+     */
+    private int executeSteps() {
+        int executed = 0;
+        for (int i = 0; i < actions.length; i++) {
+            if (errors[i] == null && handlers[i].isNoop(actions[i].getDevice(), payloads[i])) {
+                continue;
+            }
+            actions[i].perform(handlers[i], payloads[i], errors[i]);
+            executed++;
+        }
+        return executed;
+    }
+
+    /**
+     * 获取计划中保留的步骤数
+     *
+     * @return 步骤数
+     */
+    public int size() {
+        return actions.length;
+    }
+
+    /**
+     * 获取场景涉及的设备编号（足迹），按升序排列
+     *
+     * @return 设备编号数组
+     */
+    public int[] getFootprint() {
+        int[] ids = new int[footprint.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = footprint[i].getDeviceId();
+        }
+        return ids;
+    }
+
+    /**
+     * 获取场景涉及的设备（足迹），供{@link SceneScheduler}划分冲突分组
+     *
+     * @return 设备数组（按设备编号升序，调用者不得修改）
+     */
+    Device[] footprintDevices() {
+        return footprint;
+    }
+
+    /**
+     * 获取编译时被合并掉的重复动作数量
+     *
+     * @return 被合并的动作数量
+     */
+    public int getMergedCount() {
+        return mergedCount;
+    }
+}
@@ -0,0 +1,140 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 场景调度器，用于同时触发多个场景（如定时、手动和规则同时触发）时，在保证结果确定的前提下尽量并行执行。
+ * <p>
+ * 调度时先取得每个场景的执行计划及其设备足迹（{@link ScenePlan#getFootprint()}），
+ * 将涉及同一台设备的场景（直接或间接）划入同一冲突分组：
+ * <ul>
+ *     <li>不同分组之间没有共同设备，在线程池中并行执行；</li>
+ *     <li>同一分组内的场景按场景编号升序（编号相同时按提交顺序）依次执行，结果确定、可复现。</li>
+ * </ul>
+ * 每个场景执行时还会按固定顺序锁定其足迹对应的条带锁（见{@link ScenePlan}），与其他途径并发触发的场景之间也不会死锁。
+ * 场景在线程池中以调用线程的操作者身份（{@link PermissionTable#getActingUser()}）触发，定时等系统触发的批次应在
+ * {@link PermissionTable#runAsSystem(PermissionTable.Action)}中调用{@link #runAll(List)}。
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+public class SceneScheduler implements AutoCloseable {
+    /**
+     * 执行冲突分组的线程池
+     */
+    private final ExecutorService executor;
+
+    /**
+     * 有参构造方法，创建指定并行度的场景调度器
+     *
+     * @param parallelism 最多同时执行的冲突分组数（至少为1）
+     */
+    public SceneScheduler(int parallelism) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "homesphere-scene-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 调度执行一批同时触发的场景，等待全部执行完毕后返回；各场景按调用线程的操作者检查权限，无权的场景不执行
+     *
+     * @param scenes 同时触发的场景
+     * @return 本批场景划分出的冲突分组数（即最多可并行的路数）
+     * @throws InterruptedException 等待过程中线程被中断
+     * @throws IllegalStateException 某个场景执行时抛出了异常
+     */
+    public int runAll(List<AutomationScene> scenes) throws InterruptedException {
+        List<List<AutomationScene>> groups = partition(scenes);
+        List<Future<?>> futures = new ArrayList<Future<?>>(groups.size());
+        User actor = PermissionTable.getActingUser();
+        for (List<AutomationScene> group : groups) {
+            futures.add(executor.submit(() -> PermissionTable.runAs(actor, () -> {
+                for (AutomationScene scene : group) {
+                    scene.manualTrig();
+                }
+                return null;
+            })));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("场景执行失败", e.getCause());
+            }
+        }
+        return groups.size();
+    }
+
+    /**
+     * 按设备足迹将场景划分为互不相交的冲突分组（并查集），组内按场景编号排序
+     *
+     * @param scenes 同时触发的场景
+     * @return 冲突分组，分组顺序与各组第一个场景的提交顺序一致
+     */
+    static List<List<AutomationScene>> partition(List<AutomationScene> scenes) {
+        int n = scenes.size();
+        int[] parent = new int[n];
+        Map<Device, Integer> owner = new IdentityHashMap<Device, Integer>();
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            for (Device device : scenes.get(i).compile().footprintDevices()) {
+                Integer first = owner.putIfAbsent(device, i);
+                if (first != null) {
+                    union(parent, first, i);
+                }
+            }
+        }
+        Map<Integer, List<AutomationScene>> groups = new LinkedHashMap<Integer, List<AutomationScene>>();
+        for (int i = 0; i < n; i++) {
+            groups.computeIfAbsent(find(parent, i), k -> new ArrayList<AutomationScene>()).add(scenes.get(i));
+        }
+        List<List<AutomationScene>> result = new ArrayList<List<AutomationScene>>(groups.values());
+        for (List<AutomationScene> group : result) {
+            group.sort(Comparator.comparingInt(AutomationScene::getSceneId));
+        }
+        return result;
+    }
+
+    /**
+     * 并查集查找（带路径压缩）
+     */
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * 并查集合并，以较小的下标作为根，保证分组顺序稳定
+     */
+    private static void union(int[] parent, int a, int b) {
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) {
+            parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+
+    /**
+     * 关闭调度器的线程池
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
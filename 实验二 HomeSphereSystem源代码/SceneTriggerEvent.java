@@ -0,0 +1,39 @@
+package cn.edu.nwpu.homesphere;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 场景触发的JFR（JDK Flight Recorder）事件，记录一次{@link AutomationScene#manualTrig()}的场景信息和耗时。
+ * <p>
+ * 与GC、线程等JVM事件位于同一份飞行记录中，便于定位是哪个场景引起了延迟毛刺。未开启飞行记录时几乎没有开销。
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+@Name("cn.edu.nwpu.homesphere.SceneTrigger")
+@Label("Scene Trigger")
+@Category({"HomeSphere", "Scene"})
+@Description("手动触发自动化场景")
+class SceneTriggerEvent extends Event {
+    /**
+     * 场景编号
+     */
+    @Label("Scene Id")
+    int sceneId;
+
+    /**
+     * 场景名称
+     */
+    @Label("Scene Name")
+    String sceneName;
+
+    /**
+     * 场景包含的动作数量
+     */
+    @Label("Action Count")
+    int actionCount;
+}
@@ -0,0 +1,115 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地模拟协议驱动，在JVM内部模拟设备网关，用于测试和演示。
+ * <p>
+ * 每批请求模拟一次网络往返延迟，并按给定的失败率随机让单条请求失败；随机数由种子决定，
+ * 便于复现测试结果。同时统计已发送的批次数和请求数，用于验证批量打包效果。
+ *
+ * @author 余燚
+ * @version 1.0
+ */
+public class SimulatedProtocolDriver extends PipelinedProtocolDriver {
+    /**
+     * 每批请求模拟的往返延迟（毫秒）
+     */
+    private final long latencyMillis;
+
+    /**
+     * 单条请求的失败概率（0-1）
+     */
+    private final double failureRate;
+
+    /**
+     * 生成失败结果的随机数发生器
+     */
+    private final Random random;
+
+    /**
+     * 已发送的批次数
+     */
+    private final AtomicLong batches = new AtomicLong();
+
+    /**
+     * 已发送的请求数
+     */
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * 有参构造方法，创建模拟驱动
+     *
+     * @param protocol      模拟的协议名称（如"WiFi"）
+     * @param poolSize      连接池大小
+     * @param maxBatchSize  单批最多打包的请求数
+     * @param latencyMillis 每批请求的模拟往返延迟（毫秒）
+     * @param failureRate   单条请求的失败概率（0-1）
+     * @param seed          随机数种子
+     */
+    public SimulatedProtocolDriver(String protocol, int poolSize, int maxBatchSize,
+                                   long latencyMillis, double failureRate, long seed) {
+        super(protocol, poolSize, maxBatchSize);
+        this.latencyMillis = latencyMillis;
+        this.failureRate = failureRate;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    protected DriverConnection openConnection() {
+        return new SimulatedConnection();
+    }
+
+    /**
+     * 获取已发送的批次数
+     *
+     * @return 批次数
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    /**
+     * 获取已发送的请求数
+     *
+     * @return 请求数
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * 模拟连接：每批请求休眠一次往返延迟，再逐条按失败率给出结果
+     */
+    private final class SimulatedConnection implements DriverConnection {
+        private volatile boolean open = true;
+
+        @Override
+        public boolean[] transmit(List<DriverRequest> batch) throws Exception {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+            boolean[] results = new boolean[batch.size()];
+            synchronized (random) {
+                for (int i = 0; i < results.length; i++) {
+                    results[i] = random.nextDouble() >= failureRate;
+                }
+            }
+            batches.incrementAndGet();
+            requests.addAndGet(batch.size());
+            return results;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
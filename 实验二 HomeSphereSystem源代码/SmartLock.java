@@ -1,24 +1,17 @@
 package cn.edu.nwpu.homesphere;
 
+import java.util.Map;
+
 /**
- * 智能锁设备类，继承自设备基类{@link Device}，用于模拟智能锁的核心状态管理功能。
+ * 智能锁设备类，继承自设备基类{@link Device}，并实现可上锁接口{@link Lockable}和电池供电接口{@link BatteryPowered}，
+ * 用于模拟智能锁的核心状态管理功能。
  * <p>
  * 该类封装智能锁的核心属性——锁具开关状态和电池电量，支持状态查询与更新，适配智能家居系统的设备统一管理逻辑。
  *
  * @author 余燚
  * @version 1.0
  */
-public class SmartLock extends Device {
-    /**
-     * 智能锁的开关状态：{@code true}表示锁定状态，{@code false}表示解锁状态
-     */
-    private boolean isLocked;
-
-    /**
-     * 智能锁的电池电量百分比：取值范围为0-100，0表示电量耗尽，100表示满电
-     */
-    private int batteryLevel;             //电池电量百分比
-
+public class SmartLock extends Device implements Lockable, BatteryPowered {
     /**
      * 构造方法：创建智能锁设备实例
      * <p>
@@ -29,7 +22,7 @@ public class SmartLock extends Device {
      * @param manufacturer 设备制造商信息（{@link Manufacturer}对象）
      */
     public SmartLock(int deviceId, String name, Manufacturer manufacturer) {
-        super(deviceId, name, manufacturer);
+        super(deviceId, name, manufacturer, new HeapState());
     }
 
     /**
@@ -37,8 +30,9 @@ public class SmartLock extends Device {
      *
      * @return {@code true}表示锁定，{@code false}表示解锁
      */
+    @Override
     public boolean isLocked() {
-        return isLocked;
+        return readBoolean(DeviceStateTable.LOCKED);
     }
 
     /**
@@ -46,8 +40,12 @@ public class SmartLock extends Device {
      *
      * @param locked 目标状态：{@code true}设为锁定，{@code false}设为解锁
      */
+    @Override
     public void setLocked(boolean locked) {
-        isLocked = locked;
+        synchronized (this) {
+            writeBoolean(DeviceStateTable.LOCKED, locked);
+            stateChanged("locked", locked);
+        }
     }
 
     /**
@@ -55,8 +53,9 @@ public class SmartLock extends Device {
      *
      * @return 电池电量百分比（0-100）
      */
+    @Override
     public int getBatteryLevel() {
-        return batteryLevel;
+        return readInt(DeviceStateTable.BATTERY_LEVEL);
     }
 
     /**
@@ -66,7 +65,94 @@ public class SmartLock extends Device {
      *
      * @param batteryLevel 目标电池电量百分比
      */
+    @Override
     public void setBatteryLevel(int batteryLevel) {
-        this.batteryLevel = batteryLevel;
+        synchronized (this) {
+            writeInt(DeviceStateTable.BATTERY_LEVEL, batteryLevel);
+            stateChanged("batteryLevel", batteryLevel);
+        }
+    }
+
+    @Override
+    void describeState(Map<String, String> attributes) {
+        super.describeState(attributes);
+        attributes.put("locked", String.valueOf(isLocked()));
+        attributes.put("batteryLevel", String.valueOf(getBatteryLevel()));
+    }
+
+    @Override
+    boolean applyState(String attribute, String value) {
+        switch (attribute) {
+            case "locked":
+                setLocked(Boolean.parseBoolean(value));
+                return true;
+            case "batteryLevel":
+                setBatteryLevel(Integer.parseInt(value));
+                return true;
+            default:
+                return super.applyState(attribute, value);
+        }
+    }
+
+    @Override
+    HeapState newHeapState() {
+        return new HeapState();
+    }
+
+    /**
+     * 不在状态表中时保存锁定状态和电池电量的堆上对象
+     */
+    static class HeapState extends Device.HeapState {
+        /**
+         * 锁定状态
+         */
+        private boolean isLocked;
+
+        /**
+         * 电池电量
+         */
+        private int batteryLevel;
+
+        @Override
+        int getInt(int column, int slot) {
+            return column == DeviceStateTable.BATTERY_LEVEL ? batteryLevel : super.getInt(column, slot);
+        }
+
+        @Override
+        void setInt(int column, int slot, int value) {
+            if (column == DeviceStateTable.BATTERY_LEVEL) {
+                batteryLevel = value;
+            } else {
+                super.setInt(column, slot, value);
+            }
+        }
+
+        @Override
+        boolean getBoolean(int column, int slot) {
+            return column == DeviceStateTable.LOCKED ? isLocked : super.getBoolean(column, slot);
+        }
+
+        @Override
+        void setBoolean(int column, int slot, boolean value) {
+            if (column == DeviceStateTable.LOCKED) {
+                isLocked = value;
+            } else {
+                super.setBoolean(column, slot, value);
+            }
+        }
+
+        @Override
+        void copyTo(DeviceStateTable table, int slot) {
+            super.copyTo(table, slot);
+            table.setBoolean(DeviceStateTable.LOCKED, slot, isLocked);
+            table.setInt(DeviceStateTable.BATTERY_LEVEL, slot, batteryLevel);
+        }
+
+        @Override
+        void copyFrom(DeviceStateTable table, int slot) {
+            super.copyFrom(table, slot);
+            isLocked = table.getBoolean(DeviceStateTable.LOCKED, slot);
+            batteryLevel = table.getInt(DeviceStateTable.BATTERY_LEVEL, slot);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,204 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * 分时电价类，把一天划分为若干个价格时段（如峰、平、谷），每个时段有各自的单价。
+ * <p>
+ * 时段以当天0点起的分钟数表示，第一个时段必须从0分钟开始，最后一个时段持续到24点。
+ * 构造时预先计算每个时段起点的累计“单价×毫秒”，任意时间区间的电费只需对区间两端各做一次时段查找，
+ * 与区间跨越的天数和时段数无关，因此可以快速计算数月历史的电费。
+ * <p>
+ * 本地时间按时区的标准偏移计算，不考虑夏令时（国内不实行夏令时）。对象不可变，可被多个线程共享。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see TariffCostEngine
+ */
+public final class Tariff {
+    /**
+     * 一天的毫秒数
+     */
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * 一分钟的毫秒数
+     */
+    private static final long MINUTE_MILLIS = 60 * 1000L;
+
+    /**
+     * 电价名称
+     */
+    private final String name;
+
+    /**
+     * 各时段的起点（当天0点起的毫秒数，严格递增，第一个为0）
+     */
+    private final long[] bandStarts;
+
+    /**
+     * 各时段的单价（单位：元/度）
+     */
+    private final double[] prices;
+
+    /**
+     * 各时段起点处的当天累计“单价×毫秒”
+     */
+    private final double[] cumulative;
+
+    /**
+     * 一整天的累计“单价×毫秒”
+     */
+    private final double dayTotal;
+
+    /**
+     * 本地时间相对UTC的偏移（毫秒）
+     */
+    private final long offsetMillis;
+
+    /**
+     * 有参构造方法，创建使用默认时区的分时电价
+     *
+     * @param name             电价名称（如“居民峰谷电价”）
+     * @param bandStartMinutes 各时段的起点（当天0点起的分钟数，严格递增，第一个为0）
+     * @param pricesPerKwh     各时段的单价（单位：元/度）
+     * @throws IllegalArgumentException 时段定义无效
+     */
+    public Tariff(String name, int[] bandStartMinutes, double[] pricesPerKwh) {
+        this(name, bandStartMinutes, pricesPerKwh, TimeZone.getDefault());
+    }
+
+    /**
+     * 有参构造方法，创建指定时区的分时电价
+     *
+     * @param name             电价名称（如“居民峰谷电价”）
+     * @param bandStartMinutes 各时段的起点（当天0点起的分钟数，严格递增，第一个为0）
+     * @param pricesPerKwh     各时段的单价（单位：元/度）
+     * @param timeZone         划分时段所用的时区
+     * @throws IllegalArgumentException 时段定义无效
+     */
+    public Tariff(String name, int[] bandStartMinutes, double[] pricesPerKwh, TimeZone timeZone) {
+        if (bandStartMinutes.length == 0 || bandStartMinutes.length != pricesPerKwh.length) {
+            throw new IllegalArgumentException("电价时段与单价的数量不一致");
+        }
+        if (bandStartMinutes[0] != 0) {
+            throw new IllegalArgumentException("第一个电价时段必须从0点开始");
+        }
+        int bands = bandStartMinutes.length;
+        this.name = name;
+        this.bandStarts = new long[bands];
+        this.prices = pricesPerKwh.clone();
+        this.cumulative = new double[bands];
+        for (int i = 0; i < bands; i++) {
+            if (i > 0 && bandStartMinutes[i] <= bandStartMinutes[i - 1] || bandStartMinutes[i] >= 24 * 60) {
+                throw new IllegalArgumentException("电价时段的起点必须严格递增且在一天之内：" + bandStartMinutes[i]);
+            }
+            if (!(prices[i] >= 0)) {
+                throw new IllegalArgumentException("电价不能为负数：" + prices[i]);
+            }
+            bandStarts[i] = bandStartMinutes[i] * MINUTE_MILLIS;
+            if (i > 0) {
+                cumulative[i] = cumulative[i - 1] + (bandStarts[i] - bandStarts[i - 1]) * prices[i - 1];
+            }
+        }
+        this.dayTotal = cumulative[bands - 1] + (DAY_MILLIS - bandStarts[bands - 1]) * prices[bands - 1];
+        this.offsetMillis = timeZone.getRawOffset();
+    }
+
+    /**
+     * 创建全天单一价格的电价
+     *
+     * @param name        电价名称
+     * @param pricePerKwh 单价（单位：元/度）
+     * @return 电价
+     */
+    public static Tariff flat(String name, double pricePerKwh) {
+        return new Tariff(name, new int[]{0}, new double[]{pricePerKwh});
+    }
+
+    /**
+     * 获取电价名称
+     *
+     * @return 电价名称
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取时段数量
+     *
+     * @return 时段数量
+     */
+    public int getBandCount() {
+        return prices.length;
+    }
+
+    /**
+     * 获取指定时刻的单价
+     *
+     * @param timestampMillis 时刻（毫秒时间戳）
+     * @return 单价（单位：元/度）
+     */
+    public double getPrice(long timestampMillis) {
+        return prices[band(Math.floorMod(timestampMillis + offsetMillis, DAY_MILLIS))];
+    }
+
+    /**
+     * 计算以恒定功率运行一段时间的电费
+     *
+     * @param startMillis 开始时间（毫秒时间戳，包含）
+     * @param endMillis   结束时间（毫秒时间戳，不包含），不晚于开始时间时电费为0
+     * @param watts       功率（单位：瓦特/W）
+     * @return 电费（单位：元）
+     */
+    public double cost(long startMillis, long endMillis, double watts) {
+        return watts * priceMillis(startMillis, endMillis) / 3_600_000_000.0;
+    }
+
+    /**
+     * 计算一段时间内的累计“单价×毫秒”（以1千瓦运行该时间段的电费乘以3600000）
+     *
+     * @param startMillis 开始时间（毫秒时间戳，包含）
+     * @param endMillis   结束时间（毫秒时间戳，不包含）
+     * @return 累计“单价×毫秒”，区间为空时为0
+     */
+    double priceMillis(long startMillis, long endMillis) {
+        if (endMillis <= startMillis) {
+            return 0;
+        }
+        long start = startMillis + offsetMillis;
+        long end = endMillis + offsetMillis;
+        long days = Math.floorDiv(end, DAY_MILLIS) - Math.floorDiv(start, DAY_MILLIS);
+        return days * dayTotal + withinDay(Math.floorMod(end, DAY_MILLIS)) - withinDay(Math.floorMod(start, DAY_MILLIS));
+    }
+
+    /**
+     * 当天0点到指定时刻的累计“单价×毫秒”
+     */
+    private double withinDay(long millisOfDay) {
+        int band = band(millisOfDay);
+        return cumulative[band] + (millisOfDay - bandStarts[band]) * prices[band];
+    }
+
+    /**
+     * 查找时刻所在的时段（时段数量很少，线性查找比二分查找更快）
+     */
+    private int band(long millisOfDay) {
+        int band = 0;
+        while (band + 1 < bandStarts.length && bandStarts[band + 1] <= millisOfDay) {
+            band++;
+        }
+        return band;
+    }
+
+    @Override
+    public String toString() {
+        return "Tariff{" +
+                "name='" + name + '\'' +
+                ", bandStartMillis=" + Arrays.toString(bandStarts) +
+                ", prices=" + Arrays.toString(prices) +
+                '}';
+    }
+}
@@ -0,0 +1,370 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * 分时电价电费计算引擎，把设备的开机区间与{@link Tariff}的价格时段求交，计算设备、房间和家庭的电费。
+ * <p>
+ * {@link EnergyReporting#getReport(Date, Date)}只给出用电量，而分时电价下同样的用电量落在峰、谷时段的电费不同。
+ * 引擎的核心（{@link #computeDeviceCosts}）以压缩行格式的基本类型数组作为输入：设备i的开机区间为
+ * {@code offsets[i]}到{@code offsets[i+1]}之间的各个{@code [starts[k], ends[k])}，以功率{@code watts[k]}运行。
+ * 每个区间的电费由电价的累计价格在区间两端的差值得到，与区间长度无关；设备按块并行计算，结果写入调用方提供的数组，
+ * 房间和家庭的电费再按归属下标累加（{@link #sumByGroup}），整个过程不为单台设备或单个区间创建对象，
+ * 适合对数百万台设备、数月历史做夜间批量出账。用电量由构造时指定的{@link EnergyKernel}计算（默认为{@link EnergyKernels#get()}）。
+ * <p>
+ * {@link #bill(Collection, Date, Date)}从设备的开关机时间线（{@link PowerTimeline}，设备每次开关机时写入）提取开机区间
+ * （{@link EnergyIntervals}），按额定功率计算，返回按设备、房间、家庭汇总的账单（{@link Bill}）。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see Tariff
+ */
+public class TariffCostEngine {
+    /**
+     * 并行计算时每块包含的设备数
+     */
+    private static final int BLOCK = 4096;
+
+    /**
+     * 计费使用的分时电价
+     */
+    private final Tariff tariff;
+
+    /**
+     * 计算用电量使用的能耗聚合内核
+     */
+    private final EnergyKernel kernel;
+
+    /**
+     * 有参构造方法，创建使用指定电价和默认能耗聚合内核（{@link EnergyKernels#get()}）的电费计算引擎
+     *
+     * @param tariff 分时电价
+     */
+    public TariffCostEngine(Tariff tariff) {
+        this(tariff, EnergyKernels.get());
+    }
+
+    /**
+     * 有参构造方法，创建使用指定电价和能耗聚合内核的电费计算引擎
+     *
+     * @param tariff 分时电价
+     * @param kernel 计算用电量使用的能耗聚合内核
+     */
+    public TariffCostEngine(Tariff tariff, EnergyKernel kernel) {
+        this.tariff = tariff;
+        this.kernel = kernel;
+    }
+
+    /**
+     * 获取计费使用的分时电价
+     *
+     * @return 分时电价
+     */
+    public Tariff getTariff() {
+        return tariff;
+    }
+
+    /**
+     * 批量计算设备的电费和用电量
+     *
+     * @param offsets  各设备开机区间的起始下标（长度为设备数+1，非递减）
+     * @param starts   各区间的开始时间（毫秒时间戳，包含）
+     * @param ends     各区间的结束时间（毫秒时间戳，不包含）
+     * @param watts    各区间的功率（单位：瓦特/W）
+     * @param costs    输出：各设备的电费（单位：元），长度至少为设备数
+     * @param energies 输出：各设备的用电量（单位：度/kW·h），长度至少为设备数，不需要时可为null
+     * @throws IllegalArgumentException 数组长度不一致
+     */
+    public void computeDeviceCosts(int[] offsets, long[] starts, long[] ends, double[] watts,
+                                   double[] costs, double[] energies) {
+        int devices = offsets.length - 1;
+        int intervals = devices < 0 ? 0 : offsets[devices];
+        if (devices < 0 || starts.length < intervals || ends.length < intervals || watts.length < intervals
+                || costs.length < devices || energies != null && energies.length < devices) {
+            throw new IllegalArgumentException("开机区间或输出数组的长度不一致");
+        }
+        int blocks = (devices + BLOCK - 1) / BLOCK;
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            int last = Math.min(devices, (block + 1) * BLOCK);
+            for (int device = block * BLOCK; device < last; device++) {
+                double priceWattMillis = 0;
+                for (int k = offsets[device]; k < offsets[device + 1]; k++) {
+                    priceWattMillis += watts[k] * tariff.priceMillis(starts[k], ends[k]);
+                }
+                costs[device] = priceWattMillis / EnergyIntervals.WATT_MILLIS_PER_KWH;
+                if (energies != null) {
+                    energies[device] = kernel.wattMillis(starts, ends, watts, offsets[device], offsets[device + 1],
+                            Long.MIN_VALUE, Long.MAX_VALUE) / EnergyIntervals.WATT_MILLIS_PER_KWH;
+                }
+            }
+        });
+    }
+
+    /**
+     * 按归属下标累加（如由设备电费得到房间电费，由房间电费得到家庭电费）
+     *
+     * @param groupOf 各元素所属分组的下标
+     * @param values  各元素的值
+     * @param groups  分组数
+     * @return 各分组的合计
+     */
+    public static double[] sumByGroup(int[] groupOf, double[] values, int groups) {
+        double[] sums = new double[groups];
+        for (int i = 0; i < groupOf.length; i++) {
+            sums[groupOf[i]] += values[i];
+        }
+        return sums;
+    }
+
+    /**
+     * 根据设备的开关机时间线为一组家庭出账
+     * <p>
+     * 统计开始时的电源状态取此前最后一次切换后的状态，统计区间内每次开机开始一个开机区间，随后的关机结束该区间，
+     * 最后一个未关机的区间计到统计结束为止（见{@link PowerTimeline#forEachOnInterval}）。每台设备的代价为O(log n + k)，
+     * n为设备的切换记录数，k为区间内的切换数。设备按额定功率计费，只统计实现了{@link EnergyReporting}的设备。
+     *
+     * @param households 家庭
+     * @param startTime  统计开始时间（包含）
+     * @param endTime    统计结束时间（不包含）
+     * @return 账单
+     */
+    public Bill bill(Collection<Household> households, Date startTime, Date endTime) {
+        long start = startTime.getTime();
+        long end = endTime.getTime();
+        List<Device> devices = new ArrayList<Device>();
+        List<Room> rooms = new ArrayList<Room>();
+        List<Household> homes = new ArrayList<Household>(households);
+        IntBuffer roomOfDevice = new IntBuffer();
+        IntBuffer householdOfRoom = new IntBuffer();
+        EnergyIntervals intervals = new EnergyIntervals();
+        for (int h = 0; h < homes.size(); h++) {
+            for (RoomSnapshot room : homes.get(h).snapshot().getRooms()) {
+                householdOfRoom.add(h);
+                for (Device device : room.getDevices()) {
+                    if (device instanceof EnergyReporting) {
+                        intervals.addDevice(device, start, end);
+                        roomOfDevice.add(rooms.size());
+                        devices.add(device);
+                    }
+                }
+                rooms.add(room.getRoom());
+            }
+        }
+
+        double[] deviceCosts = new double[devices.size()];
+        double[] deviceEnergies = new double[devices.size()];
+        computeDeviceCosts(intervals.getOffsets(), intervals.getStarts(), intervals.getEnds(), intervals.getWatts(),
+                deviceCosts, deviceEnergies);
+        int[] roomOf = roomOfDevice.toArray();
+        int[] householdOf = householdOfRoom.toArray();
+        double[] roomCosts = sumByGroup(roomOf, deviceCosts, rooms.size());
+        double[] roomEnergies = sumByGroup(roomOf, deviceEnergies, rooms.size());
+        return new Bill(tariff, startTime, endTime, devices, deviceCosts, deviceEnergies, rooms, roomCosts, roomEnergies,
+                homes, sumByGroup(householdOf, roomCosts, homes.size()), sumByGroup(householdOf, roomEnergies, homes.size()));
+    }
+
+    /**
+     * 可增长的int数组
+     */
+    private static final class IntBuffer {
+        private int[] values = new int[64];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * 一次出账的结果：统计区间内各设备、房间和家庭的电费与用电量
+     */
+    public static final class Bill {
+        private final Tariff tariff;
+        private final Date startTime;
+        private final Date endTime;
+        private final List<Device> devices;
+        private final double[] deviceCosts;
+        private final double[] deviceEnergies;
+        private final List<Room> rooms;
+        private final double[] roomCosts;
+        private final double[] roomEnergies;
+        private final List<Household> households;
+        private final double[] householdCosts;
+        private final double[] householdEnergies;
+        private final Map<Object, Integer> index = new IdentityHashMap<Object, Integer>();
+
+        Bill(Tariff tariff, Date startTime, Date endTime,
+             List<Device> devices, double[] deviceCosts, double[] deviceEnergies,
+             List<Room> rooms, double[] roomCosts, double[] roomEnergies,
+             List<Household> households, double[] householdCosts, double[] householdEnergies) {
+            this.tariff = tariff;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.devices = Collections.unmodifiableList(devices);
+            this.deviceCosts = deviceCosts;
+            this.deviceEnergies = deviceEnergies;
+            this.rooms = Collections.unmodifiableList(rooms);
+            this.roomCosts = roomCosts;
+            this.roomEnergies = roomEnergies;
+            this.households = Collections.unmodifiableList(households);
+            this.householdCosts = householdCosts;
+            this.householdEnergies = householdEnergies;
+            for (int i = 0; i < devices.size(); i++) {
+                index.put(devices.get(i), i);
+            }
+            for (int i = 0; i < rooms.size(); i++) {
+                index.put(rooms.get(i), i);
+            }
+            for (int i = 0; i < households.size(); i++) {
+                index.put(households.get(i), i);
+            }
+        }
+
+        /**
+         * 获取计费使用的分时电价
+         *
+         * @return 分时电价
+         */
+        public Tariff getTariff() {
+            return tariff;
+        }
+
+        /**
+         * 获取统计开始时间
+         *
+         * @return 开始时间
+         */
+        public Date getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * 获取统计结束时间
+         *
+         * @return 结束时间
+         */
+        public Date getEndTime() {
+            return endTime;
+        }
+
+        /**
+         * 获取参与计费的设备（实现了{@link EnergyReporting}的设备）
+         *
+         * @return 只读设备列表
+         */
+        public List<Device> getDevices() {
+            return devices;
+        }
+
+        /**
+         * 获取参与计费的房间
+         *
+         * @return 只读房间列表
+         */
+        public List<Room> getRooms() {
+            return rooms;
+        }
+
+        /**
+         * 获取参与计费的家庭
+         *
+         * @return 只读家庭列表
+         */
+        public List<Household> getHouseholds() {
+            return households;
+        }
+
+        /**
+         * 获取设备的电费
+         *
+         * @param device 设备
+         * @return 电费（单位：元），设备未参与计费时为0
+         */
+        public double getCost(Device device) {
+            return valueOf(device, deviceCosts);
+        }
+
+        /**
+         * 获取设备的用电量
+         *
+         * @param device 设备
+         * @return 用电量（单位：度/kW·h），设备未参与计费时为0
+         */
+        public double getEnergy(Device device) {
+            return valueOf(device, deviceEnergies);
+        }
+
+        /**
+         * 获取房间内所有设备的电费合计
+         *
+         * @param room 房间
+         * @return 电费（单位：元），房间未参与计费时为0
+         */
+        public double getCost(Room room) {
+            return valueOf(room, roomCosts);
+        }
+
+        /**
+         * 获取房间内所有设备的用电量合计
+         *
+         * @param room 房间
+         * @return 用电量（单位：度/kW·h），房间未参与计费时为0
+         */
+        public double getEnergy(Room room) {
+            return valueOf(room, roomEnergies);
+        }
+
+        /**
+         * 获取家庭内所有设备的电费合计
+         *
+         * @param household 家庭
+         * @return 电费（单位：元），家庭未参与计费时为0
+         */
+        public double getCost(Household household) {
+            return valueOf(household, householdCosts);
+        }
+
+        /**
+         * 获取家庭内所有设备的用电量合计
+         *
+         * @param household 家庭
+         * @return 用电量（单位：度/kW·h），家庭未参与计费时为0
+         */
+        public double getEnergy(Household household) {
+            return valueOf(household, householdEnergies);
+        }
+
+        /**
+         * 获取所有家庭的电费合计
+         *
+         * @return 电费（单位：元）
+         */
+        public double getTotalCost() {
+            double total = 0;
+            for (double cost : householdCosts) {
+                total += cost;
+            }
+            return total;
+        }
+
+        private double valueOf(Object key, double[] values) {
+            Integer i = index.get(key);
+            return i == null ? 0 : values[i];
+        }
+    }
+}
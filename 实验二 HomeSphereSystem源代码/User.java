@@ -1,15 +1,27 @@
 package cn.edu.nwpu.homesphere;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+
 /**
  * 用户类，用于封装智能家居系统中的用户信息及权限标识，是系统登录、权限控制的核心数据载体。
  * <p>
  * 该类管理用户的唯一标识、登录凭证（账号/密码）、个人信息（昵称/邮箱）及管理员权限状态，
  * 支持用户信息的查询与更新，通过重写{@code equals}方法实现基于用户ID的身份唯一性判断。
+ * 登录校验使用密码的加盐摘要（{@link #checkPassword(String)}），变更流和复制流只传播摘要，不传播明文密码。
  *
  * @author 余燚
  * @version 1.0
  */
 public class User {
+    /**
+     * 生成密码盐值的随机数发生器
+     */
+    private static final SecureRandom SALTS = new SecureRandom();
+
     /**
      * 用户唯一编号（系统随机分配，不可修改，用于区分不同用户）
      */
@@ -25,6 +37,11 @@ public class User {
      */
     private String loginPassword;
 
+    /**
+     * 登录凭据：密码的加盐SHA-256摘要，格式为“盐值:摘要”（均为Base64），没有密码时为null
+     */
+    private volatile String credential;
+
     /**
      * 用户昵称（展示用名称，非登录账号，可修改）
      */
@@ -40,6 +57,16 @@ public class User {
      */
     private boolean isAdmin;
 
+    /**
+     * 用户当前的设备权限位图，没有任何授权时为null（由{@link PermissionTable}编译并整体替换）
+     */
+    volatile PermissionTable.Mask permissionMask;
+
+    /**
+     * 用户所属的家庭，由{@link Household#addUser(User)}设置，未加入家庭时为null
+     */
+    private volatile Household household;
+
     /**
      * 无参构造方法，创建一个默认的用户实例
      * <p>
@@ -64,6 +91,7 @@ public class User {
         this.userId = userId;
         this.loginName = loginName;
         this.loginPassword = loginPassword;
+        this.credential = loginPassword == null ? null : hash(loginPassword);
         this.userName = userName;
         this.email = email;
     }
@@ -78,12 +106,14 @@ public class User {
     }
 
     /**
-     * 修改用户昵称
+     * 修改用户昵称（已登记到全局用户目录时同时更新目录索引）
      *
      * @param userName 新的用户昵称
      */
     public void setUserName(String userName) {
+        String previous = this.userName;
         this.userName = userName;
+        reindex(() -> this.userName = previous);
     }
 
     /**
@@ -96,12 +126,15 @@ public class User {
     }
 
     /**
-     * 修改用户邮箱
+     * 修改用户邮箱（已登记到全局用户目录时同时更新目录索引）
      *
      * @param email 新的用户邮箱地址
+     * @throws IllegalArgumentException 新邮箱已被设备群中的其他用户使用（此时邮箱保持不变）
      */
     public void setEmail(String email) {
+        String previous = this.email;
         this.email = email;
+        reindex(() -> this.email = previous);
     }
 
     /**
@@ -118,12 +151,72 @@ public class User {
     /**
      * 修改用户登录密码
      * <p>
-     * 建议传入加密后的密码字符串，避免明文存储导致安全风险。
+     * 建议传入加密后的密码字符串，避免明文存储导致安全风险。登录凭据随之更新，并作为用户更新事件复制到副本。
      *
      * @param loginPassword 新的登录密码（建议加密后传入）
      */
     public void setLoginPassword(String loginPassword) {
         this.loginPassword = loginPassword;
+        this.credential = loginPassword == null ? null : hash(loginPassword);
+        changed();
+    }
+
+    /**
+     * 校验密码是否与用户的登录凭据匹配（比较加盐摘要，比较耗时与摘要内容无关）
+     *
+     * @param password 待校验的密码
+     * @return {@code true}表示匹配；用户没有密码或传入null时返回{@code false}
+     */
+    public boolean checkPassword(String password) {
+        String current = credential;
+        int separator = current == null ? -1 : current.indexOf(':');
+        if (separator < 0 || password == null) {
+            return false;
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        byte[] expected = decoder.decode(current.substring(separator + 1));
+        return MessageDigest.isEqual(expected, digest(decoder.decode(current.substring(0, separator)), password));
+    }
+
+    /**
+     * 获取登录凭据（密码的加盐摘要），供变更流的用户事件使用
+     *
+     * @return 登录凭据，没有密码时返回null
+     */
+    String getCredential() {
+        return credential;
+    }
+
+    /**
+     * 设置登录凭据（副本应用复制来的用户事件时使用，副本上的用户没有明文密码）
+     *
+     * @param credential 登录凭据
+     */
+    void setCredential(String credential) {
+        this.credential = credential;
+    }
+
+    /**
+     * 生成密码的加盐摘要
+     *
+     * @param password 密码
+     * @return “盐值:摘要”形式的登录凭据
+     */
+    private static String hash(String password) {
+        byte[] salt = new byte[16];
+        SALTS.nextBytes(salt);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return encoder.encodeToString(salt) + ":" + encoder.encodeToString(digest(salt, password));
+    }
+
+    private static byte[] digest(byte[] salt, String password) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(salt);
+            return sha.digest(password.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("当前运行环境不支持SHA-256", e);
+        }
     }
 
     /**
@@ -138,12 +231,49 @@ public class User {
     /**
      * 修改用户登录账号
      * <p>
-     * 需确保新账号在系统内唯一，避免与其他用户账号冲突（需调用者自行判断唯一性）。
+     * 已登记到全局用户目录时同时更新目录索引，新账号与其他用户冲突时拒绝修改。
      *
      * @param loginName 新的用户登录账号
+     * @throws IllegalArgumentException 新账号已被设备群中的其他用户使用（此时账号保持不变）
      */
     public void setLoginName(String loginName) {
+        String previous = this.loginName;
         this.loginName = loginName;
+        reindex(() -> this.loginName = previous);
+    }
+
+    /**
+     * 按修改后的属性更新全局用户目录的索引，与其他用户冲突时撤销修改并抛出异常；更新成功后通知所属家庭记录用户更新事件
+     *
+     * @param rollback 撤销修改的操作
+     */
+    private void reindex(Runnable rollback) {
+        try {
+            Fleet.getInstance().getUserDirectory().userChanged(this);
+        } catch (IllegalArgumentException e) {
+            rollback.run();
+            throw e;
+        }
+        changed();
+    }
+
+    /**
+     * 用户属性修改后的回调，所属家庭配置了变更流时记录一个用户更新事件（{@link ChangeEvent.Type#USER_UPDATED}）
+     */
+    private void changed() {
+        Household current = household;
+        if (current != null) {
+            current.userUpdated(this);
+        }
+    }
+
+    /**
+     * 设置用户所属的家庭（仅由{@link Household}在增删用户时调用）
+     *
+     * @param household 所属家庭，移出家庭时传入null
+     */
+    void setHousehold(Household household) {
+        this.household = household;
     }
 
     /**
@@ -173,6 +303,7 @@ public class User {
      */
     public void setAdmin(boolean admin) {
         isAdmin = admin;
+        changed();
     }
 
     /**
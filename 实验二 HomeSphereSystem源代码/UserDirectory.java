@@ -0,0 +1,286 @@
+package cn.edu.nwpu.homesphere;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 用户目录类，跨所有家庭按邮箱、登录名和昵称索引用户，供管理后台查找用户使用。
+ * <p>
+ * 邮箱和登录名在整个设备群内唯一（不区分大小写），登记冲突的用户时抛出异常。
+ * 登录名保存在有序表中，按前缀查找只需定位一次再顺序读取；昵称的每个后缀都登记在另一张有序表中，
+ * 按昵称片段查找即转化为对后缀的前缀查找。两种查找的代价均为O(log n + k)（k为返回的结果数），
+ * 与用户总数无关，不再需要遍历各家庭的用户列表。
+ * <p>
+ * 用户加入或移出家庭时由{@link Household}自动维护目录；用户以“家庭编号+用户编号”标识，
+ * 再次登记同一标识的用户会替换旧记录。已登记的用户修改登录名、邮箱或昵称时由{@link User}的setter自动更新索引，
+ * 新的登录名或邮箱与其他用户冲突时setter抛出异常且不做修改。所有方法均线程安全。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see Fleet#getUserDirectory()
+ */
+public class UserDirectory {
+    /**
+     * 前缀查找的上界后缀
+     */
+    private static final char PREFIX_END = Character.MAX_VALUE;
+
+    /**
+     * 用户标识（家庭编号+用户编号）到目录记录的映射
+     */
+    private final Map<Long, Entry> entries = new HashMap<Long, Entry>();
+
+    /**
+     * 用户对象到目录记录的映射
+     */
+    private final Map<User, Entry> byUser = new IdentityHashMap<User, Entry>();
+
+    /**
+     * 邮箱（小写） -> 目录记录
+     */
+    private final Map<String, Entry> byEmail = new HashMap<String, Entry>();
+
+    /**
+     * 登录名（小写） -> 目录记录，按登录名排序
+     */
+    private final TreeMap<String, Entry> byLogin = new TreeMap<String, Entry>();
+
+    /**
+     * 昵称的后缀（小写） -> 昵称含该后缀的目录记录，按后缀排序
+     */
+    private final TreeMap<String, List<Entry>> byNameSuffix = new TreeMap<String, List<Entry>>();
+
+    /**
+     * 目录记录，保存用户及其登记时的索引键，保证移除时能找到全部索引项
+     */
+    private static final class Entry {
+        final long key;
+        final int householdId;
+        final User user;
+        final String email;
+        final String loginName;
+        final String userName;
+
+        Entry(long key, int householdId, User user) {
+            this.key = key;
+            this.householdId = householdId;
+            this.user = user;
+            this.email = normalize(user.getEmail());
+            this.loginName = normalize(user.getLoginName());
+            this.userName = normalize(user.getUserName());
+        }
+    }
+
+    /**
+     * 将用户登记到目录中；同一家庭同一编号的旧记录会被替换
+     *
+     * @param householdId 用户所属的家庭编号
+     * @param user        待登记的用户
+     * @throws IllegalArgumentException 邮箱或登录名已被其他用户使用
+     */
+    public synchronized void register(int householdId, User user) {
+        long key = key(householdId, user.getUserId());
+        Entry entry = new Entry(key, householdId, user);
+        Entry emailOwner = entry.email == null ? null : byEmail.get(entry.email);
+        if (emailOwner != null && emailOwner.key != key) {
+            throw new IllegalArgumentException("邮箱" + user.getEmail() + "已被家庭" + emailOwner.householdId
+                    + "的用户" + emailOwner.user.getUserId() + "使用");
+        }
+        Entry loginOwner = entry.loginName == null ? null : byLogin.get(entry.loginName);
+        if (loginOwner != null && loginOwner.key != key) {
+            throw new IllegalArgumentException("登录名" + user.getLoginName() + "已被家庭" + loginOwner.householdId
+                    + "的用户" + loginOwner.user.getUserId() + "使用");
+        }
+        Entry old = entries.get(key);
+        if (old != null) {
+            removeEntry(old);
+        }
+        entries.put(key, entry);
+        byUser.put(user, entry);
+        if (entry.email != null) {
+            byEmail.put(entry.email, entry);
+        }
+        if (entry.loginName != null) {
+            byLogin.put(entry.loginName, entry);
+        }
+        if (entry.userName != null) {
+            for (int i = 0; i < entry.userName.length(); i++) {
+                byNameSuffix.computeIfAbsent(entry.userName.substring(i), suffix -> new ArrayList<Entry>(1)).add(entry);
+            }
+        }
+    }
+
+    /**
+     * 用户的登录名、邮箱或昵称修改后的回调（由{@link User}的setter调用）：按新的值重新登记，用户未登记时不做处理
+     *
+     * @param user 修改后的用户
+     * @throws IllegalArgumentException 新的邮箱或登录名已被其他用户使用（此时目录保持原样）
+     */
+    synchronized void userChanged(User user) {
+        Entry entry = byUser.get(user);
+        if (entry != null) {
+            register(entry.householdId, user);
+        }
+    }
+
+    /**
+     * 将用户从目录中移除；若该标识当前登记的是另一个用户对象，则不做处理
+     *
+     * @param householdId 用户所属的家庭编号
+     * @param user        待移除的用户
+     */
+    public synchronized void unregister(int householdId, User user) {
+        Entry entry = entries.get(key(householdId, user.getUserId()));
+        if (entry != null && entry.user == user) {
+            removeEntry(entry);
+        }
+    }
+
+    private void removeEntry(Entry entry) {
+        entries.remove(entry.key);
+        byUser.remove(entry.user);
+        if (entry.email != null) {
+            byEmail.remove(entry.email, entry);
+        }
+        if (entry.loginName != null) {
+            byLogin.remove(entry.loginName, entry);
+        }
+        if (entry.userName != null) {
+            for (int i = 0; i < entry.userName.length(); i++) {
+                String suffix = entry.userName.substring(i);
+                List<Entry> list = byNameSuffix.get(suffix);
+                if (list != null) {
+                    list.remove(entry);
+                    if (list.isEmpty()) {
+                        byNameSuffix.remove(suffix);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 按邮箱查找用户（不区分大小写）
+     *
+     * @param email 邮箱
+     * @return 用户，不存在时返回null
+     */
+    public synchronized User findByEmail(String email) {
+        Entry entry = email == null ? null : byEmail.get(normalize(email));
+        return entry == null ? null : entry.user;
+    }
+
+    /**
+     * 按登录名查找用户（不区分大小写）
+     *
+     * @param loginName 登录名
+     * @return 用户，不存在时返回null
+     */
+    public synchronized User findByLogin(String loginName) {
+        Entry entry = loginName == null ? null : byLogin.get(normalize(loginName));
+        return entry == null ? null : entry.user;
+    }
+
+    /**
+     * 按登录名前缀查找用户（不区分大小写），结果按登录名排序
+     *
+     * @param prefix 登录名前缀
+     * @param limit  最多返回的用户数
+     * @return 用户列表（新列表，无结果时为空列表）
+     */
+    public synchronized List<User> findByLoginPrefix(String prefix, int limit) {
+        List<User> result = new ArrayList<User>(Math.min(Math.max(limit, 0), 16));
+        for (Entry entry : startingWith(byLogin, normalize(prefix)).values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(entry.user);
+        }
+        return result;
+    }
+
+    /**
+     * 按昵称片段查找用户（不区分大小写，片段可以出现在昵称的任意位置）
+     * <p>
+     * 结果按用户对象去重：不同家庭中编号相同的用户是不同的用户，都会被返回。
+     *
+     * @param fragment 昵称片段
+     * @param limit    最多返回的用户数
+     * @return 用户列表（新列表，无结果时为空列表）
+     */
+    public synchronized List<User> findByNameFragment(String fragment, int limit) {
+        List<User> result = new ArrayList<User>();
+        Set<User> seen = Collections.newSetFromMap(new IdentityHashMap<User, Boolean>());
+        for (List<Entry> entries : startingWith(byNameSuffix, normalize(fragment)).values()) {
+            for (Entry entry : entries) {
+                if (result.size() >= limit) {
+                    return result;
+                }
+                if (seen.add(entry.user)) {
+                    result.add(entry.user);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取用户所属的家庭编号
+     *
+     * @param user 用户
+     * @return 家庭编号，用户未登记时返回-1
+     */
+    public synchronized int getHouseholdId(User user) {
+        Entry entry = byUser.get(user);
+        return entry == null ? -1 : entry.householdId;
+    }
+
+    /**
+     * 清空目录（由{@link Fleet#reset()}调用）
+     */
+    synchronized void clear() {
+        entries.clear();
+        byUser.clear();
+        byEmail.clear();
+        byLogin.clear();
+        byNameSuffix.clear();
+    }
+
+    /**
+     * 获取目录中的用户数
+     *
+     * @return 用户数
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 有序表中以指定前缀开头的部分（只读视图）
+     */
+    private static <V> NavigableMap<String, V> startingWith(TreeMap<String, V> map, String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return map;
+        }
+        return map.subMap(prefix, true, prefix + PREFIX_END, false);
+    }
+
+    private static String normalize(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static long key(int householdId, int userId) {
+        return (long) householdId << 32 | (userId & 0xFFFFFFFFL);
+    }
+}
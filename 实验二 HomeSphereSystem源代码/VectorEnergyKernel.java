@@ -0,0 +1,112 @@
+package cn.edu.nwpu.homesphere;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * 基于{@code jdk.incubator.vector}（Vector API）的能耗聚合内核，每次处理一整个向量寄存器宽度的区间
+ * （AVX-512上为8个），用向量指令完成裁剪、相减、long转double、乘法和累加，尾部不足一个向量的区间按标量算法处理。
+ * <p>
+ * 孵化模块需要在编译和运行时都加上{@code --add-modules jdk.incubator.vector}才能直接引用，为了不改变项目的编译方式，
+ * 本类通过保存在static final字段中的方法句柄调用Vector API。能否消除句柄调用和向量对象的装箱取决于JIT，
+ * 实测不一定比标量内核快，因此本类只在显式启用时使用（见{@link EnergyKernels}）；运行时未启用该模块时本类不可用。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see EnergyKernels#vector()
+ */
+final class VectorEnergyKernel implements EnergyKernel {
+    /**
+     * Vector API所在的模块
+     */
+    static final String MODULE = "jdk.incubator.vector";
+
+    private static final Object DOUBLE_SPECIES;
+    private static final Object LONG_SPECIES;
+    private static final Object L2D;
+    private static final Object ADD;
+    private static final int LANES;
+
+    private static final MethodHandle LONG_FROM_ARRAY;
+    private static final MethodHandle DOUBLE_FROM_ARRAY;
+    private static final MethodHandle DOUBLE_ZERO;
+    private static final MethodHandle LONG_MAX;
+    private static final MethodHandle LONG_MIN;
+    private static final MethodHandle LONG_SUB;
+    private static final MethodHandle CONVERT;
+    private static final MethodHandle DOUBLE_MUL;
+    private static final MethodHandle DOUBLE_ADD;
+    private static final MethodHandle DOUBLE_REDUCE;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            Class<?> vector = Class.forName(MODULE + ".Vector");
+            Class<?> longVector = Class.forName(MODULE + ".LongVector");
+            Class<?> doubleVector = Class.forName(MODULE + ".DoubleVector");
+            Class<?> species = Class.forName(MODULE + ".VectorSpecies");
+            Class<?> operators = Class.forName(MODULE + ".VectorOperators");
+            Class<?> conversion = Class.forName(MODULE + ".VectorOperators$Conversion");
+            Class<?> associative = Class.forName(MODULE + ".VectorOperators$Associative");
+
+            // long和double同为64位，两个种类的形状和通道数相同
+            DOUBLE_SPECIES = doubleVector.getField("SPECIES_PREFERRED").get(null);
+            LONG_SPECIES = species.getMethod("withLanes", Class.class).invoke(DOUBLE_SPECIES, long.class);
+            LANES = (Integer) species.getMethod("length").invoke(DOUBLE_SPECIES);
+            L2D = operators.getField("L2D").get(null);
+            ADD = operators.getField("ADD").get(null);
+
+            MethodType binary = MethodType.methodType(Object.class, Object.class, Object.class);
+            LONG_FROM_ARRAY = lookup.findStatic(longVector, "fromArray", MethodType.methodType(longVector, species, long[].class, int.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, long[].class, int.class));
+            DOUBLE_FROM_ARRAY = lookup.findStatic(doubleVector, "fromArray", MethodType.methodType(doubleVector, species, double[].class, int.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, double[].class, int.class));
+            DOUBLE_ZERO = lookup.findStatic(doubleVector, "zero", MethodType.methodType(doubleVector, species))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            LONG_MAX = lookup.findVirtual(longVector, "max", MethodType.methodType(longVector, long.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, long.class));
+            LONG_MIN = lookup.findVirtual(longVector, "min", MethodType.methodType(longVector, long.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, long.class));
+            LONG_SUB = lookup.findVirtual(longVector, "sub", MethodType.methodType(longVector, vector)).asType(binary);
+            CONVERT = lookup.findVirtual(vector, "convert", MethodType.methodType(vector, conversion, int.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, Object.class, int.class));
+            DOUBLE_MUL = lookup.findVirtual(doubleVector, "mul", MethodType.methodType(doubleVector, vector)).asType(binary);
+            DOUBLE_ADD = lookup.findVirtual(doubleVector, "add", MethodType.methodType(doubleVector, vector)).asType(binary);
+            DOUBLE_REDUCE = lookup.findVirtual(doubleVector, "reduceLanes", MethodType.methodType(double.class, associative))
+                    .asType(MethodType.methodType(double.class, Object.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector(" + LANES + "x64)";
+    }
+
+    @Override
+    public double wattMillis(long[] starts, long[] ends, double[] watts, int from, int to, long windowStart, long windowEnd) {
+        int bound = from + (to - from) / LANES * LANES;
+        double sum = 0;
+        if (bound > from) {
+            try {
+                Object acc = (Object) DOUBLE_ZERO.invokeExact(DOUBLE_SPECIES);
+                for (int k = from; k < bound; k += LANES) {
+                    Object start = (Object) LONG_MAX.invokeExact((Object) LONG_FROM_ARRAY.invokeExact(LONG_SPECIES, starts, k), windowStart);
+                    Object end = (Object) LONG_MIN.invokeExact((Object) LONG_FROM_ARRAY.invokeExact(LONG_SPECIES, ends, k), windowEnd);
+                    Object duration = (Object) LONG_MAX.invokeExact((Object) LONG_SUB.invokeExact(end, start), 0L);
+                    Object millis = (Object) CONVERT.invokeExact(duration, L2D, 0);
+                    Object energy = (Object) DOUBLE_MUL.invokeExact(millis, (Object) DOUBLE_FROM_ARRAY.invokeExact(DOUBLE_SPECIES, watts, k));
+                    acc = (Object) DOUBLE_ADD.invokeExact(acc, energy);
+                }
+                sum = (double) DOUBLE_REDUCE.invokeExact(acc, ADD);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("Vector API调用失败", e);
+            }
+        }
+        return sum + ScalarEnergyKernel.sum(starts, ends, watts, bound, to, windowStart, windowEnd);
+    }
+}
@@ -0,0 +1,303 @@
+package cn.edu.nwpu.homesphere;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 负载回放工具，按固定速率对一批家庭的{@link HomeSphereSystem}回放由种子决定的混合负载，并统计吞吐量与延迟分布。
+ * <p>
+ * 负载由三类操作按权重混合而成：
+ * <ul>
+ *     <li>登录：随机选择一个用户校验用户名和密码（{@link HomeSphereSystem#authenticate(String, String)}）；</li>
+ *     <li>场景触发：随机选择一个用户，以该用户的身份（{@link PermissionTable#runAs(User, PermissionTable.Action)}）随机触发一个自动化场景；</li>
+ *     <li>遥测上报：随机选择一台设备更新其传感器读数（室温、电量、体重等）。</li>
+ * </ul>
+ * 回放采用开环方式：第i个操作的计划时间为开始时间 + i / 速率，延迟从计划时间起算，
+ * 因此系统变慢导致的排队等待也会计入延迟，不会因为“等上一个操作完成再发下一个”而低估尾延迟。
+ *
+ * @author 余燚
+ * @version 1.0
+ * @see HouseholdGenerator
+ */
+public class WorkloadReplayer {
+    /**
+     * 操作类型：登录
+     */
+    private static final int LOGIN = 0;
+
+    /**
+     * 操作类型：场景触发
+     */
+    private static final int SCENE = 1;
+
+    /**
+     * 操作类型：遥测上报
+     */
+    private static final int TELEMETRY = 2;
+
+    /**
+     * 被回放的各家庭系统
+     */
+    private final List<HomeSphereSystem> systems = new ArrayList<HomeSphereSystem>();
+
+    /**
+     * 各家庭的设备快照（遥测上报时随机选取）
+     */
+    private final List<List<Device>> devices = new ArrayList<List<Device>>();
+
+    /**
+     * 随机种子
+     */
+    private final long seed;
+
+    /**
+     * 登录、场景触发、遥测上报三类操作的权重
+     */
+    private final int[] weights = {10, 20, 70};
+
+    /**
+     * 有参构造方法，创建对指定家庭回放负载的工具
+     *
+     * @param households 被回放的家庭（通常由{@link HouseholdGenerator}生成）
+     * @param seed       决定操作序列的随机种子
+     */
+    public WorkloadReplayer(List<Household> households, long seed) {
+        for (Household household : households) {
+            systems.add(new HomeSphereSystem(household));
+            devices.add(household.listAllDevices());
+        }
+        this.seed = seed;
+    }
+
+    /**
+     * 设置三类操作的权重（默认10:20:70）
+     *
+     * @param login     登录权重
+     * @param scene     场景触发权重
+     * @param telemetry 遥测上报权重
+     */
+    public void setMix(int login, int scene, int telemetry) {
+        if (login < 0 || scene < 0 || telemetry < 0 || login + scene + telemetry == 0) {
+            throw new IllegalArgumentException("操作权重不能为负且不能全为0");
+        }
+        weights[LOGIN] = login;
+        weights[SCENE] = scene;
+        weights[TELEMETRY] = telemetry;
+    }
+
+    /**
+     * 以固定速率回放指定数量的操作，等待全部完成后返回统计结果
+     * <p>
+     * 操作按序号轮流分配给各线程（第i个操作由第i % threads个线程执行），每个线程使用由种子决定的独立随机序列，
+     * 因此相同参数的两次回放执行完全相同的操作序列。某个操作抛出异常时只计入错误数，线程继续执行后续操作。
+     *
+     * @param operations   操作总数
+     * @param opsPerSecond 目标速率（每秒操作数）
+     * @param threads      回放线程数
+     * @return 回放结果
+     * @throws InterruptedException 等待过程中线程被中断
+     */
+    public Report replay(int operations, int opsPerSecond, int threads) throws InterruptedException {
+        Report report = new Report();
+        long interval = TimeUnit.SECONDS.toNanos(1) / opsPerSecond;
+        long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(10);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int worker = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    Random random = new Random(seed * 31 + worker);
+                    for (int i = worker; i < operations; i += threads) {
+                        long intended = start + i * interval;
+                        long wait = intended - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                        int type;
+                        try {
+                            type = perform(random);
+                        } catch (RuntimeException e) {
+                            report.errors.increment();
+                            continue;
+                        }
+                        report.latency[type].recordSince(intended);
+                        report.all.recordSince(intended);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "homesphere-replay-" + t);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /**
+     * 随机选择并执行一个操作
+     *
+     * @param random 当前线程的随机序列
+     * @return 操作类型
+     */
+    private int perform(Random random) {
+        int index = random.nextInt(systems.size());
+        HomeSphereSystem system = systems.get(index);
+        int pick = random.nextInt(weights[LOGIN] + weights[SCENE] + weights[TELEMETRY]);
+        if (pick < weights[LOGIN]) {
+            Page<User> page = system.getHousehold().listUsers(Page.FIRST, 16);
+            if (!page.getItems().isEmpty()) {
+                User user = page.getItems().get(random.nextInt(page.getItems().size()));
+                system.authenticate(user.getLoginName(), user.getLoginPassword());
+            }
+            return LOGIN;
+        }
+        if (pick < weights[LOGIN] + weights[SCENE]) {
+            Page<AutomationScene> page = system.getHousehold().listAutoScenes(Page.FIRST, 16);
+            List<User> users = system.getHousehold().listUsers(Page.FIRST, 16).getItems();
+            if (!page.getItems().isEmpty() && !users.isEmpty()) {
+                AutomationScene scene = page.getItems().get(random.nextInt(page.getItems().size()));
+                try {
+                    PermissionTable.runAs(users.get(random.nextInt(users.size())), scene::trigger);
+                } catch (NoSuchMethodException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return SCENE;
+        }
+        List<Device> list = devices.get(index);
+        if (!list.isEmpty()) {
+            Device device = list.get(random.nextInt(list.size()));
+            if (device instanceof AirConditioner) {
+                ((AirConditioner) device).setCurrTemp(15 + random.nextInt(200) / 10.0);
+            } else if (device instanceof BathroomScale) {
+                ((BathroomScale) device).setBodyMass(45 + random.nextInt(600) / 10.0);
+            } else if (device instanceof BatteryPowered) {
+                ((BatteryPowered) device).setBatteryLevel(random.nextInt(101));
+            } else {
+                device.setOnline(device.isPowerStatus() && random.nextInt(20) != 0);
+            }
+        }
+        return TELEMETRY;
+    }
+
+    /**
+     * 一次回放的统计结果
+     */
+    public static final class Report {
+        private final LatencyHistogram all = new LatencyHistogram();
+        private final LatencyHistogram[] latency = {new LatencyHistogram(), new LatencyHistogram(), new LatencyHistogram()};
+        private final LongAdder errors = new LongAdder();
+        private long elapsedNanos;
+
+        /**
+         * 获取完成的操作数
+         *
+         * @return 操作数
+         */
+        public long getCount() {
+            return all.getCount();
+        }
+
+        /**
+         * 获取因异常中止的回放线程数
+         *
+         * @return 中止的线程数
+         */
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        /**
+         * 获取实际吞吐量
+         *
+         * @return 每秒完成的操作数
+         */
+        public double getThroughput() {
+            return getCount() * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * 获取全部操作的延迟分布
+         *
+         * @return 延迟直方图
+         */
+        public LatencyHistogram getLatency() {
+            return all;
+        }
+
+        /**
+         * 获取登录操作的延迟分布
+         *
+         * @return 延迟直方图
+         */
+        public LatencyHistogram getLoginLatency() {
+            return latency[LOGIN];
+        }
+
+        /**
+         * 获取场景触发操作的延迟分布
+         *
+         * @return 延迟直方图
+         */
+        public LatencyHistogram getSceneLatency() {
+            return latency[SCENE];
+        }
+
+        /**
+         * 获取遥测上报操作的延迟分布
+         *
+         * @return 延迟直方图
+         */
+        public LatencyHistogram getTelemetryLatency() {
+            return latency[TELEMETRY];
+        }
+
+        @Override
+        public String toString() {
+            return String.format("操作数=%d，吞吐量=%.0f次/秒%n", getCount(), getThroughput())
+                    + line("全部", all) + line("登录", latency[LOGIN])
+                    + line("场景", latency[SCENE]) + line("遥测", latency[TELEMETRY]);
+        }
+
+        private static String line(String name, LatencyHistogram histogram) {
+            return String.format("  %s：次数=%d，P50=%.0fμs，P99=%.0fμs，最大=%.0fμs%n", name, histogram.getCount(),
+                    histogram.getP50Micros(), histogram.getP99Micros(), histogram.getMaxMicros());
+        }
+    }
+
+    /**
+     * 生成模拟设备群并回放负载
+     * <p>
+     * 场景执行会为每个动作打印一行信息，回放期间暂时屏蔽标准输出，以免控制台输出成为瓶颈。
+     *
+     * @param args 可选参数：家庭数（默认100）、操作总数（默认200000）、目标速率（默认20000次/秒）、线程数（默认4）、种子（默认42）
+     * @throws InterruptedException 回放过程中线程被中断
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int households = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+        int rate = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Report report;
+        try {
+            WorkloadReplayer replayer = new WorkloadReplayer(new HouseholdGenerator(seed).generateFleet(households), seed);
+            report = replayer.replay(operations, rate, threads);
+        } finally {
+            System.setOut(console);
+        }
+        System.out.print(report);
+    }
+}